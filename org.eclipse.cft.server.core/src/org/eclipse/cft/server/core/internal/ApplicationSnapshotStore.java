@@ -0,0 +1,347 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Pivotal Software, Inc. 
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution. 
+ * 
+ * The Eclipse Public License is available at 
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * and the Apache License v2.0 is available at 
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * You may elect to redistribute this code under either of these licenses.
+ *  
+ *  Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+ ********************************************************************************/
+package org.eclipse.cft.server.core.internal;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.UUID;
+
+import org.cloudfoundry.client.lib.domain.CloudApplication;
+import org.cloudfoundry.client.lib.domain.CloudApplication.AppState;
+import org.cloudfoundry.client.lib.domain.CloudEntity.Meta;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+
+/**
+ * Persists a summary of the last known applications of each server, so that
+ * they can be shown as soon as the workbench starts, before the first
+ * refresh of the server completes. The summary of an application consists of
+ * its GUID, name, state, number of instances, memory, URIs and bound
+ * services.
+ * <p/>
+ * Each server has its own snapshot file in the given folder, named after the
+ * ID of the server. Snapshots are written asynchronously, and any pending
+ * snapshots are written when the store is disposed.
+ */
+public class ApplicationSnapshotStore {
+
+	private static final int SNAPSHOT_MAGIC = 0x43464150;
+
+	/**
+	 * Increment when the snapshot format changes. Snapshots with a different
+	 * version are discarded.
+	 */
+	private static final int SNAPSHOT_VERSION = 1;
+
+	private static final String SNAPSHOT_SUFFIX = ".snapshot"; //$NON-NLS-1$
+
+	private static final String ENCODING = "UTF-8"; //$NON-NLS-1$
+
+	private static final long WRITE_DELAY = 2000;
+
+	private final File folder;
+
+	/**
+	 * Serialized snapshots by server ID that have not been written yet. A
+	 * null snapshot indicates that the snapshot file should be deleted.
+	 */
+	private Map<String, byte[]> pendingSnapshots = new HashMap<String, byte[]>();
+
+	private final Object writeLock = new Object();
+
+	private final Job writeJob;
+
+	/**
+	 * 
+	 * @param folder where snapshots are persisted. It is created when the
+	 * first snapshot is written.
+	 */
+	public ApplicationSnapshotStore(File folder) {
+		this.folder = folder;
+		this.writeJob = new Job("Writing application snapshots") { //$NON-NLS-1$
+
+			@Override
+			protected IStatus run(IProgressMonitor monitor) {
+				writePendingSnapshots();
+				return Status.OK_STATUS;
+			}
+		};
+		writeJob.setSystem(true);
+	}
+
+	/**
+	 * Reads the last persisted snapshot of the applications of the given
+	 * server. Snapshots that were saved but not yet written are returned as
+	 * well.
+	 * @param serverId ID of the WST server
+	 * @return applications of the snapshot, or null if there is no snapshot
+	 * for the server. The applications only contain the summary values of
+	 * the snapshot.
+	 */
+	public List<CloudApplication> load(String serverId) {
+		byte[] pending = null;
+		synchronized (this) {
+			if (pendingSnapshots.containsKey(serverId)) {
+				pending = pendingSnapshots.get(serverId);
+				if (pending == null) {
+					return null;
+				}
+			}
+		}
+
+		File file = getFile(serverId);
+		if (pending == null && (file == null || !file.exists())) {
+			return null;
+		}
+		DataInputStream in = null;
+		try {
+			in = pending != null ? new DataInputStream(new ByteArrayInputStream(pending))
+					: new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			return read(in);
+		}
+		catch (IOException e) {
+			CloudFoundryPlugin.logError("Failed to read application snapshot " + file, e); //$NON-NLS-1$
+			return null;
+		}
+		finally {
+			close(in);
+		}
+	}
+
+	/**
+	 * Saves a snapshot of the given applications of a server, replacing any
+	 * previous snapshot. The snapshot is written asynchronously.
+	 * @param serverId ID of the WST server
+	 * @param applications deployed applications of the server
+	 */
+	public void save(String serverId, Collection<CloudApplication> applications) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		try {
+			write(out, applications);
+			out.close();
+		}
+		catch (IOException e) {
+			CloudFoundryPlugin.logError("Failed to create application snapshot for " + serverId, e); //$NON-NLS-1$
+			return;
+		}
+		synchronized (this) {
+			pendingSnapshots.put(serverId, bytes.toByteArray());
+		}
+		writeJob.schedule(WRITE_DELAY);
+	}
+
+	/**
+	 * Removes the snapshot of the given server, for example when the server
+	 * is deleted.
+	 * @param serverId ID of the WST server
+	 */
+	public void remove(String serverId) {
+		synchronized (this) {
+			pendingSnapshots.put(serverId, null);
+		}
+		writeJob.schedule(WRITE_DELAY);
+	}
+
+	/**
+	 * Writes out any pending snapshots. Should be called when the plugin is
+	 * stopped.
+	 */
+	public void dispose() {
+		writeJob.cancel();
+		writePendingSnapshots();
+	}
+
+	private void writePendingSnapshots() {
+		synchronized (writeLock) {
+			Map<String, byte[]> toWrite;
+			synchronized (this) {
+				if (pendingSnapshots.isEmpty()) {
+					return;
+				}
+				toWrite = pendingSnapshots;
+				pendingSnapshots = new HashMap<String, byte[]>();
+			}
+
+			for (Entry<String, byte[]> snapshot : toWrite.entrySet()) {
+				File file = getFile(snapshot.getKey());
+				if (file == null) {
+					continue;
+				}
+				if (snapshot.getValue() == null) {
+					file.delete();
+				}
+				else {
+					writeFile(file, snapshot.getValue());
+				}
+			}
+		}
+	}
+
+	private void writeFile(File file, byte[] snapshot) {
+		if (!folder.exists() && !folder.mkdirs()) {
+			CloudFoundryPlugin.logError("Failed to create application snapshot folder " + folder); //$NON-NLS-1$
+			return;
+		}
+		File tempFile = new File(file.getPath() + ".tmp"); //$NON-NLS-1$
+		FileOutputStream out = null;
+		try {
+			out = new FileOutputStream(tempFile);
+			out.write(snapshot);
+			out.close();
+			out = null;
+
+			file.delete();
+			if (!tempFile.renameTo(file)) {
+				CloudFoundryPlugin.logError("Failed to replace application snapshot " + file); //$NON-NLS-1$
+			}
+		}
+		catch (IOException e) {
+			CloudFoundryPlugin.logError("Failed to write application snapshot " + file, e); //$NON-NLS-1$
+		}
+		finally {
+			close(out);
+			tempFile.delete();
+		}
+	}
+
+	private File getFile(String serverId) {
+		if (serverId == null) {
+			return null;
+		}
+		try {
+			return new File(folder, URLEncoder.encode(serverId, ENCODING) + SNAPSHOT_SUFFIX);
+		}
+		catch (UnsupportedEncodingException e) {
+			CloudFoundryPlugin.logError(e);
+			return null;
+		}
+	}
+
+	private static void write(DataOutputStream out, Collection<CloudApplication> applications) throws IOException {
+		out.writeInt(SNAPSHOT_MAGIC);
+		out.writeInt(SNAPSHOT_VERSION);
+		out.writeInt(applications.size());
+		for (CloudApplication application : applications) {
+			Meta meta = application.getMeta();
+			writeString(out, meta != null && meta.getGuid() != null ? meta.getGuid().toString() : null);
+			writeString(out, application.getName());
+			writeString(out, application.getState() != null ? application.getState().name() : null);
+			out.writeInt(application.getInstances());
+			out.writeInt(application.getMemory());
+			writeStrings(out, application.getUris());
+			writeStrings(out, application.getServices());
+		}
+	}
+
+	private static List<CloudApplication> read(DataInputStream in) throws IOException {
+		if (in.readInt() != SNAPSHOT_MAGIC || in.readInt() != SNAPSHOT_VERSION) {
+			// Unknown format. Ignore the snapshot
+			return null;
+		}
+		int count = in.readInt();
+		List<CloudApplication> applications = new ArrayList<CloudApplication>(count);
+		for (int i = 0; i < count; i++) {
+			String guid = readString(in);
+			String name = readString(in);
+			String state = readString(in);
+			int instances = in.readInt();
+			int memory = in.readInt();
+			List<String> uris = readStrings(in);
+			List<String> services = readStrings(in);
+
+			AppState appState = null;
+			if (state != null) {
+				try {
+					appState = AppState.valueOf(state);
+				}
+				catch (IllegalArgumentException e) {
+					// Unknown state. Leave it unset
+				}
+			}
+			CloudApplication application = new CloudApplication(name, null, null, memory, instances, uris, services,
+					appState);
+			if (guid != null) {
+				application.setMeta(new Meta(UUID.fromString(guid), null, null));
+			}
+			applications.add(application);
+		}
+		return applications;
+	}
+
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		out.writeBoolean(value != null);
+		if (value != null) {
+			out.writeUTF(value);
+		}
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		return in.readBoolean() ? in.readUTF() : null;
+	}
+
+	private static void writeStrings(DataOutputStream out, List<String> values) throws IOException {
+		out.writeInt(values != null ? values.size() : 0);
+		if (values != null) {
+			for (String value : values) {
+				writeString(out, value);
+			}
+		}
+	}
+
+	private static List<String> readStrings(DataInputStream in) throws IOException {
+		int count = in.readInt();
+		List<String> values = new ArrayList<String>(count);
+		for (int i = 0; i < count; i++) {
+			values.add(readString(in));
+		}
+		return values;
+	}
+
+	private static void close(Closeable closeable) {
+		if (closeable != null) {
+			try {
+				closeable.close();
+			}
+			catch (IOException e) {
+				// ignore
+			}
+		}
+	}
+}
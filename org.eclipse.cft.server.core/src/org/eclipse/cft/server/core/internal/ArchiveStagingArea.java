@@ -0,0 +1,282 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Pivotal Software, Inc. 
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution. 
+ * 
+ * The Eclipse Public License is available at 
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * and the Apache License v2.0 is available at 
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * You may elect to redistribute this code under either of these licenses.
+ *  
+ *  Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+ ********************************************************************************/
+package org.eclipse.cft.server.core.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.osgi.util.NLS;
+import org.eclipse.wst.server.core.IModule;
+import org.eclipse.wst.server.core.IServer;
+
+/**
+ * Single staging area for application archives (e.g. .war and .jar files)
+ * that are generated when publishing modules, located under the plugin state
+ * location.
+ * <p/>
+ * Each module of a server is given its own folder in the staging area, which
+ * is reused every time an archive is generated for that module, rather than
+ * accumulating new temporary folders. Files that are reused across publishes,
+ * like child module jars, are kept in the folder. Archives obtained through
+ * {@link #getArchiveFile(IServer, IModule, String)} while the module is being
+ * published are deleted as soon as the module is released after upload.
+ * <p/>
+ * The total size of the staging area is also capped: when a module is
+ * released, folders of the least recently used modules are deleted until the
+ * staging area fits within the cap. Folders of modules that are currently
+ * being published are never deleted.
+ */
+public class ArchiveStagingArea {
+
+	/**
+	 * Default maximum number of bytes held in the staging area.
+	 */
+	public static final long DEFAULT_MAX_SIZE = 512L * 1024 * 1024;
+
+	private final File root;
+
+	private final long maxSize;
+
+	/**
+	 * Modules being published, by key of their staging folder
+	 */
+	private final Map<String, Stage> inUse = new HashMap<String, Stage>();
+
+	public ArchiveStagingArea(File root) {
+		this(root, DEFAULT_MAX_SIZE);
+	}
+
+	public ArchiveStagingArea(File root, long maxSize) {
+		this.root = root;
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * Marks the staging folder of the given module as in use, so that it is
+	 * not deleted while the module is published. Each call must be matched by
+	 * a call to {@link #release(IServer, IModule)}.
+	 * @param server
+	 * @param module
+	 */
+	public synchronized void acquire(IServer server, IModule module) {
+		String key = getKey(server, module);
+		Stage stage = inUse.get(key);
+		if (stage == null) {
+			stage = new Stage();
+			inUse.put(key, stage);
+		}
+		stage.count++;
+	}
+
+	/**
+	 * Returns the staging folder for the given module, creating it if
+	 * necessary.
+	 * @param server
+	 * @param module
+	 * @return non-null existing staging folder for the module
+	 * @throws IOException if the folder cannot be created
+	 */
+	public synchronized File getModuleFolder(IServer server, IModule module) throws IOException {
+		File folder = new File(root, getKey(server, module));
+		if (!folder.isDirectory() && !folder.mkdirs()) {
+			throw new IOException(NLS.bind(Messages.ArchiveStagingArea_ERROR_CREATE_FOLDER, folder.getPath()));
+		}
+		// Used to determine the least recently used folders
+		folder.setLastModified(System.currentTimeMillis());
+		return folder;
+	}
+
+	/**
+	 * Returns the staging file with the given name in the staging folder of
+	 * the given module. Any existing file with the same name from a previous
+	 * publish is deleted. If the module is in use, the file is deleted once
+	 * the module is released.
+	 * @param server
+	 * @param module
+	 * @param fileName
+	 * @return non-null staging file. The file itself does not exist.
+	 * @throws IOException if the staging folder cannot be created
+	 */
+	public synchronized File getArchiveFile(IServer server, IModule module, String fileName) throws IOException {
+		File file = new File(getModuleFolder(server, module), fileName);
+		if (file.exists()) {
+			file.delete();
+		}
+		Stage stage = inUse.get(getKey(server, module));
+		if (stage != null) {
+			stage.archives.add(file);
+		}
+		return file;
+	}
+
+	/**
+	 * Indicates that the archives for the given module are no longer being
+	 * used, for example after they have been uploaded. Once all uses of the
+	 * module are released, its archives are deleted, and the staging area is
+	 * trimmed to its size cap.
+	 * @param server
+	 * @param module
+	 */
+	public synchronized void release(IServer server, IModule module) {
+		String key = getKey(server, module);
+		Stage stage = inUse.get(key);
+		if (stage == null || --stage.count > 0) {
+			return;
+		}
+		inUse.remove(key);
+		for (File archive : stage.archives) {
+			delete(archive);
+		}
+		long held = trim();
+		CloudFoundryPlugin.trace("Archive staging area holds " + held + " bytes after releasing " + key); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	/**
+	 * 
+	 * @param server
+	 * @param module
+	 * @return true if the staging folder of the module is in use
+	 */
+	public synchronized boolean isInUse(IServer server, IModule module) {
+		return inUse.containsKey(getKey(server, module));
+	}
+
+	/**
+	 * 
+	 * @return number of bytes currently held in the staging area
+	 */
+	public synchronized long getBytesHeld() {
+		return getSize(root);
+	}
+
+	/**
+	 * Deletes the folders of the least recently used modules that are not in
+	 * use, until the staging area fits within its size cap.
+	 * @return number of bytes held in the staging area after trimming
+	 */
+	protected synchronized long trim() {
+		List<File> folders = new ArrayList<File>();
+		File[] serverFolders = root.listFiles();
+		if (serverFolders == null) {
+			return 0;
+		}
+		for (File serverFolder : serverFolders) {
+			File[] moduleFolders = serverFolder.listFiles();
+			if (moduleFolders != null) {
+				folders.addAll(Arrays.asList(moduleFolders));
+			}
+		}
+
+		final long[] sizes = new long[folders.size()];
+		final long[] lastModified = new long[folders.size()];
+		Integer[] order = new Integer[folders.size()];
+		long total = 0;
+		for (int i = 0; i < order.length; i++) {
+			sizes[i] = getSize(folders.get(i));
+			lastModified[i] = folders.get(i).lastModified();
+			order[i] = i;
+			total += sizes[i];
+		}
+		if (total <= maxSize) {
+			return total;
+		}
+
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer first, Integer second) {
+				long diff = lastModified[first] - lastModified[second];
+				return diff < 0 ? -1 : diff > 0 ? 1 : 0;
+			}
+		});
+
+		for (int i = 0; i < order.length && total > maxSize; i++) {
+			File folder = folders.get(order[i]);
+			if (inUse.containsKey(folder.getParentFile().getName() + '/' + folder.getName())) {
+				continue;
+			}
+			delete(folder);
+			total -= sizes[order[i]] - getSize(folder);
+		}
+		return total;
+	}
+
+	/**
+	 * 
+	 * @return path of the staging folder of the module, relative to the root
+	 * of the staging area. Modules of different servers have different
+	 * folders.
+	 */
+	protected String getKey(IServer server, IModule module) {
+		String serverId = server != null && server.getId() != null ? server.getId() : "_"; //$NON-NLS-1$
+		String moduleId = module.getId() != null ? module.getId() : module.getName();
+		return toFolderName(serverId) + '/' + toFolderName(moduleId);
+	}
+
+	private static String toFolderName(String id) {
+		StringBuilder name = new StringBuilder(id.length());
+		for (char c : id.toCharArray()) {
+			name.append(Character.isLetterOrDigit(c) || c == '.' || c == '-' ? c : '_');
+		}
+		return name.toString();
+	}
+
+	protected static long getSize(File file) {
+		if (file.isFile()) {
+			return file.length();
+		}
+		long size = 0;
+		File[] members = file.listFiles();
+		if (members != null) {
+			for (File member : members) {
+				size += getSize(member);
+			}
+		}
+		return size;
+	}
+
+	protected static void delete(File file) {
+		File[] members = file.listFiles();
+		if (members != null) {
+			for (File member : members) {
+				delete(member);
+			}
+		}
+		// Files that are still open may fail to be deleted on some platforms.
+		// These will be deleted the next time the staging area is trimmed.
+		file.delete();
+	}
+
+	/**
+	 * Uses of the staging folder of a module, and the archives generated in
+	 * it that are deleted once all uses are released.
+	 */
+	private static class Stage {
+
+		int count;
+
+		final List<File> archives = new ArrayList<File>();
+	}
+}
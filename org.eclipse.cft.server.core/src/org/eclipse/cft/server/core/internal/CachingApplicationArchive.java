@@ -20,25 +20,15 @@
  ********************************************************************************/
 package org.eclipse.cft.server.core.internal;
 
-import java.io.File;
-import java.io.IOException;
-import java.io.InputStream;
 import java.util.ArrayList;
-import java.util.Enumeration;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipException;
-import java.util.zip.ZipFile;
 
 import org.cloudfoundry.client.lib.archive.ApplicationArchive;
 import org.eclipse.cft.server.core.internal.DeployedResourceCache.CachedDeployedApplication;
 import org.eclipse.cft.server.core.internal.DeployedResourceCache.DeployedResourceEntry;
 import org.eclipse.cft.server.core.internal.application.AbstractModuleResourceArchive;
-import org.eclipse.core.runtime.CoreException;
 import org.eclipse.wst.server.core.IModule;
 import org.eclipse.wst.server.core.model.IModuleFile;
 import org.eclipse.wst.server.core.model.IModuleFolder;
@@ -67,7 +57,9 @@ import org.eclipse.wst.server.core.model.IModuleResource;
  * <p/>
  * 2) The second phase involves handling the list of resources that the server
  * indicates have not changed. This is done through a callback handler, which
- * then builds the partial war file with only those resources that have changed.
+ * then restricts the archive entries to only those resources that have
+ * changed. The remaining entries read directly from the module files as the
+ * client builds the upload payload, so no intermediate war file is written.
  * 
  */
 public class CachingApplicationArchive extends AbstractModuleResourceArchive {
@@ -107,114 +99,26 @@ public class CachingApplicationArchive extends AbstractModuleResourceArchive {
 		return new ZipModuleFileEntryAdapter(file, appID, changed);
 	}
 
-	public void generatePartialWarFile(Set<String> knownResourceNames) {
-		Iterable<Entry> localEntries = getEntries();
-		Map<String, AbstractModuleResourceEntryAdapter> missingChangedEntries = new HashMap<String, AbstractModuleResourceEntryAdapter>();
-		Set<IModuleResource> missingChangedResources = new HashSet<IModuleResource>();
-
-		for (Entry entry : localEntries) {
-
-			if (entry.isDirectory() || !knownResourceNames.contains(entry.getName())) {
-				missingChangedEntries.put(entry.getName(), (AbstractModuleResourceEntryAdapter) entry);
-				missingChangedResources.add(((AbstractModuleResourceEntryAdapter) entry).getResource());
-			}
-		}
-
-		// Build war file with changed/missing resources
-		try {
-
-			File partialWar = CloudUtil.createWarFile(getModuleResources(), getModule(), missingChangedResources, null);
-
-			if (partialWar.exists()) {
-				fileName = partialWar.getName();
-				ZipFile zipPartialWar = new ZipFile(partialWar);
-				Enumeration<? extends ZipEntry> zipEntries = zipPartialWar.entries();
-				List<Entry> toDeploy = new ArrayList<ApplicationArchive.Entry>();
-				while (zipEntries.hasMoreElements()) {
-					ZipEntry zipEntry = zipEntries.nextElement();
-
-					AbstractModuleResourceEntryAdapter archiveEntry = missingChangedEntries.get(zipEntry.getName());
-					if (archiveEntry != null) {
-						DeployedResourceEntry deployedResourcesEntry = archiveEntry instanceof ZipModuleFileEntryAdapter ? ((ZipModuleFileEntryAdapter) archiveEntry)
-								.getDeployedResourcesEntry() : null;
-						toDeploy.add(new PartialZipEntryAdapter(deployedResourcesEntry, zipEntry, zipPartialWar));
-
-					}
-
-				}
-				entries = toDeploy;
-			}
-		}
-		catch (CoreException e) {
-			// Failed to create partial war
-			CloudFoundryPlugin.log(e);
-		}
-		catch (ZipException e) {
-			// Failed to create partial war
-			CloudFoundryPlugin.logError(e);
-		}
-		catch (IOException e) {
-			// Failed to create partial war
-			CloudFoundryPlugin.logError(e);
-		}
-	}
-
 	/**
-	 * Entry to be used to access actual payload files. Sha1 entries should be
-	 * computed prior to creating the entry, ideally without uncompressing the
-	 * archive file, and possibly using a cache
-	 * 
+	 * Restricts the entries of this archive to the files that the server does
+	 * not already have, and to folders. The remaining entries read their
+	 * content directly from the module files when the client streams the
+	 * upload payload, avoiding writing and reading back an intermediate
+	 * partial war file.
+	 * @param knownResourceNames names of resources already known to the
+	 * server
 	 */
-	public class PartialZipEntryAdapter implements ApplicationArchive.Entry {
-		private final DeployedResourceEntry deployedResourcesEntry;
-
-		private final ZipEntry zipEntry;
-
-		private final ZipFile zipFile;
-
-		public PartialZipEntryAdapter(DeployedResourceEntry deployedResourcesEntry, ZipEntry zipEntry, ZipFile zipFile) {
-			this.zipFile = zipFile;
-			this.zipEntry = zipEntry;
-			this.deployedResourcesEntry = deployedResourcesEntry;
-		}
-
-		public boolean isDirectory() {
-			return zipEntry.isDirectory();
-		}
-
-		public String getName() {
-			return zipEntry.getName();
-		}
-
-		/**
-		 * 
-		 * @return deployed resource, or null if not defined for this zip entry.
-		 * Note that for directory cases, there won't be a deployed resource so
-		 * this would be one case where null is returned
-		 */
-		protected DeployedResourceEntry getDeployedResourceEntry() {
-			return deployedResourcesEntry;
-		}
-
-		public long getSize() {
-			return getDeployedResourceEntry() != null ? getDeployedResourceEntry().getFileSize()
-					: AbstractModuleResourceEntryAdapter.UNDEFINED_SIZE;
-		}
-
-		public byte[] getSha1Digest() {
-			// Do not obtain it from the zip Entry to avoid unzipping the
-			// archive.
-			return getDeployedResourceEntry() != null ? getDeployedResourceEntry().getSha1() : null;
-		}
-
-		public InputStream getInputStream() throws IOException {
-			if (isDirectory()) {
-				return null;
+	public void generatePartialPayload(Set<String> knownResourceNames) {
+		List<Entry> toDeploy = new ArrayList<ApplicationArchive.Entry>();
+		for (Entry entry : getEntries()) {
+			// Folders are kept, including empty ones, as the server only
+			// matches files
+			if (!knownResourceNames.contains(entry.getName())) {
+				toDeploy.add(entry);
 			}
-
-			return zipFile.getInputStream(zipEntry);
 		}
-
+		fileName = getModule().getName() + ".war"; //$NON-NLS-1$
+		entries = toDeploy;
 	}
 
 	public class ZipModuleFolderEntryAdapter extends ModuleFolderEntryAdapter {
@@ -241,6 +145,12 @@ public class CachingApplicationArchive extends AbstractModuleResourceArchive {
 
 		private final boolean recalculate;
 
+		/**
+		 * Entry used for this archive, so that the sha1 is computed and added
+		 * to the cache at most once, even when it is recalculated.
+		 */
+		private DeployedResourceEntry resourceEntry;
+
 		public ZipModuleFileEntryAdapter(IModuleFile moduleFile, CachedDeployedApplication appName, boolean recalculate) {
 			super(moduleFile);
 
@@ -254,19 +164,28 @@ public class CachingApplicationArchive extends AbstractModuleResourceArchive {
 			return entry != null ? entry.getFileSize() : UNDEFINED_SIZE;
 		}
 
-		public DeployedResourceEntry getDeployedResourcesEntry() {
+		public synchronized DeployedResourceEntry getDeployedResourcesEntry() {
+			if (resourceEntry != null) {
+				return resourceEntry;
+			}
 
 			DeployedResourceEntry deployedResourcesEntry = CloudFoundryPlugin.getDefault().getDeployedResourcesCache()
 					.getEntry(appName, getName());
 
-			if (canComputeResourceEntry() && (recalculate || deployedResourcesEntry == null)) {
+			// Only compute the sha1 if the resource has changed, or its size or
+			// modification time no longer matches the cached entry (e.g. the
+			// file was modified outside the workspace).
+			if (canComputeResourceEntry()
+					&& (recalculate || deployedResourcesEntry == null || !deployedResourcesEntry.matches(file))) {
+				long lastModified = file.lastModified();
 				byte[] sha1 = super.getSha1Digest();
 				long fileSize = super.getSize();
-				deployedResourcesEntry = new DeployedResourceEntry(sha1, fileSize, getName());
+				deployedResourcesEntry = new DeployedResourceEntry(sha1, fileSize, lastModified, getName());
 				CloudFoundryPlugin.getDefault().getDeployedResourcesCache().add(appName, deployedResourcesEntry);
 			}
 
-			return deployedResourcesEntry;
+			resourceEntry = deployedResourcesEntry;
+			return resourceEntry;
 		}
 
 		public byte[] getSha1Digest() {
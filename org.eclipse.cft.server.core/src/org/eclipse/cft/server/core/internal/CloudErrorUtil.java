@@ -31,6 +31,7 @@ import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Status;
 import org.eclipse.osgi.util.NLS;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.security.oauth2.client.resource.OAuth2AccessDeniedException;
 import org.springframework.web.client.HttpClientErrorException;
@@ -348,6 +349,28 @@ public class CloudErrorUtil {
 		return isHttpException(t, HttpStatus.NOT_FOUND);
 	}
 
+	/**
+	 * check 429 error, returned when the API rate limit of the user has been
+	 * exceeded. Unlike other client errors, the request can be reattempted
+	 * once the rate limit allows it.
+	 * @param t
+	 * @return true if 429 error. False otherwise
+	 */
+	public static boolean isTooManyRequestsException(Throwable t) {
+		return isHttpException(t, HttpStatus.TOO_MANY_REQUESTS);
+	}
+
+	/**
+	 * 
+	 * @param t
+	 * @return headers of the HTTP client error response that caused the
+	 * given error, or null if not available.
+	 */
+	public static HttpHeaders getResponseHeaders(Throwable t) {
+		HttpClientErrorException httpException = getHttpClientError(t);
+		return httpException != null ? httpException.getResponseHeaders() : null;
+	}
+
 	public static boolean isHttpException(Throwable t, HttpStatus status) {
 
 		HttpClientErrorException httpException = getHttpClientError(t);
@@ -368,6 +391,24 @@ public class CloudErrorUtil {
 		return false;
 	}
 
+	/**
+	 * True if a request failed because the server could not be reached, for
+	 * example, due to unknown host, connection refused or I/O timeout errors.
+	 * Unlike {@link #getConnectionError(CoreException)}, errors due to invalid
+	 * credentials or HTTP error responses from the server are not considered
+	 * unreachable server errors.
+	 * @param error error to check
+	 * @return true if the server could not be reached. False otherwise
+	 */
+	public static boolean isServerUnreachableError(Throwable error) {
+		if (error instanceof CoreException) {
+			CoreException ce = (CoreException) error;
+			return getConnectionError(ce) != null && getInvalidCredentialsError(ce) == null
+					&& ce.getStatus().getException() instanceof ResourceAccessException;
+		}
+		return error instanceof ResourceAccessException;
+	}
+
 	public static boolean isRestClientException(CoreException e) {
 		Throwable cause = e.getStatus().getException();
 		return cause instanceof RestClientException;
@@ -29,6 +29,7 @@ import org.eclipse.cft.server.core.AbstractAppStateTracker;
 import org.eclipse.cft.server.core.internal.client.CloudFoundryApplicationModule;
 import org.eclipse.cft.server.core.internal.client.CloudFoundryClientFactory;
 import org.eclipse.cft.server.core.internal.client.DeploymentConfiguration;
+import org.eclipse.cft.server.core.internal.client.HttpConnectionPools;
 import org.eclipse.cft.server.core.internal.pivotal.PivotalCloudFoundryTarget;
 import org.eclipse.core.net.proxy.IProxyService;
 import org.eclipse.core.runtime.CoreException;
@@ -284,7 +285,19 @@ public class CloudFoundryPlugin extends Plugin {
 
 	private static IProxyService proxyService;
 
-	private DeployedResourceCache sha1Cache = new DeployedResourceCache();
+	private static final String DEPLOYED_RESOURCES_INDEX = "deployedResources.idx"; //$NON-NLS-1$
+
+	private static final String ARCHIVE_STAGING_FOLDER = "staging"; //$NON-NLS-1$
+
+	private static final String APPLICATION_SNAPSHOTS_FOLDER = "applications"; //$NON-NLS-1$
+
+	private DeployedResourceCache sha1Cache;
+
+	private ArchiveStagingArea stagingArea;
+
+	private ApplicationSnapshotStore snapshotStore;
+
+	private static final ContentDigestCache contentDigestCache = new ContentDigestCache();
 
 	private InstanceScope INSTANCE_SCOPE = new InstanceScope();
 
@@ -361,9 +374,45 @@ public class CloudFoundryPlugin extends Plugin {
 	}
 
 	public synchronized DeployedResourceCache getDeployedResourcesCache() {
+		if (sha1Cache == null) {
+			sha1Cache = new DeployedResourceCache(getStateLocation().append(DEPLOYED_RESOURCES_INDEX).toFile());
+		}
 		return sha1Cache;
 	}
 
+	/**
+	 * 
+	 * @return sha1 cache for local file content, shared by all applications
+	 * and servers.
+	 */
+	public static ContentDigestCache getContentDigestCache() {
+		return contentDigestCache;
+	}
+
+	/**
+	 * 
+	 * @return staging area for application archives generated during
+	 * publishing.
+	 */
+	public synchronized ArchiveStagingArea getArchiveStagingArea() {
+		if (stagingArea == null) {
+			stagingArea = new ArchiveStagingArea(getStateLocation().append(ARCHIVE_STAGING_FOLDER).toFile());
+		}
+		return stagingArea;
+	}
+
+	/**
+	 * 
+	 * @return store for the last known applications of each server.
+	 */
+	public synchronized ApplicationSnapshotStore getApplicationSnapshotStore() {
+		if (snapshotStore == null) {
+			snapshotStore = new ApplicationSnapshotStore(getStateLocation().append(APPLICATION_SNAPSHOTS_FOLDER)
+					.toFile());
+		}
+		return snapshotStore;
+	}
+
 	public static synchronized void setCallback(CloudFoundryCallback callback) {
 		CloudFoundryPlugin.callback = callback;
 	}
@@ -433,6 +482,19 @@ public class CloudFoundryPlugin extends Plugin {
 			moduleCache = null;
 		}
 
+		synchronized (this) {
+			if (sha1Cache != null) {
+				sha1Cache.dispose();
+				sha1Cache = null;
+			}
+			if (snapshotStore != null) {
+				snapshotStore.dispose();
+				snapshotStore = null;
+			}
+		}
+
+		HttpConnectionPools.shutdown();
+
 		plugin = null;
 		super.stop(context);
 	}
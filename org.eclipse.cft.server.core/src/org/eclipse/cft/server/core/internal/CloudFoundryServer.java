@@ -28,9 +28,11 @@ import java.net.URL;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.UUID;
 
 import org.cloudfoundry.client.lib.domain.CloudApplication;
 import org.cloudfoundry.client.lib.domain.CloudSpace;
@@ -898,6 +900,9 @@ public class CloudFoundryServer extends ServerDelegate implements IURLProvider {
 		final Set<IModule> deletedModules = new HashSet<IModule>();
 
 		synchronized (this) {
+			if (getData() != null) {
+				getData().markRefreshed();
+			}
 
 			// There are three representations for an application:
 			// 1. CloudApplication, which represents an existing application in
@@ -1002,6 +1007,158 @@ public class CloudFoundryServer extends ServerDelegate implements IURLProvider {
 		}
 	}
 
+	/**
+	 * Updates the local (WST) ( {@link IModule} ) and corresponding cloud
+	 * modules ( {@link CloudFoundryApplicationModule} ) for one page of
+	 * deployed applications, creating modules for applications that have
+	 * none. Modules of applications that are not in the page are not changed.
+	 * Once all pages are applied, {@link #completeModulesUpdate(Set)} must be
+	 * called to remove modules whose application no longer exists.
+	 * @param deployedApplications page of deployed applications by name
+	 * @throws CoreException
+	 */
+	public void updateModulesPage(Map<String, CloudApplication> deployedApplications) throws CoreException {
+		updateModulesPage(deployedApplications, false);
+	}
+
+	/**
+	 * Restores modules for the last known applications of the server, for
+	 * example as persisted when the workbench was last shut down, so that
+	 * they can be shown before the server is refreshed. The restored modules
+	 * are marked as stale until they are refreshed. Modules are never
+	 * restored once they have been updated from the server in this session.
+	 * @param applications last known applications of the server
+	 * @return true if modules were restored. False if modules were already
+	 * updated from the server.
+	 * @throws CoreException
+	 */
+	public boolean restoreModules(List<CloudApplication> applications) throws CoreException {
+		Map<String, CloudApplication> applicationsByName = new LinkedHashMap<String, CloudApplication>();
+		for (CloudApplication application : applications) {
+			applicationsByName.put(application.getName(), application);
+		}
+		return updateModulesPage(applicationsByName, true);
+	}
+
+	private boolean updateModulesPage(Map<String, CloudApplication> deployedApplications, boolean restore)
+			throws CoreException {
+		Server server = (Server) getServer();
+
+		List<CloudFoundryApplicationModule> externalModules = new ArrayList<CloudFoundryApplicationModule>();
+		List<CloudFoundryApplicationModule> updatedModules = new ArrayList<CloudFoundryApplicationModule>();
+
+		synchronized (this) {
+			if (getData() == null) {
+				return false;
+			}
+			if (!restore) {
+				getData().markRefreshed();
+			}
+			else if (getData().isRefreshed()) {
+				// Never replace live applications
+				return false;
+			}
+
+			for (IModule module : server.getModules()) {
+				CloudFoundryApplicationModule cloudModule = getCloudModule(module);
+				if (cloudModule == null) {
+					continue;
+				}
+				CloudApplication actualApplication = deployedApplications.remove(cloudModule
+						.getDeployedApplicationName());
+				if (actualApplication != null) {
+					cloudModule.setCloudApplication(actualApplication);
+					cloudModule.setStale(restore);
+					updatedModules.add(cloudModule);
+				}
+				// Modules not in this page keep their current category until
+				// the update is completed
+				if (cloudModule.isExternal()) {
+					externalModules.add(cloudModule);
+				}
+			}
+
+			for (CloudApplication application : deployedApplications.values()) {
+				CloudFoundryApplicationModule appModule = getData().createModule(application);
+				appModule.setStale(restore);
+				externalModules.add(appModule);
+				updatedModules.add(appModule);
+			}
+
+			server.setExternalModules(externalModules.toArray(new IModule[0]));
+
+			for (CloudFoundryApplicationModule appModule : updatedModules) {
+				updateState(server, appModule);
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Completes an update of the modules applied page by page with
+	 * {@link #updateModulesPage(Map)}. Local (WST) modules ( {@link IModule} )
+	 * whose application was not in any page are removed, unless they are
+	 * still being deployed.
+	 * @param deployedApplicationNames names of all applications in all pages
+	 * @throws CoreException
+	 */
+	public void completeModulesUpdate(Set<String> deployedApplicationNames) throws CoreException {
+		Server server = (Server) getServer();
+
+		final Set<CloudFoundryApplicationModule> allModules = new HashSet<CloudFoundryApplicationModule>();
+		List<CloudFoundryApplicationModule> externalModules = new ArrayList<CloudFoundryApplicationModule>();
+		final Set<IModule> deletedModules = new HashSet<IModule>();
+
+		synchronized (this) {
+			if (getData() != null) {
+				getData().markRefreshed();
+			}
+			for (IModule module : server.getModules()) {
+				CloudFoundryApplicationModule cloudModule = getCloudModule(module);
+
+				if (cloudModule == null) {
+					CloudFoundryPlugin.logError("Unable to find local Cloud Foundry application module for : " //$NON-NLS-1$
+							+ module.getName()
+							+ ". Try refreshing applications or disconnecting and reconnecting to the server."); //$NON-NLS-1$
+					continue;
+				}
+
+				if (deployedApplicationNames.contains(cloudModule.getDeployedApplicationName())) {
+					if (cloudModule.isExternal()) {
+						externalModules.add(cloudModule);
+					}
+					allModules.add(cloudModule);
+				}
+				else {
+					cloudModule.setCloudApplication(null);
+					if (getData() != null && getData().isUndeployed(module)) {
+						// deployment is still in progress
+						allModules.add(cloudModule);
+					}
+					else {
+						// the module maps to an application that no longer
+						// exists
+						deletedModules.add(module);
+					}
+				}
+			}
+
+			server.setExternalModules(externalModules.toArray(new IModule[0]));
+
+			// See updateModules(Map) regarding deleting modules
+			if (deletedModules.size() > 0) {
+				for (IModule module : deletedModules) {
+					server.setModuleState(new IModule[] { module }, IServer.STATE_UNKNOWN);
+				}
+				doDeleteModules(deletedModules);
+			}
+
+			if (getData() != null) {
+				getData().removeObsoleteModules(allModules);
+			}
+		}
+	}
+
 	/**
 	 * Updates the {@link IModule} and {@link ICloudFoundryApplicationModule}
 	 * associated with the given {@link CloudApplication}. If a null
@@ -1053,6 +1210,9 @@ public class CloudFoundryServer extends ServerDelegate implements IURLProvider {
 		List<CloudFoundryApplicationModule> externalModules = new ArrayList<CloudFoundryApplicationModule>();
 
 		synchronized (this) {
+			if (getData() != null) {
+				getData().markRefreshed();
+			}
 
 			IModule wstModule = null;
 			CloudFoundryApplicationModule correspondingCloudModule = null;
@@ -1286,20 +1446,16 @@ public class CloudFoundryServer extends ServerDelegate implements IURLProvider {
 	 */
 	public CloudFoundryApplicationModule getExistingCloudModule(String appName) throws CoreException {
 
-		if (appName == null) {
-			return null;
-		}
-		CloudFoundryApplicationModule appModule = null;
-		Collection<CloudFoundryApplicationModule> modules = getExistingCloudModules();
-		if (modules != null) {
-			for (CloudFoundryApplicationModule module : modules) {
-				if (appName.equals(module.getDeployedApplicationName())) {
-					appModule = module;
-					break;
-				}
-			}
-		}
-		return appModule;
+		return getData() != null ? getData().getExistingCloudModule(appName) : null;
+	}
+
+	/**
+	 * @param guid of a deployed application
+	 * @return Cloud application module mapped to the application with the
+	 * given GUID, if it exists. Null otherwise.
+	 */
+	public CloudFoundryApplicationModule getExistingCloudModule(UUID guid) {
+		return getData() != null ? getData().getExistingCloudModule(guid) : null;
 	}
 
 	/**
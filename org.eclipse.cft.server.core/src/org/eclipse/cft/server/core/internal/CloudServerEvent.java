@@ -47,6 +47,8 @@ public class CloudServerEvent extends EventObject {
 
 	public static final int EVENT_SERVER_DISCONNECTED = 406;
 
+	public static final int EVENT_SERVER_AVAILABILITY_CHANGED = 408;
+
 	public static final int EVENT_APP_DEPLOYMENT_CHANGED = 410;
 
 	public static final int EVENT_APP_DELETED = 420;
@@ -20,18 +20,20 @@
  ********************************************************************************/
 package org.eclipse.cft.server.core.internal;
 
-import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Set;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
 
 import org.cloudfoundry.client.lib.domain.CloudService;
 import org.eclipse.core.resources.IContainer;
@@ -55,8 +57,8 @@ import org.eclipse.wst.server.core.internal.ServerPlugin;
 import org.eclipse.wst.server.core.model.IModuleFile;
 import org.eclipse.wst.server.core.model.IModuleFolder;
 import org.eclipse.wst.server.core.model.IModuleResource;
+import org.eclipse.wst.server.core.model.IModuleResourceDelta;
 import org.eclipse.wst.server.core.util.ModuleFile;
-import org.eclipse.wst.server.core.util.ModuleFolder;
 import org.eclipse.wst.server.core.util.PublishHelper;
 
 /**
@@ -86,154 +88,213 @@ public class CloudUtil {
 	}
 
 	/**
-	 * Creates a partial war file containing only the resources listed in the
-	 * list to filter in. Note that at least one content must be present in the
-	 * list to filter in, otherwise null is returned.
-	 * @param resources
-	 * @param module
+	 * Packages the child modules of the given web module (e.g. utility
+	 * projects) as jars in the staging folder of the web module, and returns
+	 * them as module files located where they belong in the web module (e.g.
+	 * WEB-INF/lib).
+	 * <p/>
+	 * A child jar is only packaged again if the child module has changed
+	 * since it was last published, or if the fingerprint of its content no
+	 * longer matches the one recorded when the jar was last packaged.
+	 * Otherwise the existing jar is reused as is, so that it keeps the same
+	 * sha1 code and is matched by the server rather than uploaded again.
+	 * @param modules
 	 * @param server
 	 * @param monitor
-	 * @return partial war file with resources specified in the filter in list,
-	 * or null if filter list is empty or null
-	 * @throws CoreException
+	 * @return non-null list of child jars. Empty if there are no child
+	 * modules.
+	 * @throws CoreException if failed to package child modules
 	 */
-	public static File createWarFile(List<IModuleResource> allResources, IModule module,
-			Set<IModuleResource> filterInResources, IProgressMonitor monitor) throws CoreException {
-		if (allResources == null || allResources.isEmpty() || filterInResources == null || filterInResources.isEmpty()) {
-			return null;
-		}
+	public static List<IModuleResource> getChildModuleResources(IModule[] modules, Server server,
+			IProgressMonitor monitor) throws CoreException {
 		List<IStatus> result = new ArrayList<IStatus>();
 		try {
-			File tempDirectory = getTempFolder(module);
-			// tempFile needs to be in the same location as the war file
-			// otherwise PublishHelper will fail
-			String fileName = module.getName() + ".war"; //$NON-NLS-1$
-
-			File warFile = new File(tempDirectory, fileName);
-			warFile.createNewFile();
-			warFile.deleteOnExit();
-			List<IModuleResource> newResources = new ArrayList<IModuleResource>();
-			for (IModuleResource mr : allResources) {
-				newResources.add(processModuleResource(mr));
-			}
-
-			IStatus[] status = publishZip(allResources, warFile, filterInResources, monitor);
-			merge(result, status);
-			throwException(result, "Publishing of : " + module.getName() + " failed"); //$NON-NLS-1$ //$NON-NLS-2$
-
-			return warFile;
+			File tempFile = getTempFolder(server, modules[0]);
+			PublishHelper helper = new PublishHelper(tempFile);
+			List<IModuleResource> resources = publishChildModules(modules, server, tempFile, helper, result, monitor);
+			throwException(result, "Publishing of child modules of " + modules[0].getName() + " failed"); //$NON-NLS-1$ //$NON-NLS-2$
+			return resources;
 		}
 		catch (IOException e) {
 			throw new CoreException(new Status(IStatus.ERROR, CloudFoundryPlugin.PLUGIN_ID,
-					"Failed to create war file: " + e.getMessage(), e)); //$NON-NLS-1$
+					"Failed to create child module jar files: " + e.getMessage(), e)); //$NON-NLS-1$
 		}
 	}
 
-	public static File createWarFile(IModule[] modules, Server server, IProgressMonitor monitor) throws CoreException {
-		List<IStatus> result = new ArrayList<IStatus>();
-		try {
-			File tempFile = getTempFolder(modules[0]);
-			// tempFile needs to be in the same location as the war file
-			// otherwise PublishHelper will fail
-			File targetFile = new File(tempFile, modules[0].getName() + ".war"); //$NON-NLS-1$
-			targetFile.deleteOnExit();
-			PublishHelper helper = new PublishHelper(tempFile);
+	private static List<IModuleResource> publishChildModules(IModule[] modules, Server server, File tempFile,
+			PublishHelper helper, List<IStatus> result, IProgressMonitor monitor) {
+		List<IModuleResource> resources = new ArrayList<IModuleResource>();
+
+		IWebModule webModule = getWebModule(modules);
+
+		if (webModule != null) {
 
-			ArrayList<IModuleResource> resources = new ArrayList<IModuleResource>(Arrays.asList(server
-					.getResources(modules)));
-
-			IWebModule webModule = getWebModule(modules);
-
-			if (webModule != null) {
-
-				IModule[] children = webModule.getModules();
-
-				if (children != null) {
-					for (IModule child : children) {
-						String childUri = null;
-						if (webModule != null) {
-							childUri = webModule.getURI(child);
-						}
-						IJ2EEModule childModule = (IJ2EEModule) child.loadAdapter(IJ2EEModule.class, monitor);
-						boolean isBinary = false;
-						if (childModule != null) {
-							isBinary = childModule.isBinary();
-						}
-						if (isBinary) {
-							// binaries are copied to the destination
-							// directory
-							if (childUri == null) {
-								childUri = "WEB-INF/lib/" + child.getName(); //$NON-NLS-1$
-							}
-							IPath jarPath = new Path(childUri);
-							File jarFile = new File(tempFile, jarPath.lastSegment());
-							jarPath = jarPath.removeLastSegments(1);
-
-							IModuleResource[] mr = server.getResources(new IModule[] { child });
-							IStatus[] status = helper.publishToPath(mr, new Path(jarFile.getAbsolutePath()), monitor);
-							merge(result, status);
-							resources.add(new ModuleFile(jarFile, jarFile.getName(), jarPath));
-						}
-						else {
-							// other modules are assembled into a jar
-							if (childUri == null) {
-								childUri = "WEB-INF/lib/" + child.getName() + ".jar"; //$NON-NLS-1$ //$NON-NLS-2$
-							}
-							IPath jarPath = new Path(childUri);
-							File jarFile = new File(tempFile, jarPath.lastSegment());
-							jarPath = jarPath.removeLastSegments(1);
-
-							IModuleResource[] mr = server.getResources(new IModule[] { child });
-							IStatus[] status = helper.publishZip(mr, new Path(jarFile.getAbsolutePath()), monitor);
-							merge(result, status);
-							resources.add(new ModuleFile(jarFile, jarFile.getName(), jarPath));
-						}
+			IModule[] children = webModule.getModules();
+
+			if (children != null) {
+				for (IModule child : children) {
+					String childUri = null;
+					if (webModule != null) {
+						childUri = webModule.getURI(child);
+					}
+					IJ2EEModule childModule = (IJ2EEModule) child.loadAdapter(IJ2EEModule.class, monitor);
+					boolean isBinary = false;
+					if (childModule != null) {
+						isBinary = childModule.isBinary();
+					}
+					if (childUri == null) {
+						// binaries are copied to the destination
+						// directory. Other modules are assembled into a jar
+						childUri = isBinary ? "WEB-INF/lib/" + child.getName() //$NON-NLS-1$
+								: "WEB-INF/lib/" + child.getName() + ".jar"; //$NON-NLS-1$ //$NON-NLS-2$
 					}
+					IPath jarPath = new Path(childUri);
+					File jarFile = new File(tempFile, jarPath.lastSegment());
+					jarPath = jarPath.removeLastSegments(1);
+
+					publishChildModule(server.getResources(new IModule[] { child }),
+							server.getPublishedResourceDelta(new IModule[] { modules[0], child }), jarFile, isBinary,
+							helper, result, monitor);
+					resources.add(new ModuleFile(jarFile, jarFile.getName(), jarPath));
 				}
 			}
+		}
+		return resources;
+	}
 
-			List<IModuleResource> newResources = new ArrayList<IModuleResource>();
-			for (IModuleResource mr : resources) {
-				newResources.add(processModuleResource(mr));
+	/**
+	 * Packages the resources of a child module into the given jar file, or
+	 * copies them there if the child module is binary. The existing jar file
+	 * is reused as is if the child module has no changes in the given delta,
+	 * and the fingerprint of its resources matches the one recorded when the
+	 * jar was last packaged.
+	 * @param resources resources of the child module
+	 * @param delta published resource delta of the child module
+	 * @param jarFile
+	 * @param isBinary
+	 * @param helper used to copy binary child modules
+	 * @param result errors that occurred while packaging are added to this
+	 * list
+	 * @param monitor
+	 * @return true if the jar was packaged again, false if the existing jar
+	 * was reused
+	 */
+	public static boolean publishChildModule(IModuleResource[] resources, IModuleResourceDelta[] delta,
+			File jarFile, boolean isBinary, PublishHelper helper, List<IStatus> result, IProgressMonitor monitor) {
+		String fingerprint = getFingerprint(resources);
+		if (!hasChanges(delta) && fingerprint.equals(readFingerprint(jarFile))) {
+			return false;
+		}
+		IStatus[] status = isBinary ? helper.publishToPath(resources, new Path(jarFile.getAbsolutePath()), monitor)
+				: publishZip(Arrays.asList(resources), jarFile, null, monitor);
+		merge(result, status);
+		writeFingerprint(jarFile, status == null || status.length == 0 ? fingerprint : null);
+		return true;
+	}
+
+	private static boolean hasChanges(IModuleResourceDelta[] deltas) {
+		if (deltas != null) {
+			for (IModuleResourceDelta delta : deltas) {
+				if (delta.getKind() != IModuleResourceDelta.NO_CHANGE || hasChanges(delta.getAffectedChildren())) {
+					return true;
+				}
 			}
+		}
+		return false;
+	}
 
-			IStatus[] status = helper.publishZip(newResources.toArray(new IModuleResource[0]),
-					new Path(targetFile.getAbsolutePath()), monitor);
-			merge(result, status);
-			throwException(result, "Publishing of " + modules[0].getName() + " failed"); //$NON-NLS-1$ //$NON-NLS-2$
+	/**
+	 * Computes a fingerprint of the given module resources from their paths,
+	 * sizes and modification times.
+	 */
+	private static String getFingerprint(IModuleResource[] resources) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance(SHA1);
+			addToFingerprint(digest, resources);
+			StringBuilder fingerprint = new StringBuilder();
+			for (byte b : digest.digest()) {
+				fingerprint.append(String.format("%02x", b)); //$NON-NLS-1$
+			}
+			return fingerprint.toString();
+		}
+		catch (NoSuchAlgorithmException e) {
+			// Always repackage if no fingerprint can be computed
+			return ""; //$NON-NLS-1$
+		}
+	}
 
-			return targetFile;
+	private static void addToFingerprint(MessageDigest digest, IModuleResource[] resources) {
+		if (resources == null) {
+			return;
 		}
-		catch (IOException e) {
-			throw new CoreException(new Status(IStatus.ERROR, CloudFoundryPlugin.PLUGIN_ID,
-					"Failed to create war file: " + e.getMessage(), e)); //$NON-NLS-1$
+		for (IModuleResource resource : resources) {
+			StringBuilder value = new StringBuilder(getZipRelativeName(resource));
+			if (resource instanceof IModuleFile) {
+				File file = (File) resource.getAdapter(File.class);
+				if (file == null) {
+					IFile iFile = (IFile) resource.getAdapter(IFile.class);
+					file = iFile != null && iFile.getLocation() != null ? iFile.getLocation().toFile() : null;
+				}
+				if (file != null) {
+					value.append('|').append(file.length()).append('|').append(file.lastModified());
+				}
+			}
+			value.append('\n');
+			digest.update(value.toString().getBytes(UTF8));
+			if (resource instanceof IModuleFolder) {
+				addToFingerprint(digest, ((IModuleFolder) resource).members());
+			}
 		}
+	}
 
+	private static File getFingerprintFile(File jarFile) {
+		return new File(jarFile.getParentFile(), jarFile.getName() + ".fingerprint"); //$NON-NLS-1$
 	}
 
-	private static IModuleResource processModuleResource(IModuleResource or) {
-		if (or instanceof IModuleFolder) {
-			IModuleFolder of = (IModuleFolder) or;
-			IPath p = of.getModuleRelativePath();
-			if (p.isAbsolute()) {
-				p = p.makeRelative();
+	private static String readFingerprint(File jarFile) {
+		File fingerprintFile = getFingerprintFile(jarFile);
+		if (!jarFile.exists() || !fingerprintFile.exists()) {
+			return null;
+		}
+		try {
+			DataInputStream input = new DataInputStream(new FileInputStream(fingerprintFile));
+			try {
+				return input.readUTF();
 			}
-			ModuleFolder nf = new ModuleFolder(null, of.getName(), p);
-			List<IModuleResource> c = new ArrayList<IModuleResource>();
-			for (IModuleResource mc : of.members()) {
-				c.add(processModuleResource(mc));
+			finally {
+				input.close();
 			}
-			nf.setMembers(c.toArray(new IModuleResource[0]));
-			return nf;
 		}
-		return or;
+		catch (IOException e) {
+			return null;
+		}
+	}
+
+	private static void writeFingerprint(File jarFile, String fingerprint) {
+		File fingerprintFile = getFingerprintFile(jarFile);
+		fingerprintFile.delete();
+		if (fingerprint == null) {
+			return;
+		}
+		try {
+			DataOutputStream output = new DataOutputStream(new FileOutputStream(fingerprintFile));
+			try {
+				output.writeUTF(fingerprint);
+			}
+			finally {
+				output.close();
+			}
+		}
+		catch (IOException e) {
+			// The jar will be packaged again next time
+			CloudFoundryPlugin.logError(e);
+		}
 	}
 
-	private static File getTempFolder(IModule module) throws IOException {
-		File tempFile = File.createTempFile("tempFileForWar", null); //$NON-NLS-1$
-		tempFile.delete();
-		tempFile.mkdirs();
-		return tempFile;
+	private static File getTempFolder(Server server, IModule module) throws IOException {
+		// Reuse the staging folder of the module rather than creating a new
+		// temporary folder for every publish.
+		return CloudFoundryPlugin.getDefault().getArchiveStagingArea().getModuleFolder(server, module);
 	}
 
 	protected static void throwException(List<IStatus> status, String message) throws CoreException {
@@ -244,17 +305,38 @@ public class CloudUtil {
 				message, null));
 	}
 
+	/**
+	 * Writes the given resources to a zip file. Incompressible files, like
+	 * jars and images, are stored, and other files are deflated in parallel.
+	 * The sha1 code of the zip file is computed while it is written and
+	 * recorded in the shared content digest cache, so that an archive entry
+	 * for the zip file, like a child module jar, does not read it again.
+	 * @param allResources
+	 * @param tempFile
+	 * @param filterInFiles files to write to the zip, or null to write all
+	 * files. Folders are always written.
+	 * @param monitor
+	 * @return non-null status. Empty if no errors occurred.
+	 */
 	public static IStatus[] publishZip(List<IModuleResource> allResources, File tempFile,
 			Set<IModuleResource> filterInFiles, IProgressMonitor monitor) {
 
 		monitor = ProgressUtil.getMonitorFor(monitor);
 
 		try {
-			BufferedOutputStream bout = new BufferedOutputStream(new FileOutputStream(tempFile));
-			ZipOutputStream zout = new ZipOutputStream(bout);
-			addZipEntries(zout, allResources, filterInFiles);
-			zout.close();
-
+			// Incompressible entries are stored, and other entries are
+			// deflated in parallel
+			ParallelZipWriter zout = new ParallelZipWriter(tempFile);
+			try {
+				addZipEntries(zout, allResources, filterInFiles);
+				zout.finish();
+			}
+			finally {
+				zout.close();
+			}
+			if (zout.getSha1Digest() != null) {
+				CloudFoundryPlugin.getContentDigestCache().put(tempFile, zout.getSha1Digest());
+			}
 		}
 		catch (CoreException e) {
 			return new IStatus[] { e.getStatus() };
@@ -264,16 +346,12 @@ public class CloudUtil {
 			return new Status[] { new Status(IStatus.ERROR, ServerPlugin.PLUGIN_ID, 0, NLS.bind(
 					Messages.ERROR_CREATE_ZIP, tempFile.getName(), e.getLocalizedMessage()), e) };
 		}
-		finally {
-			if (tempFile != null && tempFile.exists())
-				tempFile.deleteOnExit();
-		}
 		return EMPTY_STATUS;
 	}
 
-	private static final int BUFFER = 65536;
+	private static final String SHA1 = "SHA-1"; //$NON-NLS-1$
 
-	private static byte[] buf = new byte[BUFFER];
+	private static final Charset UTF8 = Charset.forName("UTF-8"); //$NON-NLS-1$
 
 	public static String getZipRelativeName(IModuleResource resource) {
 		IPath path = resource.getModuleRelativePath().append(resource.getName());
@@ -286,7 +364,7 @@ public class CloudUtil {
 
 	}
 
-	private static void addZipEntries(ZipOutputStream out, List<IModuleResource> allResources,
+	private static void addZipEntries(ParallelZipWriter out, List<IModuleResource> allResources,
 			Set<IModuleResource> filterInFiles) throws Exception {
 		if (allResources == null)
 			return;
@@ -298,20 +376,13 @@ public class CloudUtil {
 
 				String entryPath = getZipRelativeName(resource);
 
-				ZipEntry zipEntry = new ZipEntry(entryPath);
-
 				long timeStamp = 0;
 				IContainer folder = (IContainer) resource.getAdapter(IContainer.class);
 				if (folder != null) {
 					timeStamp = folder.getLocalTimeStamp();
 				}
 
-				if (timeStamp != IResource.NULL_STAMP && timeStamp != 0) {
-					zipEntry.setTime(timeStamp);
-				}
-
-				out.putNextEntry(zipEntry);
-				out.closeEntry();
+				out.putDirectory(entryPath, timeStamp != IResource.NULL_STAMP ? timeStamp : 0);
 
 				addZipEntries(out, Arrays.asList(folderResources), filterInFiles);
 				continue;
@@ -319,14 +390,12 @@ public class CloudUtil {
 
 			IModuleFile moduleFile = (IModuleFile) resource;
 			// Only add files that are in the filterInList
-			if (!filterInFiles.contains(moduleFile)) {
+			if (filterInFiles != null && !filterInFiles.contains(moduleFile)) {
 				continue;
 			}
 
 			String entryPath = getZipRelativeName(resource);
 
-			ZipEntry zipEntry = new ZipEntry(entryPath);
-
 			InputStream input = null;
 			long timeStamp = 0;
 			IFile iFile = (IFile) moduleFile.getAdapter(IFile.class);
@@ -340,26 +409,12 @@ public class CloudUtil {
 				input = new FileInputStream(file);
 			}
 
-			if (timeStamp != IResource.NULL_STAMP && timeStamp != 0) {
-				zipEntry.setTime(timeStamp);
-			}
-
-			out.putNextEntry(zipEntry);
-
 			try {
-				int n = 0;
-				while (n > -1) {
-					n = input.read(buf);
-					if (n > 0) {
-						out.write(buf, 0, n);
-					}
-				}
+				out.putFile(entryPath, timeStamp != IResource.NULL_STAMP ? timeStamp : 0, input);
 			}
 			finally {
 				input.close();
 			}
-
-			out.closeEntry();
 		}
 	}
 
@@ -0,0 +1,152 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Pivotal Software, Inc. 
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution. 
+ * 
+ * The Eclipse Public License is available at 
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * and the Apache License v2.0 is available at 
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * You may elect to redistribute this code under either of these licenses.
+ *  
+ *  Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+ ********************************************************************************/
+package org.eclipse.cft.server.core.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.cft.server.core.internal.application.ApplicationArchiveDigester;
+
+/**
+ * Content digest cache shared by all applications and all Cloud Foundry
+ * servers. Maps the canonical path of a local file, together with its size
+ * and modification time, to the sha1 code of its content. Applications that
+ * share the same files, like dependency jars from a common local repository,
+ * therefore only need to hash each file once.
+ * <p/>
+ * Entries are held in memory, up to a maximum number of entries, evicting
+ * the least recently used ones. Hit and miss counts are kept to show how
+ * often hashing is avoided.
+ */
+public class ContentDigestCache {
+
+	public static final int DEFAULT_MAX_ENTRIES = 100000;
+
+	private final Map<String, ContentDigest> digests;
+
+	private final AtomicLong hits = new AtomicLong();
+
+	private final AtomicLong misses = new AtomicLong();
+
+	public ContentDigestCache() {
+		this(DEFAULT_MAX_ENTRIES);
+	}
+
+	public ContentDigestCache(final int maxEntries) {
+		digests = new LinkedHashMap<String, ContentDigest>(16, 0.75f, true) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, ContentDigest> eldest) {
+				return size() > maxEntries;
+			}
+		};
+	}
+
+	/**
+	 * Returns the sha1 code of the given file. The cached code is used if the
+	 * file has the same size and modification time as when it was last
+	 * hashed, otherwise the file is hashed again.
+	 * @param file
+	 * @return sha1 code of the file content
+	 * @throws IOException if the file cannot be read
+	 */
+	public byte[] getSha1(File file) throws IOException {
+		String path = file.getCanonicalPath();
+		long size = file.length();
+		long lastModified = file.lastModified();
+
+		ContentDigest digest;
+		synchronized (digests) {
+			digest = digests.get(path);
+		}
+		if (digest != null && digest.size == size && digest.lastModified == lastModified) {
+			hits.incrementAndGet();
+			return digest.sha1;
+		}
+
+		misses.incrementAndGet();
+		// Hash outside the lock so that files can be hashed in parallel
+		byte[] sha1 = ApplicationArchiveDigester.digest(file);
+		synchronized (digests) {
+			digests.put(path, new ContentDigest(sha1, size, lastModified));
+		}
+		return sha1;
+	}
+
+	/**
+	 * Records the sha1 code of a file that is already known, like the sha1
+	 * code of an archive computed while it was written, so that the file does
+	 * not need to be read to hash it. The code is kept for the current size
+	 * and modification time of the file.
+	 * @param file
+	 * @param sha1 sha1 code of the current file content
+	 * @throws IOException if the canonical path of the file cannot be resolved
+	 */
+	public void put(File file, byte[] sha1) throws IOException {
+		String path = file.getCanonicalPath();
+		ContentDigest digest = new ContentDigest(sha1, file.length(), file.lastModified());
+		synchronized (digests) {
+			digests.put(path, digest);
+		}
+	}
+
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	public int size() {
+		synchronized (digests) {
+			return digests.size();
+		}
+	}
+
+	public void clear() {
+		synchronized (digests) {
+			digests.clear();
+		}
+		hits.set(0);
+		misses.set(0);
+	}
+
+	private static class ContentDigest {
+
+		final byte[] sha1;
+
+		final long size;
+
+		final long lastModified;
+
+		ContentDigest(byte[] sha1, long size, long lastModified) {
+			this.sha1 = sha1;
+			this.size = size;
+			this.lastModified = lastModified;
+		}
+	}
+}
@@ -20,45 +20,392 @@
  ********************************************************************************/
 package org.eclipse.cft.server.core.internal;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
 
 /**
  * Cache for sha1 hash entries and file sizes for incremental publishing of
  * deployed resources. This avoid recalculating hash entries for resources that
  * have not changed in the server. A server poll may still required to obtain a
  * list of unchanged resources.
+ * <p/>
+ * If an index file is specified, the cache is persisted so that hash entries
+ * survive workbench restarts. The index is loaded lazily on first access.
+ * Added entries are appended to the index asynchronously, and the index is
+ * rewritten with only the current entries when the cache is disposed, or when
+ * it is loaded and found to be damaged (e.g. a truncated last record) or to
+ * hold many superseded records.
+ * Entries record the file size and modification time of the resource when the
+ * sha1 code was computed, so that callers can verify that an entry is still
+ * valid before using it.
  * 
  */
 public class DeployedResourceCache {
+
+	private static final int INDEX_MAGIC = 0x43465348;
+
+	/**
+	 * Increment when the index format changes. Index files with a different
+	 * version are discarded.
+	 */
+	private static final int INDEX_VERSION = 1;
+
+	private static final byte RECORD_ENTRY = 1;
+
+	private static final byte RECORD_REMOVE_APP = 2;
+
+	private static final long WRITE_DELAY = 2000;
+
+	/**
+	 * The index is compacted on load if it holds more than this many records
+	 * per current entry.
+	 */
+	private static final int MAX_RECORDS_PER_ENTRY = 2;
+
 	private final Map<CachedDeployedApplication, Map<String, DeployedResourceEntry>> cacheMap = new HashMap<CachedDeployedApplication, Map<String, DeployedResourceEntry>>();
 
+	private final File indexFile;
+
+	private final Object indexLock = new Object();
+
+	private List<IndexRecord> pendingRecords = new ArrayList<IndexRecord>();
+
+	private boolean loaded;
+
+	private final Job writeJob;
+
+	/**
+	 * Creates an in-memory cache that is not persisted.
+	 */
+	public DeployedResourceCache() {
+		this(null);
+	}
+
+	/**
+	 * 
+	 * @param indexFile file where the cache is persisted. May be null, in
+	 * which case the cache is not persisted.
+	 */
+	public DeployedResourceCache(File indexFile) {
+		this.indexFile = indexFile;
+		this.loaded = indexFile == null;
+		this.writeJob = new Job("Writing deployed resources index") { //$NON-NLS-1$
+
+			@Override
+			protected IStatus run(IProgressMonitor monitor) {
+				writePendingRecords();
+				return Status.OK_STATUS;
+			}
+		};
+		writeJob.setSystem(true);
+	}
+
 	public synchronized void add(CachedDeployedApplication applicationID, DeployedResourceEntry entry) {
+		load();
 		Map<String, DeployedResourceEntry> appEntries = cacheMap.get(applicationID);
 		if (appEntries == null) {
 			appEntries = new HashMap<String, DeployedResourceCache.DeployedResourceEntry>();
 			cacheMap.put(applicationID, appEntries);
 		}
 		appEntries.put(entry.getZipRelativeFileName(), entry);
+		addPendingRecord(new IndexRecord(applicationID, entry));
+	}
+
+	/**
+	 * Removes all cached entries for the given application.
+	 * @param applicationID
+	 */
+	public synchronized void remove(CachedDeployedApplication applicationID) {
+		load();
+		if (cacheMap.remove(applicationID) != null) {
+			addPendingRecord(new IndexRecord(applicationID, null));
+		}
 	}
 
 	public synchronized DeployedResourceEntry getEntry(CachedDeployedApplication applicationID,
 			String zipRelativeFileName) {
+		load();
 		Map<String, DeployedResourceEntry> appEntries = cacheMap.get(applicationID);
 
 		return appEntries != null ? appEntries.get(zipRelativeFileName) : null;
 	}
 
+	/**
+	 * Writes out any pending changes and compacts the index so that it only
+	 * contains the current entries. Should be called when the plugin is
+	 * stopped.
+	 */
+	public void dispose() {
+		if (indexFile == null) {
+			return;
+		}
+		writeJob.cancel();
+		synchronized (this) {
+			if (!loaded) {
+				// Nothing was read or changed in this session
+				return;
+			}
+			synchronized (indexLock) {
+				pendingRecords.clear();
+				writeIndex();
+			}
+		}
+	}
+
+	private void addPendingRecord(IndexRecord record) {
+		if (indexFile == null) {
+			return;
+		}
+		synchronized (indexLock) {
+			pendingRecords.add(record);
+		}
+		writeJob.schedule(WRITE_DELAY);
+	}
+
+	/**
+	 * Reads the index file the first time the cache is accessed. Must be
+	 * called while holding the cache lock.
+	 */
+	private void load() {
+		if (loaded) {
+			return;
+		}
+		loaded = true;
+
+		if (!indexFile.exists()) {
+			return;
+		}
+		// Records appended after damaged data would never be read, so the
+		// index is rewritten with the entries read so far in that case
+		boolean rewrite = false;
+		int records = 0;
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+			if (in.readInt() != INDEX_MAGIC || in.readInt() != INDEX_VERSION) {
+				// Unknown format. Start over with an empty index.
+				in.close();
+				in = null;
+				indexFile.delete();
+				return;
+			}
+			while (true) {
+				byte type;
+				try {
+					type = in.readByte();
+				}
+				catch (EOFException e) {
+					break;
+				}
+				CachedDeployedApplication app = new CachedDeployedApplication(in.readUTF());
+				records++;
+				if (type == RECORD_REMOVE_APP) {
+					cacheMap.remove(app);
+				}
+				else if (type == RECORD_ENTRY) {
+					String name = in.readUTF();
+					long fileSize = in.readLong();
+					long lastModified = in.readLong();
+					byte[] sha1 = new byte[in.readUnsignedShort()];
+					in.readFully(sha1);
+
+					Map<String, DeployedResourceEntry> appEntries = cacheMap.get(app);
+					if (appEntries == null) {
+						appEntries = new HashMap<String, DeployedResourceEntry>();
+						cacheMap.put(app, appEntries);
+					}
+					appEntries.put(name, new DeployedResourceEntry(sha1, fileSize, lastModified, name));
+				}
+				else {
+					rewrite = true;
+					break;
+				}
+			}
+		}
+		catch (EOFException e) {
+			// Truncated last record (e.g. workbench was killed while writing).
+			// Keep the entries read so far.
+			rewrite = true;
+		}
+		catch (IOException e) {
+			CloudFoundryPlugin.logError("Failed to read deployed resources index " + indexFile, e); //$NON-NLS-1$
+			cacheMap.clear();
+			rewrite = true;
+		}
+		finally {
+			close(in);
+		}
+
+		if (rewrite || records > MAX_RECORDS_PER_ENTRY * Math.max(1, getEntryCount())) {
+			synchronized (indexLock) {
+				writeIndex();
+			}
+		}
+	}
+
+	/**
+	 * Must be called while holding the cache lock.
+	 */
+	private int getEntryCount() {
+		int count = 0;
+		for (Map<String, DeployedResourceEntry> appEntries : cacheMap.values()) {
+			count += appEntries.size();
+		}
+		return count;
+	}
+
+	private void writePendingRecords() {
+		synchronized (indexLock) {
+			if (pendingRecords.isEmpty()) {
+				return;
+			}
+			List<IndexRecord> toWrite = pendingRecords;
+			pendingRecords = new ArrayList<IndexRecord>();
+
+			boolean newFile = !indexFile.exists();
+			DataOutputStream out = null;
+			try {
+				out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile, true)));
+				if (newFile) {
+					writeHeader(out);
+				}
+				for (IndexRecord record : toWrite) {
+					record.write(out);
+				}
+			}
+			catch (IOException e) {
+				CloudFoundryPlugin.logError("Failed to write deployed resources index " + indexFile, e); //$NON-NLS-1$
+			}
+			finally {
+				close(out);
+			}
+		}
+	}
+
+	/**
+	 * Rewrites the index with the current entries only. Must be called while
+	 * holding both the cache and index locks.
+	 */
+	private void writeIndex() {
+		File tempFile = new File(indexFile.getPath() + ".tmp"); //$NON-NLS-1$
+		DataOutputStream out = null;
+		try {
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+			writeHeader(out);
+			for (Entry<CachedDeployedApplication, Map<String, DeployedResourceEntry>> appEntries : cacheMap
+					.entrySet()) {
+				for (DeployedResourceEntry entry : appEntries.getValue().values()) {
+					new IndexRecord(appEntries.getKey(), entry).write(out);
+				}
+			}
+			out.close();
+			out = null;
+
+			indexFile.delete();
+			if (!tempFile.renameTo(indexFile)) {
+				CloudFoundryPlugin.logError("Failed to replace deployed resources index " + indexFile); //$NON-NLS-1$
+			}
+		}
+		catch (IOException e) {
+			CloudFoundryPlugin.logError("Failed to write deployed resources index " + indexFile, e); //$NON-NLS-1$
+		}
+		finally {
+			close(out);
+			tempFile.delete();
+		}
+	}
+
+	private static void writeHeader(DataOutputStream out) throws IOException {
+		out.writeInt(INDEX_MAGIC);
+		out.writeInt(INDEX_VERSION);
+	}
+
+	private static void close(Closeable closeable) {
+		if (closeable != null) {
+			try {
+				closeable.close();
+			}
+			catch (IOException e) {
+				// ignore
+			}
+		}
+	}
+
+	/**
+	 * A single change to the index. A null entry indicates that all entries
+	 * for the application were removed.
+	 */
+	private static class IndexRecord {
+
+		private final CachedDeployedApplication app;
+
+		private final DeployedResourceEntry entry;
+
+		IndexRecord(CachedDeployedApplication app, DeployedResourceEntry entry) {
+			this.app = app;
+			this.entry = entry;
+		}
+
+		void write(DataOutputStream out) throws IOException {
+			if (entry == null) {
+				out.writeByte(RECORD_REMOVE_APP);
+				out.writeUTF(app.getAppName());
+			}
+			else if (entry.getSha1() != null) {
+				out.writeByte(RECORD_ENTRY);
+				out.writeUTF(app.getAppName());
+				out.writeUTF(entry.getZipRelativeFileName());
+				out.writeLong(entry.getFileSize());
+				out.writeLong(entry.getLastModified());
+				out.writeShort(entry.getSha1().length);
+				out.write(entry.getSha1());
+			}
+		}
+	}
+
 	public static class DeployedResourceEntry {
 		private final byte[] sha1;
 
 		private final long fileSize;
 
+		private final long lastModified;
+
 		private final String zipRelativeFileName;
 
 		public DeployedResourceEntry(byte[] sha1, long fileSize, String zipRelativeFileName) {
+			this(sha1, fileSize, -1, zipRelativeFileName);
+		}
+
+		/**
+		 * 
+		 * @param sha1
+		 * @param fileSize
+		 * @param lastModified modification time of the resource when the sha1
+		 * was computed, or -1 if not known
+		 * @param zipRelativeFileName
+		 */
+		public DeployedResourceEntry(byte[] sha1, long fileSize, long lastModified, String zipRelativeFileName) {
 			this.sha1 = sha1;
 			this.fileSize = fileSize;
+			this.lastModified = lastModified;
 			this.zipRelativeFileName = zipRelativeFileName;
 		}
 
@@ -73,6 +420,26 @@ public class DeployedResourceCache {
 		public long getFileSize() {
 			return fileSize;
 		}
+
+		/**
+		 * 
+		 * @return modification time of the resource when the sha1 was
+		 * computed, or -1 if not known.
+		 */
+		public long getLastModified() {
+			return lastModified;
+		}
+
+		/**
+		 * 
+		 * @param file
+		 * @return true if the given file has the same size and modification
+		 * time as the resource when this entry was computed. False otherwise
+		 */
+		public boolean matches(File file) {
+			return file != null && lastModified != -1 && sha1 != null && file.length() == fileSize
+					&& file.lastModified() == lastModified;
+		}
 	}
 
 	/**
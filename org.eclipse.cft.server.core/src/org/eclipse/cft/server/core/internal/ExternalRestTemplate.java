@@ -24,11 +24,10 @@ import java.util.ArrayList;
 import java.util.List;
 
 import org.apache.http.client.HttpClient;
-import org.apache.http.impl.client.HttpClientBuilder;
-import org.apache.http.impl.client.HttpClients;
 import org.cloudfoundry.client.lib.CloudFoundryOperations;
 import org.cloudfoundry.client.lib.rest.CloudControllerResponseErrorHandler;
 import org.eclipse.cft.server.core.internal.client.CloudFoundryServerBehaviour;
+import org.eclipse.cft.server.core.internal.client.HttpConnectionPools;
 import org.springframework.http.client.ClientHttpRequestFactory;
 import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
 import org.springframework.http.converter.ByteArrayHttpMessageConverter;
@@ -54,8 +53,7 @@ public class ExternalRestTemplate extends RestTemplate {
 	}
 
 	protected ClientHttpRequestFactory createRequestFactory() {
-		HttpClientBuilder httpClientBuilder = HttpClients.custom().useSystemProperties();
-		HttpClient httpClient = httpClientBuilder.build();
+		HttpClient httpClient = HttpConnectionPools.getClient(null, false, false);
 		HttpComponentsClientHttpRequestFactory requestFactory = new HttpComponentsClientHttpRequestFactory(httpClient);
 
 		return requestFactory;
@@ -31,6 +31,14 @@ public class Messages extends NLS {
 	public static String AbstractApplicationDelegate_ERROR_MISSING_MEM;
 	
 	public static String AbstractPublishApplicationOperation_OPERATION_CANCELED;
+
+	public static String AccessTokenManager_REFRESH_TOKEN_JOB;
+
+	public static String ApplicationArchiveDigester_COMPUTING_DIGESTS;
+
+	public static String ApplicationArchiveDigester_COMPUTING_DIGESTS_LABEL;
+
+	public static String ArchiveStagingArea_ERROR_CREATE_FOLDER;
 	
 	public static String ApplicationInstanceStartingTracker_STARTING_TRACKING;
 	
@@ -126,6 +134,8 @@ public class Messages extends NLS {
 
 	public static String TunnelServiceCommandStore_ERROR_VALUE_CANNOT_SERILIZE;
 
+	public static String CircuitBreaker_ERROR_SERVER_UNREACHABLE;
+
 	public static String ClientRequest_RETRY_REQUEST;
 
 	public static String ClientRequest_SECOND_ATTEMPT_FAILED;
@@ -244,6 +254,8 @@ public class Messages extends NLS {
 
 	public static String CONSOLE_APP_PUSHED_MESSAGE;
 
+	public static String CONSOLE_PUSH_TIMINGS;
+
 	public static String CONSOLE_PREPARING_APP;
 
 	public static String CONSOLE_STILL_WAITING_FOR_APPLICATION_TO_START;
@@ -24,9 +24,11 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.UUID;
 
 import org.cloudfoundry.client.lib.domain.CloudApplication;
 import org.eclipse.cft.server.core.internal.client.CloudFoundryApplicationModule;
@@ -55,6 +57,34 @@ public class ModuleCache {
 
 		private final List<CloudFoundryApplicationModule> cloudModules = new ArrayList<CloudFoundryApplicationModule>();
 
+		/*
+		 * Indexes of the cloud modules by local module name, deployed
+		 * application name and application GUID, kept consistent with the
+		 * list of cloud modules so that lookups do not scan the list. Where
+		 * several modules share a key, the first one added is indexed, as with
+		 * a scan of the list.
+		 */
+		private final Map<String, CloudFoundryApplicationModule> modulesByLocalName = new HashMap<String, CloudFoundryApplicationModule>();
+
+		private final Map<String, CloudFoundryApplicationModule> modulesByDeployedName = new HashMap<String, CloudFoundryApplicationModule>();
+
+		private final Map<UUID, CloudFoundryApplicationModule> modulesByGuid = new HashMap<UUID, CloudFoundryApplicationModule>();
+
+		/*
+		 * Keys under which each cloud module is currently indexed, as the
+		 * deployed name and application of a module may change after it is
+		 * indexed
+		 */
+		private final Map<CloudFoundryApplicationModule, String> indexedDeployedNames = new IdentityHashMap<CloudFoundryApplicationModule, String>();
+
+		private final Map<CloudFoundryApplicationModule, UUID> indexedGuids = new IdentityHashMap<CloudFoundryApplicationModule, UUID>();
+
+		/**
+		 * Local module ID to deployed application name mapping, loaded from
+		 * the preferences when first needed.
+		 */
+		private Map<String, String> moduleMapping;
+
 		/** Cached password in case secure store fails. */
 		private String password;
 
@@ -69,12 +99,23 @@ public class ModuleCache {
 
 		private int[] applicationMemoryChoices;
 
+		/**
+		 * Whether modules were updated from the server in this session, after
+		 * which they must no longer be restored from a snapshot.
+		 */
+		private boolean refreshed;
+
 		ServerData(IServer server) {
 			this.server = server;
 		}
 
 		public synchronized void clear() {
 			cloudModules.clear();
+			modulesByLocalName.clear();
+			modulesByDeployedName.clear();
+			modulesByGuid.clear();
+			indexedDeployedNames.clear();
+			indexedGuids.clear();
 		}
 
 		/**
@@ -99,11 +140,18 @@ public class ModuleCache {
 		 * persisted.
 		 */
 		public synchronized void updateCloudApplicationModule(CloudFoundryApplicationModule module) {
-			// Update the map of module ID -> Deployed Application name
-			if (module.getLocalModule() != null) {
+			// Update the map of module ID -> Deployed Application name. External
+			// modules are always looked up by deployed name, so they need no
+			// mapping
+			if (module.getLocalModule() != null && !module.isExternal()) {
 				Map<String, String> mapping = getLocalModuleToCloudModuleMapping();
-				mapping.put(module.getLocalModule().getId(), module.getDeployedApplicationName());
-				setLocalModuleToCloudModuleMapping(mapping);
+				String deployedName = module.getDeployedApplicationName();
+				if (!deployedName.equals(mapping.put(module.getLocalModule().getId(), deployedName))) {
+					setLocalModuleToCloudModuleMapping(mapping);
+				}
+			}
+			if (indexedDeployedNames.containsKey(module)) {
+				reindex(module);
 			}
 		}
 
@@ -127,11 +175,14 @@ public class ModuleCache {
 			if (module == null) {
 				return;
 			}
-			cloudModules.remove(module);
+			if (cloudModules.remove(module)) {
+				unindex(module);
+			}
 			if (module.getLocalModule() != null) {
 				Map<String, String> mapping = getLocalModuleToCloudModuleMapping();
-				mapping.remove(module.getLocalModule().getId());
-				setLocalModuleToCloudModuleMapping(mapping);
+				if (mapping.remove(module.getLocalModule().getId()) != null) {
+					setLocalModuleToCloudModuleMapping(mapping);
+				}
 			}
 		}
 
@@ -183,6 +234,100 @@ public class ModuleCache {
 
 		private void add(CloudFoundryApplicationModule module) {
 			cloudModules.add(module);
+			index(module);
+		}
+
+		private void index(CloudFoundryApplicationModule module) {
+			String localName = module.getName();
+			if (!modulesByLocalName.containsKey(localName)) {
+				modulesByLocalName.put(localName, module);
+			}
+			indexApplication(module);
+		}
+
+		private void indexApplication(CloudFoundryApplicationModule module) {
+			String deployedName = module.getDeployedApplicationName();
+			indexedDeployedNames.put(module, deployedName);
+			if (!modulesByDeployedName.containsKey(deployedName)) {
+				modulesByDeployedName.put(deployedName, module);
+			}
+
+			UUID guid = getGuid(module);
+			if (guid != null) {
+				indexedGuids.put(module, guid);
+				if (!modulesByGuid.containsKey(guid)) {
+					modulesByGuid.put(guid, module);
+				}
+			}
+		}
+
+		private void unindex(CloudFoundryApplicationModule module) {
+			// Every indexed module has an indexed deployed name, so modules
+			// only share local names if there are fewer local names
+			boolean shared = modulesByLocalName.size() < indexedDeployedNames.size();
+			String localName = module.getName();
+			if (modulesByLocalName.get(localName) == module) {
+				modulesByLocalName.remove(localName);
+				if (shared) {
+					for (CloudFoundryApplicationModule next : cloudModules) {
+						if (next != module && localName.equals(next.getName())) {
+							modulesByLocalName.put(localName, next);
+							break;
+						}
+					}
+				}
+			}
+			unindexApplication(module);
+		}
+
+		private void unindexApplication(CloudFoundryApplicationModule module) {
+			boolean shared = modulesByDeployedName.size() < indexedDeployedNames.size();
+			String deployedName = indexedDeployedNames.remove(module);
+			if (deployedName != null && modulesByDeployedName.get(deployedName) == module) {
+				modulesByDeployedName.remove(deployedName);
+				if (shared) {
+					for (CloudFoundryApplicationModule next : cloudModules) {
+						if (next != module && deployedName.equals(indexedDeployedNames.get(next))) {
+							modulesByDeployedName.put(deployedName, next);
+							break;
+						}
+					}
+				}
+			}
+
+			shared = modulesByGuid.size() < indexedGuids.size();
+			UUID guid = indexedGuids.remove(module);
+			if (guid != null && modulesByGuid.get(guid) == module) {
+				modulesByGuid.remove(guid);
+				if (shared) {
+					for (CloudFoundryApplicationModule next : cloudModules) {
+						if (next != module && guid.equals(indexedGuids.get(next))) {
+							modulesByGuid.put(guid, next);
+							break;
+						}
+					}
+				}
+			}
+		}
+
+		/**
+		 * Updates the indexes of the given module if its deployed name or
+		 * application changed.
+		 */
+		private void reindex(CloudFoundryApplicationModule module) {
+			String deployedName = module.getDeployedApplicationName();
+			UUID guid = getGuid(module);
+			if (deployedName.equals(indexedDeployedNames.get(module))
+					&& (guid == null ? !indexedGuids.containsKey(module) : guid.equals(indexedGuids.get(module)))) {
+				return;
+			}
+			unindexApplication(module);
+			indexApplication(module);
+		}
+
+		private static UUID getGuid(CloudFoundryApplicationModule module) {
+			CloudApplication application = module.getApplication();
+			return application != null && application.getMeta() != null ? application.getMeta().getGuid() : null;
 		}
 
 		private String convertMapToString(Map<String, String> map) {
@@ -219,18 +364,16 @@ public class ModuleCache {
 		 * application name (value)
 		 */
 		private Map<String, String> getLocalModuleToCloudModuleMapping() {
-			IEclipsePreferences node = new InstanceScope().getNode(CloudFoundryPlugin.PLUGIN_ID);
-			String string = node.get(KEY_MODULE_MAPPING_LIST + ":" + getServerId(), ""); //$NON-NLS-1$ //$NON-NLS-2$
-			return convertStringToMap(string);
+			if (moduleMapping == null) {
+				IEclipsePreferences node = new InstanceScope().getNode(CloudFoundryPlugin.PLUGIN_ID);
+				String string = node.get(KEY_MODULE_MAPPING_LIST + ":" + getServerId(), ""); //$NON-NLS-1$ //$NON-NLS-2$
+				moduleMapping = convertStringToMap(string);
+			}
+			return moduleMapping;
 		}
 
 		private CloudFoundryApplicationModule getCloudModuleByDeployedAppName(String deployedApplicationName) {
-			for (CloudFoundryApplicationModule module : cloudModules) {
-				if (deployedApplicationName.equals(module.getDeployedApplicationName())) {
-					return module;
-				}
-			}
-			return null;
+			return modulesByDeployedName.get(deployedApplicationName);
 		}
 
 		/**
@@ -247,12 +390,7 @@ public class ModuleCache {
 		 * @return
 		 */
 		private CloudFoundryApplicationModule getCloudModuleToLocalModuleName(String localName) {
-			for (CloudFoundryApplicationModule module : cloudModules) {
-				if (localName.equals(module.getName())) {
-					return module;
-				}
-			}
-			return null;
+			return modulesByLocalName.get(localName);
 		}
 
 		private String getServerId() {
@@ -261,6 +399,7 @@ public class ModuleCache {
 		}
 
 		private void setLocalModuleToCloudModuleMapping(Map<String, String> list) {
+			moduleMapping = list;
 			String string = convertMapToString(list);
 			IEclipsePreferences node = new InstanceScope().getNode(CloudFoundryPlugin.PLUGIN_ID);
 			CloudFoundryPlugin.trace("Updated mapping: " + string); //$NON-NLS-1$
@@ -303,6 +442,26 @@ public class ModuleCache {
 			return null;
 		}
 
+		/**
+		 * 
+		 * @param deployedApplicationName
+		 * @return cloud module for the given deployed application name, or
+		 * null if none exists
+		 */
+		synchronized CloudFoundryApplicationModule getExistingCloudModule(String deployedApplicationName) {
+			return deployedApplicationName != null ? getCloudModuleByDeployedAppName(deployedApplicationName) : null;
+		}
+
+		/**
+		 * 
+		 * @param guid of a deployed application
+		 * @return cloud module mapped to the application with the given GUID,
+		 * or null if none exists
+		 */
+		synchronized CloudFoundryApplicationModule getExistingCloudModule(UUID guid) {
+			return guid != null ? modulesByGuid.get(guid) : null;
+		}
+
 		synchronized CloudFoundryApplicationModule getOrCreateCloudModule(IModule module) {
 
 			// See if the cloud module for the given local IModule has been
@@ -337,6 +496,22 @@ public class ModuleCache {
 			node.put(KEY_MODULE_MAPPING_LIST + ":" + newServerId, string); //$NON-NLS-1$
 		}
 
+		/**
+		 * Records that modules were updated from the server.
+		 */
+		public synchronized void markRefreshed() {
+			refreshed = true;
+		}
+
+		/**
+		 * 
+		 * @return true if modules were updated from the server in this
+		 * session. False otherwise.
+		 */
+		public synchronized boolean isRefreshed() {
+			return refreshed;
+		}
+
 		public synchronized void setApplicationMemoryChoices(int[] applicationMemoryChoices) {
 			this.applicationMemoryChoices = applicationMemoryChoices;
 		}
@@ -393,6 +568,10 @@ public class ModuleCache {
 		CloudFoundryServer cfs =  (CloudFoundryServer)server.loadAdapter(CloudFoundryServer.class, null);
 		
 		String serverId =  cfs.getServerId(); 
+
+		if (CloudFoundryPlugin.getDefault() != null) {
+			CloudFoundryPlugin.getDefault().getApplicationSnapshotStore().remove(server.getId());
+		}
 		
 		if (serverId != null) {
 			IEclipsePreferences node = new InstanceScope().getNode(CloudFoundryPlugin.PLUGIN_ID);
@@ -0,0 +1,618 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Pivotal Software, Inc. 
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution. 
+ * 
+ * The Eclipse Public License is available at 
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * and the Apache License v2.0 is available at 
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * You may elect to redistribute this code under either of these licenses.
+ *  
+ *  Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+ ********************************************************************************/
+package org.eclipse.cft.server.core.internal;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes zip archives to a file, compressing entry content in parallel.
+ * <p/>
+ * File content is read in fixed size blocks on the calling thread. Each block
+ * is deflated independently in a shared thread pool, using the tail of the
+ * previous block of the same entry as preset dictionary, and ending with a
+ * sync flush so that the compressed blocks of an entry concatenate into a
+ * single valid deflate stream. Compressed blocks are written to the file in
+ * order as they complete, with a bounded number of blocks in flight.
+ * <p/>
+ * Entries that are unlikely to compress, like jars, images and other
+ * compressed formats, are detected by file extension and by the magic bytes at
+ * the start of their content, and are stored without compression.
+ * <p/>
+ * Local headers are written with placeholder sizes and checksums, which are
+ * filled in once the entry has been written, so no data descriptors are
+ * needed. Zip64 archives are not supported.
+ * <p/>
+ * The sha1 code of the archive is computed from the same bytes as they are
+ * written, so that it is known once the archive is finished without reading
+ * the file again. As the local header of an entry is only final once the
+ * entry has been written, the written bytes of the current entry are held
+ * until then. If an entry is too large to be held, no sha1 code is computed.
+ */
+public class ParallelZipWriter implements Closeable {
+
+	private static final int BLOCK_SIZE = 128 * 1024;
+
+	private static final int DICTIONARY_SIZE = 32 * 1024;
+
+	private static final int PENDING_BLOCKS_PER_THREAD = 4;
+
+	private static final int THREADS = Math.max(1, Runtime.getRuntime().availableProcessors());
+
+	private static final int MAX_PENDING_BLOCKS = THREADS * PENDING_BLOCKS_PER_THREAD;
+
+	private static final long MAX_ZIP32_VALUE = 0xFFFFFFFFL;
+
+	private static final int MAX_ZIP32_ENTRIES = 0xFFFF;
+
+	/**
+	 * Maximum number of written bytes of a single entry held in memory to
+	 * compute the sha1 code of the archive.
+	 */
+	private static final long MAX_UNDIGESTED_SIZE = 16 * 1024 * 1024;
+
+	private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+
+	private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+
+	private static final int END_SIGNATURE = 0x06054b50;
+
+	private static final int LOCAL_HEADER_CRC_OFFSET = 14;
+
+	private static final short METHOD_STORED = 0;
+
+	private static final short METHOD_DEFLATED = 8;
+
+	private static final short VERSION_STORED = 10;
+
+	private static final short VERSION_DEFLATED = 20;
+
+	/**
+	 * Entry names are encoded in UTF-8
+	 */
+	private static final short FLAG_UTF8 = 0x800;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8"); //$NON-NLS-1$
+
+	private static final Set<String> STORED_EXTENSIONS = new HashSet<String>(Arrays.asList(new String[] { "jar", //$NON-NLS-1$
+			"war", "ear", "zip", "gz", "tgz", "bz2", "xz", "7z", "rar", "png", "jpg", "jpeg", "gif", "webp", //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$ //$NON-NLS-7$ //$NON-NLS-8$ //$NON-NLS-9$ //$NON-NLS-10$ //$NON-NLS-11$ //$NON-NLS-12$ //$NON-NLS-13$ //$NON-NLS-14$
+			"ico", "mp3", "mp4", "ogg", "avi", "mov", "woff", "woff2", "eot", "pdf" })); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$ //$NON-NLS-7$ //$NON-NLS-8$ //$NON-NLS-9$ //$NON-NLS-10$
+
+	private static final byte[][] STORED_MAGIC = new byte[][] {
+			// zip, jar, war
+			{ 'P', 'K', 3, 4 },
+			// gzip
+			{ (byte) 0x1f, (byte) 0x8b },
+			// png
+			{ (byte) 0x89, 'P', 'N', 'G' },
+			// jpeg
+			{ (byte) 0xff, (byte) 0xd8, (byte) 0xff },
+			// gif
+			{ 'G', 'I', 'F', '8' },
+			// bzip2
+			{ 'B', 'Z', 'h' },
+			// 7z
+			{ '7', 'z', (byte) 0xbc, (byte) 0xaf },
+			// xz
+			{ (byte) 0xfd, '7', 'z', 'X', 'Z', 0 },
+			// woff, woff2
+			{ 'w', 'O', 'F', 'F' }, { 'w', 'O', 'F', '2' } };
+
+	private static ExecutorService executor;
+
+	private final RandomAccessFile output;
+
+	private final List<EntryRecord> entries = new ArrayList<EntryRecord>();
+
+	private final LinkedList<Block> pending = new LinkedList<Block>();
+
+	/**
+	 * Written bytes of the current entry not yet added to the sha1 code.
+	 */
+	private final List<byte[]> undigested = new ArrayList<byte[]>();
+
+	private long undigestedSize;
+
+	private MessageDigest digest;
+
+	private byte[] sha1;
+
+	public ParallelZipWriter(File file) throws IOException {
+		output = new RandomAccessFile(file, "rw"); //$NON-NLS-1$
+		output.setLength(0);
+		try {
+			digest = MessageDigest.getInstance("SHA-1"); //$NON-NLS-1$
+		}
+		catch (NoSuchAlgorithmException e) {
+			// The sha1 code will be computed from the file instead
+			digest = null;
+		}
+	}
+
+	protected static synchronized ExecutorService getExecutor() {
+		if (executor == null) {
+			final AtomicInteger count = new AtomicInteger();
+			executor = Executors.newFixedThreadPool(THREADS, new ThreadFactory() {
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "Cloud Foundry archive compression " + count.incrementAndGet()); //$NON-NLS-1$
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return executor;
+	}
+
+	/**
+	 * Adds a directory entry.
+	 * @param name entry name, ending with '/'
+	 * @param time modification time, or 0 to use the current time
+	 * @throws IOException
+	 */
+	public void putDirectory(String name, long time) throws IOException {
+		EntryRecord entry = putEntry(name, time, METHOD_STORED);
+		entry.crc = 0;
+		entry.size = 0;
+		// No content. Header values are final.
+		pending.add(new Block(entry, null, null, false, true));
+		drain(MAX_PENDING_BLOCKS);
+	}
+
+	/**
+	 * Adds a file entry with the content of the given input stream. The
+	 * stream is read fully but not closed.
+	 * @param name entry name
+	 * @param time modification time, or 0 to use the current time
+	 * @param input content of the entry
+	 * @return number of bytes read from the input stream
+	 * @throws IOException
+	 */
+	public long putFile(String name, long time, InputStream input) throws IOException {
+		byte[] block = readBlock(input);
+		boolean store = block.length == 0 || isIncompressible(name, block);
+		EntryRecord entry = putEntry(name, time, store ? METHOD_STORED : METHOD_DEFLATED);
+
+		CRC32 crc = new CRC32();
+		long size = 0;
+		byte[] dictionary = null;
+		while (true) {
+			byte[] next = block.length == BLOCK_SIZE ? readBlock(input) : new byte[0];
+			boolean last = next.length == 0;
+
+			crc.update(block);
+			size += block.length;
+			if (size > MAX_ZIP32_VALUE) {
+				throw new IOException("Zip entry is too large: " + name); //$NON-NLS-1$
+			}
+			if (last) {
+				entry.crc = crc.getValue();
+				entry.size = size;
+			}
+
+			if (store) {
+				pending.add(new Block(entry, block, null, false, last));
+			}
+			else {
+				Future<byte[]> deflated = getExecutor().submit(new DeflateTask(block, dictionary, last));
+				pending.add(new Block(entry, null, deflated, false, last));
+				dictionary = block;
+			}
+			drain(MAX_PENDING_BLOCKS);
+
+			if (last) {
+				return size;
+			}
+			block = next;
+		}
+	}
+
+	/**
+	 * Writes all pending entries and the central directory. The writer must
+	 * still be closed afterwards.
+	 * @throws IOException
+	 */
+	public void finish() throws IOException {
+		drain(0);
+
+		long centralOffset = output.getFilePointer();
+		ByteArrayOutputStream central = new ByteArrayOutputStream();
+		for (EntryRecord entry : entries) {
+			ByteBuffer header = newBuffer(46 + entry.name.length);
+			header.putInt(CENTRAL_HEADER_SIGNATURE);
+			header.putShort(VERSION_DEFLATED);
+			header.putShort(entry.getVersion());
+			header.putShort(FLAG_UTF8);
+			header.putShort(entry.method);
+			header.putInt((int) entry.dosTime);
+			header.putInt((int) entry.crc);
+			header.putInt((int) entry.compressedSize);
+			header.putInt((int) entry.size);
+			header.putShort((short) entry.name.length);
+			// Extra field length, comment length, disk number, internal and
+			// external attributes
+			header.putShort((short) 0);
+			header.putShort((short) 0);
+			header.putShort((short) 0);
+			header.putShort((short) 0);
+			header.putInt(0);
+			header.putInt((int) entry.offset);
+			header.put(entry.name);
+			central.write(header.array());
+		}
+		write(central.toByteArray());
+
+		if (centralOffset > MAX_ZIP32_VALUE) {
+			throw new IOException("Zip archive is too large"); //$NON-NLS-1$
+		}
+
+		ByteBuffer end = newBuffer(22);
+		end.putInt(END_SIGNATURE);
+		// Disk numbers
+		end.putShort((short) 0);
+		end.putShort((short) 0);
+		end.putShort((short) entries.size());
+		end.putShort((short) entries.size());
+		end.putInt(central.size());
+		end.putInt((int) centralOffset);
+		// Comment length
+		end.putShort((short) 0);
+		write(end.array());
+
+		if (digest != null) {
+			sha1 = digest.digest();
+			digest = null;
+		}
+	}
+
+	/**
+	 * Returns the sha1 code of the archive, computed while it was written.
+	 * @return sha1 code of the archive, or null if the archive is not finished
+	 * or if the sha1 code could not be computed while writing
+	 */
+	public byte[] getSha1Digest() {
+		return sha1;
+	}
+
+	/**
+	 * Closes the output file. Compression of any pending blocks is canceled.
+	 */
+	public void close() throws IOException {
+		for (Block block : pending) {
+			if (block.deflated != null) {
+				block.deflated.cancel(true);
+			}
+		}
+		pending.clear();
+		output.close();
+	}
+
+	protected EntryRecord putEntry(String name, long time, short method) throws IOException {
+		if (entries.size() >= MAX_ZIP32_ENTRIES) {
+			throw new IOException("Too many zip entries"); //$NON-NLS-1$
+		}
+		EntryRecord entry = new EntryRecord(name.getBytes(UTF8), toDosTime(time > 0 ? time : System
+				.currentTimeMillis()), method);
+		entries.add(entry);
+		pending.add(new Block(entry, entry.getLocalHeader(), null, true, false));
+		return entry;
+	}
+
+	/**
+	 * Writes completed blocks in order until no more than the given number of
+	 * blocks are pending.
+	 */
+	protected void drain(int maxPending) throws IOException {
+		while (pending.size() > maxPending) {
+			Block block = pending.removeFirst();
+			EntryRecord entry = block.entry;
+			byte[] data = block.getData();
+			if (block.header) {
+				entry.offset = output.getFilePointer();
+				writeEntryData(data);
+				continue;
+			}
+			if (data != null) {
+				writeEntryData(data);
+				entry.compressedSize += data.length;
+			}
+			if (block.last) {
+				// Fill in the sizes and checksum in the local header
+				long end = output.getFilePointer();
+				if (end > MAX_ZIP32_VALUE) {
+					throw new IOException("Zip archive is too large"); //$NON-NLS-1$
+				}
+				ByteBuffer values = newBuffer(12);
+				values.putInt((int) entry.crc);
+				values.putInt((int) entry.compressedSize);
+				values.putInt((int) entry.size);
+				output.seek(entry.offset + LOCAL_HEADER_CRC_OFFSET);
+				output.write(values.array());
+				output.seek(end);
+
+				// The entry is final, including its local header, which is
+				// the first part held
+				if (digest != null) {
+					System.arraycopy(values.array(), 0, undigested.get(0), LOCAL_HEADER_CRC_OFFSET, 12);
+					for (byte[] written : undigested) {
+						digest.update(written);
+					}
+				}
+				undigested.clear();
+				undigestedSize = 0;
+			}
+		}
+	}
+
+	/**
+	 * Writes part of an entry, holding it until the entry is final to add it
+	 * to the sha1 code of the archive.
+	 */
+	private void writeEntryData(byte[] data) throws IOException {
+		output.write(data);
+		if (digest != null) {
+			undigestedSize += data.length;
+			if (undigestedSize > MAX_UNDIGESTED_SIZE) {
+				digest = null;
+				undigested.clear();
+			}
+			else {
+				undigested.add(data);
+			}
+		}
+	}
+
+	private void write(byte[] data) throws IOException {
+		output.write(data);
+		if (digest != null) {
+			digest.update(data);
+		}
+	}
+
+	protected static byte[] readBlock(InputStream input) throws IOException {
+		byte[] block = new byte[BLOCK_SIZE];
+		int read = 0;
+		while (read < BLOCK_SIZE) {
+			int n = input.read(block, read, BLOCK_SIZE - read);
+			if (n < 0) {
+				break;
+			}
+			read += n;
+		}
+		return read == BLOCK_SIZE ? block : Arrays.copyOf(block, read);
+	}
+
+	protected static boolean isIncompressible(String name, byte[] content) {
+		int dot = name.lastIndexOf('.');
+		if (dot >= 0 && dot > name.lastIndexOf('/')
+				&& STORED_EXTENSIONS.contains(name.substring(dot + 1).toLowerCase(Locale.ENGLISH))) {
+			return true;
+		}
+		for (byte[] magic : STORED_MAGIC) {
+			if (startsWith(content, magic)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean startsWith(byte[] content, byte[] prefix) {
+		if (content.length < prefix.length) {
+			return false;
+		}
+		for (int i = 0; i < prefix.length; i++) {
+			if (content[i] != prefix[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static ByteBuffer newBuffer(int size) {
+		return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	private static long toDosTime(long time) {
+		Calendar calendar = Calendar.getInstance();
+		calendar.setTimeInMillis(time);
+		int year = calendar.get(Calendar.YEAR);
+		if (year < 1980) {
+			return (1 << 21) | (1 << 16);
+		}
+		return (year - 1980) << 25 | (calendar.get(Calendar.MONTH) + 1) << 21
+				| calendar.get(Calendar.DAY_OF_MONTH) << 16 | calendar.get(Calendar.HOUR_OF_DAY) << 11
+				| calendar.get(Calendar.MINUTE) << 5 | calendar.get(Calendar.SECOND) >> 1;
+	}
+
+	/**
+	 * Deflates a single block of an entry as part of the entry's deflate
+	 * stream.
+	 */
+	private static class DeflateTask implements Callable<byte[]> {
+
+		private final byte[] block;
+
+		private final byte[] previous;
+
+		private final boolean last;
+
+		DeflateTask(byte[] block, byte[] previous, boolean last) {
+			this.block = block;
+			this.previous = previous;
+			this.last = last;
+		}
+
+		public byte[] call() throws Exception {
+			Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+			try {
+				if (previous != null) {
+					int length = Math.min(DICTIONARY_SIZE, previous.length);
+					deflater.setDictionary(previous, previous.length - length, length);
+				}
+				deflater.setInput(block);
+
+				ByteArrayOutputStream out = new ByteArrayOutputStream(block.length / 2 + 64);
+				byte[] buffer = new byte[16 * 1024];
+				if (last) {
+					deflater.finish();
+					while (!deflater.finished()) {
+						int n = deflater.deflate(buffer);
+						out.write(buffer, 0, n);
+					}
+				}
+				else {
+					// Ends the block on a byte boundary without ending the
+					// stream, so the next block can be appended.
+					int n;
+					do {
+						n = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+						out.write(buffer, 0, n);
+					}
+					while (n == buffer.length);
+				}
+				return out.toByteArray();
+			}
+			finally {
+				deflater.end();
+			}
+		}
+	}
+
+	private static class Block {
+
+		final EntryRecord entry;
+
+		final byte[] data;
+
+		final Future<byte[]> deflated;
+
+		/**
+		 * Local header of the entry
+		 */
+		final boolean header;
+
+		/**
+		 * Last content block of the entry
+		 */
+		final boolean last;
+
+		Block(EntryRecord entry, byte[] data, Future<byte[]> deflated, boolean header, boolean last) {
+			this.entry = entry;
+			this.data = data;
+			this.deflated = deflated;
+			this.header = header;
+			this.last = last;
+		}
+
+		byte[] getData() throws IOException {
+			if (deflated == null) {
+				return data;
+			}
+			try {
+				return deflated.get();
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException(e);
+			}
+			catch (ExecutionException e) {
+				throw new IOException(e.getCause());
+			}
+		}
+	}
+
+	private static class EntryRecord {
+
+		final byte[] name;
+
+		final long dosTime;
+
+		final short method;
+
+		final byte[] localHeader;
+
+		long offset;
+
+		long crc;
+
+		long size;
+
+		long compressedSize;
+
+		EntryRecord(byte[] name, long dosTime, short method) {
+			this.name = name;
+			this.dosTime = dosTime;
+			this.method = method;
+			this.localHeader = createLocalHeader();
+		}
+
+		short getVersion() {
+			return method == METHOD_STORED ? VERSION_STORED : VERSION_DEFLATED;
+		}
+
+		byte[] getLocalHeader() {
+			return localHeader;
+		}
+
+		private byte[] createLocalHeader() {
+			ByteBuffer header = newBuffer(30 + name.length);
+			header.putInt(LOCAL_HEADER_SIGNATURE);
+			header.putShort(getVersion());
+			header.putShort(FLAG_UTF8);
+			header.putShort(method);
+			header.putInt((int) dosTime);
+			// Checksum and sizes are filled in once the entry is written
+			header.putInt(0);
+			header.putInt(0);
+			header.putInt(0);
+			header.putShort((short) name.length);
+			// Extra field length
+			header.putShort((short) 0);
+			header.put(name);
+			return header.array();
+		}
+	}
+}
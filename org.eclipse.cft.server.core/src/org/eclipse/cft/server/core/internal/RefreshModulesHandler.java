@@ -20,8 +20,17 @@
  ********************************************************************************/
 package org.eclipse.cft.server.core.internal;
 
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
 import org.cloudfoundry.client.lib.domain.CloudApplication;
 import org.eclipse.cft.server.core.internal.client.BehaviourOperation;
+import org.eclipse.cft.server.core.internal.client.CloudBehaviourOperations;
+import org.eclipse.cft.server.core.internal.client.CloudFoundryServerBehaviour;
+import org.eclipse.cft.server.core.internal.client.RequestScheduler;
+import org.eclipse.cft.server.core.internal.client.RequestScheduler.Priority;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
@@ -38,7 +47,14 @@ import org.eclipse.wst.server.core.IModule;
  * {@link CloudFoundryServer} which may be a long-running task, module refreshes
  * is performed asynchronously as a job, and only one job is scheduled per
  * behaviour regardless of the number of refresh requests received
- * 
+ * <p/>
+ * Refresh requests are queued until the job runs, and merged so that each
+ * refresh is only performed once per run: a request to refresh all modules
+ * subsumes requests to refresh individual modules, which then only have
+ * their instances refreshed, and requests to refresh the same module are
+ * combined. Requests received while the job is running are never dropped,
+ * but performed in a subsequent run, so the last request is always followed
+ * by a refresh.
  */
 public class RefreshModulesHandler {
 
@@ -46,10 +62,23 @@ public class RefreshModulesHandler {
 
 	private final CloudFoundryServer cloudServer;
 
-	private BehaviourOperation opToRun;
+	/*
+	 * Pending refresh requests, performed by the next run of the refresh job
+	 */
+	private boolean refreshAllPending;
+
+	private IModule refreshAllModule;
+
+	private final Set<IModule> refreshApplicationModules = new LinkedHashSet<IModule>();
+
+	private final Set<IModule> deploymentChangeModules = new LinkedHashSet<IModule>();
+
+	private boolean running;
 
 	private static final String NO_SERVER_ERROR = "Null server in refresh module handler. Unable to schedule module refresh."; //$NON-NLS-1$
 
+	private static final String NO_MODULE_ERROR = "Null module in refresh module handler. Unable to schedule module refresh."; //$NON-NLS-1$
+
 	/**
 	 * 
 	 * @param cloudServer may be null if not resolved.
@@ -69,16 +98,15 @@ public class RefreshModulesHandler {
 	 * individually on a module selection to avoid a slow refresh
 	 */
 	public synchronized void scheduleRefreshAll() {
-		if (cloudServer == null) {
-			CloudFoundryPlugin.logError(NO_SERVER_ERROR);
-		}
-		else if (this.opToRun == null) {
-			scheduleRefresh(cloudServer.getBehaviour().operations().refreshAll(null));
-		}
+		scheduleRefreshAll(null);
 	}
 
+	/**
+	 * 
+	 * @return true if a refresh is pending or running. False otherwise.
+	 */
 	public synchronized boolean isScheduled() {
-		return this.opToRun != null;
+		return running || hasPendingRequests();
 	}
 
 	/**
@@ -88,12 +116,20 @@ public class RefreshModulesHandler {
 	 * @param module to refresh
 	 */
 	public synchronized void scheduleRefreshAll(IModule module) {
-		if (cloudServer == null) {
+		if (!isServerResolved()) {
 			CloudFoundryPlugin.logError(NO_SERVER_ERROR);
+			return;
 		}
-		else if (this.opToRun == null) {
-			scheduleRefresh(cloudServer.getBehaviour().operations().refreshAll(module));
+		refreshAllPending = true;
+		if (module != null) {
+			// Only one module is refreshed together with all modules. The
+			// instances of any other module are still refreshed
+			if (refreshAllModule != null && !refreshAllModule.equals(module)) {
+				refreshApplicationModules.add(refreshAllModule);
+			}
+			refreshAllModule = module;
 		}
+		schedule();
 	}
 
 	/**
@@ -103,11 +139,15 @@ public class RefreshModulesHandler {
 	 * @param module to refresh
 	 */
 	public synchronized void schedulesRefreshApplication(IModule module) {
-		if (cloudServer == null) {
+		if (!isServerResolved()) {
 			CloudFoundryPlugin.logError(NO_SERVER_ERROR);
 		}
-		else if (this.opToRun == null) {
-			scheduleRefresh(cloudServer.getBehaviour().operations().refreshApplication(module));
+		else if (module == null) {
+			CloudFoundryPlugin.logError(NO_MODULE_ERROR);
+		}
+		else {
+			refreshApplicationModules.add(module);
+			schedule();
 		}
 	}
 
@@ -120,24 +160,93 @@ public class RefreshModulesHandler {
 	 * @param module
 	 */
 	public synchronized void scheduleRefreshForDeploymentChange(IModule module) {
-		if (cloudServer == null) {
+		if (!isServerResolved()) {
 			CloudFoundryPlugin.logError(NO_SERVER_ERROR);
 		}
-		else if (this.opToRun == null) {
-			scheduleRefresh(cloudServer.getBehaviour().operations().refreshForDeploymentChange(module));
+		else if (module == null) {
+			CloudFoundryPlugin.logError(NO_MODULE_ERROR);
 		}
-	}
-
-	private synchronized void scheduleRefresh(BehaviourOperation opToRun) {
-		if (this.opToRun == null) {
-			this.opToRun = opToRun;
+		else {
+			deploymentChangeModules.add(module);
 			schedule();
 		}
 	}
 
+	/**
+	 * 
+	 * @return true if the Cloud server of this handler is resolved, and
+	 * refreshes can be scheduled. False otherwise.
+	 */
+	protected boolean isServerResolved() {
+		return cloudServer != null;
+	}
+
+	/**
+	 * 
+	 * @return operations that perform the refreshes in the Cloud server, or
+	 * null if the server behaviour is not available.
+	 */
+	protected CloudBehaviourOperations getOperations() {
+		CloudFoundryServerBehaviour behaviour = cloudServer != null ? cloudServer.getBehaviour() : null;
+		return behaviour != null ? behaviour.operations() : null;
+	}
+
+	private boolean hasPendingRequests() {
+		return refreshAllPending || !refreshApplicationModules.isEmpty() || !deploymentChangeModules.isEmpty();
+	}
+
+	/**
+	 * Schedules the refresh job, unless it is running, in which case it is
+	 * scheduled again once it completes. Scheduling a job that is already
+	 * waiting to run has no effect. Must be called while holding the handler
+	 * lock.
+	 */
 	private void schedule() {
-		refreshJob.setSystem(false);
-		refreshJob.schedule();
+		if (!running) {
+			// The job is a user-visible (non-system) job by default. It must
+			// not be changed here, as the job may already be waiting to run
+			refreshJob.schedule();
+		}
+	}
+
+	/**
+	 * Takes all pending requests, and merges them into the operations to run.
+	 * Must be called while holding the handler lock.
+	 * @return operations to run, in order. May be empty.
+	 */
+	private List<BehaviourOperation> takePendingOperations() {
+		List<BehaviourOperation> ops = new ArrayList<BehaviourOperation>();
+		CloudBehaviourOperations operations = getOperations();
+		if (operations == null) {
+			CloudFoundryPlugin.logError(NO_SERVER_ERROR);
+		}
+		else {
+			if (refreshAllPending) {
+				ops.add(operations.refreshAll(refreshAllModule));
+
+				// Applications of all modules are refreshed, so other modules
+				// only need their instances refreshed
+				refreshApplicationModules.remove(refreshAllModule);
+				if (!refreshApplicationModules.isEmpty() || !deploymentChangeModules.isEmpty()) {
+					ops.add(operations.refreshInstances(new ArrayList<IModule>(refreshApplicationModules),
+							new ArrayList<IModule>(deploymentChangeModules)));
+				}
+			}
+			else {
+				for (IModule module : refreshApplicationModules) {
+					ops.add(operations.refreshApplication(module));
+				}
+				for (IModule module : deploymentChangeModules) {
+					ops.add(operations.refreshForDeploymentChange(module));
+				}
+			}
+		}
+
+		refreshAllPending = false;
+		refreshAllModule = null;
+		refreshApplicationModules.clear();
+		deploymentChangeModules.clear();
+		return ops;
 	}
 
 	private class BehaviourRefreshJob extends Job {
@@ -148,41 +257,66 @@ public class RefreshModulesHandler {
 
 		@Override
 		public IStatus run(IProgressMonitor monitor) {
+			List<BehaviourOperation> ops;
+			synchronized (RefreshModulesHandler.this) {
+				running = true;
+				ops = takePendingOperations();
+			}
 			try {
-				CloudFoundryServer cloudServer = null;
-				IModule module = opToRun.getModule();
-
-				try {
-					cloudServer = opToRun.getBehaviour() != null ? opToRun.getBehaviour().getCloudFoundryServer()
-							: null;
+				for (BehaviourOperation opToRun : ops) {
+					if (monitor.isCanceled()) {
+						return Status.CANCEL_STATUS;
+					}
+					runOperation(opToRun, monitor);
 				}
-				catch (CoreException ce) {
-					CloudFoundryPlugin.logError(ce);
+			}
+			finally {
+				synchronized (RefreshModulesHandler.this) {
+					running = false;
+					// Perform any requests received while running
+					if (hasPendingRequests()) {
+						schedule();
+					}
 				}
+			}
 
-				try {
-					opToRun.run(monitor);
+			return Status.OK_STATUS;
+		}
+
+		private void runOperation(BehaviourOperation opToRun, IProgressMonitor monitor) {
+			CloudFoundryServer cloudServer = null;
+			IModule module = opToRun.getModule();
+
+			try {
+				cloudServer = opToRun.getBehaviour() != null ? opToRun.getBehaviour().getCloudFoundryServer() : null;
+			}
+			catch (CoreException ce) {
+				CloudFoundryPlugin.logError(ce);
+			}
+
+			// Refresh requests yield to interactive and publish requests
+			// to the same server
+			Priority priority = RequestScheduler.setCurrentPriority(Priority.BACKGROUND);
+			try {
+				opToRun.run(monitor);
+			}
+			catch (Throwable t) {
+				// Cloud server must not be null as it's the source of
+				// the event
+				if (cloudServer == null) {
+					CloudFoundryPlugin.logError(NLS.bind(Messages.RefreshModulesHandler_EVENT_CLOUD_SERVER_NULL,
+							opToRun.getClass()));
 				}
-				catch (Throwable t) {
-					// Cloud server must not be null as it's the source of
-					// the event
-					if (cloudServer == null) {
-						CloudFoundryPlugin.logError(NLS.bind(Messages.RefreshModulesHandler_EVENT_CLOUD_SERVER_NULL,
-								opToRun.getClass()));
-					}
-					else {
-						ServerEventHandler.getDefault().fireError(cloudServer, module,
-								CloudFoundryPlugin.getErrorStatus(Messages.RefreshModulesHandler_REFRESH_FAILURE, t));
+				else {
+					ServerEventHandler.getDefault().fireError(cloudServer, module,
+							CloudFoundryPlugin.getErrorStatus(Messages.RefreshModulesHandler_REFRESH_FAILURE, t));
 
-					}
 				}
 			}
 			finally {
-				opToRun = null;
+				RequestScheduler.setCurrentPriority(priority);
 			}
-
-			return Status.OK_STATUS;
 		}
 	}
 
-}
\ No newline at end of file
+}
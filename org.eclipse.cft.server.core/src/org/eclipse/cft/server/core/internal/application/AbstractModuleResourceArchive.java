@@ -24,11 +24,13 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.Channels;
 import java.util.ArrayList;
 import java.util.List;
 
 import org.cloudfoundry.client.lib.archive.AbstractApplicationArchiveEntry;
 import org.cloudfoundry.client.lib.archive.ApplicationArchive;
+import org.eclipse.cft.server.core.internal.CloudFoundryPlugin;
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.runtime.IPath;
 import org.eclipse.wst.server.core.IModule;
@@ -165,6 +167,8 @@ public abstract class AbstractModuleResourceArchive implements ApplicationArchiv
 
 		protected final File file;
 
+		private volatile boolean digested;
+
 		public ModuleFileEntryAdapter(IModuleFile moduleResource) {
 			super(moduleResource);
 			file = getFile(moduleResource);
@@ -193,10 +197,46 @@ public abstract class AbstractModuleResourceArchive implements ApplicationArchiv
 			return file != null && file.exists();
 		}
 
+		@Override
+		public byte[] getSha1Digest() {
+			computeDigest();
+			return super.getSha1Digest();
+		}
+
+		@Override
+		public long getSize() {
+			computeDigest();
+			return super.getSize();
+		}
+
+		/**
+		 * Computes the sha1 code and size directly from the file the first
+		 * time either is requested, reusing the sha1 code of files with the
+		 * same content that were already hashed for any application. If the
+		 * file cannot be read this way, the values are computed from the entry
+		 * input stream instead.
+		 */
+		protected void computeDigest() {
+			if (digested || !canComputeResourceEntry()) {
+				return;
+			}
+			try {
+				long size = file.length();
+				setSha1Digest(CloudFoundryPlugin.getContentDigestCache().getSha1(file));
+				setSize(size);
+				digested = true;
+			}
+			catch (IOException e) {
+				CloudFoundryPlugin.logError(e);
+			}
+		}
+
 		public InputStream getInputStream() throws IOException {
 
 			if (canComputeResourceEntry()) {
-				return new FileInputStream(file);
+				// Read through the file channel so content is transferred
+				// directly into the buffer of the caller
+				return Channels.newInputStream(new FileInputStream(file).getChannel());
 			}
 
 			return null;
@@ -0,0 +1,390 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Pivotal Software, Inc. 
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution. 
+ * 
+ * The Eclipse Public License is available at 
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * and the Apache License v2.0 is available at 
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * You may elect to redistribute this code under either of these licenses.
+ *  
+ *  Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+ ********************************************************************************/
+package org.eclipse.cft.server.core.internal.application;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.cloudfoundry.client.lib.archive.ApplicationArchive;
+import org.cloudfoundry.client.lib.archive.ApplicationArchive.Entry;
+import org.eclipse.cft.server.core.internal.CloudErrorUtil;
+import org.eclipse.cft.server.core.internal.CloudFoundryPlugin;
+import org.eclipse.cft.server.core.internal.ContentDigestCache;
+import org.eclipse.cft.server.core.internal.Messages;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.SubMonitor;
+import org.eclipse.osgi.util.NLS;
+
+/**
+ * Computes the sha1 codes and sizes of all the file entries in an application
+ * archive in parallel, prior to the Cloud Foundry client requesting a resource
+ * match from the server. The client would otherwise compute these lazily, one
+ * entry at a time, on the thread that uploads the application.
+ * <p/>
+ * Work is performed in a shared fork/join pool with a bounded number of
+ * threads. Each thread reuses its own {@link MessageDigest} and direct read
+ * buffer. Progress and cancellation are handled on the calling thread, as
+ * progress monitors are not thread safe.
+ */
+public class ApplicationArchiveDigester {
+
+	private static final String SHA1 = "SHA-1"; //$NON-NLS-1$
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * Maximum number of threads used to compute digests.
+	 */
+	private static final int MAX_PARALLELISM = 4;
+
+	/**
+	 * Number of entries processed by a single fork/join task before it is
+	 * split further.
+	 */
+	private static final int ENTRIES_PER_TASK = 32;
+
+	private static final long PROGRESS_POLL_INTERVAL = 200;
+
+	private static ForkJoinPool pool;
+
+	private static final ThreadLocal<MessageDigest> DIGEST = new ThreadLocal<MessageDigest>() {
+		@Override
+		protected MessageDigest initialValue() {
+			try {
+				return MessageDigest.getInstance(SHA1);
+			}
+			catch (NoSuchAlgorithmException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+	};
+
+	private static final ThreadLocal<ByteBuffer> BUFFER = new ThreadLocal<ByteBuffer>() {
+		@Override
+		protected ByteBuffer initialValue() {
+			return ByteBuffer.allocateDirect(BUFFER_SIZE);
+		}
+	};
+
+	private ApplicationArchiveDigester() {
+		// Util class
+	}
+
+	protected static synchronized ForkJoinPool getPool() {
+		if (pool == null) {
+			pool = new ForkJoinPool(Math.max(1, Math.min(MAX_PARALLELISM, Runtime.getRuntime().availableProcessors())));
+		}
+		return pool;
+	}
+
+	/**
+	 * Computes the sha1 codes and sizes of all file entries in the given
+	 * archive. Entries that already have cached values are not read again.
+	 * @param archive
+	 * @param monitor
+	 * @throws CoreException if a digest could not be computed
+	 * @throws OperationCanceledException if the monitor is canceled
+	 */
+	public static void computeDigests(ApplicationArchive archive, IProgressMonitor monitor) throws CoreException,
+			OperationCanceledException {
+		start(archive).join(monitor);
+	}
+
+	/**
+	 * Starts computing the sha1 codes and sizes of all file entries in the
+	 * given archive in the background, and returns without waiting for the
+	 * computation to complete. This allows other work, like remote requests,
+	 * to overlap with computing digests.
+	 * @param archive
+	 * @return non-null computation that can be joined once digests are
+	 * required.
+	 */
+	public static DigestComputation start(ApplicationArchive archive) {
+		List<Entry> fileEntries = new ArrayList<Entry>();
+		if (archive != null && archive.getEntries() != null) {
+			for (Entry entry : archive.getEntries()) {
+				if (!entry.isDirectory()) {
+					fileEntries.add(entry);
+				}
+			}
+		}
+		DigestComputation computation = new DigestComputation(archive, fileEntries);
+		computation.start();
+		return computation;
+	}
+
+	/**
+	 * Digest computation for the file entries of an archive, running in the
+	 * background.
+	 */
+	public static class DigestComputation {
+
+		private final ApplicationArchive archive;
+
+		private final List<Entry> entries;
+
+		private final AtomicBoolean canceled = new AtomicBoolean(false);
+
+		private final AtomicInteger completed = new AtomicInteger(0);
+
+		private final AtomicLong finishTime = new AtomicLong(-1);
+
+		private long startTime;
+
+		private long waitTime;
+
+		private ForkJoinTask<Void> task;
+
+		DigestComputation(ApplicationArchive archive, List<Entry> entries) {
+			this.archive = archive;
+			this.entries = entries;
+		}
+
+		void start() {
+			startTime = System.currentTimeMillis();
+			if (entries.isEmpty()) {
+				finishTime.set(startTime);
+				return;
+			}
+			task = getPool().submit(new RootDigestTask(entries, canceled, completed, finishTime));
+		}
+
+		public ApplicationArchive getArchive() {
+			return archive;
+		}
+
+		/**
+		 * Waits for all digests to be computed, reporting progress to the
+		 * given monitor.
+		 * @param monitor
+		 * @throws CoreException if a digest could not be computed
+		 * @throws OperationCanceledException if the monitor is canceled, or
+		 * if the computation was canceled through {@link #cancel()}
+		 */
+		public void join(IProgressMonitor monitor) throws CoreException, OperationCanceledException {
+			if (task == null) {
+				return;
+			}
+			long joinTime = System.currentTimeMillis();
+
+			SubMonitor progress = SubMonitor.convert(monitor, entries.size());
+			progress.subTask(NLS.bind(Messages.ApplicationArchiveDigester_COMPUTING_DIGESTS, entries.size()));
+
+			int reported = 0;
+			try {
+				while (true) {
+					try {
+						task.get(PROGRESS_POLL_INTERVAL, TimeUnit.MILLISECONDS);
+						break;
+					}
+					catch (TimeoutException e) {
+						// Still running. Report progress and check for cancel
+					}
+					finally {
+						int done = completed.get();
+						progress.worked(done - reported);
+						reported = done;
+					}
+					if (progress.isCanceled()) {
+						cancel();
+						throw new OperationCanceledException(NLS.bind(Messages.OPERATION_CANCELED,
+								Messages.ApplicationArchiveDigester_COMPUTING_DIGESTS_LABEL));
+					}
+				}
+			}
+			catch (InterruptedException e) {
+				cancel();
+				Thread.currentThread().interrupt();
+				throw new OperationCanceledException(NLS.bind(Messages.OPERATION_CANCELED,
+						Messages.ApplicationArchiveDigester_COMPUTING_DIGESTS_LABEL));
+			}
+			catch (CancellationException e) {
+				// Already canceled through cancel()
+				throw new OperationCanceledException(NLS.bind(Messages.OPERATION_CANCELED,
+						Messages.ApplicationArchiveDigester_COMPUTING_DIGESTS_LABEL));
+			}
+			catch (ExecutionException e) {
+				Throwable cause = e.getCause() != null ? e.getCause() : e;
+				throw CloudErrorUtil.toCoreException(cause);
+			}
+			finally {
+				waitTime += System.currentTimeMillis() - joinTime;
+				progress.done();
+			}
+
+			ContentDigestCache cache = CloudFoundryPlugin.getContentDigestCache();
+			CloudFoundryPlugin.trace("Content digest cache - hits: " + cache.getHitCount() + ", misses: " //$NON-NLS-1$ //$NON-NLS-2$
+					+ cache.getMissCount());
+		}
+
+		/**
+		 * Stops computing digests. Entries that have not been processed yet
+		 * are skipped.
+		 */
+		public void cancel() {
+			canceled.set(true);
+			if (task != null) {
+				task.cancel(true);
+			}
+		}
+
+		/**
+		 * 
+		 * @return time in milliseconds taken to compute all digests, or -1 if
+		 * the computation has not completed
+		 */
+		public long getElapsedTime() {
+			long finish = finishTime.get();
+			return finish < 0 ? -1 : finish - startTime;
+		}
+
+		/**
+		 * 
+		 * @return time in milliseconds spent waiting for the computation in
+		 * {@link #join(IProgressMonitor)}
+		 */
+		public long getWaitTime() {
+			return waitTime;
+		}
+	}
+
+	/**
+	 * Computes the sha1 code of the given file using the digest and direct
+	 * buffer of the current thread.
+	 * @param file must not be null
+	 * @return sha1 code of the file.
+	 * @throws IOException if the file cannot be read
+	 */
+	public static byte[] digest(File file) throws IOException {
+		MessageDigest digest = DIGEST.get();
+		ByteBuffer buffer = BUFFER.get();
+		digest.reset();
+
+		FileInputStream input = new FileInputStream(file);
+		try {
+			FileChannel channel = input.getChannel();
+			buffer.clear();
+			while (channel.read(buffer) != -1) {
+				buffer.flip();
+				digest.update(buffer);
+				buffer.clear();
+			}
+		}
+		finally {
+			input.close();
+		}
+		return digest.digest();
+	}
+
+	/**
+	 * Computes all digests and records the time at which the computation
+	 * finished.
+	 */
+	private static class RootDigestTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final List<Entry> entries;
+
+		private final AtomicBoolean canceled;
+
+		private final AtomicInteger completed;
+
+		private final AtomicLong finishTime;
+
+		RootDigestTask(List<Entry> entries, AtomicBoolean canceled, AtomicInteger completed, AtomicLong finishTime) {
+			this.entries = entries;
+			this.canceled = canceled;
+			this.completed = completed;
+			this.finishTime = finishTime;
+		}
+
+		@Override
+		protected void compute() {
+			try {
+				new DigestTask(entries, 0, entries.size(), canceled, completed).invoke();
+			}
+			finally {
+				finishTime.set(System.currentTimeMillis());
+			}
+		}
+	}
+
+	private static class DigestTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final List<Entry> entries;
+
+		private final int start;
+
+		private final int end;
+
+		private final AtomicBoolean canceled;
+
+		private final AtomicInteger completed;
+
+		DigestTask(List<Entry> entries, int start, int end, AtomicBoolean canceled, AtomicInteger completed) {
+			this.entries = entries;
+			this.start = start;
+			this.end = end;
+			this.canceled = canceled;
+			this.completed = completed;
+		}
+
+		@Override
+		protected void compute() {
+			if (end - start > ENTRIES_PER_TASK) {
+				int middle = (start + end) >>> 1;
+				invokeAll(new DigestTask(entries, start, middle, canceled, completed), new DigestTask(entries,
+						middle, end, canceled, completed));
+				return;
+			}
+			for (int i = start; i < end && !canceled.get(); i++) {
+				Entry entry = entries.get(i);
+				// Entries compute and retain their sha1 and size when first
+				// requested, so the client will not read the resource again.
+				entry.getSha1Digest();
+				entry.getSize();
+				completed.incrementAndGet();
+			}
+		}
+	}
+}
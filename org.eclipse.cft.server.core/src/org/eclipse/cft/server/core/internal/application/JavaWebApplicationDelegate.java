@@ -40,7 +40,6 @@ import org.eclipse.cft.server.core.internal.CloudFoundryConstants;
 import org.eclipse.cft.server.core.internal.CloudFoundryPlugin;
 import org.eclipse.cft.server.core.internal.CloudFoundryProjectUtil;
 import org.eclipse.cft.server.core.internal.CloudFoundryServer;
-import org.eclipse.cft.server.core.internal.CloudUtil;
 import org.eclipse.cft.server.core.internal.Messages;
 import org.eclipse.cft.server.core.internal.client.CloudFoundryApplicationModule;
 import org.eclipse.core.resources.IFile;
@@ -58,7 +57,6 @@ import org.eclipse.jdt.core.JavaCore;
 import org.eclipse.jdt.core.JavaModelException;
 import org.eclipse.osgi.util.NLS;
 import org.eclipse.wst.server.core.IModule;
-import org.eclipse.wst.server.core.internal.Server;
 import org.eclipse.wst.server.core.model.IModuleResource;
 
 /**
@@ -182,44 +180,23 @@ public class JavaWebApplicationDelegate extends AbstractApplicationDelegate {
 	}
 
 	public boolean providesApplicationArchive(IModule module) {
-		// Returns a default WAR archive package
+		// Returns the manifest.yml archive, if any. Otherwise no archive is
+		// returned and the framework publishes the module resources directly
 		return true;
 	}
 
-	/*
-	 * (non-Javadoc)
-	 * 
-	 * @see org.eclipse.cft.server.core.internal.application.
-	 * AbstractApplicationDelegate
-	 * #getApplicationArchive(org.eclipse.cft.internal
-	 * .server.core.client.CloudFoundryApplicationModule,
-	 * org.eclipse.cft.server.core.internal.CloudFoundryServer,
-	 * org.eclipse.wst.server.core.model.IModuleResource[],
-	 * org.eclipse.core.runtime.IProgressMonitor)
+	/**
+	 * Returns the archive file specified in the application's manifest.yml
+	 * "path:" property, if one is set. Otherwise returns null, which tells the
+	 * framework to publish an exploded, resource-matched archive of the module
+	 * resources, and the jars of any child modules, so that only changed
+	 * content is hashed and uploaded.
 	 */
 	public ApplicationArchive getApplicationArchive(CloudFoundryApplicationModule module,
 			CloudFoundryServer cloudServer, IModuleResource[] moduleResources, IProgressMonitor monitor)
 			throws CoreException {
 
-		ApplicationArchive manifestArchive = getArchiveFromManifest(module, cloudServer);
-		if (manifestArchive != null) {
-			return manifestArchive;
-		}
-		try {
-			File warFile = CloudUtil.createWarFile(new IModule[] { module.getLocalModule() },
-					(Server) cloudServer.getServer(), monitor);
-
-			CloudFoundryPlugin.trace("War file " + warFile.getName() + " created"); //$NON-NLS-1$ //$NON-NLS-2$
-
-			return new CloudZipApplicationArchive(new ZipFile(warFile));
-		}
-		catch (Exception e) {
-			throw new CoreException(new Status(IStatus.ERROR, CloudFoundryPlugin.PLUGIN_ID,
-					"Failed to create war file. " + //$NON-NLS-1$
-							"\nApplication: " + module.getApplication().getName() + //$NON-NLS-1$
-							"\nModule: " + module.getName() + //$NON-NLS-1$
-							"\nException: " + e.getMessage(), e)); //$NON-NLS-1$
-		}
+		return getArchiveFromManifest(module, cloudServer);
 	}
 
 	@Override
@@ -0,0 +1,200 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Pivotal Software, Inc. 
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution. 
+ * 
+ * The Eclipse Public License is available at 
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * and the Apache License v2.0 is available at 
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * You may elect to redistribute this code under either of these licenses.
+ *  
+ *  Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+ ********************************************************************************/
+package org.eclipse.cft.server.core.internal.client;
+
+import java.util.Date;
+
+import org.cloudfoundry.client.lib.CloudFoundryOperations;
+import org.cloudfoundry.client.lib.CloudOperationException;
+import org.eclipse.cft.server.core.internal.CloudErrorUtil;
+import org.eclipse.cft.server.core.internal.Messages;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.osgi.util.NLS;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+
+/**
+ * Caches the OAuth access token of a server, so that components that send
+ * their own authorized requests, like SSH support, do not log in to UAA for
+ * every request or every debug launch.
+ * <p/>
+ * The token is obtained through the session client of the server
+ * behaviour. Shortly before the token expires, it is refreshed in the
+ * background, but only if it was used since it was last obtained, so idle
+ * servers are not kept logged in.
+ */
+public class AccessTokenManager implements AuthorizationHeaderProvider {
+
+	/**
+	 * Time in milliseconds before expiry at which a token is refreshed.
+	 */
+	public static final long REFRESH_MARGIN = 60 * 1000;
+
+	private final CloudFoundryServerBehaviour behaviour;
+
+	private OAuth2AccessToken token;
+
+	private boolean usedSinceRefresh;
+
+	private RefreshJob refreshJob;
+
+	public AccessTokenManager(CloudFoundryServerBehaviour behaviour) {
+		this.behaviour = behaviour;
+	}
+
+	/**
+	 * Returns the cached access token, or obtains a new one if none is
+	 * cached or the cached token is about to expire.
+	 * @param monitor
+	 * @return non-null access token
+	 * @throws CoreException if failed to obtain a token
+	 */
+	public synchronized OAuth2AccessToken getAccessToken(IProgressMonitor monitor) throws CoreException {
+		usedSinceRefresh = true;
+		if (!isValid(token, System.currentTimeMillis())) {
+			refresh(monitor);
+		}
+		return token;
+	}
+
+	/**
+	 * Obtains the current token as an HTTP authorization header value. Used
+	 * by REST templates that authorize their own requests.
+	 * @throws CloudOperationException if failed to obtain a token
+	 */
+	public String getAuthorizationHeader() {
+		try {
+			OAuth2AccessToken accessToken = getAccessToken(null);
+			return accessToken.getTokenType() + " " + accessToken.getValue(); //$NON-NLS-1$
+		}
+		catch (CoreException e) {
+			throw new CloudOperationException(e);
+		}
+	}
+
+	/**
+	 * Discards the cached token, for example, when the credentials of the
+	 * server change.
+	 */
+	public synchronized void invalidate() {
+		token = null;
+		if (refreshJob != null) {
+			refreshJob.cancel();
+			refreshJob = null;
+		}
+	}
+
+	/**
+	 * Must be called while synchronized on this manager.
+	 */
+	protected void refresh(IProgressMonitor monitor) throws CoreException {
+		OAuth2AccessToken newToken = login(monitor);
+		if (newToken == null) {
+			throw CloudErrorUtil.toCoreException(Messages.ClientRequest_NO_TOKEN);
+		}
+		token = newToken;
+		usedSinceRefresh = false;
+		scheduleRefresh(newToken);
+	}
+
+	/**
+	 * Logs in to the server to obtain a new token.
+	 * @param monitor
+	 * @return new token, or null if none was obtained
+	 * @throws CoreException if failed to log in
+	 */
+	protected OAuth2AccessToken login(IProgressMonitor monitor) throws CoreException {
+		CloudFoundryOperations client = behaviour.getClient(monitor);
+		try {
+			return client.login();
+		}
+		catch (RuntimeException e) {
+			throw CloudErrorUtil.checkServerCommunicationError(e);
+		}
+	}
+
+	/**
+	 * 
+	 * @return name of the server, shown in the label of the refresh job
+	 */
+	protected String getServerName() {
+		return behaviour.getServer().getName();
+	}
+
+	protected void scheduleRefresh(OAuth2AccessToken accessToken) {
+		if (refreshJob != null) {
+			refreshJob.cancel();
+			refreshJob = null;
+		}
+		Date expiration = accessToken.getExpiration();
+		if (expiration == null) {
+			return;
+		}
+		long delay = expiration.getTime() - REFRESH_MARGIN - System.currentTimeMillis();
+		if (delay > 0) {
+			refreshJob = new RefreshJob();
+			refreshJob.schedule(delay);
+		}
+	}
+
+	private static boolean isValid(OAuth2AccessToken accessToken, long now) {
+		if (accessToken == null || accessToken.getValue() == null) {
+			return false;
+		}
+		Date expiration = accessToken.getExpiration();
+		return expiration == null || expiration.getTime() - REFRESH_MARGIN > now;
+	}
+
+	private class RefreshJob extends Job {
+
+		RefreshJob() {
+			super(NLS.bind(Messages.AccessTokenManager_REFRESH_TOKEN_JOB, getServerName()));
+			setSystem(true);
+		}
+
+		@Override
+		protected IStatus run(IProgressMonitor monitor) {
+			synchronized (AccessTokenManager.this) {
+				if (refreshJob != this) {
+					return Status.CANCEL_STATUS;
+				}
+				refreshJob = null;
+				if (!usedSinceRefresh) {
+					// Not used since the token was obtained. Let it expire,
+					// and obtain a new one when next needed.
+					return Status.OK_STATUS;
+				}
+				try {
+					refresh(monitor);
+				}
+				catch (CoreException e) {
+					// Discard the token, so that it is obtained again, and
+					// the error reported, when next needed
+					token = null;
+				}
+			}
+			return Status.OK_STATUS;
+		}
+	}
+}
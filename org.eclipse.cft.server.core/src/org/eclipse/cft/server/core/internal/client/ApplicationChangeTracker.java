@@ -0,0 +1,188 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Pivotal Software, Inc. 
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution. 
+ * 
+ * The Eclipse Public License is available at 
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * and the Apache License v2.0 is available at 
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * You may elect to redistribute this code under either of these licenses.
+ *  
+ *  Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+ ********************************************************************************/
+package org.eclipse.cft.server.core.internal.client;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.cloudfoundry.client.lib.domain.CloudApplication;
+import org.cloudfoundry.client.lib.domain.CloudEntity.Meta;
+
+/**
+ * Remembers a version of each application of a server, keyed by application
+ * GUID, as of the last completed full refresh, so that a subsequent refresh
+ * only has to apply applications that were added, changed or removed since.
+ * <p/>
+ * The version of an application is derived from its <code>updated_at</code>
+ * and <code>package_updated_at</code> timestamps, as well as from its routes
+ * and service bindings, which the Cloud Controller changes without updating
+ * the application itself.
+ * <p/>
+ * The tracker should be {@link #reset()} whenever the modules of the server
+ * may no longer reflect the tracked versions, for example when the client
+ * is reset, so that the next refresh applies all applications.
+ */
+public class ApplicationChangeTracker {
+
+	private Map<UUID, String> versions = Collections.emptyMap();
+
+	/**
+	 * Incremented on every reset, so that refreshes that were running while
+	 * the tracker was reset are not committed.
+	 */
+	private long generation;
+
+	/**
+	 * Starts tracking a new full refresh. Versions seen by the refresh only
+	 * replace the current ones once the refresh is committed.
+	 * @return non-null refresh
+	 */
+	public synchronized Refresh startRefresh() {
+		return new Refresh(versions, generation);
+	}
+
+	/**
+	 * Forgets all tracked versions, so that all applications are considered
+	 * changed on the next refresh.
+	 */
+	public synchronized void reset() {
+		versions = Collections.emptyMap();
+		generation++;
+	}
+
+	protected synchronized void commit(Refresh refresh) {
+		if (refresh.generation == generation) {
+			versions = refresh.current;
+		}
+	}
+
+	/**
+	 * 
+	 * @param application
+	 * @param packageUpdated <code>package_updated_at</code> of the application,
+	 * or null if not known
+	 * @return version of the application, or null if the application has no
+	 * GUID and therefore cannot be tracked
+	 */
+	public static String getVersion(CloudApplication application, String packageUpdated) {
+		Meta meta = application.getMeta();
+		if (meta == null || meta.getGuid() == null) {
+			return null;
+		}
+		StringBuilder version = new StringBuilder();
+		version.append(meta.getUpdated() != null ? meta.getUpdated().getTime() : 0);
+		version.append('|').append(packageUpdated);
+		version.append('|').append(application.getName());
+		version.append('|').append(application.getState());
+		version.append('|').append(application.getInstances());
+		version.append('|').append(application.getMemory());
+		appendAll(version, application.getUris());
+		appendAll(version, application.getServices());
+		return version.toString();
+	}
+
+	private static void appendAll(StringBuilder version, List<String> values) {
+		version.append('|');
+		if (values != null) {
+			for (String value : values) {
+				version.append(value).append(',');
+			}
+		}
+	}
+
+	/**
+	 * Versions of the applications seen by a single full refresh. Not thread
+	 * safe.
+	 */
+	public class Refresh {
+
+		private final Map<UUID, String> previous;
+
+		private final Map<UUID, String> current = new HashMap<UUID, String>();
+
+		private final long generation;
+
+		private int changed;
+
+		protected Refresh(Map<UUID, String> previous, long generation) {
+			this.previous = previous;
+			this.generation = generation;
+		}
+
+		/**
+		 * Records the given application as seen by this refresh.
+		 * @param application
+		 * @param packageUpdated <code>package_updated_at</code> of the
+		 * application, or null if not known
+		 * @return true if the application was added or changed since the
+		 * last committed refresh, or cannot be tracked. False if it is
+		 * unchanged.
+		 */
+		public boolean isChanged(CloudApplication application, String packageUpdated) {
+			String version = getVersion(application, packageUpdated);
+			if (version == null) {
+				changed++;
+				return true;
+			}
+			UUID guid = application.getMeta().getGuid();
+			current.put(guid, version);
+			if (version.equals(previous.get(guid))) {
+				return false;
+			}
+			changed++;
+			return true;
+		}
+
+		/**
+		 * 
+		 * @return number of applications seen so far that were added or
+		 * changed
+		 */
+		public int getChangedCount() {
+			return changed;
+		}
+
+		/**
+		 * 
+		 * @return true if any application of the last committed refresh was
+		 * not seen by this refresh, and therefore was removed.
+		 */
+		public boolean hasRemovals() {
+			for (UUID guid : previous.keySet()) {
+				if (!current.containsKey(guid)) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		/**
+		 * Makes the versions seen by this refresh the current ones. Should
+		 * only be called once all applications were seen and applied.
+		 */
+		public void commit() {
+			ApplicationChangeTracker.this.commit(this);
+		}
+	}
+}
@@ -0,0 +1,316 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Pivotal Software, Inc. 
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution. 
+ * 
+ * The Eclipse Public License is available at 
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * and the Apache License v2.0 is available at 
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * You may elect to redistribute this code under either of these licenses.
+ *  
+ *  Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+ ********************************************************************************/
+package org.eclipse.cft.server.core.internal.client;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.cloudfoundry.client.lib.domain.ApplicationStats;
+import org.cloudfoundry.client.lib.domain.InstancesInfo;
+import org.eclipse.cft.server.core.internal.CloudErrorUtil;
+import org.eclipse.cft.server.core.internal.Messages;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.SubMonitor;
+import org.eclipse.osgi.util.NLS;
+
+/**
+ * Fetches the stats and instances of several applications of a server
+ * concurrently, using a bounded pool of threads per server, rather than
+ * issuing two requests per application one after the other.
+ * <p/>
+ * Requests run with the priority of the calling thread (see
+ * {@link RequestScheduler}). Progress and cancellation are handled on the
+ * calling thread, as progress monitors are not thread safe. If the calling
+ * thread already holds a slot of the server's scheduler, the requests are sent
+ * one after the other on the calling thread instead, as pool threads would
+ * need slots of their own while the caller keeps its slot waiting on them.
+ */
+public class ApplicationInstancesFetcher {
+
+	/**
+	 * Maximum number of concurrent stats and instances requests per server.
+	 */
+	public static final int MAX_CONCURRENT_REQUESTS = 4;
+
+	private static final long PROGRESS_POLL_INTERVAL = 200;
+
+	private static final long IDLE_THREAD_TIMEOUT = 30;
+
+	private final CloudFoundryServerBehaviour behaviour;
+
+	private ThreadPoolExecutor executor;
+
+	private boolean disposed;
+
+	public ApplicationInstancesFetcher(CloudFoundryServerBehaviour behaviour) {
+		this.behaviour = behaviour;
+	}
+
+	/**
+	 * Fetches the stats and instances of the given application modules, and
+	 * updates each module with both once both are available. Modules whose
+	 * application no longer exists are skipped.
+	 * @param appModules modules to update. Null entries are ignored.
+	 * @param monitor
+	 * @return modules that were updated, and the first error that occurred,
+	 * if any. Modules fetched successfully are updated even if fetching
+	 * others failed. Never null.
+	 * @throws OperationCanceledException if the monitor is canceled, or if
+	 * the fetcher is disposed before all modules are fetched
+	 */
+	public Result update(List<CloudFoundryApplicationModule> appModules, IProgressMonitor monitor)
+			throws OperationCanceledException {
+		List<CloudFoundryApplicationModule> toUpdate = new ArrayList<CloudFoundryApplicationModule>();
+		List<Future<ApplicationStats>> stats = new ArrayList<Future<ApplicationStats>>();
+		List<Future<InstancesInfo>> instances = new ArrayList<Future<InstancesInfo>>();
+
+		RequestScheduler.Priority priority = RequestScheduler.getCurrentPriority();
+		boolean inline = isCallerAdmitted();
+		for (CloudFoundryApplicationModule appModule : appModules) {
+			if (appModule == null || appModule.getDeployedApplicationName() == null) {
+				continue;
+			}
+			final String appName = appModule.getDeployedApplicationName();
+			toUpdate.add(appModule);
+			stats.add(schedule(new PriorityCallable<ApplicationStats>(priority) {
+				@Override
+				protected ApplicationStats doCall() throws CoreException {
+					return fetchApplicationStats(appName);
+				}
+			}, inline));
+			instances.add(schedule(new PriorityCallable<InstancesInfo>(priority) {
+				@Override
+				protected InstancesInfo doCall() throws CoreException {
+					return fetchInstancesInfo(appName);
+				}
+			}, inline));
+		}
+
+		SubMonitor progress = SubMonitor.convert(monitor, toUpdate.size());
+		List<CloudFoundryApplicationModule> updated = new ArrayList<CloudFoundryApplicationModule>();
+		CoreException error = null;
+		try {
+			for (int i = 0; i < toUpdate.size(); i++) {
+				CloudFoundryApplicationModule appModule = toUpdate.get(i);
+				String label = NLS.bind(Messages.CloudFoundryServerBehaviour_APP_STATS,
+						appModule.getDeployedApplicationName());
+				progress.subTask(label);
+				try {
+					ApplicationStats appStats = get(stats.get(i), label, progress);
+					InstancesInfo info = get(instances.get(i), label, progress);
+					appModule.setInstancesAndStats(appStats, info);
+					updated.add(appModule);
+				}
+				catch (CoreException e) {
+					// Ignore if it is application not found error. If the
+					// application does not exist anymore, the modules are
+					// updated accordingly on the next refresh
+					if (!CloudErrorUtil.isNotFoundException(e) && error == null) {
+						error = e;
+					}
+				}
+				progress.worked(1);
+			}
+		}
+		catch (OperationCanceledException e) {
+			cancel(stats);
+			cancel(instances);
+			throw e;
+		}
+		finally {
+			progress.done();
+		}
+
+		return new Result(updated, error);
+	}
+
+	/**
+	 * Stops the threads of the pool. Pending fetches are canceled, and fetches
+	 * cannot be performed afterward.
+	 */
+	public synchronized void dispose() {
+		disposed = true;
+		if (executor != null) {
+			// Complete the futures of fetches that had not started, so that
+			// callers waiting on them do not wait forever
+			for (Runnable pending : executor.shutdownNow()) {
+				if (pending instanceof Future<?>) {
+					((Future<?>) pending).cancel(false);
+				}
+			}
+			executor = null;
+		}
+	}
+
+	protected ApplicationStats fetchApplicationStats(String appName) throws CoreException {
+		return behaviour.getApplicationStats(appName, new NullProgressMonitor());
+	}
+
+	protected InstancesInfo fetchInstancesInfo(String appName) throws CoreException {
+		return behaviour.getInstancesInfo(appName, new NullProgressMonitor());
+	}
+
+	/**
+	 * 
+	 * @return true if the calling thread holds a slot of the server's
+	 * {@link RequestScheduler}
+	 */
+	protected boolean isCallerAdmitted() {
+		return behaviour.getRequestScheduler().isAdmitted();
+	}
+
+	private <T> Future<T> schedule(Callable<T> task, boolean inline) {
+		if (inline) {
+			FutureTask<T> future = new FutureTask<T>(task);
+			future.run();
+			return future;
+		}
+		return submit(task);
+	}
+
+	protected synchronized <T> Future<T> submit(Callable<T> task) {
+		if (disposed) {
+			// Do not create a new pool once disposed. The fetch is reported as
+			// canceled.
+			FutureTask<T> future = new FutureTask<T>(task);
+			future.cancel(false);
+			return future;
+		}
+		if (executor == null) {
+			executor = new ThreadPoolExecutor(MAX_CONCURRENT_REQUESTS, MAX_CONCURRENT_REQUESTS, IDLE_THREAD_TIMEOUT,
+					TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+						public Thread newThread(Runnable runnable) {
+							Thread thread = new Thread(runnable, "Cloud Foundry application instances fetcher"); //$NON-NLS-1$
+							thread.setDaemon(true);
+							return thread;
+						}
+					});
+			executor.allowCoreThreadTimeOut(true);
+		}
+		return executor.submit(task);
+	}
+
+	private <T> T get(Future<T> future, String label, IProgressMonitor monitor) throws CoreException {
+		try {
+			while (true) {
+				try {
+					return future.get(PROGRESS_POLL_INTERVAL, TimeUnit.MILLISECONDS);
+				}
+				catch (TimeoutException e) {
+					if (monitor.isCanceled()) {
+						throw new OperationCanceledException(NLS.bind(Messages.OPERATION_CANCELED, label));
+					}
+				}
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new OperationCanceledException(NLS.bind(Messages.OPERATION_CANCELED, label));
+		}
+		catch (CancellationException e) {
+			// Canceled as the fetcher was disposed
+			throw new OperationCanceledException(NLS.bind(Messages.OPERATION_CANCELED, label));
+		}
+		catch (ExecutionException e) {
+			Throwable cause = e.getCause() != null ? e.getCause() : e;
+			if (cause instanceof CoreException) {
+				throw (CoreException) cause;
+			}
+			if (cause instanceof OperationCanceledException) {
+				throw (OperationCanceledException) cause;
+			}
+			throw CloudErrorUtil.toCoreException(cause);
+		}
+	}
+
+	private static void cancel(List<? extends Future<?>> futures) {
+		for (Future<?> future : futures) {
+			future.cancel(true);
+		}
+	}
+
+	public static class Result {
+
+		private final List<CloudFoundryApplicationModule> updated;
+
+		private final CoreException error;
+
+		Result(List<CloudFoundryApplicationModule> updated, CoreException error) {
+			this.updated = updated;
+			this.error = error;
+		}
+
+		/**
+		 * 
+		 * @return modules that were updated. Never null.
+		 */
+		public List<CloudFoundryApplicationModule> getUpdated() {
+			return updated;
+		}
+
+		/**
+		 * 
+		 * @return first error that occurred while fetching, other than
+		 * application not found errors, or null if none occurred.
+		 */
+		public CoreException getError() {
+			return error;
+		}
+	}
+
+	/**
+	 * Runs a request on a pool thread with the priority of the thread that
+	 * submitted it.
+	 */
+	private static abstract class PriorityCallable<T> implements Callable<T> {
+
+		private final RequestScheduler.Priority priority;
+
+		PriorityCallable(RequestScheduler.Priority priority) {
+			this.priority = priority;
+		}
+
+		public T call() throws Exception {
+			RequestScheduler.Priority previous = RequestScheduler.setCurrentPriority(priority);
+			try {
+				return doCall();
+			}
+			finally {
+				RequestScheduler.setCurrentPriority(previous);
+			}
+		}
+
+		protected abstract T doCall() throws CoreException;
+	}
+}
@@ -44,6 +44,12 @@ import org.eclipse.osgi.util.NLS;
  */
 public abstract class BaseClientRequest<T> {
 
+	/**
+	 * Interval in milliseconds at which cancellation is checked while
+	 * waiting for a reattempt
+	 */
+	private static final long CANCEL_POLL_INTERVAL = 100;
+
 	/**
 	 * 
 	 */
@@ -73,6 +79,68 @@ public abstract class BaseClientRequest<T> {
 		SubMonitor subProgress = SubMonitor.convert(monitor);
 		subProgress.subTask(getRequestLabel());
 
+		try {
+			String coalescingKey = getCoalescingKey();
+			if (coalescingKey != null) {
+				return RequestCoalescer.getDefault().run(coalescingKey, this, subProgress);
+			}
+			return runRequest(subProgress);
+		}
+		finally {
+			subProgress.done();
+		}
+
+	}
+
+	/**
+	 * Obtains a client and performs the client operation. If the request has a
+	 * {@link CircuitBreaker}, the request fails immediately while the breaker
+	 * is open, and the outcome of the request is recorded in the breaker. If
+	 * the request has a {@link RequestScheduler}, the request waits until the
+	 * scheduler admits it.
+	 * @param subProgress
+	 * @return result of client operation
+	 * @throws CoreException if failure occurred while attempting to execute the
+	 * client operation.
+	 */
+	T runRequest(SubMonitor subProgress) throws CoreException {
+		CircuitBreaker breaker = getCircuitBreaker();
+		if (breaker == null) {
+			return runWithClient(subProgress);
+		}
+
+		breaker.checkAvailable();
+		try {
+			T result = runWithClient(subProgress);
+			breaker.recordSuccess();
+			return result;
+		}
+		catch (CoreException ce) {
+			breaker.recordFailure(ce);
+			throw ce;
+		}
+		catch (RuntimeException e) {
+			breaker.recordFailure(e);
+			throw e;
+		}
+	}
+
+	private T runWithClient(SubMonitor subProgress) throws CoreException {
+		RequestScheduler scheduler = getScheduler();
+		if (scheduler == null) {
+			return runAdmitted(subProgress);
+		}
+
+		scheduler.acquire(getRequestLabel(), subProgress);
+		try {
+			return runAdmitted(subProgress);
+		}
+		finally {
+			scheduler.release();
+		}
+	}
+
+	private T runAdmitted(SubMonitor subProgress) throws CoreException {
 		CloudFoundryOperations client = getClient(subProgress);
 		if (client == null) {
 			throw CloudErrorUtil.toCoreException(NLS.bind(Messages.ERROR_NO_CLIENT, getRequestLabel()));
@@ -93,10 +161,38 @@ public abstract class BaseClientRequest<T> {
 				throw ce;
 			}
 		}
-		finally {
-			subProgress.done();
-		}
+	}
 
+	/**
+	 * 
+	 * @return breaker that suspends requests while the server cannot be
+	 * reached, or null if the request should always be attempted
+	 */
+	protected CircuitBreaker getCircuitBreaker() {
+		return null;
+	}
+
+	/**
+	 * 
+	 * @return scheduler that admits the request based on the priority of the
+	 * issuing thread, or null if the request should run immediately
+	 */
+	protected RequestScheduler getScheduler() {
+		return null;
+	}
+
+	/**
+	 * Returns a key that identifies this request, its arguments and the server
+	 * it is sent to. Concurrent requests with the same key share a single
+	 * in-flight call and its result (see {@link RequestCoalescer}).
+	 * <p/>
+	 * By default, returns null, meaning the request is always performed on
+	 * its own. Only requests that do not modify anything on the server should
+	 * return a key.
+	 * @return coalescing key, or null if the request should not be coalesced
+	 */
+	protected String getCoalescingKey() {
+		return null;
 	}
 
 	/**
@@ -110,6 +206,21 @@ public abstract class BaseClientRequest<T> {
 	 * overriding {@link #getTotalTimeWait()} and
 	 * {@link #waitOnErrorInterval(Throwable, SubMonitor)}
 	 * <p/>
+	 * The interval returned for an error is the base of an exponential backoff
+	 * defined by {@link #getRetryPolicy()}, and reattempts are limited by the
+	 * {@link RetryBudget} of the server. As the result is returned to the
+	 * calling thread, that thread waits for each reattempt. Waiting ends as
+	 * soon as the request is canceled.
+	 * <p/>
+	 * If the request has a rate limit key, each attempt waits until the
+	 * {@link RateLimiter} allows it. Attempts rejected with 429 Too Many
+	 * Requests are reattempted once the rate limiter allows it again, unless
+	 * the request is not idempotent (see {@link #isIdempotent()}). Like other
+	 * reattempts, they count toward the maximum attempts of the retry policy
+	 * and the retry budget of the server, and the wait imposed by the rate
+	 * limiter counts toward the total wait time. Once a limit is reached, the
+	 * request fails with the 429 error.
+	 * <p/>
 	 * Note that reattempts are only decided based on errors thrown by the
 	 * client invocation, not by results generated by the client invocation.
 	 * @param client client whose operations are invoked. Never null.
@@ -127,6 +238,9 @@ public abstract class BaseClientRequest<T> {
 
 		boolean reattempt = true;
 		long timeLeft = getTotalTimeWait();
+		RetryPolicy policy = getRetryPolicy();
+		String rateLimitKey = getRateLimitKey();
+		int attempts = 0;
 
 		// Either this operation returns a result during the waiting period or
 		// an error occurred, and error
@@ -137,22 +251,46 @@ public abstract class BaseClientRequest<T> {
 			long interval = -1;
 
 			try {
+				if (rateLimitKey != null) {
+					RateLimiter.getDefault().acquire(rateLimitKey, label, subProgress);
+				}
 				return doRun(client, subProgress);
 			}
 			catch (Throwable e) {
 				error = e;
 			}
 
-			interval = waitOnErrorInterval(error, subProgress);
-			timeLeft -= interval;
-			reattempt = !subProgress.isCanceled() && timeLeft >= 0 && interval > 0;
-			if (reattempt) {
+			attempts++;
 
-				try {
-					Thread.sleep(interval);
+			if (rateLimitKey != null && CloudErrorUtil.isTooManyRequestsException(error)) {
+				// Further requests wait until the rate limit allows them. The
+				// reattempt waits for the rate limiter when it is acquired
+				// again.
+				long rateLimitWait = RateLimiter.getDefault().recordRateLimited(rateLimitKey, error);
+				timeLeft -= rateLimitWait;
+				reattempt = isIdempotent() && !subProgress.isCanceled() && attempts < policy.getMaxAttempts()
+						&& timeLeft >= 0 && RetryBudget.getDefault().acquireRetry(getRetryBudgetKey());
+				continue;
+			}
+
+			interval = policy.getInterval(attempts, waitOnErrorInterval(error, subProgress));
+			timeLeft -= interval;
+			reattempt = !subProgress.isCanceled() && timeLeft >= 0 && interval > 0
+					&& RetryBudget.getDefault().acquireRetry(getRetryBudgetKey());
+			long due = System.currentTimeMillis() + interval;
+			long remaining;
+			while (reattempt && (remaining = due - System.currentTimeMillis()) > 0) {
+				if (subProgress.isCanceled()) {
+					reattempt = false;
 				}
-				catch (InterruptedException e) {
-					// Ignore, continue with the next iteration
+				else {
+					try {
+						Thread.sleep(Math.min(remaining, CANCEL_POLL_INTERVAL));
+					}
+					catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						reattempt = false;
+					}
 				}
 			}
 		}
@@ -202,6 +340,47 @@ public abstract class BaseClientRequest<T> {
 		return -1;
 	}
 
+	/**
+	 * 
+	 * @return policy that determines the number of attempts and the interval
+	 * between attempts, based on the interval returned by
+	 * {@link #waitOnErrorInterval(Throwable, SubMonitor)}. Never null.
+	 */
+	protected RetryPolicy getRetryPolicy() {
+		return RetryPolicy.DEFAULT;
+	}
+
+	/**
+	 * 
+	 * @return key identifying the server whose retry budget is used for
+	 * reattempts of this request, or null if reattempts are not limited by a
+	 * budget
+	 */
+	protected String getRetryBudgetKey() {
+		return null;
+	}
+
+	/**
+	 * Whether the request can be sent again after it was rejected because the
+	 * rate limit was exceeded. Requests that create, upload or delete content
+	 * in the server, or that release local resources once they run, should
+	 * return false, so that they fail instead.
+	 * @return true by default
+	 */
+	protected boolean isIdempotent() {
+		return true;
+	}
+
+	/**
+	 * 
+	 * @return key identifying the Cloud Controller URL and user whose API
+	 * rate limit applies to this request, or null if the request is not rate
+	 * limited
+	 */
+	protected String getRateLimitKey() {
+		return null;
+	}
+
 	/**
 	 * Perform the actual client operation. The client is guaranteed to be
 	 * non-null at this stage.
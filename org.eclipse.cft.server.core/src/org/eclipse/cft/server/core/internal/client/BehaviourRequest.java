@@ -36,4 +36,59 @@ abstract class BehaviourRequest<T> extends LocalServerRequest<T> {
 		return this.behaviour.getCloudFoundryServer();
 	}
 
+	@Override
+	protected String getRetryBudgetKey() {
+		try {
+			return behaviour.getCloudFoundryServer().getServer().getId();
+		}
+		catch (CoreException e) {
+			return null;
+		}
+	}
+
+	@Override
+	protected CircuitBreaker getCircuitBreaker() {
+		return behaviour.getCircuitBreaker();
+	}
+
+	@Override
+	protected String getRateLimitKey() {
+		try {
+			CloudFoundryServer cloudServer = behaviour.getCloudFoundryServer();
+			return cloudServer.getUrl() + '|' + cloudServer.getUsername();
+		}
+		catch (CoreException e) {
+			return null;
+		}
+	}
+
+	@Override
+	protected RequestScheduler getScheduler() {
+		return behaviour.getRequestScheduler();
+	}
+
+	/**
+	 * Creates a coalescing key from the server of the behaviour, the request
+	 * label and the given arguments. Read-only requests can use this to
+	 * implement {@link #getCoalescingKey()}.
+	 * @param arguments of the request
+	 * @return coalescing key, or null if the server cannot be resolved
+	 */
+	protected String createCoalescingKey(Object... arguments) {
+		StringBuilder key = new StringBuilder();
+		try {
+			key.append(behaviour.getCloudFoundryServer().getServer().getId());
+		}
+		catch (CoreException e) {
+			return null;
+		}
+		key.append('|');
+		key.append(getRequestLabel());
+		for (Object argument : arguments) {
+			key.append('|');
+			key.append(argument);
+		}
+		return key.toString();
+	}
+
 }
\ No newline at end of file
@@ -0,0 +1,258 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Pivotal Software, Inc. 
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution. 
+ * 
+ * The Eclipse Public License is available at 
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * and the Apache License v2.0 is available at 
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * You may elect to redistribute this code under either of these licenses.
+ *  
+ *  Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+ ********************************************************************************/
+package org.eclipse.cft.server.core.internal.client;
+
+import java.net.URL;
+
+import org.eclipse.cft.server.core.internal.CloudErrorUtil;
+import org.eclipse.cft.server.core.internal.CloudFoundryPlugin;
+import org.eclipse.cft.server.core.internal.CloudFoundryServer;
+import org.eclipse.cft.server.core.internal.CloudServerEvent;
+import org.eclipse.cft.server.core.internal.Messages;
+import org.eclipse.cft.server.core.internal.ServerEventHandler;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.osgi.util.NLS;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestClientException;
+
+/**
+ * Stops client requests from being sent to a server that cannot be reached,
+ * so that requests fail immediately rather than each waiting for connection
+ * or read timeouts.
+ * <p/>
+ * The breaker is {@link State#CLOSED} while the server is reachable. After a
+ * number of consecutive requests fail because the server could not be
+ * reached, it opens, and requests fail fast. Once the open interval has
+ * passed, the next request sets the breaker to {@link State#HALF_OPEN} and
+ * probes the server with a single request to its unauthenticated
+ * <code>/v2/info</code> endpoint, while other requests continue to fail fast.
+ * If the probe succeeds, the breaker closes again. Otherwise it reopens.
+ */
+public class CircuitBreaker {
+
+	public enum State {
+		CLOSED, OPEN, HALF_OPEN
+	}
+
+	/**
+	 * Number of consecutive requests that fail due to an unreachable server
+	 * before the breaker opens.
+	 */
+	public static final int FAILURE_THRESHOLD = 3;
+
+	/**
+	 * Time in milliseconds the breaker stays open before the server is
+	 * probed.
+	 */
+	public static final long OPEN_INTERVAL = 30 * 1000;
+
+	private static final String INFO_PATH = "/v2/info"; //$NON-NLS-1$
+
+	private final CloudFoundryServerBehaviour behaviour;
+
+	private final long openInterval;
+
+	private State state = State.CLOSED;
+
+	private int failures;
+
+	private long openedAt;
+
+	public CircuitBreaker(CloudFoundryServerBehaviour behaviour) {
+		this(behaviour, OPEN_INTERVAL);
+	}
+
+	/**
+	 * 
+	 * @param behaviour
+	 * @param openInterval time in milliseconds the breaker stays open before
+	 * the server is probed
+	 */
+	public CircuitBreaker(CloudFoundryServerBehaviour behaviour, long openInterval) {
+		this.behaviour = behaviour;
+		this.openInterval = openInterval;
+	}
+
+	public synchronized State getState() {
+		return state;
+	}
+
+	/**
+	 * Checks if a request can be sent to the server. If the breaker has been
+	 * open for long enough, this probes the server first.
+	 * @throws CoreException if the breaker is open, or the server could not
+	 * be reached when probed
+	 */
+	public void checkAvailable() throws CoreException {
+		synchronized (this) {
+			if (state == State.CLOSED) {
+				return;
+			}
+			if (state == State.HALF_OPEN || System.currentTimeMillis() - openedAt < openInterval) {
+				throw getUnavailableError();
+			}
+		}
+		if (!setState(State.OPEN, State.HALF_OPEN)) {
+			// Another request is already probing the server, or the probe
+			// already completed
+			checkAvailable();
+			return;
+		}
+
+		if (probe()) {
+			synchronized (this) {
+				failures = 0;
+			}
+			setState(State.HALF_OPEN, State.CLOSED);
+		}
+		else {
+			synchronized (this) {
+				openedAt = System.currentTimeMillis();
+			}
+			setState(State.HALF_OPEN, State.OPEN);
+			throw getUnavailableError();
+		}
+	}
+
+	/**
+	 * Records a request that completed without an error.
+	 */
+	public void recordSuccess() {
+		synchronized (this) {
+			failures = 0;
+		}
+		setState(State.OPEN, State.CLOSED);
+	}
+
+	/**
+	 * Records a request that failed. Only errors due to the server being
+	 * unreachable count towards opening the breaker. Any other error, like an
+	 * HTTP error response, means the server was reached. Canceled requests
+	 * are ignored.
+	 * @param error
+	 */
+	public void recordFailure(Throwable error) {
+		if (error instanceof OperationCanceledException) {
+			return;
+		}
+		if (!CloudErrorUtil.isServerUnreachableError(error)) {
+			recordSuccess();
+			return;
+		}
+		synchronized (this) {
+			failures++;
+			if (failures < FAILURE_THRESHOLD || state != State.CLOSED) {
+				return;
+			}
+			openedAt = System.currentTimeMillis();
+		}
+		setState(State.CLOSED, State.OPEN);
+	}
+
+	/**
+	 * Resets the breaker to closed, for example, when the user explicitly
+	 * connects to the server.
+	 */
+	public void reset() {
+		synchronized (this) {
+			failures = 0;
+		}
+		setState(State.OPEN, State.CLOSED);
+		setState(State.HALF_OPEN, State.CLOSED);
+	}
+
+	/**
+	 * 
+	 * @return true if the server responded to the probe. False if it could
+	 * not be reached.
+	 */
+	protected boolean probe() {
+		try {
+			CloudFoundryServer cloudServer = behaviour.getCloudFoundryServer();
+			URL url = new URL(cloudServer.getUrl());
+			RestUtils.createRestTemplate(CloudFoundryClientFactory.getProxy(url),
+					cloudServer.getSelfSignedCertificate(), false).getForObject(cloudServer.getUrl() + INFO_PATH,
+					String.class);
+			return true;
+		}
+		catch (ResourceAccessException e) {
+			return false;
+		}
+		catch (RestClientException e) {
+			// The server responded, although with an error
+			return true;
+		}
+		catch (Exception e) {
+			// Failed to send the probe. Let the request itself report any
+			// error.
+			CloudFoundryPlugin.logError(e);
+			return true;
+		}
+	}
+
+	protected CoreException getUnavailableError() {
+		String serverName = null;
+		try {
+			serverName = behaviour.getCloudFoundryServer().getUrl();
+		}
+		catch (CoreException e) {
+			// Report without the server URL
+		}
+		long remaining;
+		synchronized (this) {
+			remaining = Math.max(0, openInterval - (System.currentTimeMillis() - openedAt));
+		}
+		return CloudErrorUtil.toCoreException(NLS.bind(Messages.CircuitBreaker_ERROR_SERVER_UNREACHABLE, serverName,
+				(remaining + 999) / 1000));
+	}
+
+	/**
+	 * Changes the state of the breaker if it is in the expected state, and
+	 * notifies listeners of the change.
+	 * @return true if the state was changed
+	 */
+	private boolean setState(State expected, State newState) {
+		synchronized (this) {
+			if (state != expected) {
+				return false;
+			}
+			state = newState;
+		}
+		stateChanged(newState);
+		return true;
+	}
+
+	/**
+	 * Notifies listeners that the state of the breaker changed.
+	 * @param newState
+	 */
+	protected void stateChanged(State newState) {
+		try {
+			ServerEventHandler.getDefault().fireServerEvent(
+					new CloudServerEvent(behaviour.getCloudFoundryServer(),
+							CloudServerEvent.EVENT_SERVER_AVAILABILITY_CHANGED));
+		}
+		catch (CoreException e) {
+			CloudFoundryPlugin.logError(e);
+		}
+	}
+}
@@ -66,26 +66,38 @@ public class ClientRequestFactory {
 
 	public BaseClientRequest<List<CloudRoute>> getRoutes(final String domainName) throws CoreException {
 
-		return new BehaviourRequest<List<CloudRoute>>(NLS.bind(Messages.ROUTES, domainName), behaviour) {
+		BaseClientRequest<List<CloudRoute>> request = new BehaviourRequest<List<CloudRoute>>(NLS.bind(Messages.ROUTES, domainName), behaviour) {
 			@Override
 			protected List<CloudRoute> doRun(CloudFoundryOperations client, SubMonitor progress) throws CoreException {
 				return client.getRoutes(domainName);
 			}
+
+			@Override
+			protected String getCoalescingKey() {
+				return createCoalescingKey(domainName);
+			}
 		};
+		return behaviour.getResponseCache().cached("routes:" + domainName, ResponseCache.ROUTES_TTL, request); //$NON-NLS-1$
 	}
 
 	public BaseClientRequest<?> deleteApplication(final String appName) {
-		return new BehaviourRequest<Void>(NLS.bind(Messages.DELETING_MODULE, appName), behaviour) {
+		BaseClientRequest<?> request = new BehaviourRequest<Void>(NLS.bind(Messages.DELETING_MODULE, appName), behaviour) {
 			@Override
 			protected Void doRun(CloudFoundryOperations client, SubMonitor progress) throws CoreException {
 				client.deleteApplication(appName);
 				return null;
 			}
+
+			@Override
+			protected boolean isIdempotent() {
+				return false;
+			}
 		};
+		return behaviour.getResponseCache().invalidating(request);
 	}
 
 	public BaseClientRequest<?> getUpdateAppUrlsRequest(final String appName, final List<String> urls) {
-		return new AppInStoppedStateAwareRequest<Void>(
+		BaseClientRequest<?> request = new AppInStoppedStateAwareRequest<Void>(
 				NLS.bind(Messages.CloudFoundryServerBehaviour_UPDATE_APP_URLS, appName), behaviour) {
 			@Override
 			protected Void doRun(CloudFoundryOperations client, SubMonitor progress) throws CoreException {
@@ -114,6 +126,7 @@ public class ClientRequestFactory {
 				return null;
 			}
 		};
+		return behaviour.getResponseCache().invalidating(request);
 	}
 
 	public BaseClientRequest<?> getUpdateServicesRequest(final String appName, final List<String> services) {
@@ -153,7 +166,7 @@ public class ClientRequestFactory {
 	}
 
 	public BaseClientRequest<List<CloudService>> getDeleteServicesRequest(final List<String> services) {
-		return new BehaviourRequest<List<CloudService>>(Messages.CloudFoundryServerBehaviour_DELETE_SERVICES,
+		BaseClientRequest<List<CloudService>> request = new BehaviourRequest<List<CloudService>>(Messages.CloudFoundryServerBehaviour_DELETE_SERVICES,
 				behaviour) {
 			@Override
 			protected List<CloudService> doRun(CloudFoundryOperations client, SubMonitor progress)
@@ -225,11 +238,17 @@ public class ClientRequestFactory {
 				}
 				return client.getServices();
 			}
+
+			@Override
+			protected boolean isIdempotent() {
+				return false;
+			}
 		};
+		return behaviour.getResponseCache().invalidating(request);
 	}
 
 	public BaseClientRequest<List<CloudService>> getCreateServicesRequest(final CloudService[] services) {
-		return new BehaviourRequest<List<CloudService>>(Messages.CloudFoundryServerBehaviour_CREATE_SERVICES,
+		BaseClientRequest<List<CloudService>> request = new BehaviourRequest<List<CloudService>>(Messages.CloudFoundryServerBehaviour_CREATE_SERVICES,
 				behaviour) {
 			@Override
 			protected List<CloudService> doRun(CloudFoundryOperations client, SubMonitor progress)
@@ -245,7 +264,13 @@ public class ClientRequestFactory {
 				}
 				return client.getServices();
 			}
+
+			@Override
+			protected boolean isIdempotent() {
+				return false;
+			}
 		};
+		return behaviour.getResponseCache().invalidating(request);
 	}
 
 	public BaseClientRequest<CloudApplication> getCloudApplication(final String appName) throws CoreException {
@@ -263,6 +288,11 @@ public class ClientRequestFactory {
 				return NLS.bind(Messages.CloudFoundryServerBehaviour_ERROR_GET_APPLICATION_SERVER_503, appName,
 						serverId);
 			}
+
+			@Override
+			protected String getCoalescingKey() {
+				return createCoalescingKey(appName);
+			}
 		};
 	}
 
@@ -271,7 +301,7 @@ public class ClientRequestFactory {
 		if (routes == null || routes.isEmpty()) {
 			return null;
 		}
-		return new BehaviourRequest<Void>("Deleting routes", behaviour) { //$NON-NLS-1$
+		BaseClientRequest<?> request = new BehaviourRequest<Void>("Deleting routes", behaviour) { //$NON-NLS-1$
 			@Override
 			protected Void doRun(CloudFoundryOperations client, SubMonitor progress) throws CoreException {
 				for (CloudRoute route : routes) {
@@ -280,7 +310,13 @@ public class ClientRequestFactory {
 				return null;
 
 			}
+
+			@Override
+			protected boolean isIdempotent() {
+				return false;
+			}
 		};
+		return behaviour.getResponseCache().invalidating(request);
 	}
 
 	public BaseClientRequest<?> register(final String email, final String password) {
@@ -290,6 +326,11 @@ public class ClientRequestFactory {
 				client.register(email, password);
 				return null;
 			}
+
+			@Override
+			protected boolean isIdempotent() {
+				return false;
+			}
 		};
 	}
 
@@ -355,6 +396,11 @@ public class ClientRequestFactory {
 				}
 				return logs;
 			}
+
+			@Override
+			protected String getCoalescingKey() {
+				return createCoalescingKey(appName);
+			}
 		};
 	}
 
@@ -376,6 +422,11 @@ public class ClientRequestFactory {
 					throw ce;
 				}
 			}
+
+			@Override
+			protected String getCoalescingKey() {
+				return createCoalescingKey(applicationId);
+			}
 		};
 	}
 
@@ -397,6 +448,11 @@ public class ClientRequestFactory {
 					throw ce;
 				}
 			}
+
+			@Override
+			protected String getCoalescingKey() {
+				return createCoalescingKey(applicationId);
+			}
 		};
 	}
 
@@ -431,6 +487,10 @@ public class ClientRequestFactory {
 				return NLS.bind(Messages.CloudFoundryServerBehaviour_ERROR_GET_APPLICATIONS_SERVER, serverId);
 			}
 
+			@Override
+			protected String getCoalescingKey() {
+				return createCoalescingKey();
+			}
 		};
 	}
 
@@ -444,6 +504,11 @@ public class ClientRequestFactory {
 				client.deleteAllApplications();
 				return null;
 			}
+
+			@Override
+			protected boolean isIdempotent() {
+				return false;
+			}
 		};
 	}
 
@@ -457,37 +522,60 @@ public class ClientRequestFactory {
 					throws CoreException {
 				return client.getServices();
 			}
+
+			@Override
+			protected String getCoalescingKey() {
+				return createCoalescingKey();
+			}
 		};
 	}
 
 	public BaseClientRequest<List<CloudServiceOffering>> getServiceOfferings() throws CoreException {
-		return new BehaviourRequest<List<CloudServiceOffering>>("Getting available service options", behaviour) { //$NON-NLS-1$
+		BaseClientRequest<List<CloudServiceOffering>> request = new BehaviourRequest<List<CloudServiceOffering>>("Getting available service options", behaviour) { //$NON-NLS-1$
 			@Override
 			protected List<CloudServiceOffering> doRun(CloudFoundryOperations client, SubMonitor progress)
 					throws CoreException {
 				return client.getServiceOfferings();
 			}
+
+			@Override
+			protected String getCoalescingKey() {
+				return createCoalescingKey();
+			}
 		};
+		return behaviour.getResponseCache().cached("serviceOfferings", ResponseCache.SERVICE_OFFERINGS_TTL, request); //$NON-NLS-1$
 	}
 
 	public BaseClientRequest<List<CloudDomain>> getDomainsForSpace() throws CoreException {
 
-		return new BehaviourRequest<List<CloudDomain>>(Messages.CloudFoundryServerBehaviour_DOMAINS_FOR_SPACE,
+		BaseClientRequest<List<CloudDomain>> request = new BehaviourRequest<List<CloudDomain>>(Messages.CloudFoundryServerBehaviour_DOMAINS_FOR_SPACE,
 				behaviour) {
 			@Override
 			protected List<CloudDomain> doRun(CloudFoundryOperations client, SubMonitor progress) throws CoreException {
 				return client.getDomains();
 			}
+
+			@Override
+			protected String getCoalescingKey() {
+				return createCoalescingKey();
+			}
 		};
+		return behaviour.getResponseCache().cached("domainsForSpace", ResponseCache.DOMAINS_TTL, request); //$NON-NLS-1$
 	}
 
 	public BaseClientRequest<List<CloudDomain>> getDomainsFromOrgs() throws CoreException {
-		return new BehaviourRequest<List<CloudDomain>>("Getting domains for orgs", behaviour) { //$NON-NLS-1$
+		BaseClientRequest<List<CloudDomain>> request = new BehaviourRequest<List<CloudDomain>>("Getting domains for orgs", behaviour) { //$NON-NLS-1$
 			@Override
 			protected List<CloudDomain> doRun(CloudFoundryOperations client, SubMonitor progress) throws CoreException {
 				return client.getDomainsForOrg();
 			}
+
+			@Override
+			protected String getCoalescingKey() {
+				return createCoalescingKey();
+			}
 		};
+		return behaviour.getResponseCache().cached("domainsFromOrgs", ResponseCache.DOMAINS_TTL, request); //$NON-NLS-1$
 	}
 
 	public BaseClientRequest<?> stopApplication(final String message, final CloudFoundryApplicationModule cloudModule) {
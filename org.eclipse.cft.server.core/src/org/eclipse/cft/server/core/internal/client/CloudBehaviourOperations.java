@@ -20,9 +20,15 @@
  ********************************************************************************/
 package org.eclipse.cft.server.core.internal.client;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
 
 import org.cloudfoundry.client.lib.domain.CloudApplication;
 import org.cloudfoundry.client.lib.domain.CloudService;
@@ -269,7 +275,7 @@ public class CloudBehaviourOperations {
 			@Override
 			public void run(IProgressMonitor monitor) throws CoreException {
 
-				CloudFoundryServer cloudServer = getBehaviour().getCloudFoundryServer();
+				final CloudFoundryServer cloudServer = getBehaviour().getCloudFoundryServer();
 
 				SubMonitor subMonitor = SubMonitor.convert(monitor);
 				subMonitor.beginTask(NLS.bind(Messages.CloudBehaviourOperations_REFRESHING_APPS_AND_SERVICES,
@@ -281,17 +287,51 @@ public class CloudBehaviourOperations {
 				else {
 					subMonitor.worked(40);
 				}
-				// Get updated list of cloud applications from the server
-				List<CloudApplication> applications = getBehaviour().getApplications(subMonitor.newChild(20));
-
-				// update applications and deployments from server
-				Map<String, CloudApplication> deployedApplicationsByName = new LinkedHashMap<String, CloudApplication>();
-
-				for (CloudApplication application : applications) {
-					deployedApplicationsByName.put(application.getName(), application);
+				// Get updated list of cloud applications from the server one
+				// page at a time, and update applications and deployments as
+				// each page arrives. Only applications that were added or
+				// changed since the last refresh are applied, so that
+				// unchanged modules keep their instances and stats.
+				final ApplicationChangeTracker.Refresh refresh = getBehaviour().getApplicationChangeTracker()
+						.startRefresh();
+				final Set<String> deployedApplicationNames = new HashSet<String>();
+				getBehaviour().getApplications(new PagedApplicationLister.PageHandler() {
+
+					public void pageReceived(List<CloudApplication> applications, Map<UUID, String> packageUpdates)
+							throws CoreException {
+						Map<String, CloudApplication> deployedApplicationsByName = new LinkedHashMap<String, CloudApplication>();
+						for (CloudApplication application : applications) {
+							deployedApplicationNames.add(application.getName());
+							String packageUpdated = application.getMeta() != null ? packageUpdates.get(application
+									.getMeta().getGuid()) : null;
+							// Always record the application with the refresh,
+							// even if its module is known to be stale
+							boolean changed = refresh.isChanged(application, packageUpdated);
+							if (changed || !isApplied(cloudServer, application)) {
+								deployedApplicationsByName.put(application.getName(), application);
+							}
+						}
+
+						if (!deployedApplicationsByName.isEmpty()) {
+							cloudServer.updateModulesPage(deployedApplicationsByName);
+							ServerEventHandler.getDefault().fireServerRefreshed(cloudServer);
+						}
+					}
+				}, subMonitor.newChild(20));
+
+				// Modules are only removed if applications were deleted, or
+				// if there are modules without a listed application
+				boolean modulesChanged = refresh.getChangedCount() > 0;
+				if (refresh.hasRemovals()
+						|| cloudServer.getServer().getModules().length != deployedApplicationNames.size()) {
+					cloudServer.completeModulesUpdate(deployedApplicationNames);
+					modulesChanged = true;
 				}
+				refresh.commit();
 
-				cloudServer.updateModules(deployedApplicationsByName);
+				if (modulesChanged) {
+					getBehaviour().saveApplicationSnapshot();
+				}
 
 				// Clear publish error
 				Server server = (Server) cloudServer.getServer();
@@ -315,6 +355,24 @@ public class CloudBehaviourOperations {
 		};
 	}
 
+	/**
+	 * 
+	 * @param cloudServer
+	 * @param application
+	 * @return true if a module exists for the given application and is
+	 * already mapped to it. False otherwise
+	 * @throws CoreException
+	 */
+	protected static boolean isApplied(CloudFoundryServer cloudServer, CloudApplication application)
+			throws CoreException {
+		if (application.getMeta() == null || application.getMeta().getGuid() == null) {
+			return false;
+		}
+		CloudFoundryApplicationModule appModule = cloudServer.getExistingCloudModule(application.getMeta().getGuid());
+		return appModule != null && appModule.getApplication() != null
+				&& application.getName().equals(appModule.getDeployedApplicationName());
+	}
+
 	public BehaviourOperation refreshForDeploymentChange(final IModule module) {
 		return new BehaviourOperation(behaviour, module) {
 
@@ -363,6 +421,59 @@ public class CloudBehaviourOperations {
 		};
 	}
 
+	/**
+	 * Refreshes the instances and stats of the given modules together,
+	 * without fetching their applications again. Intended for modules whose
+	 * applications were just refreshed with all other applications, for
+	 * example by {@link #refreshAll(IModule)}. Fires the same events as
+	 * {@link #refreshApplication(IModule)} and
+	 * {@link #refreshForDeploymentChange(IModule)} for the respective modules.
+	 * @param refreshedModules modules refreshed as by
+	 * {@link #refreshApplication(IModule)}. Must not be null.
+	 * @param deploymentChangeModules modules refreshed as by
+	 * {@link #refreshForDeploymentChange(IModule)}. Must not be null.
+	 * @return Non-null operation.
+	 */
+	public BehaviourOperation refreshInstances(final Collection<IModule> refreshedModules,
+			final Collection<IModule> deploymentChangeModules) {
+
+		return new BehaviourOperation(behaviour, null) {
+
+			@Override
+			public void run(IProgressMonitor monitor) throws CoreException {
+				CloudFoundryServer cloudServer = getBehaviour().getCloudFoundryServer();
+
+				Set<IModule> modules = new LinkedHashSet<IModule>(refreshedModules);
+				modules.addAll(deploymentChangeModules);
+				List<CloudFoundryApplicationModule> appModules = new ArrayList<CloudFoundryApplicationModule>();
+				for (IModule module : modules) {
+					CloudFoundryApplicationModule appModule = cloudServer.getExistingCloudModule(module);
+					if (appModule != null && appModule.getApplication() != null) {
+						appModules.add(appModule);
+					}
+				}
+
+				try {
+					getBehaviour().updateInstancesAndStats(appModules, monitor);
+				}
+				finally {
+					for (IModule module : refreshedModules) {
+						// Clear the publish errors for now
+						CloudFoundryApplicationModule appModule = cloudServer.getExistingCloudModule(module);
+						if (appModule != null) {
+							appModule.setStatus(null);
+							appModule.validateDeploymentInfo();
+						}
+						ServerEventHandler.getDefault().fireApplicationRefreshed(cloudServer, module);
+					}
+					for (IModule module : deploymentChangeModules) {
+						ServerEventHandler.getDefault().fireAppDeploymentChanged(cloudServer, module);
+					}
+				}
+			}
+		};
+	}
+
 	public ICloudFoundryOperation deleteModules(IModule[] modules, final boolean deleteServices) {
 		return new DeleteModulesOperation(behaviour, modules, deleteServices);
 	}
@@ -153,6 +153,8 @@ public class CloudFoundryApplicationModule extends ExternalModule implements ICl
 
 	private IStatus validationStatus;
 
+	private boolean stale;
+
 	/**
 	 * Creates a cloud module that has a corresponding local module. This should
 	 * be used if there is an accessible workspace project for the deployed app
@@ -220,7 +222,7 @@ public class CloudFoundryApplicationModule extends ExternalModule implements ICl
 		return deployedAppName;
 	}
 
-	public ApplicationStats getApplicationStats() {
+	public synchronized ApplicationStats getApplicationStats() {
 		return applicationStats;
 	}
 
@@ -232,7 +234,7 @@ public class CloudFoundryApplicationModule extends ExternalModule implements ICl
 		this.startingInfo = startingInfo;
 	}
 
-	public InstancesInfo getInstancesInfo() {
+	public synchronized InstancesInfo getInstancesInfo() {
 		return instancesInfo;
 	}
 
@@ -374,6 +376,18 @@ public class CloudFoundryApplicationModule extends ExternalModule implements ICl
 		this.instancesInfo = instancesInfo;
 	}
 
+	/**
+	 * Sets the stats and instances of the application together, so that
+	 * readers never see the stats of one refresh with the instances of
+	 * another.
+	 * @param applicationStats
+	 * @param instancesInfo
+	 */
+	public synchronized void setInstancesAndStats(ApplicationStats applicationStats, InstancesInfo instancesInfo) {
+		this.applicationStats = applicationStats;
+		this.instancesInfo = instancesInfo;
+	}
+
 	/**
 	 * Maps the application module to an actual deployed application in a CF
 	 * server. It replaces any existing deployment info with one generated from
@@ -388,6 +402,7 @@ public class CloudFoundryApplicationModule extends ExternalModule implements ICl
 	 */
 	public synchronized void setCloudApplication(CloudApplication cloudApplication) {
 		this.application = cloudApplication;
+		this.stale = false;
 
 		if (application != null) {
 			// Update the deployment info so that it reflects the actual
@@ -403,6 +418,31 @@ public class CloudFoundryApplicationModule extends ExternalModule implements ICl
 				internalSetDeploymentInfo(cloudApplicationInfo);
 			}
 		}
+
+		// The module may now map to an application with a different GUID
+		CloudFoundryServer cloudServer = getCloudFoundryServer();
+		if (cloudServer != null) {
+			cloudServer.updateApplicationModule(this);
+		}
+	}
+
+	/**
+	 * 
+	 * @return true if the cloud application of this module was restored from
+	 * the last known state of the server, and has not been refreshed from the
+	 * server yet. False otherwise.
+	 */
+	public synchronized boolean isStale() {
+		return stale;
+	}
+
+	/**
+	 * Marks the current cloud application as restored from the last known
+	 * state of the server. Setting a new cloud application clears the mark.
+	 * @param stale
+	 */
+	public synchronized void setStale(boolean stale) {
+		this.stale = stale;
 	}
 
 	/**
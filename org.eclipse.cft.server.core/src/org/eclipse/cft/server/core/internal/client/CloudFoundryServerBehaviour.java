@@ -31,6 +31,10 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.cloudfoundry.client.lib.ApplicationLogListener;
 import org.cloudfoundry.client.lib.CloudCredentials;
@@ -59,6 +63,7 @@ import org.eclipse.cft.server.core.internal.CloudFoundryPlugin;
 import org.eclipse.cft.server.core.internal.CloudFoundryServer;
 import org.eclipse.cft.server.core.internal.CloudServerEvent;
 import org.eclipse.cft.server.core.internal.CloudUtil;
+import org.eclipse.cft.server.core.internal.DeployedResourceCache.CachedDeployedApplication;
 import org.eclipse.cft.server.core.internal.Messages;
 import org.eclipse.cft.server.core.internal.ModuleResourceDeltaWrapper;
 import org.eclipse.cft.server.core.internal.RefreshModulesHandler;
@@ -68,11 +73,13 @@ import org.eclipse.cft.server.core.internal.debug.ApplicationDebugLauncher;
 import org.eclipse.cft.server.core.internal.jrebel.CloudRebelAppHandler;
 import org.eclipse.cft.server.core.internal.spaces.CloudFoundrySpace;
 import org.eclipse.cft.server.core.internal.spaces.CloudOrgsAndSpaces;
+import org.eclipse.cft.server.core.internal.ssh.CloudInfoV2;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.MultiStatus;
 import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
 import org.eclipse.core.runtime.Status;
 import org.eclipse.core.runtime.SubMonitor;
 import org.eclipse.core.runtime.jobs.IJobChangeEvent;
@@ -129,7 +136,12 @@ import org.springframework.web.client.RestClientException;
 @SuppressWarnings("restriction")
 public class CloudFoundryServerBehaviour extends ServerBehaviourDelegate {
 
-	private CloudFoundryOperations client;
+	/**
+	 * Holds the task that creates the client. Only one task is installed at a
+	 * time, so the client is created once, and concurrent callers wait on the
+	 * task rather than on a lock of the behaviour.
+	 */
+	private final AtomicReference<FutureTask<CloudFoundryOperations>> clientHolder = new AtomicReference<FutureTask<CloudFoundryOperations>>();
 
 	private RefreshModulesHandler refreshHandler;
 
@@ -139,6 +151,20 @@ public class CloudFoundryServerBehaviour extends ServerBehaviourDelegate {
 
 	private ClientRequestFactory requestFactory;
 
+	private final ResponseCache responseCache = new ResponseCache();
+
+	private final CircuitBreaker circuitBreaker = new CircuitBreaker(this);
+
+	private final RequestScheduler requestScheduler = new RequestScheduler();
+
+	private final AccessTokenManager accessTokenManager = new AccessTokenManager(this);
+
+	private CloudInfoV2 cloudInfo;
+
+	private final ApplicationInstancesFetcher instancesFetcher = new ApplicationInstancesFetcher(this);
+
+	private final ApplicationChangeTracker applicationChangeTracker = new ApplicationChangeTracker();
+
 	private IServerListener serverListener = new IServerListener() {
 
 		public void serverChanged(ServerEvent event) {
@@ -162,6 +188,74 @@ public class CloudFoundryServerBehaviour extends ServerBehaviourDelegate {
 		UNSUPPORTED,
 	}
 	
+	/**
+	 * 
+	 * @return cache of responses for read-mostly queries against this server.
+	 * Never null.
+	 */
+	public ResponseCache getResponseCache() {
+		return responseCache;
+	}
+
+	/**
+	 * 
+	 * @return breaker that suspends requests while this server cannot be
+	 * reached. Never null.
+	 */
+	public CircuitBreaker getCircuitBreaker() {
+		return circuitBreaker;
+	}
+
+	/**
+	 * 
+	 * @return scheduler that admits requests to this server by priority.
+	 * Never null.
+	 */
+	public RequestScheduler getRequestScheduler() {
+		return requestScheduler;
+	}
+
+	/**
+	 * 
+	 * @return cache of the OAuth access token for this server, for
+	 * components that authorize their own requests. Never null.
+	 */
+	public AccessTokenManager getAccessTokenManager() {
+		return accessTokenManager;
+	}
+
+	/**
+	 * 
+	 * @return versions of the applications of this server as of the last
+	 * full refresh, so that refreshes only apply changed applications. Never
+	 * null.
+	 */
+	public ApplicationChangeTracker getApplicationChangeTracker() {
+		return applicationChangeTracker;
+	}
+
+	/**
+	 * 
+	 * @return information from the <code>/v2/info</code> endpoint of this
+	 * server. The information is fetched once, when first needed, and shared
+	 * until the client is reset.
+	 * @throws CoreException if the server URL is invalid
+	 */
+	public synchronized CloudInfoV2 getCloudInfo() throws CoreException {
+		if (cloudInfo == null) {
+			CloudFoundryServer cloudServer = getCloudFoundryServer();
+			try {
+				URL url = new URL(cloudServer.getUrl());
+				cloudInfo = new CloudInfoV2(url, CloudFoundryClientFactory.getProxy(url),
+						cloudServer.getSelfSignedCertificate());
+			}
+			catch (MalformedURLException e) {
+				throw CloudErrorUtil.toCoreException(e);
+			}
+		}
+		return cloudInfo;
+	}
+
 	ClientRequestFactory getRequestFactory() throws CoreException {
 		if (requestFactory == null) {
 			requestFactory = getCloudFoundryServer().getTarget().getRequestFactory(this);
@@ -177,6 +271,8 @@ public class CloudFoundryServerBehaviour extends ServerBehaviourDelegate {
 	public void connect(IProgressMonitor monitor) throws CoreException {
 		final CloudFoundryServer cloudServer = getCloudFoundryServer();
 
+		// Explicit connection requests should always be sent to the server
+		circuitBreaker.reset();
 		getRequestFactory().connect().run(monitor);
 
 		Server server = (Server) cloudServer.getServerOriginal();
@@ -246,11 +342,11 @@ public class CloudFoundryServerBehaviour extends ServerBehaviourDelegate {
 		operations().createServices(services).run(monitor);
 	}
 
-	public synchronized List<CloudDomain> getDomainsFromOrgs(IProgressMonitor monitor) throws CoreException {
+	public List<CloudDomain> getDomainsFromOrgs(IProgressMonitor monitor) throws CoreException {
 		return getRequestFactory().getDomainsFromOrgs().run(monitor);
 	}
 
-	public synchronized List<CloudDomain> getDomainsForSpace(IProgressMonitor monitor) throws CoreException {
+	public List<CloudDomain> getDomainsForSpace(IProgressMonitor monitor) throws CoreException {
 		return getRequestFactory().getDomainsForSpace().run(monitor);
 	}
 
@@ -363,6 +459,7 @@ public class CloudFoundryServerBehaviour extends ServerBehaviourDelegate {
 		Set<CloudFoundryApplicationModule> deletedModules = new HashSet<CloudFoundryApplicationModule>(cloudModules);
 
 		cloudServer.clearApplications();
+		applicationChangeTracker.reset();
 
 		// update state for cloud applications
 		server.setExternalModules(new IModule[0]);
@@ -399,6 +496,7 @@ public class CloudFoundryServerBehaviour extends ServerBehaviourDelegate {
 	public void dispose() {
 		super.dispose();
 		getServer().removeServerListener(serverListener);
+		instancesFetcher.dispose();
 	}
 
 	/**
@@ -583,11 +681,14 @@ public class CloudFoundryServerBehaviour extends ServerBehaviourDelegate {
 		if (appModule == null) {
 			return;
 		}
+		// Fetched on the calling thread, which may hold a request slot, for
+		// example, when refreshing after a restart.
+		SubMonitor subMonitor = SubMonitor.convert(monitor, 2);
 		try {
-			ApplicationStats stats = getApplicationStats(appModule.getDeployedApplicationName(), monitor);
-			InstancesInfo info = getInstancesInfo(appModule.getDeployedApplicationName(), monitor);
-			appModule.setApplicationStats(stats);
-			appModule.setInstancesInfo(info);
+			ApplicationStats stats = getApplicationStats(appModule.getDeployedApplicationName(),
+					subMonitor.newChild(1));
+			InstancesInfo info = getInstancesInfo(appModule.getDeployedApplicationName(), subMonitor.newChild(1));
+			appModule.setInstancesAndStats(stats, info);
 		}
 		catch (CoreException e) {
 			// Ignore if it is application not found error. If the application
@@ -599,6 +700,39 @@ public class CloudFoundryServerBehaviour extends ServerBehaviourDelegate {
 		}
 	}
 
+	/**
+	 * Updates the given Cloud modules with application stats and instance
+	 * information obtained from the Cloud space. The stats and instances of
+	 * all modules are fetched concurrently, with a bounded number of requests
+	 * to the server at a time. Each module is updated with its stats and
+	 * instances together, and a single
+	 * {@link CloudServerEvent#EVENT_INSTANCES_UPDATED} event is fired for all
+	 * updated modules.
+	 * @param appModules modules to update. Null entries are ignored.
+	 * @param monitor
+	 * @return modules that were updated. Modules whose application no longer
+	 * exists are not included.
+	 * @throws CoreException if fetching the stats or instances of any module
+	 * failed. Modules fetched successfully are still updated.
+	 */
+	public List<CloudFoundryApplicationModule> updateInstancesAndStats(List<CloudFoundryApplicationModule> appModules,
+			IProgressMonitor monitor) throws CoreException {
+		ApplicationInstancesFetcher.Result result = instancesFetcher.update(appModules, monitor);
+
+		List<IModule> modules = new ArrayList<IModule>();
+		for (CloudFoundryApplicationModule appModule : result.getUpdated()) {
+			modules.add(appModule.getLocalModule());
+		}
+		if (!modules.isEmpty()) {
+			ServerEventHandler.getDefault().fireServerEvent(new InstancesRefreshEvent(getCloudFoundryServer(), modules));
+		}
+
+		if (result.getError() != null) {
+			throw result.getError();
+		}
+		return result.getUpdated();
+	}
+
 	/**
 	 * Fetches list of all applications in the Cloud space. No module updates
 	 * occur, as this is a low-level API meant to interact with the underlying
@@ -616,6 +750,21 @@ public class CloudFoundryServerBehaviour extends ServerBehaviourDelegate {
 		return getRequestFactory().getApplications().run(monitor);
 	}
 
+	/**
+	 * Fetches the applications in the Cloud space one page at a time, and
+	 * hands each page to the given handler as soon as it arrives. As with
+	 * {@link #getApplications(IProgressMonitor)}, no module updates occur.
+	 * Unlike it, the full list of applications is never held in memory, and
+	 * running instances of applications are not resolved.
+	 * @param handler receives each page of applications
+	 * @param monitor
+	 * @throws CoreException if a page failed to be fetched or handled
+	 */
+	public void getApplications(PagedApplicationLister.PageHandler handler, IProgressMonitor monitor)
+			throws CoreException {
+		new PagedApplicationLister(this).list(handler, monitor);
+	}
+
 	public ApplicationStats getApplicationStats(final String applicationId, IProgressMonitor monitor)
 			throws CoreException {
 		return getRequestFactory().getApplicationStats(applicationId).run(monitor);
@@ -705,7 +854,13 @@ public class CloudFoundryServerBehaviour extends ServerBehaviourDelegate {
 	}
 
 	protected void internalResetClient() {
-		client = null;
+		clientHolder.set(null);
+		responseCache.invalidate();
+		accessTokenManager.invalidate();
+		applicationChangeTracker.reset();
+		synchronized (this) {
+			cloudInfo = null;
+		}
 		applicationUrlLookup = null;
 		cloudBehaviourOperations = null;
 		refreshHandler = null;
@@ -942,30 +1097,67 @@ public class CloudFoundryServerBehaviour extends ServerBehaviourDelegate {
 	 * This API is not suitable to changing credentials. User appropriate API
 	 * for the latter like {@link #updatePassword(String, IProgressMonitor)}
 	 */
-	protected synchronized CloudFoundryOperations getClient(CloudCredentials credentials, IProgressMonitor monitor)
+	protected CloudFoundryOperations getClient(final CloudCredentials credentials, IProgressMonitor monitor)
 			throws CoreException {
-		if (client == null) {
-			CloudFoundryServer cloudServer = getCloudFoundryServer();
-
-			String url = cloudServer.getUrl();
-			if (!cloudServer.hasCloudSpace()) {
-				throw CloudErrorUtil.toCoreException(
-						NLS.bind(Messages.ERROR_FAILED_CLIENT_CREATION_NO_SPACE, cloudServer.getServerId()));
+		while (true) {
+			FutureTask<CloudFoundryOperations> task = clientHolder.get();
+			if (task == null) {
+				FutureTask<CloudFoundryOperations> newTask = new FutureTask<CloudFoundryOperations>(
+						new Callable<CloudFoundryOperations>() {
+							public CloudFoundryOperations call() throws Exception {
+								return internalCreateClient(credentials);
+							}
+						});
+				if (!clientHolder.compareAndSet(null, newTask)) {
+					// Another thread is already creating the client
+					continue;
+				}
+				task = newTask;
+				// Created in the calling thread, without holding any lock
+				task.run();
 			}
 
-			CloudFoundrySpace cloudFoundrySpace = cloudServer.getCloudFoundrySpace();
-
-			if (credentials != null) {
-				client = createClient(url, credentials, cloudFoundrySpace, cloudServer.getSelfSignedCertificate());
+			try {
+				return task.get();
 			}
-			else {
-				String userName = getCloudFoundryServer().getUsername();
-				String password = getCloudFoundryServer().getPassword();
-				client = createClient(url, userName, password, cloudFoundrySpace,
-						cloudServer.getSelfSignedCertificate());
+			catch (ExecutionException e) {
+				// Allow a later call to attempt creating the client again
+				clientHolder.compareAndSet(task, null);
+				Throwable cause = e.getCause() != null ? e.getCause() : e;
+				if (cause instanceof CoreException) {
+					throw (CoreException) cause;
+				}
+				if (cause instanceof RuntimeException) {
+					// Let request handlers see client errors as thrown by
+					// the client
+					throw (RuntimeException) cause;
+				}
+				throw CloudErrorUtil.toCoreException(cause);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new OperationCanceledException();
 			}
 		}
-		return client;
+	}
+
+	private CloudFoundryOperations internalCreateClient(CloudCredentials credentials) throws CoreException {
+		CloudFoundryServer cloudServer = getCloudFoundryServer();
+
+		String url = cloudServer.getUrl();
+		if (!cloudServer.hasCloudSpace()) {
+			throw CloudErrorUtil.toCoreException(
+					NLS.bind(Messages.ERROR_FAILED_CLIENT_CREATION_NO_SPACE, cloudServer.getServerId()));
+		}
+
+		CloudFoundrySpace cloudFoundrySpace = cloudServer.getCloudFoundrySpace();
+
+		if (credentials != null) {
+			return createClient(url, credentials, cloudFoundrySpace, cloudServer.getSelfSignedCertificate());
+		}
+		String userName = cloudServer.getUsername();
+		String password = cloudServer.getPassword();
+		return createClient(url, userName, password, cloudFoundrySpace, cloudServer.getSelfSignedCertificate());
 	}
 
 	/**
@@ -975,7 +1167,7 @@ public class CloudFoundryServerBehaviour extends ServerBehaviourDelegate {
 	 * @return
 	 * @throws CoreException
 	 */
-	public synchronized CloudFoundryOperations getClient(IProgressMonitor monitor) throws CoreException {
+	public CloudFoundryOperations getClient(IProgressMonitor monitor) throws CoreException {
 		return getClient((CloudCredentials) null, monitor);
 	}
 
@@ -988,6 +1180,10 @@ public class CloudFoundryServerBehaviour extends ServerBehaviourDelegate {
 		}
 		getServer().addServerListener(serverListener, ServerEvent.SERVER_CHANGE);
 
+		// Show the last known applications until the first refresh
+		// completes
+		restoreApplicationSnapshot();
+
 		try {
 			getApplicationUrlLookup().refreshDomains(monitor);
 
@@ -1006,6 +1202,52 @@ public class CloudFoundryServerBehaviour extends ServerBehaviourDelegate {
 		}
 	}
 
+	/**
+	 * Restores modules for the applications of this server as persisted by
+	 * the last {@link #saveApplicationSnapshot()}, unless modules were
+	 * already updated from the server. Restored modules are marked as stale.
+	 */
+	protected void restoreApplicationSnapshot() {
+		CloudFoundryPlugin plugin = CloudFoundryPlugin.getDefault();
+		if (plugin == null) {
+			return;
+		}
+		List<CloudApplication> applications = plugin.getApplicationSnapshotStore().load(getServer().getId());
+		if (applications == null || applications.isEmpty()) {
+			return;
+		}
+		try {
+			CloudFoundryServer cloudServer = getCloudFoundryServer();
+			if (cloudServer.restoreModules(applications)) {
+				ServerEventHandler.getDefault().fireServerRefreshed(cloudServer);
+			}
+		}
+		catch (CoreException e) {
+			CloudFoundryPlugin.logError(e);
+		}
+	}
+
+	/**
+	 * Persists a summary of the current applications of this server, so that
+	 * they can be shown as soon as the server is initialized in the next
+	 * session. Stale modules are not persisted again.
+	 * @throws CoreException
+	 */
+	public void saveApplicationSnapshot() throws CoreException {
+		CloudFoundryPlugin plugin = CloudFoundryPlugin.getDefault();
+		if (plugin == null) {
+			return;
+		}
+		List<CloudApplication> applications = new ArrayList<CloudApplication>();
+		for (CloudFoundryApplicationModule appModule : getCloudFoundryServer().getExistingCloudModules()) {
+			CloudApplication application = appModule.getApplication();
+			if (application != null && !appModule.isStale()) {
+				applications.add(application);
+			}
+		}
+		plugin.getApplicationSnapshotStore().save(getServer().getId(), applications);
+	}
+
 	/**
 	 * If found, will attempt to publish module with the given name, and it
 	 * assumes it is being added for the first time. NOTE: This method is only
@@ -1142,6 +1384,7 @@ public class CloudFoundryServerBehaviour extends ServerBehaviourDelegate {
 			throws CoreException {
 		super.publishModule(kind, deltaKind, module, monitor);
 
+		RequestScheduler.Priority priority = RequestScheduler.setCurrentPriority(RequestScheduler.Priority.PUBLISH);
 		try {
 			// If the delta indicates that the module has been removed, remove
 			// it
@@ -1198,6 +1441,9 @@ public class CloudFoundryServerBehaviour extends ServerBehaviourDelegate {
 			handlePublishError(e);
 			throw e;
 		}
+		finally {
+			RequestScheduler.setCurrentPriority(priority);
+		}
 	}
 
 	private boolean isChildModuleChanged(IModule[] module, IProgressMonitor monitor) {
@@ -1233,7 +1479,8 @@ public class CloudFoundryServerBehaviour extends ServerBehaviourDelegate {
 	 * @throws CoreException if it failed to retrieve the orgs and spaces.
 	 */
 	public CloudOrgsAndSpaces getCloudSpaces(IProgressMonitor monitor) throws CoreException {
-		return new BehaviourRequest<CloudOrgsAndSpaces>("Getting orgs and spaces", this) { //$NON-NLS-1$
+		BaseClientRequest<CloudOrgsAndSpaces> request = new BehaviourRequest<CloudOrgsAndSpaces>(
+				"Getting orgs and spaces", this) { //$NON-NLS-1$
 
 			@Override
 			protected CloudOrgsAndSpaces doRun(CloudFoundryOperations client, SubMonitor progress)
@@ -1241,7 +1488,13 @@ public class CloudFoundryServerBehaviour extends ServerBehaviourDelegate {
 				return internalGetCloudSpaces(client);
 			}
 
-		}.run(monitor);
+			@Override
+			protected String getCoalescingKey() {
+				return createCoalescingKey();
+			}
+
+		};
+		return responseCache.cached("spaces", ResponseCache.SPACES_TTL, request).run(monitor); //$NON-NLS-1$
 	}
 
 	public List<CloudRoute> getRoutes(final String domainName, IProgressMonitor monitor) throws CoreException {
@@ -1541,28 +1794,13 @@ public class CloudFoundryServerBehaviour extends ServerBehaviourDelegate {
 			archive = getApplicationArchive(cloudModule, monitor, delegate, resources);
 		}
 
-		// If no application archive was provided,then attempt an incremental
-		// publish. Incremental publish is only supported for apps without child
-		// modules.
-		if (archive == null && incrementalPublish && !hasChildModules(modules)) {
-			// Determine if an incremental publish
-			// should
-			// occur
-			// For the time being support incremental
-			// publish
-			// only if the app does not have child
-			// modules
-			// To compute incremental deltas locally,
-			// modules must be provided
-			// Computes deltas locally before publishing
-			// to
-			// the server.
-			// Potentially more efficient. Should be
-			// used
-			// only on incremental
-			// builds
-
-			archive = getIncrementalPublishArchive(deploymentInfo, modules);
+		// If no application archive was provided, publish the module resources
+		// directly through a resource-matched archive. Only resources that
+		// have changed are hashed again, and only resources that the server
+		// does not already have are uploaded. Child modules are included as
+		// jars, which are only packaged again when the child module changes.
+		if (archive == null) {
+			archive = getIncrementalPublishArchive(deploymentInfo, modules, server, incrementalPublish, monitor);
 		}
 		return archive;
 
@@ -1617,13 +1855,40 @@ public class CloudFoundryServerBehaviour extends ServerBehaviourDelegate {
 				isError);
 	}
 
+	/**
+	 * Creates a resource-matched archive for the given modules. If the publish
+	 * is not incremental, cached sha1 codes for the application are discarded
+	 * first, so that all resources are hashed again. The server still only
+	 * receives resources that it does not already have.
+	 * @param deploymentInfo
+	 * @param modules
+	 * @param server
+	 * @param incrementalPublish true if cached sha1 codes for resources that
+	 * have not changed since the last publish can be used.
+	 * @param monitor
+	 * @return non-null archive
+	 * @throws CoreException if failed to package child modules
+	 */
 	protected ApplicationArchive getIncrementalPublishArchive(final ApplicationDeploymentInfo deploymentInfo,
-			IModule[] modules) {
-		IModuleResource[] allResources = getResources(modules);
+			IModule[] modules, Server server, boolean incrementalPublish, IProgressMonitor monitor)
+			throws CoreException {
+		if (!incrementalPublish) {
+			CloudFoundryPlugin.getDefault().getDeployedResourcesCache()
+					.remove(new CachedDeployedApplication(deploymentInfo.getDeploymentName()));
+		}
+		return getIncrementalPublishArchive(deploymentInfo, modules, server, monitor);
+	}
+
+	protected ApplicationArchive getIncrementalPublishArchive(final ApplicationDeploymentInfo deploymentInfo,
+			IModule[] modules, Server server, IProgressMonitor monitor) throws CoreException {
+		List<IModuleResource> allResources = new ArrayList<IModuleResource>(Arrays.asList(getResources(modules)));
+		if (hasChildModules(modules)) {
+			allResources.addAll(CloudUtil.getChildModuleResources(modules, server, monitor));
+		}
 		IModuleResourceDelta[] deltas = getPublishedResourceDelta(modules);
 		List<IModuleResource> changedResources = getChangedResources(deltas);
-		ApplicationArchive moduleArchive = new CachingApplicationArchive(Arrays.asList(allResources), changedResources,
-				modules[0], deploymentInfo.getDeploymentName());
+		ApplicationArchive moduleArchive = new CachingApplicationArchive(allResources, changedResources, modules[0],
+				deploymentInfo.getDeploymentName());
 
 		return moduleArchive;
 	}
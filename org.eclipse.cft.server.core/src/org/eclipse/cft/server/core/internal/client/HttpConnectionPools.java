@@ -0,0 +1,286 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Pivotal Software, Inc. 
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution. 
+ * 
+ * The Eclipse Public License is available at 
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * and the Apache License v2.0 is available at 
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * You may elect to redistribute this code under either of these licenses.
+ *  
+ *  Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+ ********************************************************************************/
+package org.eclipse.cft.server.core.internal.client;
+
+import static org.apache.http.conn.ssl.SSLSocketFactory.BROWSER_COMPATIBLE_HOSTNAME_VERIFIER;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpHost;
+import org.apache.http.auth.AuthScope;
+import org.apache.http.auth.UsernamePasswordCredentials;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.client.BasicCredentialsProvider;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.DefaultProxyRoutePlanner;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.cloudfoundry.client.lib.HttpProxyConfiguration;
+import org.eclipse.cft.server.core.internal.CloudFoundryPlugin;
+
+/**
+ * Keeps one pooled, keep-alive HTTP client per connection target, so that REST
+ * templates created for the same target reuse open (and already TLS
+ * negotiated) connections rather than each creating their own client.
+ * <p/>
+ * A target is defined by the proxy configuration, whether self-signed
+ * certificates are trusted, and whether redirects are followed. Within a
+ * target, connections are pooled per route (host and port).
+ * <p/>
+ * Pool sizes and idle eviction can be configured through the following system
+ * properties:
+ * <ul>
+ * <li>{@link #MAX_PER_ROUTE_PROPERTY} maximum connections per route</li>
+ * <li>{@link #MAX_TOTAL_PROPERTY} maximum connections per target</li>
+ * <li>{@link #IDLE_TIMEOUT_PROPERTY} time in milliseconds after which idle
+ * connections are closed</li>
+ * </ul>
+ */
+public class HttpConnectionPools {
+
+	public static final String MAX_PER_ROUTE_PROPERTY = CloudFoundryPlugin.PLUGIN_ID + ".http.maxPerRoute"; //$NON-NLS-1$
+
+	public static final String MAX_TOTAL_PROPERTY = CloudFoundryPlugin.PLUGIN_ID + ".http.maxTotal"; //$NON-NLS-1$
+
+	public static final String IDLE_TIMEOUT_PROPERTY = CloudFoundryPlugin.PLUGIN_ID + ".http.idleTimeout"; //$NON-NLS-1$
+
+	public static final int DEFAULT_MAX_PER_ROUTE = 10;
+
+	public static final int DEFAULT_MAX_TOTAL = 40;
+
+	public static final long DEFAULT_IDLE_TIMEOUT = 30 * 1000;
+
+	/**
+	 * Interval in milliseconds at which expired and idle connections are
+	 * evicted from all pools.
+	 */
+	private static final long EVICTION_INTERVAL = 5 * 1000;
+
+	private static final Map<String, Pool> pools = new HashMap<String, Pool>();
+
+	private static ScheduledExecutorService evictor;
+
+	private HttpConnectionPools() {
+		// Util class
+	}
+
+	/**
+	 * Returns the shared pooled client for the given target, creating it if
+	 * necessary. Callers should not close the returned client.
+	 * @param httpProxyConfiguration may be null if no proxy is used
+	 * @param trustSelfSignedCerts
+	 * @param disableRedirectHandling
+	 * @return non-null pooled client
+	 */
+	public static synchronized CloseableHttpClient getClient(HttpProxyConfiguration httpProxyConfiguration,
+			boolean trustSelfSignedCerts, boolean disableRedirectHandling) {
+		String key = getKey(httpProxyConfiguration, trustSelfSignedCerts, disableRedirectHandling);
+		Pool pool = pools.get(key);
+		if (pool == null) {
+			pool = createPool(httpProxyConfiguration, trustSelfSignedCerts, disableRedirectHandling);
+			pools.put(key, pool);
+			startEviction();
+		}
+		return pool.client;
+	}
+
+	/**
+	 * 
+	 * @return statistics aggregated over the pools of all targets. Never
+	 * null.
+	 */
+	public static synchronized PoolStats getTotalStats() {
+		int leased = 0;
+		int pending = 0;
+		int available = 0;
+		int max = 0;
+		for (Pool pool : pools.values()) {
+			PoolStats stats = pool.connectionManager.getTotalStats();
+			leased += stats.getLeased();
+			pending += stats.getPending();
+			available += stats.getAvailable();
+			max += stats.getMax();
+		}
+		return new PoolStats(leased, pending, available, max);
+	}
+
+	/**
+	 * Closes all pooled connections and clients. Clients obtained before
+	 * shutdown can no longer be used.
+	 */
+	public static synchronized void shutdown() {
+		if (evictor != null) {
+			evictor.shutdownNow();
+			evictor = null;
+		}
+		for (Pool pool : pools.values()) {
+			try {
+				pool.client.close();
+			}
+			catch (IOException e) {
+				CloudFoundryPlugin.logError(e);
+			}
+		}
+		pools.clear();
+	}
+
+	/**
+	 * Closes expired connections, and connections that have been idle for
+	 * longer than the configured idle timeout, in all pools.
+	 */
+	protected static void evictConnections() {
+		List<PoolingHttpClientConnectionManager> managers = new ArrayList<PoolingHttpClientConnectionManager>();
+		synchronized (HttpConnectionPools.class) {
+			for (Pool pool : pools.values()) {
+				managers.add(pool.connectionManager);
+			}
+		}
+		long idleTimeout = getIdleTimeout();
+		for (PoolingHttpClientConnectionManager manager : managers) {
+			manager.closeExpiredConnections();
+			manager.closeIdleConnections(idleTimeout, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	private static void startEviction() {
+		if (evictor != null) {
+			return;
+		}
+		evictor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "Cloud Foundry HTTP connection eviction"); //$NON-NLS-1$
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		evictor.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				try {
+					evictConnections();
+				}
+				catch (Throwable t) {
+					CloudFoundryPlugin.logError(t);
+				}
+			}
+		}, EVICTION_INTERVAL, EVICTION_INTERVAL, TimeUnit.MILLISECONDS);
+	}
+
+	private static Pool createPool(HttpProxyConfiguration httpProxyConfiguration, boolean trustSelfSignedCerts,
+			boolean disableRedirectHandling) {
+
+		// The connection manager ignores any SSL settings in the client
+		// builder, so the socket factories are registered here instead.
+		SSLConnectionSocketFactory sslSocketFactory = trustSelfSignedCerts ? new SSLConnectionSocketFactory(
+				RestUtils.buildSslContext(), BROWSER_COMPATIBLE_HOSTNAME_VERIFIER) : SSLConnectionSocketFactory
+				.getSystemSocketFactory();
+		Registry<ConnectionSocketFactory> registry = RegistryBuilder.<ConnectionSocketFactory> create()
+				.register("http", PlainConnectionSocketFactory.getSocketFactory()) //$NON-NLS-1$
+				.register("https", sslSocketFactory).build(); //$NON-NLS-1$
+
+		PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager(registry);
+		connectionManager.setDefaultMaxPerRoute(getMaxPerRoute());
+		connectionManager.setMaxTotal(Math.max(getMaxTotal(), connectionManager.getDefaultMaxPerRoute()));
+
+		HttpClientBuilder httpClientBuilder = HttpClients.custom().useSystemProperties()
+				.setConnectionManager(connectionManager);
+
+		if (disableRedirectHandling) {
+			httpClientBuilder.disableRedirectHandling();
+		}
+
+		if (httpProxyConfiguration != null) {
+			HttpHost proxy = new HttpHost(httpProxyConfiguration.getProxyHost(), httpProxyConfiguration.getProxyPort());
+			httpClientBuilder.setProxy(proxy);
+
+			if (httpProxyConfiguration.isAuthRequired()) {
+				BasicCredentialsProvider credentialsProvider = new BasicCredentialsProvider();
+				credentialsProvider.setCredentials(new AuthScope(httpProxyConfiguration.getProxyHost(),
+						httpProxyConfiguration.getProxyPort()),
+						new UsernamePasswordCredentials(httpProxyConfiguration.getUsername(), httpProxyConfiguration
+								.getPassword()));
+				httpClientBuilder.setDefaultCredentialsProvider(credentialsProvider);
+			}
+
+			httpClientBuilder.setRoutePlanner(new DefaultProxyRoutePlanner(proxy));
+		}
+
+		return new Pool(httpClientBuilder.build(), connectionManager);
+	}
+
+	private static String getKey(HttpProxyConfiguration httpProxyConfiguration, boolean trustSelfSignedCerts,
+			boolean disableRedirectHandling) {
+		StringBuilder key = new StringBuilder();
+		if (httpProxyConfiguration != null) {
+			key.append(httpProxyConfiguration.getProxyHost());
+			key.append(':');
+			key.append(httpProxyConfiguration.getProxyPort());
+			if (httpProxyConfiguration.isAuthRequired()) {
+				key.append(':');
+				key.append(httpProxyConfiguration.getUsername());
+				key.append(':');
+				key.append(httpProxyConfiguration.getPassword());
+			}
+		}
+		key.append('|');
+		key.append(trustSelfSignedCerts);
+		key.append('|');
+		key.append(disableRedirectHandling);
+		return key.toString();
+	}
+
+	private static int getMaxPerRoute() {
+		return Math.max(1, Integer.getInteger(MAX_PER_ROUTE_PROPERTY, DEFAULT_MAX_PER_ROUTE));
+	}
+
+	private static int getMaxTotal() {
+		return Math.max(1, Integer.getInteger(MAX_TOTAL_PROPERTY, DEFAULT_MAX_TOTAL));
+	}
+
+	private static long getIdleTimeout() {
+		return Math.max(0, Long.getLong(IDLE_TIMEOUT_PROPERTY, DEFAULT_IDLE_TIMEOUT));
+	}
+
+	private static class Pool {
+
+		final CloseableHttpClient client;
+
+		final PoolingHttpClientConnectionManager connectionManager;
+
+		Pool(CloseableHttpClient client, PoolingHttpClientConnectionManager connectionManager) {
+			this.client = client;
+			this.connectionManager = connectionManager;
+		}
+	}
+}
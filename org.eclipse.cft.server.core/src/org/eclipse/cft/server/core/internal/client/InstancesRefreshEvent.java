@@ -0,0 +1,56 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Pivotal Software, Inc. 
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution. 
+ * 
+ * The Eclipse Public License is available at 
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * and the Apache License v2.0 is available at 
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * You may elect to redistribute this code under either of these licenses.
+ *  
+ *  Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+ ********************************************************************************/
+package org.eclipse.cft.server.core.internal.client;
+
+import java.util.List;
+
+import org.eclipse.cft.server.core.internal.CloudFoundryServer;
+import org.eclipse.cft.server.core.internal.CloudServerEvent;
+import org.eclipse.cft.server.core.internal.application.ModuleChangeEvent;
+import org.eclipse.wst.server.core.IModule;
+
+/**
+ * Single {@link CloudServerEvent#EVENT_INSTANCES_UPDATED} event for the
+ * instances and stats of several modules that were updated together.
+ */
+public class InstancesRefreshEvent extends ModuleChangeEvent {
+
+	/**
+	 * 
+	 */
+	private static final long serialVersionUID = 1L;
+
+	private final List<IModule> modules;
+
+	public InstancesRefreshEvent(CloudFoundryServer server, List<IModule> modules) {
+		super(server, CloudServerEvent.EVENT_INSTANCES_UPDATED, null, null);
+		this.modules = modules;
+	}
+
+	/**
+	 * 
+	 * @return modules whose instances and stats were updated. Never null.
+	 */
+	public List<IModule> getModules() {
+		return modules;
+	}
+
+}
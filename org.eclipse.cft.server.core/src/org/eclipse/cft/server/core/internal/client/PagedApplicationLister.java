@@ -0,0 +1,240 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Pivotal Software, Inc. 
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution. 
+ * 
+ * The Eclipse Public License is available at 
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * and the Apache License v2.0 is available at 
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * You may elect to redistribute this code under either of these licenses.
+ *  
+ *  Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+ ********************************************************************************/
+package org.eclipse.cft.server.core.internal.client;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.cloudfoundry.client.lib.CloudFoundryOperations;
+import org.cloudfoundry.client.lib.domain.CloudApplication;
+import org.cloudfoundry.client.lib.domain.CloudSpace;
+import org.cloudfoundry.client.lib.util.CloudEntityResourceMapper;
+import org.cloudfoundry.client.lib.util.JsonUtil;
+import org.eclipse.cft.server.core.internal.CloudErrorUtil;
+import org.eclipse.cft.server.core.internal.CloudFoundryServer;
+import org.eclipse.cft.server.core.internal.Messages;
+import org.eclipse.cft.server.core.internal.spaces.CloudFoundrySpace;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.SubMonitor;
+import org.eclipse.osgi.util.NLS;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.web.client.RestTemplate;
+
+/**
+ * Lists the applications of the Cloud space of a server one page at a time,
+ * handing each page to a handler as soon as it arrives, rather than
+ * materializing the full list of applications first. The Cloud Foundry
+ * client only lists all applications at once, and additionally sends
+ * several requests per application to resolve its URIs, service bindings
+ * and running instances.
+ * <p/>
+ * Pages are fetched directly from the Cloud Controller with the cached
+ * access token of the server. Related resources are inlined in each page,
+ * so no further requests are sent per application. Running instances are
+ * not resolved, as they are obtained separately with the application
+ * stats.
+ */
+public class PagedApplicationLister {
+
+	/**
+	 * Number of applications per page. The Cloud Controller allows at most
+	 * 100.
+	 */
+	public static final int PAGE_SIZE = 50;
+
+	private static final String APPS_PATH = "/v2/spaces/{0}/apps?inline-relations-depth=2&results-per-page={1}"; //$NON-NLS-1$
+
+	private static final String AUTHORIZATION_HEADER = "Authorization"; //$NON-NLS-1$
+
+	private final CloudFoundryServerBehaviour behaviour;
+
+	private final CloudEntityResourceMapper resourceMapper = new CloudEntityResourceMapper();
+
+	/**
+	 * Receives the applications of a space one page at a time.
+	 */
+	public interface PageHandler {
+
+		/**
+		 * 
+		 * @param applications of the page. Never null.
+		 * @param packageUpdates <code>package_updated_at</code> of the
+		 * applications of the page by application GUID, as the Cloud Foundry
+		 * client does not map it. Never null, but may be empty.
+		 * @throws CoreException if the page could not be handled. No further
+		 * pages are fetched.
+		 */
+		void pageReceived(List<CloudApplication> applications, Map<UUID, String> packageUpdates)
+				throws CoreException;
+	}
+
+	public PagedApplicationLister(CloudFoundryServerBehaviour behaviour) {
+		this.behaviour = behaviour;
+	}
+
+	/**
+	 * Fetches all applications of the Cloud space of the server, one page at
+	 * a time. If the server has no resolved space, all applications are
+	 * fetched through the Cloud Foundry client and handed to the handler as
+	 * a single page.
+	 * @param handler receives each page
+	 * @param monitor
+	 * @throws CoreException if a page failed to be fetched or handled
+	 * @throws OperationCanceledException if the monitor is canceled
+	 */
+	public void list(PageHandler handler, IProgressMonitor monitor) throws CoreException {
+		CloudFoundryServer cloudServer = behaviour.getCloudFoundryServer();
+		CloudFoundrySpace cloudSpace = cloudServer.getCloudFoundrySpace();
+		CloudSpace space = cloudSpace != null ? cloudSpace.getSpace() : null;
+		if (space == null || space.getMeta() == null || space.getMeta().getGuid() == null) {
+			handler.pageReceived(behaviour.getApplications(monitor), Collections.<UUID, String> emptyMap());
+			return;
+		}
+
+		RestTemplate restTemplate;
+		try {
+			URL url = new URL(cloudServer.getUrl());
+			restTemplate = RestUtils.createRestTemplate(CloudFoundryClientFactory.getProxy(url),
+					cloudServer.getSelfSignedCertificate(), false);
+		}
+		catch (MalformedURLException e) {
+			throw CloudErrorUtil.toCoreException(e);
+		}
+
+		String path = NLS.bind(APPS_PATH, space.getMeta().getGuid(), PAGE_SIZE);
+		listPages(restTemplate, cloudServer.getUrl(), path, handler, monitor);
+	}
+
+	/**
+	 * Fetches the page at the given path, and each following page, handing
+	 * the applications of each page to the handler.
+	 * @param restTemplate used to fetch the pages
+	 * @param url of the Cloud Controller
+	 * @param path of the first page, relative to the Cloud Controller URL
+	 * @param handler receives each page
+	 * @param monitor
+	 * @throws CoreException if a page failed to be fetched or handled
+	 * @throws OperationCanceledException if the monitor is canceled
+	 */
+	protected void listPages(RestTemplate restTemplate, String url, String path, PageHandler handler,
+			IProgressMonitor monitor) throws CoreException {
+		SubMonitor progress = SubMonitor.convert(monitor);
+		while (path != null) {
+			if (progress.isCanceled()) {
+				throw new OperationCanceledException();
+			}
+			progress.setWorkRemaining(10);
+			Map<String, Object> page = fetchPage(restTemplate, url + path, progress.newChild(5));
+
+			List<CloudApplication> applications = new ArrayList<CloudApplication>();
+			Map<UUID, String> packageUpdates = new HashMap<UUID, String>();
+			List<Map<String, Object>> resources = getResources(page);
+			if (resources != null) {
+				for (Map<String, Object> resource : resources) {
+					CloudApplication application = mapApplication(resource);
+					applications.add(application);
+					String packageUpdated = CloudEntityResourceMapper.getEntityAttribute(resource,
+							"package_updated_at", String.class); //$NON-NLS-1$
+					if (packageUpdated != null && application.getMeta() != null
+							&& application.getMeta().getGuid() != null) {
+						packageUpdates.put(application.getMeta().getGuid(), packageUpdated);
+					}
+				}
+			}
+			handler.pageReceived(applications, packageUpdates);
+			progress.worked(5);
+
+			Object nextUrl = page.get("next_url"); //$NON-NLS-1$
+			path = nextUrl instanceof String ? (String) nextUrl : null;
+		}
+	}
+
+	protected Map<String, Object> fetchPage(final RestTemplate restTemplate, final String url,
+			IProgressMonitor monitor) throws CoreException {
+		String serverId = behaviour.getCloudFoundryServer().getServerId();
+		final String label = NLS.bind(Messages.CloudFoundryServerBehaviour_GET_ALL_APPS, serverId);
+		final String error503 = NLS.bind(Messages.CloudFoundryServerBehaviour_ERROR_GET_APPLICATIONS_SERVER,
+				serverId);
+
+		return new ApplicationRequest<Map<String, Object>>(label, behaviour) {
+			@Override
+			protected Map<String, Object> doRun(CloudFoundryOperations client, SubMonitor progress)
+					throws CoreException {
+				HttpHeaders headers = new HttpHeaders();
+				headers.set(AUTHORIZATION_HEADER, behaviour.getAccessTokenManager().getAuthorizationHeader());
+				try {
+					String json = restTemplate.exchange(url, HttpMethod.GET, new HttpEntity<Object>(headers),
+							String.class).getBody();
+					return JsonUtil.convertJsonToMap(json);
+				}
+				catch (RuntimeException e) {
+					if (CloudErrorUtil.isUnauthorisedException(e)) {
+						// Token was revoked. Obtain a new one when the request
+						// is reattempted after logging in again
+						behaviour.getAccessTokenManager().invalidate();
+					}
+					throw e;
+				}
+			}
+
+			@Override
+			protected String get503Error(Throwable rce) {
+				return error503;
+			}
+		}.run(monitor);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static List<Map<String, Object>> getResources(Map<String, Object> page) {
+		Object resources = page.get("resources"); //$NON-NLS-1$
+		return resources instanceof List ? (List<Map<String, Object>>) resources : null;
+	}
+
+	protected CloudApplication mapApplication(Map<String, Object> resource) {
+		CloudApplication application = resourceMapper.mapResource(resource, CloudApplication.class);
+
+		List<String> uris = new ArrayList<String>();
+		List<Map<String, Object>> routes = CloudEntityResourceMapper.getEmbeddedResourceList(
+				CloudEntityResourceMapper.getEntity(resource), "routes"); //$NON-NLS-1$
+		if (routes != null) {
+			for (Map<String, Object> route : routes) {
+				String host = CloudEntityResourceMapper.getEntityAttribute(route, "host", String.class); //$NON-NLS-1$
+				Map<String, Object> domain = CloudEntityResourceMapper.getEmbeddedResource(route, "domain"); //$NON-NLS-1$
+				String domainName = domain != null ? resourceMapper.getNameOfResource(domain) : null;
+				if (domainName != null) {
+					uris.add(host != null && host.length() > 0 ? host + "." + domainName : domainName); //$NON-NLS-1$
+				}
+			}
+		}
+		application.setUris(uris);
+		return application;
+	}
+}
@@ -0,0 +1,274 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Pivotal Software, Inc. 
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution. 
+ * 
+ * The Eclipse Public License is available at 
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * and the Apache License v2.0 is available at 
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * You may elect to redistribute this code under either of these licenses.
+ *  
+ *  Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+ ********************************************************************************/
+package org.eclipse.cft.server.core.internal.client;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+
+import org.eclipse.cft.server.core.internal.CloudErrorUtil;
+import org.eclipse.cft.server.core.internal.CloudFoundryPlugin;
+import org.eclipse.cft.server.core.internal.Messages;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.osgi.util.NLS;
+import org.springframework.http.HttpHeaders;
+
+/**
+ * Limits the rate of client requests per Cloud Controller URL and user, to
+ * stay under the API rate limits enforced by the Cloud Controller. Limits are
+ * shared by all server instances that target the same URL with the same
+ * user.
+ * <p/>
+ * Each URL and user has a token bucket that allows short bursts of requests
+ * and refills at a steady rate. Requests wait for a token rather than fail.
+ * If the Cloud Controller rejects a request with 429 Too Many Requests,
+ * requests wait until the time given by the <code>Retry-After</code> header
+ * or, if no requests remain according to the <code>X-RateLimit-*</code>
+ * headers, by the <code>X-RateLimit-Reset</code> header.
+ * <p/>
+ * The burst size and refill rate can be configured through the following
+ * system properties:
+ * <ul>
+ * <li>{@link #BURST_PROPERTY} maximum number of requests in a burst</li>
+ * <li>{@link #RATE_PROPERTY} number of requests per second</li>
+ * </ul>
+ */
+public class RateLimiter {
+
+	public static final String BURST_PROPERTY = CloudFoundryPlugin.PLUGIN_ID + ".rateLimit.burst"; //$NON-NLS-1$
+
+	public static final String RATE_PROPERTY = CloudFoundryPlugin.PLUGIN_ID + ".rateLimit.perSecond"; //$NON-NLS-1$
+
+	public static final int DEFAULT_BURST = 20;
+
+	public static final int DEFAULT_RATE = 10;
+
+	/**
+	 * Time in milliseconds to wait after a 429 response that does not
+	 * indicate when requests can be sent again.
+	 */
+	public static final long DEFAULT_RETRY_AFTER = 2000;
+
+	/**
+	 * Longest time in milliseconds that a response header can block requests,
+	 * to guard against invalid values.
+	 */
+	public static final long MAX_RETRY_AFTER = 5 * 60 * 1000;
+
+	private static final String RETRY_AFTER_HEADER = "Retry-After"; //$NON-NLS-1$
+
+	private static final String RATE_LIMIT_REMAINING_HEADER = "X-RateLimit-Remaining"; //$NON-NLS-1$
+
+	private static final String RATE_LIMIT_RESET_HEADER = "X-RateLimit-Reset"; //$NON-NLS-1$
+
+	private static final String HTTP_DATE_FORMAT = "EEE, dd MMM yyyy HH:mm:ss zzz"; //$NON-NLS-1$
+
+	private static final long CANCEL_POLL_INTERVAL = 100;
+
+	private static final RateLimiter DEFAULT = new RateLimiter();
+
+	private final Map<String, Bucket> buckets = new HashMap<String, Bucket>();
+
+	public static RateLimiter getDefault() {
+		return DEFAULT;
+	}
+
+	/**
+	 * Waits until a request can be sent for the given URL and user.
+	 * @param key identifies the URL and user
+	 * @param label of the request, used when the request is canceled
+	 * @param monitor
+	 * @throws OperationCanceledException if the monitor is canceled or the
+	 * thread is interrupted while waiting
+	 */
+	public void acquire(String key, String label, IProgressMonitor monitor) throws OperationCanceledException {
+		Bucket bucket = getBucket(key);
+		try {
+			synchronized (bucket) {
+				long wait;
+				while ((wait = bucket.tryAcquire(System.currentTimeMillis())) > 0) {
+					if (monitor != null && monitor.isCanceled()) {
+						throw new OperationCanceledException(NLS.bind(Messages.OPERATION_CANCELED, label));
+					}
+					bucket.wait(Math.min(wait, CANCEL_POLL_INTERVAL));
+				}
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new OperationCanceledException(NLS.bind(Messages.OPERATION_CANCELED, label));
+		}
+	}
+
+	/**
+	 * Records a request that was rejected because the rate limit was
+	 * exceeded. Further requests for the given URL and user wait until the
+	 * time indicated by the response headers of the error, if any, or
+	 * otherwise for {@link #DEFAULT_RETRY_AFTER}.
+	 * @param key identifies the URL and user
+	 * @param error 429 error
+	 * @return time in milliseconds until requests can be sent again
+	 */
+	public long recordRateLimited(String key, Throwable error) {
+		Bucket bucket = getBucket(key);
+		long now = System.currentTimeMillis();
+		long blockedUntil = getBlockedUntil(CloudErrorUtil.getResponseHeaders(error), now);
+		if (blockedUntil <= now) {
+			blockedUntil = now + DEFAULT_RETRY_AFTER;
+		}
+		synchronized (bucket) {
+			bucket.block(blockedUntil);
+			return bucket.getBlockedUntil() - now;
+		}
+	}
+
+	protected synchronized Bucket getBucket(String key) {
+		Bucket bucket = buckets.get(key);
+		if (bucket == null) {
+			bucket = new Bucket(getBurst(), getRate());
+			buckets.put(key, bucket);
+		}
+		return bucket;
+	}
+
+	/**
+	 * 
+	 * @return time at which requests can be sent again according to the
+	 * given headers, or -1 if the headers do not block requests
+	 */
+	protected long getBlockedUntil(HttpHeaders headers, long now) {
+		if (headers == null) {
+			return -1;
+		}
+		long blockedUntil = -1;
+		String retryAfter = headers.getFirst(RETRY_AFTER_HEADER);
+		if (retryAfter != null) {
+			int seconds = parseInt(retryAfter);
+			if (seconds >= 0) {
+				blockedUntil = now + seconds * 1000L;
+			}
+			else {
+				SimpleDateFormat format = new SimpleDateFormat(HTTP_DATE_FORMAT, Locale.US);
+				format.setTimeZone(TimeZone.getTimeZone("GMT")); //$NON-NLS-1$
+				try {
+					blockedUntil = format.parse(retryAfter.trim()).getTime();
+				}
+				catch (ParseException e) {
+					// Ignore invalid header
+				}
+			}
+		}
+		else if (parseInt(headers.getFirst(RATE_LIMIT_REMAINING_HEADER)) == 0) {
+			// Reset is given in seconds since the epoch
+			int reset = parseInt(headers.getFirst(RATE_LIMIT_RESET_HEADER));
+			if (reset > 0) {
+				blockedUntil = reset * 1000L;
+			}
+		}
+		return Math.min(blockedUntil, now + MAX_RETRY_AFTER);
+	}
+
+	private static int parseInt(String value) {
+		if (value != null) {
+			try {
+				return Integer.parseInt(value.trim());
+			}
+			catch (NumberFormatException e) {
+				// Not a number
+			}
+		}
+		return -1;
+	}
+
+	private static int getBurst() {
+		return Math.max(1, Integer.getInteger(BURST_PROPERTY, DEFAULT_BURST));
+	}
+
+	private static int getRate() {
+		return Math.max(1, Integer.getInteger(RATE_PROPERTY, DEFAULT_RATE));
+	}
+
+	/**
+	 * Token bucket for a URL and user. Must be accessed while synchronized
+	 * on the bucket.
+	 */
+	protected static class Bucket {
+
+		private final int capacity;
+
+		private final double tokensPerMillisecond;
+
+		private double tokens;
+
+		private long lastRefill;
+
+		private long blockedUntil;
+
+		Bucket(int capacity, int tokensPerSecond) {
+			this.capacity = capacity;
+			this.tokensPerMillisecond = tokensPerSecond / 1000.0;
+			this.tokens = capacity;
+			this.lastRefill = System.currentTimeMillis();
+		}
+
+		/**
+		 * Takes a token if one is available.
+		 * @param now
+		 * @return 0 if a token was taken, or otherwise the time in
+		 * milliseconds until a token may become available
+		 */
+		long tryAcquire(long now) {
+			if (now < blockedUntil) {
+				return blockedUntil - now;
+			}
+			refill(now);
+			if (tokens >= 1) {
+				tokens--;
+				return 0;
+			}
+			return Math.max(1, (long) Math.ceil((1 - tokens) / tokensPerMillisecond));
+		}
+
+		void block(long until) {
+			if (until > blockedUntil) {
+				blockedUntil = until;
+			}
+			// Requests are sent again at a steady rate rather than all at once
+			tokens = 0;
+			lastRefill = Math.max(lastRefill, until);
+		}
+
+		long getBlockedUntil() {
+			return blockedUntil;
+		}
+
+		private void refill(long now) {
+			if (now > lastRefill) {
+				tokens = Math.min(capacity, tokens + (now - lastRefill) * tokensPerMillisecond);
+				lastRefill = now;
+			}
+		}
+	}
+}
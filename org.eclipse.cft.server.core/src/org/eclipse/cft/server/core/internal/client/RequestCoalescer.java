@@ -0,0 +1,178 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Pivotal Software, Inc. 
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution. 
+ * 
+ * The Eclipse Public License is available at 
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * and the Apache License v2.0 is available at 
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * You may elect to redistribute this code under either of these licenses.
+ *  
+ *  Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+ ********************************************************************************/
+package org.eclipse.cft.server.core.internal.client;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.cft.server.core.internal.CloudErrorUtil;
+import org.eclipse.cft.server.core.internal.CloudFoundryPlugin;
+import org.eclipse.cft.server.core.internal.Messages;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.SubMonitor;
+import org.eclipse.osgi.util.NLS;
+
+/**
+ * Shares a single in-flight call among concurrent client requests that have
+ * the same coalescing key (see {@link BaseClientRequest#getCoalescingKey()}).
+ * The first request with a given key performs the call, and requests with the
+ * same key that arrive while the call is running wait for, and receive, its
+ * result or error.
+ */
+public class RequestCoalescer {
+
+	private static final long CANCEL_POLL_INTERVAL = 200;
+
+	private static final RequestCoalescer DEFAULT = new RequestCoalescer();
+
+	private final Map<String, FutureTask<Object>> inFlight = new HashMap<String, FutureTask<Object>>();
+
+	private final AtomicLong coalescedCount = new AtomicLong();
+
+	public static RequestCoalescer getDefault() {
+		return DEFAULT;
+	}
+
+	/**
+	 * Runs the given request, or waits for the result of an identical request
+	 * that is already running.
+	 * @param key non-null coalescing key of the request
+	 * @param request
+	 * @param progress
+	 * @return result of the request
+	 * @throws CoreException if the request failed
+	 * @throws OperationCanceledException if the request was canceled
+	 */
+	@SuppressWarnings("unchecked")
+	<T> T run(String key, final BaseClientRequest<T> request, final SubMonitor progress) throws CoreException,
+			OperationCanceledException {
+		FutureTask<Object> task;
+		boolean owner = false;
+		synchronized (inFlight) {
+			task = inFlight.get(key);
+			if (task == null) {
+				task = new FutureTask<Object>(new Callable<Object>() {
+					public Object call() throws Exception {
+						return request.runRequest(progress);
+					}
+				});
+				inFlight.put(key, task);
+				owner = true;
+			}
+		}
+
+		if (owner) {
+			try {
+				task.run();
+			}
+			finally {
+				synchronized (inFlight) {
+					if (inFlight.get(key) == task) {
+						inFlight.remove(key);
+					}
+				}
+			}
+			return (T) getResult(task, progress, request);
+		}
+
+		long count = coalescedCount.incrementAndGet();
+		CloudFoundryPlugin.trace("Coalesced request: " + key + " - total coalesced: " + count); //$NON-NLS-1$ //$NON-NLS-2$
+		try {
+			return (T) copy(getResult(task, progress, request));
+		}
+		catch (OperationCanceledException oce) {
+			// The request that performed the call may have been canceled
+			// by its own caller. Unless this caller was canceled too, run the
+			// request separately
+			if (progress.isCanceled()) {
+				throw oce;
+			}
+			return request.runRequest(progress);
+		}
+	}
+
+	/**
+	 * 
+	 * @return number of requests that did not perform their own call, but
+	 * instead received the result of an identical, concurrent request.
+	 */
+	public long getCoalescedCount() {
+		return coalescedCount.get();
+	}
+
+	/**
+	 * 
+	 * @return number of coalescable calls currently in flight
+	 */
+	public int getInFlightCount() {
+		synchronized (inFlight) {
+			return inFlight.size();
+		}
+	}
+
+	private Object getResult(FutureTask<Object> task, SubMonitor progress, BaseClientRequest<?> request)
+			throws CoreException, OperationCanceledException {
+		try {
+			while (true) {
+				try {
+					return task.get(CANCEL_POLL_INTERVAL, TimeUnit.MILLISECONDS);
+				}
+				catch (TimeoutException e) {
+					if (progress.isCanceled()) {
+						throw new OperationCanceledException(NLS.bind(Messages.OPERATION_CANCELED,
+								request.getRequestLabel()));
+					}
+				}
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new OperationCanceledException(NLS.bind(Messages.OPERATION_CANCELED, request.getRequestLabel()));
+		}
+		catch (ExecutionException e) {
+			Throwable cause = e.getCause() != null ? e.getCause() : e;
+			if (cause instanceof CoreException) {
+				throw (CoreException) cause;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw CloudErrorUtil.toCoreException(cause);
+		}
+	}
+
+	/**
+	 * Lists are copied for requests that share a result, as callers may
+	 * modify the lists they are given.
+	 */
+	private static Object copy(Object value) {
+		return value instanceof List<?> ? new ArrayList<Object>((List<?>) value) : value;
+	}
+}
@@ -0,0 +1,316 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Pivotal Software, Inc. 
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution. 
+ * 
+ * The Eclipse Public License is available at 
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * and the Apache License v2.0 is available at 
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * You may elect to redistribute this code under either of these licenses.
+ *  
+ *  Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+ ********************************************************************************/
+package org.eclipse.cft.server.core.internal.client;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.eclipse.cft.server.core.internal.Messages;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.osgi.util.NLS;
+
+/**
+ * Admits client requests to a server according to the priority of the work
+ * that issues them. Each priority class has a bounded number of requests
+ * that may run concurrently against the server, and the number of requests
+ * of all classes running against the server is bounded as well. Requests of a
+ * lower priority class do not start while requests of a higher class are
+ * waiting, and the last {@link #INTERACTIVE_RESERVE} slots of the server are
+ * only given to interactive requests, so that queued background refresh work
+ * yields to interactive operations.
+ * <p/>
+ * Requests still run on the thread that issues them. The priority of a
+ * thread is set with {@link #setCurrentPriority(Priority)} by the component
+ * that runs the work, for example, the module refresh job or the publish
+ * operation. Requests issued from any other thread are interactive.
+ * <p/>
+ * A thread that already holds a slot of the scheduler, for example, when a
+ * request obtains a client that itself sends requests, is not admitted again,
+ * to avoid deadlocks.
+ */
+public class RequestScheduler {
+
+	/**
+	 * Priority classes, in decreasing order of priority.
+	 */
+	public enum Priority {
+
+		/**
+		 * User-initiated operations, like starting an application from the
+		 * editor.
+		 */
+		INTERACTIVE(6),
+
+		/**
+		 * Operations performed as part of a server publish.
+		 */
+		PUBLISH(3),
+
+		/**
+		 * Background refresh of modules and services.
+		 */
+		BACKGROUND(2);
+
+		private final int maxConcurrent;
+
+		private Priority(int maxConcurrent) {
+			this.maxConcurrent = maxConcurrent;
+		}
+
+		/**
+		 * 
+		 * @return maximum number of requests of this priority that can run
+		 * concurrently against a server
+		 */
+		public int getMaxConcurrent() {
+			return maxConcurrent;
+		}
+	}
+
+	/**
+	 * Default maximum number of requests of all priorities that can run
+	 * concurrently against a server.
+	 */
+	public static final int DEFAULT_MAX_CONCURRENT = 8;
+
+	/**
+	 * Number of slots of a server that requests other than interactive ones
+	 * cannot take.
+	 */
+	public static final int INTERACTIVE_RESERVE = 2;
+
+	private static final long CANCEL_POLL_INTERVAL = 200;
+
+	private static final ThreadLocal<Priority> CURRENT_PRIORITY = new ThreadLocal<Priority>() {
+		@Override
+		protected Priority initialValue() {
+			return Priority.INTERACTIVE;
+		}
+	};
+
+	/**
+	 * Slot held by the current thread in this scheduler, if any.
+	 */
+	private final ThreadLocal<Admission> admission = new ThreadLocal<Admission>();
+
+	private final ReentrantLock lock = new ReentrantLock();
+
+	private final Condition slotReleased = lock.newCondition();
+
+	private final int[] running = new int[Priority.values().length];
+
+	private final int[] waiting = new int[Priority.values().length];
+
+	private final int maxConcurrent;
+
+	private int totalRunning;
+
+	public RequestScheduler() {
+		this(DEFAULT_MAX_CONCURRENT);
+	}
+
+	/**
+	 * 
+	 * @param maxConcurrent maximum number of requests of all priorities that
+	 * can run concurrently. At least one slot is always left to requests
+	 * other than interactive ones.
+	 */
+	public RequestScheduler(int maxConcurrent) {
+		this.maxConcurrent = Math.max(1, maxConcurrent);
+	}
+
+	/**
+	 * Sets the priority of requests issued by the current thread.
+	 * @param priority must not be null
+	 * @return the previous priority of the current thread, to be restored
+	 * when the work completes
+	 */
+	public static Priority setCurrentPriority(Priority priority) {
+		Priority previous = CURRENT_PRIORITY.get();
+		CURRENT_PRIORITY.set(priority);
+		return previous;
+	}
+
+	/**
+	 * 
+	 * @return priority of requests issued by the current thread. Never null.
+	 */
+	public static Priority getCurrentPriority() {
+		return CURRENT_PRIORITY.get();
+	}
+
+	/**
+	 * Waits until a request with the priority of the current thread may run.
+	 * Every call must be followed by a call to {@link #release()} once the
+	 * request completes.
+	 * @param label of the request, used when the request is canceled
+	 * @param monitor
+	 * @throws OperationCanceledException if the monitor is canceled or the
+	 * thread is interrupted while waiting
+	 */
+	public void acquire(String label, IProgressMonitor monitor) throws OperationCanceledException {
+		Admission current = admission.get();
+		if (current != null) {
+			current.count++;
+			return;
+		}
+
+		Priority priority = getCurrentPriority();
+		int index = priority.ordinal();
+		lock.lock();
+		try {
+			waiting[index]++;
+			try {
+				while (!canRun(priority)) {
+					if (monitor != null && monitor.isCanceled()) {
+						throw new OperationCanceledException(NLS.bind(Messages.OPERATION_CANCELED, label));
+					}
+					slotReleased.await(CANCEL_POLL_INTERVAL, TimeUnit.MILLISECONDS);
+				}
+			}
+			finally {
+				waiting[index]--;
+			}
+			running[index]++;
+			totalRunning++;
+			admission.set(new Admission(priority));
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw notAdmitted(new OperationCanceledException(NLS.bind(Messages.OPERATION_CANCELED, label)));
+		}
+		catch (RuntimeException e) {
+			throw notAdmitted(e);
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Must be called while holding the lock.
+	 */
+	private RuntimeException notAdmitted(RuntimeException error) {
+		// Lower priority requests may have been waiting on this one
+		slotReleased.signalAll();
+		return error;
+	}
+
+	/**
+	 * Releases the slot acquired by the current thread in
+	 * {@link #acquire(String, IProgressMonitor)}.
+	 */
+	public void release() {
+		Admission current = admission.get();
+		if (current == null) {
+			return;
+		}
+		if (--current.count > 0) {
+			return;
+		}
+		admission.remove();
+
+		lock.lock();
+		try {
+			running[current.priority.ordinal()]--;
+			totalRunning--;
+			slotReleased.signalAll();
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * 
+	 * @return true if the current thread holds a slot of this scheduler
+	 */
+	public boolean isAdmitted() {
+		return admission.get() != null;
+	}
+
+	/**
+	 * 
+	 * @param priority
+	 * @return number of requests of the given priority currently running
+	 */
+	public int getRunningCount(Priority priority) {
+		lock.lock();
+		try {
+			return running[priority.ordinal()];
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * 
+	 * @param priority
+	 * @return number of requests of the given priority waiting to run
+	 */
+	public int getWaitingCount(Priority priority) {
+		lock.lock();
+		try {
+			return waiting[priority.ordinal()];
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Must be called while holding the lock.
+	 */
+	private boolean canRun(Priority priority) {
+		if (running[priority.ordinal()] >= priority.getMaxConcurrent()) {
+			return false;
+		}
+		int available = priority == Priority.INTERACTIVE ? maxConcurrent : maxConcurrent
+				- Math.min(INTERACTIVE_RESERVE, maxConcurrent - 1);
+		if (totalRunning >= available) {
+			return false;
+		}
+		for (int i = 0; i < priority.ordinal(); i++) {
+			if (waiting[i] > 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Slot held by a thread, and the number of nested requests of the thread
+	 * that use it.
+	 */
+	private static class Admission {
+
+		final Priority priority;
+
+		int count = 1;
+
+		Admission(Priority priority) {
+			this.priority = priority;
+		}
+	}
+}
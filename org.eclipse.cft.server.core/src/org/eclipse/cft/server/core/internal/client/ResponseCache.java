@@ -0,0 +1,264 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Pivotal Software, Inc. 
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution. 
+ * 
+ * The Eclipse Public License is available at 
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * and the Apache License v2.0 is available at 
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * You may elect to redistribute this code under either of these licenses.
+ *  
+ *  Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+ ********************************************************************************/
+package org.eclipse.cft.server.core.internal.client;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.cloudfoundry.client.lib.CloudFoundryOperations;
+import org.eclipse.cft.server.core.internal.CloudFoundryPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.SubMonitor;
+
+/**
+ * Caches responses of read-mostly Cloud Controller queries for a server, like
+ * domains, routes and service offerings, each for its own time to live.
+ * <p/>
+ * Requests that modify the cached data should be wrapped with
+ * {@link #invalidating(BaseClientRequest)} so that the cache is cleared once
+ * they complete. A manual refresh should call {@link #invalidate()} so that
+ * subsequent queries go to the server.
+ * <p/>
+ * Hit and miss counts are kept per cache, and in total over the caches of all
+ * servers, which are shown in the HTTP trace.
+ */
+public class ResponseCache {
+
+	public static final long DOMAINS_TTL = 5 * 60 * 1000;
+
+	public static final long ROUTES_TTL = 60 * 1000;
+
+	public static final long SERVICE_OFFERINGS_TTL = 10 * 60 * 1000;
+
+	public static final long SPACES_TTL = 5 * 60 * 1000;
+
+	private final Map<String, CachedResponse> responses = new HashMap<String, CachedResponse>();
+
+	private final AtomicLong hits = new AtomicLong();
+
+	private final AtomicLong misses = new AtomicLong();
+
+	private static final AtomicLong totalHits = new AtomicLong();
+
+	private static final AtomicLong totalMisses = new AtomicLong();
+
+	/**
+	 * Incremented on every invalidation, so that responses of requests that
+	 * were running while the cache was invalidated are not stored.
+	 */
+	private long generation;
+
+	/**
+	 * Wraps the given request so that its result is served from the cache
+	 * while it is not older than the given time to live.
+	 * @param key identifying the query and its arguments
+	 * @param ttl time to live of the response in milliseconds
+	 * @param request performing the query
+	 * @return request that uses the cache. Never null.
+	 */
+	public <T> BaseClientRequest<T> cached(String key, long ttl, BaseClientRequest<T> request) {
+		return new CachedRequest<T>(this, key, ttl, request);
+	}
+
+	/**
+	 * Wraps the given request so that the cache is invalidated after it runs,
+	 * whether it succeeds or fails.
+	 * @param request that modifies data that may be cached. If null, null is
+	 * returned.
+	 * @return request that invalidates the cache
+	 */
+	public <T> BaseClientRequest<T> invalidating(BaseClientRequest<T> request) {
+		return request != null ? new InvalidatingRequest<T>(this, request) : null;
+	}
+
+	/**
+	 * Removes all cached responses.
+	 */
+	public synchronized void invalidate() {
+		generation++;
+		responses.clear();
+	}
+
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	/**
+	 * 
+	 * @return number of hits of the caches of all servers
+	 */
+	public static long getTotalHitCount() {
+		return totalHits.get();
+	}
+
+	/**
+	 * 
+	 * @return number of misses of the caches of all servers
+	 */
+	public static long getTotalMissCount() {
+		return totalMisses.get();
+	}
+
+	/**
+	 * 
+	 * @param key
+	 * @return cached response for the key, or null if there is no response or
+	 * it has expired
+	 */
+	protected synchronized CachedResponse getResponse(String key) {
+		CachedResponse response = responses.get(key);
+		if (response != null && response.expiry < System.currentTimeMillis()) {
+			responses.remove(key);
+			response = null;
+		}
+		if (response != null) {
+			hits.incrementAndGet();
+			totalHits.incrementAndGet();
+		}
+		else {
+			misses.incrementAndGet();
+			totalMisses.incrementAndGet();
+		}
+		return response;
+	}
+
+	protected synchronized long getGeneration() {
+		return generation;
+	}
+
+	protected synchronized void putResponse(String key, Object value, long ttl, long requestGeneration) {
+		if (requestGeneration == generation) {
+			responses.put(key, new CachedResponse(value, System.currentTimeMillis() + ttl));
+		}
+	}
+
+	protected static class CachedResponse {
+
+		final Object value;
+
+		final long expiry;
+
+		CachedResponse(Object value, long expiry) {
+			this.value = value;
+			this.expiry = expiry;
+		}
+	}
+
+	/**
+	 * Request that returns a cached response if available, and otherwise runs
+	 * the wrapped request and caches its result.
+	 */
+	static class CachedRequest<T> extends BaseClientRequest<T> {
+
+		private final ResponseCache cache;
+
+		private final String key;
+
+		private final long ttl;
+
+		private final BaseClientRequest<T> request;
+
+		CachedRequest(ResponseCache cache, String key, long ttl, BaseClientRequest<T> request) {
+			super(request.getRequestLabel());
+			this.cache = cache;
+			this.key = key;
+			this.ttl = ttl;
+			this.request = request;
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		public T run(IProgressMonitor monitor) throws CoreException {
+			CachedResponse response = cache.getResponse(key);
+			if (response != null) {
+				CloudFoundryPlugin.trace("Cached response for " + key + " - hits: " + cache.getHitCount() //$NON-NLS-1$ //$NON-NLS-2$
+						+ ", misses: " + cache.getMissCount()); //$NON-NLS-1$
+				return (T) copy(response.value);
+			}
+			long requestGeneration = cache.getGeneration();
+			T result = request.run(monitor);
+			cache.putResponse(key, copy(result), ttl, requestGeneration);
+			return result;
+		}
+
+		/**
+		 * Lists are copied in and out of the cache, as callers may modify the
+		 * lists they are given.
+		 */
+		private static Object copy(Object value) {
+			return value instanceof List<?> ? new ArrayList<Object>((List<?>) value) : value;
+		}
+
+		@Override
+		protected T doRun(CloudFoundryOperations client, SubMonitor progress) throws CoreException {
+			return request.doRun(client, progress);
+		}
+
+		@Override
+		protected CloudFoundryOperations getClient(IProgressMonitor monitor) throws CoreException {
+			return request.getClient(monitor);
+		}
+	}
+
+	/**
+	 * Request that invalidates the cache once the wrapped request has run.
+	 */
+	static class InvalidatingRequest<T> extends BaseClientRequest<T> {
+
+		private final ResponseCache cache;
+
+		private final BaseClientRequest<T> request;
+
+		InvalidatingRequest(ResponseCache cache, BaseClientRequest<T> request) {
+			super(request.getRequestLabel());
+			this.cache = cache;
+			this.request = request;
+		}
+
+		@Override
+		public T run(IProgressMonitor monitor) throws CoreException {
+			try {
+				return request.run(monitor);
+			}
+			finally {
+				cache.invalidate();
+			}
+		}
+
+		@Override
+		protected T doRun(CloudFoundryOperations client, SubMonitor progress) throws CoreException {
+			return request.doRun(client, progress);
+		}
+
+		@Override
+		protected CloudFoundryOperations getClient(IProgressMonitor monitor) throws CoreException {
+			return request.getClient(monitor);
+		}
+	}
+}
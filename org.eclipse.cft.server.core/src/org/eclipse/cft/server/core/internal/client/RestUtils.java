@@ -17,21 +17,11 @@
  */
 package org.eclipse.cft.server.core.internal.client;
 
-import static org.apache.http.conn.ssl.SSLSocketFactory.BROWSER_COMPATIBLE_HOSTNAME_VERIFIER;
-
 import java.security.GeneralSecurityException;
 
-import org.apache.http.HttpHost;
-import org.apache.http.auth.AuthScope;
-import org.apache.http.auth.UsernamePasswordCredentials;
 import org.apache.http.client.HttpClient;
-import org.apache.http.conn.routing.HttpRoutePlanner;
 import org.apache.http.conn.ssl.SSLContextBuilder;
 import org.apache.http.conn.ssl.TrustSelfSignedStrategy;
-import org.apache.http.impl.client.BasicCredentialsProvider;
-import org.apache.http.impl.client.HttpClientBuilder;
-import org.apache.http.impl.client.HttpClients;
-import org.apache.http.impl.conn.DefaultProxyRoutePlanner;
 import org.cloudfoundry.client.lib.HttpProxyConfiguration;
 import org.cloudfoundry.client.lib.rest.CloudControllerResponseErrorHandler;
 import org.cloudfoundry.client.lib.rest.LoggingRestTemplate;
@@ -59,40 +49,15 @@ public class RestUtils {
 	}
 	
 	public static ClientHttpRequestFactory createRequestFactory(HttpProxyConfiguration httpProxyConfiguration, boolean trustSelfSignedCerts, boolean disableRedirectHandling) {
-		HttpClientBuilder httpClientBuilder = HttpClients.custom().useSystemProperties();
-
-		if (trustSelfSignedCerts) {
-			httpClientBuilder.setSslcontext(buildSslContext());
-			httpClientBuilder.setHostnameVerifier(BROWSER_COMPATIBLE_HOSTNAME_VERIFIER);
-		}
-		
-		if (disableRedirectHandling) {
-			httpClientBuilder.disableRedirectHandling();
-		}
-
-		if (httpProxyConfiguration != null) {
-			HttpHost proxy = new HttpHost(httpProxyConfiguration.getProxyHost(), httpProxyConfiguration.getProxyPort());
-			httpClientBuilder.setProxy(proxy);
-
-			if (httpProxyConfiguration.isAuthRequired()) {
-				BasicCredentialsProvider credentialsProvider = new BasicCredentialsProvider();
-				credentialsProvider.setCredentials(
-						new AuthScope(httpProxyConfiguration.getProxyHost(), httpProxyConfiguration.getProxyPort()),
-						new UsernamePasswordCredentials(httpProxyConfiguration.getUsername(), httpProxyConfiguration.getPassword()));
-				httpClientBuilder.setDefaultCredentialsProvider(credentialsProvider);
-			}
-
-			HttpRoutePlanner routePlanner = new DefaultProxyRoutePlanner(proxy);
-			httpClientBuilder.setRoutePlanner(routePlanner);
-		}
-
-		HttpClient httpClient = httpClientBuilder.build();
+		// Clients are shared per target, so that connections are kept alive
+		// and reused across REST templates
+		HttpClient httpClient = HttpConnectionPools.getClient(httpProxyConfiguration, trustSelfSignedCerts, disableRedirectHandling);
 		HttpComponentsClientHttpRequestFactory requestFactory = new HttpComponentsClientHttpRequestFactory(httpClient);
 
 		return requestFactory;
 	}
 
-	private static javax.net.ssl.SSLContext buildSslContext()  {
+	static javax.net.ssl.SSLContext buildSslContext()  {
 		try {
 			return new SSLContextBuilder().useSSL().loadTrustMaterial(null, new TrustSelfSignedStrategy()).build();
 		} catch (GeneralSecurityException gse) {
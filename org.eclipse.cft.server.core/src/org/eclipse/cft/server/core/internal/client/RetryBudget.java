@@ -0,0 +1,88 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Pivotal Software, Inc. 
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution. 
+ * 
+ * The Eclipse Public License is available at 
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * and the Apache License v2.0 is available at 
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * You may elect to redistribute this code under either of these licenses.
+ *  
+ *  Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+ ********************************************************************************/
+package org.eclipse.cft.server.core.internal.client;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Limits how many reattempts of failed client requests can be made against a
+ * server within a period of time, so that an unavailable server is not
+ * flooded with reattempts from many requests.
+ */
+public class RetryBudget {
+
+	/**
+	 * Maximum number of reattempts against a single server per budget
+	 * period.
+	 */
+	public static final int MAX_RETRIES = 60;
+
+	public static final long PERIOD = 60 * 1000;
+
+	private static final RetryBudget DEFAULT = new RetryBudget();
+
+	private final Map<String, Budget> budgets = new HashMap<String, Budget>();
+
+	public static RetryBudget getDefault() {
+		return DEFAULT;
+	}
+
+	/**
+	 * Takes one reattempt from the retry budget of the given server.
+	 * @param budgetKey identifies the server. If null, no budget applies.
+	 * @return true if a reattempt can be made. False if the budget is
+	 * exhausted.
+	 */
+	public synchronized boolean acquireRetry(String budgetKey) {
+		if (budgetKey == null) {
+			return true;
+		}
+		Budget budget = budgets.get(budgetKey);
+		if (budget == null) {
+			budget = new Budget();
+			budgets.put(budgetKey, budget);
+		}
+		return budget.acquire(System.currentTimeMillis());
+	}
+
+	/**
+	 * Number of reattempts left for a server in the current period.
+	 */
+	private static class Budget {
+
+		private long periodStart;
+
+		private int used;
+
+		boolean acquire(long now) {
+			if (now - periodStart >= PERIOD) {
+				periodStart = now;
+				used = 0;
+			}
+			if (used >= MAX_RETRIES) {
+				return false;
+			}
+			used++;
+			return true;
+		}
+	}
+}
@@ -0,0 +1,90 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Pivotal Software, Inc. 
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution. 
+ * 
+ * The Eclipse Public License is available at 
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * and the Apache License v2.0 is available at 
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * You may elect to redistribute this code under either of these licenses.
+ *  
+ *  Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+ ********************************************************************************/
+package org.eclipse.cft.server.core.internal.client;
+
+import java.util.Random;
+
+/**
+ * Determines how a failed client request is reattempted: how many attempts
+ * are made at most, and how long to wait before each reattempt.
+ * <p/>
+ * The wait before a reattempt grows exponentially from the interval
+ * suggested by the request for the error, up to a maximum interval, and is
+ * randomised by a jitter factor so that requests that failed at the same time
+ * do not all reattempt at the same time.
+ */
+public class RetryPolicy {
+
+	public static final RetryPolicy DEFAULT = new RetryPolicy(20, 1.5, 0.2,
+			CloudOperationsConstants.ONE_SECOND_INTERVAL * 8);
+
+	private static final Random RANDOM = new Random();
+
+	private final int maxAttempts;
+
+	private final double multiplier;
+
+	private final double jitter;
+
+	private final long maxInterval;
+
+	/**
+	 * 
+	 * @param maxAttempts maximum number of attempts, including the first one.
+	 * @param multiplier factor by which the interval grows after every
+	 * reattempt. Must be 1 or higher.
+	 * @param jitter fraction of the interval by which it is randomly increased
+	 * or decreased. Must be between 0 and 1.
+	 * @param maxInterval maximum interval in milliseconds before jitter is
+	 * applied
+	 */
+	public RetryPolicy(int maxAttempts, double multiplier, double jitter, long maxInterval) {
+		this.maxAttempts = maxAttempts;
+		this.multiplier = Math.max(1, multiplier);
+		this.jitter = Math.min(1, Math.max(0, jitter));
+		this.maxInterval = maxInterval;
+	}
+
+	public int getMaxAttempts() {
+		return maxAttempts;
+	}
+
+	/**
+	 * 
+	 * @param attempt number of attempts made so far. 1 after the first
+	 * attempt failed.
+	 * @param baseInterval interval suggested by the request for the error
+	 * that occurred, in milliseconds.
+	 * @return interval in milliseconds to wait before the next attempt, or -1
+	 * if no further attempts should be made.
+	 */
+	public long getInterval(int attempt, long baseInterval) {
+		if (baseInterval <= 0 || attempt >= maxAttempts) {
+			return -1;
+		}
+		double interval = Math.min(maxInterval, baseInterval * Math.pow(multiplier, attempt - 1));
+		double offset;
+		synchronized (RANDOM) {
+			offset = (RANDOM.nextDouble() * 2 - 1) * jitter;
+		}
+		return Math.max(1, Math.round(interval * (1 + offset)));
+	}
+}
@@ -30,11 +30,13 @@ import org.cloudfoundry.client.lib.UploadStatusCallback;
 import org.cloudfoundry.client.lib.archive.ApplicationArchive;
 import org.cloudfoundry.client.lib.domain.CloudApplication;
 import org.eclipse.cft.server.core.internal.ApplicationAction;
+import org.eclipse.cft.server.core.internal.ArchiveStagingArea;
 import org.eclipse.cft.server.core.internal.CachingApplicationArchive;
 import org.eclipse.cft.server.core.internal.CloudErrorUtil;
 import org.eclipse.cft.server.core.internal.CloudFoundryPlugin;
 import org.eclipse.cft.server.core.internal.CloudFoundryServer;
 import org.eclipse.cft.server.core.internal.Messages;
+import org.eclipse.cft.server.core.internal.application.ApplicationArchiveDigester;
 import org.eclipse.cft.server.core.internal.application.CloudApplicationArchive;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
@@ -83,6 +85,17 @@ public class StartOperation extends RestartOperation {
 	 */
 	final protected boolean incrementalPublish;
 
+	/**
+	 * Digests of the generated archive, computed in the background while the
+	 * application is checked or created in the server.
+	 */
+	private ApplicationArchiveDigester.DigestComputation archiveDigests;
+
+	/**
+	 * Time in milliseconds taken to generate the application archive
+	 */
+	private long archiveTime;
+
 	/**
 	 * 
 	 * @param waitForDeployment
@@ -114,6 +127,10 @@ public class StartOperation extends RestartOperation {
 		final Server server = (Server) getBehaviour().getServer();
 		final CloudFoundryServer cloudServer = getBehaviour().getCloudFoundryServer();
 
+		// Archives generated for the module must not be deleted by other
+		// publishes until it has been pushed
+		ArchiveStagingArea stagingArea = CloudFoundryPlugin.getDefault().getArchiveStagingArea();
+		stagingArea.acquire(server, appModule.getLocalModule());
 		try {
 
 			// Update the local cloud module representing the application
@@ -144,6 +161,7 @@ public class StartOperation extends RestartOperation {
 				SubMonitor subMonitor = SubMonitor.convert(monitor, 100);
 
 				subMonitor.subTask(generatingArchiveLabel);
+				long archiveStart = System.currentTimeMillis();
 				ApplicationArchive applicationArchive = getBehaviour().generateApplicationArchiveFile(
 						appModule.getDeploymentInfo(), appModule, getModules(), server, incrementalPublish,
 						subMonitor.newChild(20));
@@ -154,6 +172,12 @@ public class StartOperation extends RestartOperation {
 					throw new CoreException(new Status(IStatus.ERROR, CloudFoundryPlugin.PLUGIN_ID,
 							"Application archive is not available for application: " + deploymentName)); //$NON-NLS-1$
 				}
+				archiveTime = System.currentTimeMillis() - archiveStart;
+
+				// Start computing sha1 codes for the archive entries right
+				// away, so that it overlaps with checking or creating the
+				// application in the server
+				archiveDigests = ApplicationArchiveDigester.start(applicationArchive);
 
 				// Tell webtools the module has been published
 				getBehaviour().resetPublishState(getModules());
@@ -192,7 +216,13 @@ public class StartOperation extends RestartOperation {
 							throw new OperationCanceledException(
 									Messages.bind(Messages.OPERATION_CANCELED, getRequestLabel()));
 						}
-						pushApplication(client, appModuleFin, applicationArchiveFin, progress);
+						try {
+							pushApplication(client, appModuleFin, applicationArchiveFin, progress);
+						}
+						finally {
+							// Pushing may create routes
+							getBehaviour().getResponseCache().invalidate();
+						}
 
 						CloudFoundryPlugin.trace("Application " + deploymentName //$NON-NLS-1$
 								+ " pushed to Cloud Foundry server."); //$NON-NLS-1$
@@ -202,6 +232,13 @@ public class StartOperation extends RestartOperation {
 						return null;
 					}
 
+					@Override
+					protected boolean isIdempotent() {
+						// The application may be created, and the archive is
+						// closed once it has been uploaded
+						return false;
+					}
+
 				}.run(subMonitor.newChild(70));
 
 				getBehaviour().printlnToConsole(appModule, Messages.CONSOLE_APP_PUSHED_MESSAGE);
@@ -216,6 +253,10 @@ public class StartOperation extends RestartOperation {
 			server.setModulePublishState(getModules(), IServer.PUBLISH_STATE_UNKNOWN);
 			throw e;
 		}
+		finally {
+			// Archives generated for the module are no longer needed
+			stagingArea.release(server, appModule.getLocalModule());
+		}
 	}
 
 	/**
@@ -262,31 +303,30 @@ public class StartOperation extends RestartOperation {
 			if (applicationArchive != null) {
 				// Handle the incremental publish case separately as it
 				// requires
-				// a partial war file generation of only the changed
+				// a partial payload of only the changed
 				// resources
 				// AFTER
 				// the server determines the list of missing file names.
+				ApplicationArchiveDigester.DigestComputation digests = archiveDigests != null
+						&& archiveDigests.getArchive() == applicationArchive ? archiveDigests
+						: ApplicationArchiveDigester.start(applicationArchive);
+				PushPhaseTimer timer = null;
 				try {
+					// All sha1 codes must be available before the client
+					// requests the resource match
+					digests.join(monitor);
+
 					if (applicationArchive instanceof CachingApplicationArchive) {
 						final CachingApplicationArchive cachingArchive = (CachingApplicationArchive) applicationArchive;
-						client.uploadApplication(appName, cachingArchive, new UploadStatusCallback() {
-
-							public void onProcessMatchedResources(int length) {
-
-							}
+						timer = new PushPhaseTimer() {
 
+							@Override
 							public void onMatchedFileNames(Set<String> matchedFileNames) {
-								cachingArchive.generatePartialWarFile(matchedFileNames);
-							}
-
-							public void onCheckResources() {
-
-							}
-
-							public boolean onProgress(String status) {
-								return false;
+								super.onMatchedFileNames(matchedFileNames);
+								cachingArchive.generatePartialPayload(matchedFileNames);
 							}
-						});
+						};
+						client.uploadApplication(appName, cachingArchive, timer);
 
 						// Once the application has run, do a clean up of the
 						// sha1
@@ -294,31 +334,16 @@ public class StartOperation extends RestartOperation {
 
 					}
 					else {
-						client.uploadApplication(appName, applicationArchive, new UploadStatusCallback() {
-
-							public void onProcessMatchedResources(int length) {
-
-							}
-
-							public void onMatchedFileNames(Set<String> matchedFileNames) {
-								// try {
-								// printlnToConsole(appModule, ".", false,
-								// false, monitor);
-								// }
-								// catch (CoreException e) {
-								// CloudFoundryPlugin.logError(e);
-								// }
-							}
-
-							public void onCheckResources() {
-
-							}
-
-							public boolean onProgress(String status) {
-								return false;
-							}
-						});
+						timer = new PushPhaseTimer();
+						client.uploadApplication(appName, applicationArchive, timer);
 					}
+					timer.uploadCompleted();
+
+					getBehaviour().printlnToConsole(appModule,
+							NLS.bind(Messages.CONSOLE_PUSH_TIMINGS,
+									new Object[] { archiveTime, digests.getElapsedTime(),
+											Math.max(0, digests.getElapsedTime() - digests.getWaitTime()),
+											timer.getResourceMatchTime(), timer.getUploadTime() }));
 					// Check for cancel
 					if (monitor.isCanceled()) {
 						throw new OperationCanceledException(
@@ -326,6 +351,7 @@ public class StartOperation extends RestartOperation {
 					}
 				}
 				finally {
+					digests.cancel();
 					if (applicationArchive instanceof CloudApplicationArchive) {
 						try {
 							((CloudApplicationArchive) applicationArchive).close();
@@ -353,4 +379,58 @@ public class StartOperation extends RestartOperation {
 		}
 
 	}
+
+	/**
+	 * Upload callback that records how long the resource match and the
+	 * upload of the unmatched resources take.
+	 */
+	protected static class PushPhaseTimer implements UploadStatusCallback {
+
+		private final long startTime = System.currentTimeMillis();
+
+		private long matchedTime = -1;
+
+		private long uploadStartTime = -1;
+
+		private long uploadEndTime = -1;
+
+		public void onCheckResources() {
+			// Called once the server has matched the resources
+			matchedTime = System.currentTimeMillis();
+		}
+
+		public void onMatchedFileNames(Set<String> matchedFileNames) {
+
+		}
+
+		public void onProcessMatchedResources(int length) {
+			uploadStartTime = System.currentTimeMillis();
+		}
+
+		public boolean onProgress(String status) {
+			return false;
+		}
+
+		public void uploadCompleted() {
+			uploadEndTime = System.currentTimeMillis();
+		}
+
+		/**
+		 * 
+		 * @return time in milliseconds taken by the resource match, or -1 if
+		 * it did not complete
+		 */
+		public long getResourceMatchTime() {
+			return matchedTime < 0 ? -1 : matchedTime - startTime;
+		}
+
+		/**
+		 * 
+		 * @return time in milliseconds taken to upload the resources not
+		 * matched by the server, or -1 if the upload did not complete
+		 */
+		public long getUploadTime() {
+			return uploadStartTime < 0 || uploadEndTime < 0 ? -1 : uploadEndTime - uploadStartTime;
+		}
+	}
 }
@@ -22,7 +22,6 @@ package org.eclipse.cft.server.core.internal.debug;
 
 import java.util.List;
 
-import org.cloudfoundry.client.lib.CloudCredentials;
 import org.eclipse.cft.server.core.ApplicationDeploymentInfo;
 import org.eclipse.cft.server.core.internal.ApplicationAction;
 import org.eclipse.cft.server.core.internal.CloudErrorUtil;
@@ -30,7 +29,6 @@ import org.eclipse.cft.server.core.internal.CloudFoundryServer;
 import org.eclipse.cft.server.core.internal.Messages;
 import org.eclipse.cft.server.core.internal.application.EnvironmentVariable;
 import org.eclipse.cft.server.core.internal.client.CloudFoundryApplicationModule;
-import org.eclipse.cft.server.core.internal.client.CloudFoundryServerBehaviour;
 import org.eclipse.cft.server.core.internal.ssh.SshClientSupport;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
@@ -100,14 +98,7 @@ public class SshDebugLaunchConfigDelegate extends CloudFoundryDebugDelegate {
 			CloudFoundryServer cloudServer, int appInstance, int remoteDebugPort, IProgressMonitor monitor)
 					throws CoreException {
 
-		String url = cloudServer.getUrl();
-		String userName = cloudServer.getUsername();
-		String password = cloudServer.getPassword();
-		boolean selfSigned = cloudServer.getSelfSignedCertificate();
-
-		SshClientSupport ssh = SshClientSupport.create(
-				CloudFoundryServerBehaviour.createExternalClientLogin(url, userName, password, selfSigned, monitor),
-				new CloudCredentials(userName, password), null, selfSigned);
+		SshClientSupport ssh = SshClientSupport.create(cloudServer.getBehaviour(), monitor);
 
 		JSch jsch = new JSch();
 
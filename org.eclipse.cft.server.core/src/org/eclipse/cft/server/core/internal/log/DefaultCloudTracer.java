@@ -22,7 +22,12 @@ package org.eclipse.cft.server.core.internal.log;
 
 import java.io.StringWriter;
 
+import org.apache.http.pool.PoolStats;
 import org.cloudfoundry.client.lib.RestLogEntry;
+import org.eclipse.cft.server.core.internal.CloudFoundryPlugin;
+import org.eclipse.cft.server.core.internal.ContentDigestCache;
+import org.eclipse.cft.server.core.internal.client.HttpConnectionPools;
+import org.eclipse.cft.server.core.internal.client.ResponseCache;
 
 /**
  * General-purpose tracer that parses a {@link RestLogEntry} into various String
@@ -35,6 +40,12 @@ public class DefaultCloudTracer extends CloudTracer {
 
 	static final String HTTP_TRACE_REQUEST = "REQUEST"; //$NON-NLS-1$
 
+	static final String HTTP_TRACE_CONNECTION_POOL = "CONNECTION POOL"; //$NON-NLS-1$
+
+	static final String HTTP_TRACE_RESPONSE_CACHE = "RESPONSE CACHE"; //$NON-NLS-1$
+
+	static final String HTTP_TRACE_CONTENT_DIGEST_CACHE = "CONTENT DIGEST CACHE"; //$NON-NLS-1$
+
 	static final String ERROR_STATUS = "ERROR"; //$NON-NLS-1$
 
 	static final String TRACE_SEPARATOR = " :: "; //$NON-NLS-1$
@@ -75,6 +86,50 @@ public class DefaultCloudTracer extends CloudTracer {
 		writer.append('\n');
 
 		fireTraceEvent(getCloudLog(writer.toString(), TraceType.HTTP_GENERAL));
+
+		PoolStats stats = HttpConnectionPools.getTotalStats();
+		writer = new StringWriter();
+		writer.append(SPACE);
+		writer.append(TRACE_SEPARATOR);
+		writer.append(SPACE);
+		writer.append(HTTP_TRACE_CONNECTION_POOL);
+		writer.append(':');
+		writer.append(SPACE);
+		writer.append("leased: " + stats.getLeased()); //$NON-NLS-1$
+		writer.append(", pending: " + stats.getPending()); //$NON-NLS-1$
+		writer.append(", available: " + stats.getAvailable()); //$NON-NLS-1$
+		writer.append(", max: " + stats.getMax()); //$NON-NLS-1$
+		writer.append('\n');
+
+		fireTraceEvent(getCloudLog(writer.toString(), TraceType.HTTP_GENERAL));
+
+		writer = new StringWriter();
+		writer.append(SPACE);
+		writer.append(TRACE_SEPARATOR);
+		writer.append(SPACE);
+		writer.append(HTTP_TRACE_RESPONSE_CACHE);
+		writer.append(':');
+		writer.append(SPACE);
+		writer.append("hits: " + ResponseCache.getTotalHitCount()); //$NON-NLS-1$
+		writer.append(", misses: " + ResponseCache.getTotalMissCount()); //$NON-NLS-1$
+		writer.append('\n');
+
+		fireTraceEvent(getCloudLog(writer.toString(), TraceType.HTTP_GENERAL));
+
+		ContentDigestCache digestCache = CloudFoundryPlugin.getContentDigestCache();
+		writer = new StringWriter();
+		writer.append(SPACE);
+		writer.append(TRACE_SEPARATOR);
+		writer.append(SPACE);
+		writer.append(HTTP_TRACE_CONTENT_DIGEST_CACHE);
+		writer.append(':');
+		writer.append(SPACE);
+		writer.append("hits: " + digestCache.getHitCount()); //$NON-NLS-1$
+		writer.append(", misses: " + digestCache.getMissCount()); //$NON-NLS-1$
+		writer.append(", entries: " + digestCache.size()); //$NON-NLS-1$
+		writer.append('\n');
+
+		fireTraceEvent(getCloudLog(writer.toString(), TraceType.HTTP_GENERAL));
 	}
 
 	protected CloudLog getCloudLog(String log, LogContentType type) {
@@ -15,7 +15,6 @@ package org.eclipse.cft.server.core.internal.ssh;
 import java.net.URL;
 import java.util.Map;
 
-import org.cloudfoundry.client.lib.CloudCredentials;
 import org.cloudfoundry.client.lib.HttpProxyConfiguration;
 import org.cloudfoundry.client.lib.util.CloudUtil;
 import org.cloudfoundry.client.lib.util.JsonUtil;
@@ -31,7 +30,7 @@ public class CloudInfoV2 {
 	private URL ccUrl;
 	private Map<String, Object> infoV2Map;
 
-	public CloudInfoV2(CloudCredentials creds, URL url, HttpProxyConfiguration proxyConf, boolean selfSigned) {
+	public CloudInfoV2(URL url, HttpProxyConfiguration proxyConf, boolean selfSigned) {
 		restTemplate = RestUtils.createRestTemplate(proxyConf, selfSigned, false);
 		this.ccUrl = url;
 	}
@@ -52,7 +51,7 @@ public class CloudInfoV2 {
 		return null;
 	}
 
-	private Map<String, Object> getMap() {
+	private synchronized Map<String, Object> getMap() {
 		if (infoV2Map==null) {
 			String infoV2Json = restTemplate.getForObject(getUrl("/v2/info"), String.class); //$NON-NLS-1$
 			infoV2Map = JsonUtil.convertJsonToMap(infoV2Json);
@@ -13,26 +13,32 @@
 package org.eclipse.cft.server.core.internal.ssh;
 
 import java.io.IOException;
+import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.net.URL;
 import java.util.List;
 
 import org.apache.http.NameValuePair;
 import org.apache.http.client.utils.URIBuilder;
 import org.apache.http.client.utils.URLEncodedUtils;
-import org.cloudfoundry.client.lib.CloudCredentials;
 import org.cloudfoundry.client.lib.CloudFoundryException;
-import org.cloudfoundry.client.lib.CloudFoundryOperations;
 import org.cloudfoundry.client.lib.CloudOperationException;
 import org.cloudfoundry.client.lib.HttpProxyConfiguration;
+import org.eclipse.cft.server.core.internal.CloudErrorUtil;
+import org.eclipse.cft.server.core.internal.CloudFoundryServer;
+import org.eclipse.cft.server.core.internal.client.AccessTokenManager;
 import org.eclipse.cft.server.core.internal.client.AuthorizationHeaderProvider;
+import org.eclipse.cft.server.core.internal.client.CloudFoundryClientFactory;
+import org.eclipse.cft.server.core.internal.client.CloudFoundryServerBehaviour;
 import org.eclipse.cft.server.core.internal.client.RestUtils;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.client.ClientHttpRequest;
 import org.springframework.http.client.ClientHttpRequestFactory;
-import org.springframework.security.oauth2.common.OAuth2AccessToken;
 import org.springframework.web.client.RestTemplate;
 
 /**
@@ -108,22 +114,29 @@ public class SshClientSupport {
 		return cloudInfo.getSshHost();
 	}
 
-	public static SshClientSupport create(final CloudFoundryOperations client, CloudCredentials creds, HttpProxyConfiguration proxyConf, boolean selfSigned) {
-		AuthorizationHeaderProvider oauth = new AuthorizationHeaderProvider() {
-			public String getAuthorizationHeader() {
-				OAuth2AccessToken token = client.login();
-				return token.getTokenType()+" "+token.getValue();
-			}
-		};
-		
-		CloudInfoV2 cloudInfo = new CloudInfoV2(
-				creds,
-				client.getCloudControllerUrl(),
-				proxyConf,
-				selfSigned
-		);
+	/**
+	 * Creates SSH support for the given server. Requests are authorized with
+	 * the cached access token of the server, and the server information is
+	 * shared with other components of the server, so that neither requires
+	 * additional round trips to be obtained for each connection.
+	 */
+	public static SshClientSupport create(CloudFoundryServerBehaviour behaviour, IProgressMonitor monitor) throws CoreException {
+		CloudFoundryServer cloudServer = behaviour.getCloudFoundryServer();
+		boolean selfSigned = cloudServer.getSelfSignedCertificate();
+		HttpProxyConfiguration proxyConf;
+		try {
+			proxyConf = CloudFoundryClientFactory.getProxy(new URL(cloudServer.getUrl()));
+		}
+		catch (MalformedURLException e) {
+			throw CloudErrorUtil.toCoreException(e);
+		}
+
+		// Obtain the token now, so that errors are reported with the
+		// progress of the caller
+		AccessTokenManager oauth = behaviour.getAccessTokenManager();
+		oauth.getAccessToken(monitor);
 
-		return new SshClientSupport(oauth, cloudInfo, selfSigned, proxyConf);
+		return new SshClientSupport(oauth, behaviour.getCloudInfo(), selfSigned, proxyConf);
 	}
 
 }
@@ -32,6 +32,7 @@ import java.util.zip.ZipFile;
 
 import org.cloudfoundry.client.lib.archive.ApplicationArchive;
 import org.eclipse.cft.server.core.internal.CloudErrorUtil;
+import org.eclipse.cft.server.core.internal.CloudFoundryPlugin;
 import org.eclipse.cft.server.core.internal.CloudFoundryProjectUtil;
 import org.eclipse.cft.server.core.internal.CloudFoundryServer;
 import org.eclipse.cft.server.core.internal.application.CloudZipApplicationArchive;
@@ -60,6 +61,7 @@ import org.eclipse.osgi.util.NLS;
 import org.eclipse.swt.widgets.Display;
 import org.eclipse.swt.widgets.Shell;
 import org.eclipse.wst.server.core.IModule;
+import org.eclipse.wst.server.core.IServer;
 import org.springframework.boot.loader.tools.Libraries;
 import org.springframework.boot.loader.tools.Library;
 import org.springframework.boot.loader.tools.LibraryCallback;
@@ -353,7 +355,7 @@ public class JavaCloudFoundryArchiver implements ICloudFoundryArchiver {
 	protected JarPackageData getJarPackageData(IPackageFragmentRoot[] roots,
 			IType mainType, IProgressMonitor monitor) throws CoreException {
 
-		String filePath = getTempJarPath(appModule.getLocalModule());
+		String filePath = getTempJarPath(cloudServer.getServer(), appModule.getLocalModule());
 
 		if (filePath == null) {
 			handleApplicationDeploymentFailure();
@@ -448,30 +450,20 @@ public class JavaCloudFoundryArchiver implements ICloudFoundryArchiver {
 		handleApplicationDeploymentFailure(null);
 	}
 
-	public static String getTempJarPath(IModule module) throws CoreException {
+	public static String getTempJarPath(IServer server, IModule module) throws CoreException {
 		try {
-			File tempFolder = File.createTempFile("tempFolderForJavaAppJar", //$NON-NLS-1$
-					null);
-			tempFolder.delete();
-			tempFolder.mkdirs();
-
-			if (!tempFolder.exists()) {
-				throw CloudErrorUtil
-						.toCoreException(NLS
-								.bind(Messages.JavaCloudFoundryArchiver_ERROR_CREATE_TEMP_DIR,
-										tempFolder.getPath()));
-			}
-
-			File targetFile = new File(tempFolder, module.getName() + ".jar"); //$NON-NLS-1$
-			targetFile.deleteOnExit();
+			// Reuse the staging folder of the module rather than creating a
+			// new temporary folder for every publish.
+			File targetFile = CloudFoundryPlugin.getDefault()
+					.getArchiveStagingArea()
+					.getArchiveFile(server, module, module.getName() + ".jar"); //$NON-NLS-1$
 
 			String path = new Path(targetFile.getAbsolutePath()).toString();
 
 			return path;
 
 		} catch (IOException io) {
-			CloudErrorUtil.toCoreException(io);
+			throw CloudErrorUtil.toCoreException(io);
 		}
-		return null;
 	}
 }
\ No newline at end of file
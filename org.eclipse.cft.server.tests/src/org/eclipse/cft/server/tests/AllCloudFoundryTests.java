@@ -20,15 +20,36 @@
  ********************************************************************************/
 package org.eclipse.cft.server.tests;
 
+import org.eclipse.cft.server.tests.core.AccessTokenManagerTest;
+import org.eclipse.cft.server.tests.core.ApplicationArchiveDigesterTest;
+import org.eclipse.cft.server.tests.core.ApplicationChangeTrackerTest;
+import org.eclipse.cft.server.tests.core.ApplicationInstancesFetcherTest;
+import org.eclipse.cft.server.tests.core.ApplicationSnapshotStoreTest;
+import org.eclipse.cft.server.tests.core.ArchiveStagingAreaTest;
+import org.eclipse.cft.server.tests.core.BaseClientRequestTest;
 import org.eclipse.cft.server.tests.core.BehaviourOperationsTest;
+import org.eclipse.cft.server.tests.core.CachingApplicationArchiveTest;
+import org.eclipse.cft.server.tests.core.CircuitBreakerTest;
 import org.eclipse.cft.server.tests.core.CloudFoundryClientConnectionTest;
 import org.eclipse.cft.server.tests.core.CloudFoundryProxyTest;
 import org.eclipse.cft.server.tests.core.CloudFoundryServerBehaviourTest;
 import org.eclipse.cft.server.tests.core.CloudFoundryServerTest;
 import org.eclipse.cft.server.tests.core.CloudFoundryServicesTest;
 import org.eclipse.cft.server.tests.core.CloudUtilTest;
+import org.eclipse.cft.server.tests.core.ContentDigestCacheTest;
+import org.eclipse.cft.server.tests.core.DeployedResourceCacheTest;
 import org.eclipse.cft.server.tests.core.DeploymentURLTest;
+import org.eclipse.cft.server.tests.core.HttpConnectionPoolsTest;
+import org.eclipse.cft.server.tests.core.ModuleCacheTest;
 import org.eclipse.cft.server.tests.core.ModuleRefreshTest;
+import org.eclipse.cft.server.tests.core.PagedApplicationListerTest;
+import org.eclipse.cft.server.tests.core.ParallelZipWriterTest;
+import org.eclipse.cft.server.tests.core.RateLimiterTest;
+import org.eclipse.cft.server.tests.core.RefreshModulesHandlerTest;
+import org.eclipse.cft.server.tests.core.RequestCoalescerTest;
+import org.eclipse.cft.server.tests.core.RequestSchedulerTest;
+import org.eclipse.cft.server.tests.core.ResponseCacheTest;
+import org.eclipse.cft.server.tests.core.RetryPolicyTest;
 import org.eclipse.cft.server.tests.core.ServerCredentialsStoreTest;
 import org.eclipse.cft.server.tests.sts.util.ManagedTestSuite;
 
@@ -57,6 +78,27 @@ public class AllCloudFoundryTests {
 		suite.addTestSuite(ServerCredentialsStoreTest.class);
 		suite.addTestSuite(CloudFoundryServerTest.class);
 		suite.addTestSuite(CloudUtilTest.class);
+		suite.addTestSuite(AccessTokenManagerTest.class);
+		suite.addTestSuite(ApplicationArchiveDigesterTest.class);
+		suite.addTestSuite(ApplicationChangeTrackerTest.class);
+		suite.addTestSuite(ApplicationInstancesFetcherTest.class);
+		suite.addTestSuite(ApplicationSnapshotStoreTest.class);
+		suite.addTestSuite(ArchiveStagingAreaTest.class);
+		suite.addTestSuite(BaseClientRequestTest.class);
+		suite.addTestSuite(CachingApplicationArchiveTest.class);
+		suite.addTestSuite(CircuitBreakerTest.class);
+		suite.addTestSuite(ContentDigestCacheTest.class);
+		suite.addTestSuite(DeployedResourceCacheTest.class);
+		suite.addTestSuite(HttpConnectionPoolsTest.class);
+		suite.addTestSuite(ModuleCacheTest.class);
+		suite.addTestSuite(PagedApplicationListerTest.class);
+		suite.addTestSuite(ParallelZipWriterTest.class);
+		suite.addTestSuite(RateLimiterTest.class);
+		suite.addTestSuite(RefreshModulesHandlerTest.class);
+		suite.addTestSuite(RequestCoalescerTest.class);
+		suite.addTestSuite(RequestSchedulerTest.class);
+		suite.addTestSuite(ResponseCacheTest.class);
+		suite.addTestSuite(RetryPolicyTest.class);
 
 		suite.addTestSuite(DeploymentURLTest.class);
 		suite.addTestSuite(CloudFoundryServicesTest.class);
@@ -0,0 +1,178 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Pivotal Software, Inc. 
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution. 
+ * 
+ * The Eclipse Public License is available at 
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * and the Apache License v2.0 is available at 
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * You may elect to redistribute this code under either of these licenses.
+ *  
+ *  Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+ ********************************************************************************/
+package org.eclipse.cft.server.tests.core;
+
+import java.util.Date;
+
+import org.eclipse.cft.server.core.internal.client.AccessTokenManager;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+
+import junit.framework.TestCase;
+
+/**
+ * Verifies that the {@link AccessTokenManager} reuses a token until shortly
+ * before it expires, and only refreshes it in the background if it was used,
+ * without logging in to a server.
+ */
+public class AccessTokenManagerTest extends TestCase {
+
+	private static final long TIMEOUT = 5000;
+
+	private static final long HOUR = 60 * 60 * 1000;
+
+	private TestTokenManager manager;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		manager = new TestTokenManager();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		manager.invalidate();
+		super.tearDown();
+	}
+
+	public void testTokenReusedUntilExpiry() throws Exception {
+		manager.lifetime = HOUR;
+
+		OAuth2AccessToken token = manager.getAccessToken(new NullProgressMonitor());
+
+		assertSame(token, manager.getAccessToken(new NullProgressMonitor()));
+		assertEquals(1, manager.logins);
+	}
+
+	public void testTokenWithoutExpiryReused() throws Exception {
+		manager.lifetime = -1;
+
+		manager.getAccessToken(new NullProgressMonitor());
+		manager.getAccessToken(new NullProgressMonitor());
+
+		assertEquals(1, manager.logins);
+	}
+
+	public void testTokenAboutToExpireObtainedAgain() throws Exception {
+		manager.lifetime = AccessTokenManager.REFRESH_MARGIN / 2;
+
+		OAuth2AccessToken token = manager.getAccessToken(new NullProgressMonitor());
+
+		assertNotSame(token, manager.getAccessToken(new NullProgressMonitor()));
+		assertEquals(2, manager.logins);
+	}
+
+	public void testInvalidate() throws Exception {
+		manager.lifetime = HOUR;
+		manager.getAccessToken(new NullProgressMonitor());
+
+		manager.invalidate();
+		manager.getAccessToken(new NullProgressMonitor());
+
+		assertEquals(2, manager.logins);
+	}
+
+	public void testAuthorizationHeader() throws Exception {
+		manager.lifetime = HOUR;
+
+		assertEquals("bearer token1", manager.getAuthorizationHeader()); //$NON-NLS-1$
+	}
+
+	public void testNoTokenObtained() throws Exception {
+		manager.lifetime = HOUR;
+		manager.noToken = true;
+		try {
+			manager.getAccessToken(new NullProgressMonitor());
+			fail("Expected an error when no token is obtained"); //$NON-NLS-1$
+		}
+		catch (CoreException e) {
+			// expected
+		}
+	}
+
+	public void testUsedTokenRefreshedInBackground() throws Exception {
+		manager.lifetime = AccessTokenManager.REFRESH_MARGIN + 200;
+		manager.getAccessToken(new NullProgressMonitor());
+		// Used after it was obtained
+		manager.getAccessToken(new NullProgressMonitor());
+
+		long end = System.currentTimeMillis() + TIMEOUT;
+		while (manager.getLogins() < 2) {
+			if (System.currentTimeMillis() > end) {
+				fail("Timed out waiting for the token to be refreshed"); //$NON-NLS-1$
+			}
+			Thread.sleep(20);
+		}
+	}
+
+	public void testUnusedTokenNotRefreshed() throws Exception {
+		manager.lifetime = AccessTokenManager.REFRESH_MARGIN + 100;
+		manager.getAccessToken(new NullProgressMonitor());
+
+		Thread.sleep(600);
+
+		assertEquals(1, manager.getLogins());
+	}
+
+	/**
+	 * Token manager that creates tokens with a configured lifetime instead of
+	 * logging in to a server.
+	 */
+	private static class TestTokenManager extends AccessTokenManager {
+
+		long lifetime;
+
+		boolean noToken;
+
+		int logins;
+
+		TestTokenManager() {
+			super(null);
+		}
+
+		@Override
+		protected OAuth2AccessToken login(IProgressMonitor monitor) throws CoreException {
+			synchronized (this) {
+				logins++;
+			}
+			if (noToken) {
+				return null;
+			}
+			DefaultOAuth2AccessToken token = new DefaultOAuth2AccessToken("token" + logins); //$NON-NLS-1$
+			if (lifetime >= 0) {
+				token.setExpiration(new Date(System.currentTimeMillis() + lifetime));
+			}
+			return token;
+		}
+
+		@Override
+		protected String getServerName() {
+			return "test"; //$NON-NLS-1$
+		}
+
+		synchronized int getLogins() {
+			return logins;
+		}
+	}
+}
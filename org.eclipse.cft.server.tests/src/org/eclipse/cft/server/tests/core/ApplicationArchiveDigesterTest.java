@@ -0,0 +1,338 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Pivotal Software, Inc. 
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution. 
+ * 
+ * The Eclipse Public License is available at 
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * and the Apache License v2.0 is available at 
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * You may elect to redistribute this code under either of these licenses.
+ *  
+ *  Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+ ********************************************************************************/
+package org.eclipse.cft.server.tests.core;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.cloudfoundry.client.lib.archive.ApplicationArchive;
+import org.cloudfoundry.client.lib.archive.ApplicationArchive.Entry;
+import org.eclipse.cft.server.core.internal.application.ApplicationArchiveDigester;
+import org.eclipse.cft.server.core.internal.application.ApplicationArchiveDigester.DigestComputation;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+
+import junit.framework.TestCase;
+
+/**
+ * Verifies that the {@link ApplicationArchiveDigester} computes the same sha1
+ * codes as a serial computation, and that a canceled computation stops and
+ * can still be joined.
+ */
+public class ApplicationArchiveDigesterTest extends TestCase {
+
+	private File folder;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		folder = File.createTempFile("archiveDigester", ""); //$NON-NLS-1$ //$NON-NLS-2$
+		folder.delete();
+		folder.mkdirs();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		File[] files = folder.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+		folder.delete();
+		super.tearDown();
+	}
+
+	public void testDigestsMatchSerialSha1() throws Exception {
+		Random random = new Random(1);
+		List<Entry> entries = new ArrayList<Entry>();
+		List<byte[]> expected = new ArrayList<byte[]>();
+		for (int i = 0; i < 500; i++) {
+			if (i % 50 == 0) {
+				entries.add(new DirectoryEntry("folder" + i + "/")); //$NON-NLS-1$ //$NON-NLS-2$
+			}
+			// Some files span several read buffers
+			byte[] content = new byte[i % 10 == 0 ? 200 * 1024 + i : random.nextInt(4096)];
+			random.nextBytes(content);
+			File file = createFile("file" + i, content); //$NON-NLS-1$
+			entries.add(new FileEntry(file));
+			expected.add(MessageDigest.getInstance("SHA-1").digest(read(file))); //$NON-NLS-1$
+		}
+
+		DigestComputation computation = ApplicationArchiveDigester.start(createArchive(entries));
+		computation.join(new NullProgressMonitor());
+		assertTrue(computation.getElapsedTime() >= 0);
+
+		int index = 0;
+		for (Entry entry : entries) {
+			FileEntry fileEntry = entry instanceof FileEntry ? (FileEntry) entry : null;
+			if (fileEntry == null) {
+				continue;
+			}
+			// Computed once by the digester, not again when requested
+			assertEquals(1, fileEntry.digestCount.get());
+			assertTrue(fileEntry.getName(), Arrays.equals(expected.get(index++), fileEntry.getSha1Digest()));
+			assertEquals(fileEntry.file.length(), fileEntry.getSize());
+		}
+		assertEquals(expected.size(), index);
+	}
+
+	public void testCanceledMonitorStopsComputation() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		AtomicInteger digested = new AtomicInteger();
+		List<Entry> entries = new ArrayList<Entry>();
+		for (int i = 0; i < 1000; i++) {
+			entries.add(new BlockingEntry("file" + i, release, digested)); //$NON-NLS-1$
+		}
+
+		DigestComputation computation = ApplicationArchiveDigester.start(createArchive(entries));
+		NullProgressMonitor monitor = new NullProgressMonitor();
+		monitor.setCanceled(true);
+		try {
+			computation.join(monitor);
+			fail("Expected OperationCanceledException"); //$NON-NLS-1$
+		}
+		catch (OperationCanceledException e) {
+			// expected
+		}
+		finally {
+			release.countDown();
+		}
+
+		// Entries already being digested complete, the others are skipped
+		long timeout = System.currentTimeMillis() + 10000;
+		while (computation.getElapsedTime() < 0 && System.currentTimeMillis() < timeout) {
+			Thread.sleep(10);
+		}
+		assertTrue(computation.getElapsedTime() >= 0);
+		assertTrue(String.valueOf(digested.get()), digested.get() < entries.size());
+	}
+
+	public void testJoinAfterCancel() throws Exception {
+		final CountDownLatch release = new CountDownLatch(1);
+		List<Entry> entries = new ArrayList<Entry>();
+		for (int i = 0; i < 100; i++) {
+			entries.add(new BlockingEntry("file" + i, release, new AtomicInteger())); //$NON-NLS-1$
+		}
+
+		final DigestComputation computation = ApplicationArchiveDigester.start(createArchive(entries));
+		computation.cancel();
+
+		final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+		Thread joining = new Thread(new Runnable() {
+			public void run() {
+				try {
+					computation.join(new NullProgressMonitor());
+				}
+				catch (Throwable t) {
+					error.set(t);
+				}
+			}
+		});
+		joining.start();
+		try {
+			joining.join(10000);
+			assertFalse("Join after cancel did not return", joining.isAlive()); //$NON-NLS-1$
+		}
+		finally {
+			release.countDown();
+		}
+		assertTrue(String.valueOf(error.get()), error.get() instanceof OperationCanceledException);
+	}
+
+	public void testEmptyArchive() throws Exception {
+		DigestComputation computation = ApplicationArchiveDigester.start(createArchive(new ArrayList<Entry>()));
+		computation.join(new NullProgressMonitor());
+		assertEquals(0, computation.getElapsedTime());
+	}
+
+	private ApplicationArchive createArchive(final List<Entry> entries) {
+		return new ApplicationArchive() {
+
+			public String getFilename() {
+				return "test.war"; //$NON-NLS-1$
+			}
+
+			public Iterable<Entry> getEntries() {
+				return entries;
+			}
+		};
+	}
+
+	private File createFile(String name, byte[] content) throws IOException {
+		File file = new File(folder, name);
+		FileOutputStream out = new FileOutputStream(file);
+		try {
+			out.write(content);
+		}
+		finally {
+			out.close();
+		}
+		return file;
+	}
+
+	private static byte[] read(File file) throws IOException {
+		byte[] content = new byte[(int) file.length()];
+		InputStream input = new FileInputStream(file);
+		try {
+			int read = 0;
+			while (read < content.length) {
+				read += input.read(content, read, content.length - read);
+			}
+		}
+		finally {
+			input.close();
+		}
+		return content;
+	}
+
+	private static class DirectoryEntry implements Entry {
+
+		private final String name;
+
+		DirectoryEntry(String name) {
+			this.name = name;
+		}
+
+		public boolean isDirectory() {
+			return true;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public long getSize() {
+			throw new AssertionError("Directories are not digested"); //$NON-NLS-1$
+		}
+
+		public byte[] getSha1Digest() {
+			throw new AssertionError("Directories are not digested"); //$NON-NLS-1$
+		}
+
+		public InputStream getInputStream() throws IOException {
+			return null;
+		}
+	}
+
+	/**
+	 * File entry that computes and retains its sha1 code when first
+	 * requested, like the entries of module resource archives.
+	 */
+	private static class FileEntry implements Entry {
+
+		final File file;
+
+		final AtomicInteger digestCount = new AtomicInteger();
+
+		private volatile byte[] sha1;
+
+		FileEntry(File file) {
+			this.file = file;
+		}
+
+		public boolean isDirectory() {
+			return false;
+		}
+
+		public String getName() {
+			return file.getName();
+		}
+
+		public long getSize() {
+			return file.length();
+		}
+
+		public synchronized byte[] getSha1Digest() {
+			if (sha1 == null) {
+				digestCount.incrementAndGet();
+				try {
+					sha1 = ApplicationArchiveDigester.digest(file);
+				}
+				catch (IOException e) {
+					throw new IllegalStateException(e);
+				}
+			}
+			return sha1;
+		}
+
+		public InputStream getInputStream() throws IOException {
+			return new FileInputStream(file);
+		}
+	}
+
+	/**
+	 * Entry whose digest does not complete until released.
+	 */
+	private static class BlockingEntry implements Entry {
+
+		private final String name;
+
+		private final CountDownLatch release;
+
+		private final AtomicInteger digested;
+
+		BlockingEntry(String name, CountDownLatch release, AtomicInteger digested) {
+			this.name = name;
+			this.release = release;
+			this.digested = digested;
+		}
+
+		public boolean isDirectory() {
+			return false;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public long getSize() {
+			return 0;
+		}
+
+		public byte[] getSha1Digest() {
+			try {
+				release.await(10, TimeUnit.SECONDS);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			digested.incrementAndGet();
+			return new byte[20];
+		}
+
+		public InputStream getInputStream() throws IOException {
+			return null;
+		}
+	}
+}
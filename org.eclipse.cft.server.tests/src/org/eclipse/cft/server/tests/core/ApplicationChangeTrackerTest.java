@@ -0,0 +1,161 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Pivotal Software, Inc. 
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution. 
+ * 
+ * The Eclipse Public License is available at 
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * and the Apache License v2.0 is available at 
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * You may elect to redistribute this code under either of these licenses.
+ *  
+ *  Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+ ********************************************************************************/
+package org.eclipse.cft.server.tests.core;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.UUID;
+
+import org.cloudfoundry.client.lib.domain.CloudApplication;
+import org.cloudfoundry.client.lib.domain.CloudApplication.AppState;
+import org.cloudfoundry.client.lib.domain.CloudEntity.Meta;
+import org.eclipse.cft.server.core.internal.client.ApplicationChangeTracker;
+
+import junit.framework.TestCase;
+
+/**
+ * Verifies that the {@link ApplicationChangeTracker} reports applications
+ * that were added, changed or removed since the last committed refresh.
+ */
+public class ApplicationChangeTrackerTest extends TestCase {
+
+	private static final String PACKAGE_UPDATED = "2015-06-01T10:00:00Z"; //$NON-NLS-1$
+
+	private ApplicationChangeTracker tracker;
+
+	private CloudApplication app1;
+
+	private CloudApplication app2;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		tracker = new ApplicationChangeTracker();
+		app1 = createApplication("app1", 1000); //$NON-NLS-1$
+		app2 = createApplication("app2", 2000); //$NON-NLS-1$
+	}
+
+	public void testAllApplicationsChangedOnFirstRefresh() throws Exception {
+		ApplicationChangeTracker.Refresh refresh = tracker.startRefresh();
+
+		assertTrue(refresh.isChanged(app1, PACKAGE_UPDATED));
+		assertTrue(refresh.isChanged(app2, PACKAGE_UPDATED));
+		assertEquals(2, refresh.getChangedCount());
+		assertFalse(refresh.hasRemovals());
+	}
+
+	public void testUnchangedAfterCommit() throws Exception {
+		commitRefresh(app1, app2);
+
+		ApplicationChangeTracker.Refresh refresh = tracker.startRefresh();
+		assertFalse(refresh.isChanged(app1, PACKAGE_UPDATED));
+		assertFalse(refresh.isChanged(app2, PACKAGE_UPDATED));
+		assertEquals(0, refresh.getChangedCount());
+		assertFalse(refresh.hasRemovals());
+	}
+
+	public void testNotCommittedRefreshIgnored() throws Exception {
+		ApplicationChangeTracker.Refresh refresh = tracker.startRefresh();
+		refresh.isChanged(app1, PACKAGE_UPDATED);
+
+		assertTrue(tracker.startRefresh().isChanged(app1, PACKAGE_UPDATED));
+	}
+
+	public void testChangesDetected() throws Exception {
+		commitRefresh(app1, app2);
+
+		// Routes and package changes do not update the application itself
+		app1.setUris(Arrays.asList("app1.example.com", "other.example.com")); //$NON-NLS-1$ //$NON-NLS-2$
+		ApplicationChangeTracker.Refresh refresh = tracker.startRefresh();
+		assertTrue(refresh.isChanged(app1, PACKAGE_UPDATED));
+		assertTrue(refresh.isChanged(app2, "2015-06-02T10:00:00Z")); //$NON-NLS-1$
+		assertEquals(2, refresh.getChangedCount());
+	}
+
+	public void testStateAndServiceChangesDetected() throws Exception {
+		commitRefresh(app1, app2);
+
+		app1.setState(AppState.STOPPED);
+		app2.setServices(Arrays.asList("database")); //$NON-NLS-1$
+		ApplicationChangeTracker.Refresh refresh = tracker.startRefresh();
+		assertTrue(refresh.isChanged(app1, PACKAGE_UPDATED));
+		assertTrue(refresh.isChanged(app2, PACKAGE_UPDATED));
+	}
+
+	public void testAddedAndRemovedApplications() throws Exception {
+		commitRefresh(app1);
+
+		ApplicationChangeTracker.Refresh refresh = tracker.startRefresh();
+		assertTrue(refresh.isChanged(app2, PACKAGE_UPDATED));
+		assertTrue(refresh.hasRemovals());
+		refresh.commit();
+
+		refresh = tracker.startRefresh();
+		assertFalse(refresh.isChanged(app2, PACKAGE_UPDATED));
+		assertFalse(refresh.hasRemovals());
+	}
+
+	public void testApplicationWithoutGuidAlwaysChanged() throws Exception {
+		CloudApplication untracked = new CloudApplication(null, "untracked"); //$NON-NLS-1$
+		assertNull(ApplicationChangeTracker.getVersion(untracked, PACKAGE_UPDATED));
+
+		commitRefresh(untracked);
+		ApplicationChangeTracker.Refresh refresh = tracker.startRefresh();
+		assertTrue(refresh.isChanged(untracked, PACKAGE_UPDATED));
+		assertEquals(1, refresh.getChangedCount());
+	}
+
+	public void testReset() throws Exception {
+		commitRefresh(app1);
+
+		tracker.reset();
+
+		assertTrue(tracker.startRefresh().isChanged(app1, PACKAGE_UPDATED));
+	}
+
+	public void testRefreshStartedBeforeResetNotCommitted() throws Exception {
+		ApplicationChangeTracker.Refresh refresh = tracker.startRefresh();
+		refresh.isChanged(app1, PACKAGE_UPDATED);
+
+		tracker.reset();
+		refresh.commit();
+
+		assertTrue(tracker.startRefresh().isChanged(app1, PACKAGE_UPDATED));
+	}
+
+	private void commitRefresh(CloudApplication... applications) {
+		ApplicationChangeTracker.Refresh refresh = tracker.startRefresh();
+		for (CloudApplication application : applications) {
+			refresh.isChanged(application, PACKAGE_UPDATED);
+		}
+		refresh.commit();
+	}
+
+	private static CloudApplication createApplication(String name, long updated) {
+		CloudApplication application = new CloudApplication(new Meta(UUID.randomUUID(), new Date(0), new Date(updated)),
+				name);
+		application.setState(AppState.STARTED);
+		application.setInstances(1);
+		application.setMemory(512);
+		application.setUris(Arrays.asList(name + ".example.com")); //$NON-NLS-1$
+		return application;
+	}
+}
@@ -0,0 +1,283 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Pivotal Software, Inc. 
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution. 
+ * 
+ * The Eclipse Public License is available at 
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * and the Apache License v2.0 is available at 
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * You may elect to redistribute this code under either of these licenses.
+ *  
+ *  Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+ ********************************************************************************/
+package org.eclipse.cft.server.tests.core;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.cloudfoundry.client.lib.CloudFoundryException;
+import org.cloudfoundry.client.lib.domain.ApplicationStats;
+import org.cloudfoundry.client.lib.domain.InstanceStats;
+import org.cloudfoundry.client.lib.domain.InstancesInfo;
+import org.eclipse.cft.server.core.internal.CloudErrorUtil;
+import org.eclipse.cft.server.core.internal.client.ApplicationInstancesFetcher;
+import org.eclipse.cft.server.core.internal.client.CloudFoundryApplicationModule;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.wst.server.core.IServer;
+import org.springframework.http.HttpStatus;
+
+import junit.framework.TestCase;
+
+/**
+ * Verifies that the {@link ApplicationInstancesFetcher} fetches the stats and
+ * instances of several applications concurrently, and on the calling thread
+ * when the caller already holds a request slot, without contacting a server,
+ * and that no fetches are performed once it is disposed.
+ */
+public class ApplicationInstancesFetcherTest extends TestCase {
+
+	private static final long TIMEOUT = 5000;
+
+	private TestFetcher fetcher;
+
+	@Override
+	protected void tearDown() throws Exception {
+		if (fetcher != null) {
+			fetcher.dispose();
+		}
+		super.tearDown();
+	}
+
+	public void testFetchesApplicationsConcurrently() throws Exception {
+		// Each fetch waits until the stats of both applications are being
+		// fetched, which only happens if they are fetched concurrently
+		final CountDownLatch fetching = new CountDownLatch(2);
+		fetcher = new TestFetcher(false) {
+			@Override
+			protected ApplicationStats fetchApplicationStats(String appName) throws CoreException {
+				fetching.countDown();
+				try {
+					assertTrue(fetching.await(TIMEOUT, TimeUnit.MILLISECONDS));
+				}
+				catch (InterruptedException e) {
+					throw CloudErrorUtil.toCoreException(e);
+				}
+				return super.fetchApplicationStats(appName);
+			}
+		};
+		List<CloudFoundryApplicationModule> appModules = Arrays.asList(createModule("app1"), createModule("app2")); //$NON-NLS-1$ //$NON-NLS-2$
+
+		ApplicationInstancesFetcher.Result result = fetcher.update(appModules, new NullProgressMonitor());
+
+		assertNull(result.getError());
+		assertEquals(appModules, result.getUpdated());
+		for (CloudFoundryApplicationModule appModule : appModules) {
+			assertNotNull(appModule.getApplicationStats());
+			assertNotNull(appModule.getInstancesInfo());
+		}
+		assertFalse(fetcher.callers.contains(Thread.currentThread()));
+	}
+
+	public void testFetchesOnCallerThreadWhenAdmitted() throws Exception {
+		fetcher = new TestFetcher(true);
+		List<CloudFoundryApplicationModule> appModules = Arrays.asList(createModule("app1"), createModule("app2")); //$NON-NLS-1$ //$NON-NLS-2$
+
+		ApplicationInstancesFetcher.Result result = fetcher.update(appModules, new NullProgressMonitor());
+
+		assertEquals(appModules, result.getUpdated());
+		assertEquals(Collections.singleton(Thread.currentThread()), new HashSet<Thread>(fetcher.callers));
+		assertEquals(4, fetcher.callers.size());
+	}
+
+	public void testMissingApplicationSkipped() throws Exception {
+		fetcher = new TestFetcher(false) {
+			@Override
+			protected InstancesInfo fetchInstancesInfo(String appName) throws CoreException {
+				if ("deleted".equals(appName)) { //$NON-NLS-1$
+					throw CloudErrorUtil.toCoreException(new CloudFoundryException(HttpStatus.NOT_FOUND));
+				}
+				return super.fetchInstancesInfo(appName);
+			}
+		};
+		CloudFoundryApplicationModule deleted = createModule("deleted"); //$NON-NLS-1$
+		CloudFoundryApplicationModule existing = createModule("existing"); //$NON-NLS-1$
+
+		ApplicationInstancesFetcher.Result result = fetcher.update(Arrays.asList(deleted, null, existing),
+				new NullProgressMonitor());
+
+		assertNull(result.getError());
+		assertEquals(Collections.singletonList(existing), result.getUpdated());
+		assertNull(deleted.getInstancesInfo());
+	}
+
+	public void testErrorReportedAfterOtherModulesUpdated() throws Exception {
+		fetcher = new TestFetcher(false) {
+			@Override
+			protected ApplicationStats fetchApplicationStats(String appName) throws CoreException {
+				if ("failing".equals(appName)) { //$NON-NLS-1$
+					throw CloudErrorUtil.toCoreException(new CloudFoundryException(HttpStatus.INTERNAL_SERVER_ERROR));
+				}
+				return super.fetchApplicationStats(appName);
+			}
+		};
+		CloudFoundryApplicationModule failing = createModule("failing"); //$NON-NLS-1$
+		CloudFoundryApplicationModule existing = createModule("existing"); //$NON-NLS-1$
+
+		ApplicationInstancesFetcher.Result result = fetcher.update(Arrays.asList(failing, existing),
+				new NullProgressMonitor());
+
+		assertNotNull(result.getError());
+		assertEquals(Collections.singletonList(existing), result.getUpdated());
+		assertNotNull(existing.getApplicationStats());
+	}
+
+	public void testNoFetchAfterDispose() throws Exception {
+		fetcher = new TestFetcher(false);
+		fetcher.dispose();
+
+		try {
+			fetcher.update(Arrays.asList(createModule("app")), new NullProgressMonitor()); //$NON-NLS-1$
+			fail("Expected OperationCanceledException"); //$NON-NLS-1$
+		}
+		catch (OperationCanceledException e) {
+			// expected
+		}
+		assertTrue(fetcher.callers.isEmpty());
+	}
+
+	public void testDisposeCancelsPendingFetches() throws Exception {
+		final CountDownLatch fetching = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		fetcher = new TestFetcher(false) {
+			@Override
+			protected ApplicationStats fetchApplicationStats(String appName) throws CoreException {
+				fetching.countDown();
+				try {
+					release.await(TIMEOUT, TimeUnit.MILLISECONDS);
+				}
+				catch (InterruptedException e) {
+					// Interrupted by dispose
+				}
+				return super.fetchApplicationStats(appName);
+			}
+		};
+		List<CloudFoundryApplicationModule> appModules = new ArrayList<CloudFoundryApplicationModule>();
+		for (int i = 0; i < 10; i++) {
+			appModules.add(createModule("app" + i)); //$NON-NLS-1$
+		}
+
+		Thread disposing = new Thread(new Runnable() {
+			public void run() {
+				try {
+					fetching.await(TIMEOUT, TimeUnit.MILLISECONDS);
+				}
+				catch (InterruptedException e) {
+					// Dispose anyway
+				}
+				fetcher.dispose();
+			}
+		});
+		disposing.start();
+		final long start = System.currentTimeMillis();
+		try {
+			// Gives up waiting for fetches that are never completed
+			fetcher.update(appModules, new NullProgressMonitor() {
+				@Override
+				public boolean isCanceled() {
+					return System.currentTimeMillis() - start > TIMEOUT;
+				}
+			});
+			fail("Expected OperationCanceledException"); //$NON-NLS-1$
+		}
+		catch (OperationCanceledException e) {
+			// expected
+		}
+		finally {
+			release.countDown();
+			disposing.join(TIMEOUT);
+		}
+		assertTrue(System.currentTimeMillis() - start < TIMEOUT);
+	}
+
+	private static CloudFoundryApplicationModule createModule(String appName) {
+		IServer server = (IServer) Proxy.newProxyInstance(ApplicationInstancesFetcherTest.class.getClassLoader(),
+				new Class<?>[] { IServer.class }, new InvocationHandler() {
+					public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+						return null;
+					}
+				});
+		return new TestModule(appName, server);
+	}
+
+	/**
+	 * Fetcher that returns empty stats and instances instead of sending
+	 * requests, and records the threads that fetched them.
+	 */
+	private static class TestFetcher extends ApplicationInstancesFetcher {
+
+		final List<Thread> callers = Collections.synchronizedList(new ArrayList<Thread>());
+
+		private final boolean callerAdmitted;
+
+		TestFetcher(boolean callerAdmitted) {
+			super(null);
+			this.callerAdmitted = callerAdmitted;
+		}
+
+		@Override
+		protected ApplicationStats fetchApplicationStats(String appName) throws CoreException {
+			callers.add(Thread.currentThread());
+			return new ApplicationStats(new ArrayList<InstanceStats>());
+		}
+
+		@Override
+		protected InstancesInfo fetchInstancesInfo(String appName) throws CoreException {
+			callers.add(Thread.currentThread());
+			return new InstancesInfo(new ArrayList<Map<String, Object>>());
+		}
+
+		@Override
+		protected boolean isCallerAdmitted() {
+			return callerAdmitted;
+		}
+	}
+
+	/**
+	 * Module of an application that is not mapped to a server.
+	 */
+	private static class TestModule extends CloudFoundryApplicationModule {
+
+		TestModule(String appName, IServer server) {
+			super(appName, server);
+		}
+
+		@Override
+		protected void setDeployedApplicationName(String applicationName) {
+			// Not mapped to a server
+		}
+
+		@Override
+		public synchronized String getDeployedApplicationName() {
+			return getName();
+		}
+	}
+}
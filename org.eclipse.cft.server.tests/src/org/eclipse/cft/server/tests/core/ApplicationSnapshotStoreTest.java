@@ -0,0 +1,207 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Pivotal Software, Inc. 
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution. 
+ * 
+ * The Eclipse Public License is available at 
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * and the Apache License v2.0 is available at 
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * You may elect to redistribute this code under either of these licenses.
+ *  
+ *  Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+ ********************************************************************************/
+package org.eclipse.cft.server.tests.core;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import org.cloudfoundry.client.lib.domain.CloudApplication;
+import org.cloudfoundry.client.lib.domain.CloudApplication.AppState;
+import org.cloudfoundry.client.lib.domain.CloudEntity.Meta;
+import org.eclipse.cft.server.core.internal.ApplicationSnapshotStore;
+
+import junit.framework.TestCase;
+
+/**
+ * Verifies that application snapshots saved in the
+ * {@link ApplicationSnapshotStore} are read back with their summary values,
+ * and that missing, removed or unreadable snapshots are not loaded.
+ */
+public class ApplicationSnapshotStoreTest extends TestCase {
+
+	private static final String SERVER_ID = "server"; //$NON-NLS-1$
+
+	private File folder;
+
+	private ApplicationSnapshotStore store;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		folder = File.createTempFile("snapshots", ""); //$NON-NLS-1$ //$NON-NLS-2$
+		folder.delete();
+		store = new ApplicationSnapshotStore(folder);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		store.dispose();
+		File[] files = folder.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+		folder.delete();
+		super.tearDown();
+	}
+
+	public void testNoSnapshot() throws Exception {
+		assertNull(store.load(SERVER_ID));
+		assertNull(store.load(null));
+	}
+
+	public void testPendingSnapshotLoaded() throws Exception {
+		CloudApplication application = createApplication("app"); //$NON-NLS-1$
+		store.save(SERVER_ID, Arrays.asList(application));
+
+		List<CloudApplication> loaded = store.load(SERVER_ID);
+		assertEquals(1, loaded.size());
+		assertApplication(application, loaded.get(0));
+	}
+
+	public void testSnapshotSurvivesRestart() throws Exception {
+		CloudApplication app1 = createApplication("app1"); //$NON-NLS-1$
+		CloudApplication app2 = createApplication("app2"); //$NON-NLS-1$
+		store.save(SERVER_ID, Arrays.asList(app1, app2));
+		store.dispose();
+		assertTrue(getSnapshotFile(SERVER_ID).exists());
+
+		List<CloudApplication> loaded = new ApplicationSnapshotStore(folder).load(SERVER_ID);
+		assertEquals(2, loaded.size());
+		assertApplication(app1, loaded.get(0));
+		assertApplication(app2, loaded.get(1));
+		assertNull(new ApplicationSnapshotStore(folder).load("other")); //$NON-NLS-1$
+	}
+
+	public void testEmptySnapshot() throws Exception {
+		store.save(SERVER_ID, Collections.<CloudApplication> emptyList());
+		store.dispose();
+
+		List<CloudApplication> loaded = new ApplicationSnapshotStore(folder).load(SERVER_ID);
+		assertNotNull(loaded);
+		assertTrue(loaded.isEmpty());
+	}
+
+	public void testUnsetValuesPreserved() throws Exception {
+		CloudApplication application = new CloudApplication(null, "app"); //$NON-NLS-1$
+		store.save(SERVER_ID, Arrays.asList(application));
+		store.dispose();
+
+		CloudApplication loaded = new ApplicationSnapshotStore(folder).load(SERVER_ID).get(0);
+		assertEquals("app", loaded.getName()); //$NON-NLS-1$
+		assertTrue(loaded.getMeta() == null || loaded.getMeta().getGuid() == null);
+		assertNull(loaded.getState());
+		assertTrue(loaded.getUris().isEmpty());
+		assertTrue(loaded.getServices().isEmpty());
+	}
+
+	public void testServerIdEncoded() throws Exception {
+		String serverId = "server/with:special chars"; //$NON-NLS-1$
+		CloudApplication application = createApplication("app"); //$NON-NLS-1$
+		store.save(serverId, Arrays.asList(application));
+		store.dispose();
+
+		assertEquals(1, folder.listFiles().length);
+		assertApplication(application, new ApplicationSnapshotStore(folder).load(serverId).get(0));
+	}
+
+	public void testRemove() throws Exception {
+		store.save(SERVER_ID, Arrays.asList(createApplication("app"))); //$NON-NLS-1$
+		store.dispose();
+
+		store.remove(SERVER_ID);
+		assertNull(store.load(SERVER_ID));
+		store.dispose();
+		assertFalse(getSnapshotFile(SERVER_ID).exists());
+		assertNull(new ApplicationSnapshotStore(folder).load(SERVER_ID));
+	}
+
+	public void testUnknownVersionIgnored() throws Exception {
+		store.save(SERVER_ID, Arrays.asList(createApplication("app"))); //$NON-NLS-1$
+		store.dispose();
+
+		File file = getSnapshotFile(SERVER_ID);
+		RandomAccessFile raf = new RandomAccessFile(file, "rw"); //$NON-NLS-1$
+		try {
+			raf.seek(4);
+			raf.writeInt(Integer.MAX_VALUE);
+		}
+		finally {
+			raf.close();
+		}
+
+		assertNull(new ApplicationSnapshotStore(folder).load(SERVER_ID));
+	}
+
+	public void testDamagedSnapshotIgnored() throws Exception {
+		folder.mkdirs();
+		DataOutputStream out = new DataOutputStream(new FileOutputStream(getSnapshotFile(SERVER_ID)));
+		try {
+			out.writeInt(0);
+		}
+		finally {
+			out.close();
+		}
+		assertNull(store.load(SERVER_ID));
+
+		store.save(SERVER_ID, Arrays.asList(createApplication("app"))); //$NON-NLS-1$
+		store.dispose();
+		RandomAccessFile raf = new RandomAccessFile(getSnapshotFile(SERVER_ID), "rw"); //$NON-NLS-1$
+		try {
+			raf.setLength(raf.length() - 3);
+		}
+		finally {
+			raf.close();
+		}
+		assertNull(new ApplicationSnapshotStore(folder).load(SERVER_ID));
+	}
+
+	private File getSnapshotFile(String serverId) {
+		return new File(folder, serverId + ".snapshot"); //$NON-NLS-1$
+	}
+
+	private static CloudApplication createApplication(String name) {
+		CloudApplication application = new CloudApplication(new Meta(UUID.randomUUID(), null, null), name);
+		application.setState(AppState.STARTED);
+		application.setInstances(2);
+		application.setMemory(512);
+		application.setUris(Arrays.asList(name + ".example.com", name + "-blue.example.com")); //$NON-NLS-1$ //$NON-NLS-2$
+		application.setServices(Arrays.asList("database")); //$NON-NLS-1$
+		return application;
+	}
+
+	private static void assertApplication(CloudApplication expected, CloudApplication actual) {
+		assertEquals(expected.getMeta().getGuid(), actual.getMeta().getGuid());
+		assertEquals(expected.getName(), actual.getName());
+		assertEquals(expected.getState(), actual.getState());
+		assertEquals(expected.getInstances(), actual.getInstances());
+		assertEquals(expected.getMemory(), actual.getMemory());
+		assertEquals(expected.getUris(), actual.getUris());
+		assertEquals(expected.getServices(), actual.getServices());
+	}
+}
@@ -0,0 +1,200 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Pivotal Software, Inc. 
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution. 
+ * 
+ * The Eclipse Public License is available at 
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * and the Apache License v2.0 is available at 
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * You may elect to redistribute this code under either of these licenses.
+ *  
+ *  Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+ ********************************************************************************/
+package org.eclipse.cft.server.tests.core;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import org.eclipse.cft.server.core.internal.ArchiveStagingArea;
+import org.eclipse.wst.server.core.IModule;
+import org.eclipse.wst.server.core.IServer;
+
+import junit.framework.TestCase;
+
+/**
+ * Verifies the reuse, clean up and trimming of the module folders in the
+ * {@link ArchiveStagingArea}.
+ */
+public class ArchiveStagingAreaTest extends TestCase {
+
+	private File root;
+
+	private IServer server;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		root = File.createTempFile("staging", null); //$NON-NLS-1$
+		root.delete();
+		root.mkdirs();
+		server = createServer("server"); //$NON-NLS-1$
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		delete(root);
+		super.tearDown();
+	}
+
+	public void testModuleFolderPerServer() throws Exception {
+		ArchiveStagingArea stagingArea = new ArchiveStagingArea(root);
+		IModule module = createModule("web/app"); //$NON-NLS-1$
+
+		File folder = stagingArea.getModuleFolder(server, module);
+		assertTrue(folder.isDirectory());
+		assertEquals(folder, stagingArea.getModuleFolder(server, module));
+
+		File otherFolder = stagingArea.getModuleFolder(createServer("other"), module); //$NON-NLS-1$
+		assertTrue(otherFolder.isDirectory());
+		assertFalse(folder.equals(otherFolder));
+	}
+
+	public void testArchivesDeletedOnRelease() throws Exception {
+		ArchiveStagingArea stagingArea = new ArchiveStagingArea(root);
+		IModule module = createModule("app"); //$NON-NLS-1$
+
+		stagingArea.acquire(server, module);
+		File archive = write(stagingArea.getArchiveFile(server, module, "app.war"), 10); //$NON-NLS-1$
+		File childJar = write(new File(stagingArea.getModuleFolder(server, module), "child.jar"), 10); //$NON-NLS-1$
+		assertTrue(stagingArea.isInUse(server, module));
+		assertEquals(20, stagingArea.getBytesHeld());
+
+		stagingArea.release(server, module);
+
+		assertFalse(stagingArea.isInUse(server, module));
+		assertFalse(archive.exists());
+		// Reused by the next publish
+		assertTrue(childJar.exists());
+		assertEquals(10, stagingArea.getBytesHeld());
+	}
+
+	public void testNestedUsesReleasedOnce() throws Exception {
+		ArchiveStagingArea stagingArea = new ArchiveStagingArea(root);
+		IModule module = createModule("app"); //$NON-NLS-1$
+
+		stagingArea.acquire(server, module);
+		stagingArea.acquire(server, module);
+		File archive = write(stagingArea.getArchiveFile(server, module, "app.jar"), 10); //$NON-NLS-1$
+
+		stagingArea.release(server, module);
+		assertTrue(stagingArea.isInUse(server, module));
+		assertTrue(archive.exists());
+
+		stagingArea.release(server, module);
+		assertFalse(stagingArea.isInUse(server, module));
+		assertFalse(archive.exists());
+
+		// Releasing more than acquired has no effect
+		stagingArea.release(server, module);
+		assertFalse(stagingArea.isInUse(server, module));
+	}
+
+	public void testTrimDeletesLeastRecentlyUsedFolders() throws Exception {
+		ArchiveStagingArea stagingArea = new ArchiveStagingArea(root, 250);
+		IModule oldest = createModule("oldest"); //$NON-NLS-1$
+		IModule older = createModule("older"); //$NON-NLS-1$
+		IModule recent = createModule("recent"); //$NON-NLS-1$
+		IModule published = createModule("published"); //$NON-NLS-1$
+
+		long now = System.currentTimeMillis();
+		File oldestFolder = stage(stagingArea, oldest, 100, now - 40000);
+		File olderFolder = stage(stagingArea, older, 100, now - 30000);
+		File recentFolder = stage(stagingArea, recent, 100, now - 10000);
+
+		// In use, so never deleted even if least recently used
+		stagingArea.acquire(server, published);
+		File publishedFolder = stage(stagingArea, published, 100, now - 50000);
+
+		IModule released = createModule("released"); //$NON-NLS-1$
+		stagingArea.acquire(server, released);
+		stagingArea.release(server, released);
+
+		assertTrue(publishedFolder.exists());
+		assertFalse(oldestFolder.exists());
+		assertFalse(olderFolder.exists());
+		assertTrue(recentFolder.exists());
+		assertEquals(200, stagingArea.getBytesHeld());
+	}
+
+	public void testNoTrimWithinCap() throws Exception {
+		ArchiveStagingArea stagingArea = new ArchiveStagingArea(root, 1000);
+		File first = stage(stagingArea, createModule("first"), 100, System.currentTimeMillis() - 10000); //$NON-NLS-1$
+		IModule second = createModule("second"); //$NON-NLS-1$
+
+		stagingArea.acquire(server, second);
+		stage(stagingArea, second, 100, System.currentTimeMillis());
+		stagingArea.release(server, second);
+
+		assertTrue(first.exists());
+		assertEquals(200, stagingArea.getBytesHeld());
+	}
+
+	private File stage(ArchiveStagingArea stagingArea, IModule module, int size, long lastUsed) throws IOException {
+		File folder = stagingArea.getModuleFolder(server, module);
+		write(new File(folder, "child.jar"), size); //$NON-NLS-1$
+		folder.setLastModified(lastUsed);
+		return folder;
+	}
+
+	private static File write(File file, int size) throws IOException {
+		OutputStream out = new FileOutputStream(file);
+		try {
+			out.write(new byte[size]);
+		}
+		finally {
+			out.close();
+		}
+		return file;
+	}
+
+	private static void delete(File file) {
+		File[] members = file.listFiles();
+		if (members != null) {
+			for (File member : members) {
+				delete(member);
+			}
+		}
+		file.delete();
+	}
+
+	private static IServer createServer(final String id) {
+		return (IServer) Proxy.newProxyInstance(ArchiveStagingAreaTest.class.getClassLoader(),
+				new Class<?>[] { IServer.class }, new InvocationHandler() {
+					public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+						return "getId".equals(method.getName()) ? id : null; //$NON-NLS-1$
+					}
+				});
+	}
+
+	private static IModule createModule(final String id) {
+		return (IModule) Proxy.newProxyInstance(ArchiveStagingAreaTest.class.getClassLoader(),
+				new Class<?>[] { IModule.class }, new InvocationHandler() {
+					public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+						return "getId".equals(method.getName()) || "getName".equals(method.getName()) ? id : null; //$NON-NLS-1$ //$NON-NLS-2$
+					}
+				});
+	}
+}
@@ -0,0 +1,313 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Pivotal Software, Inc. 
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution. 
+ * 
+ * The Eclipse Public License is available at 
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * and the Apache License v2.0 is available at 
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * You may elect to redistribute this code under either of these licenses.
+ *  
+ *  Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+ ********************************************************************************/
+package org.eclipse.cft.server.tests.core;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.LinkedList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.cloudfoundry.client.lib.CloudFoundryOperations;
+import org.eclipse.cft.server.core.internal.CloudErrorUtil;
+import org.eclipse.cft.server.core.internal.client.BaseClientRequest;
+import org.eclipse.cft.server.core.internal.client.RetryBudget;
+import org.eclipse.cft.server.core.internal.client.RetryPolicy;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.SubMonitor;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+
+import junit.framework.TestCase;
+
+/**
+ * Verifies how a {@link BaseClientRequest} reattempts failed client
+ * operations: the wait between attempts, the limits on reattempts, including
+ * reattempts of requests rejected by the rate limit, and cancellation while
+ * waiting.
+ */
+public class BaseClientRequestTest extends TestCase {
+
+	private static final long INTERVAL = 50;
+
+	private static final CloudFoundryOperations CLIENT = (CloudFoundryOperations) Proxy.newProxyInstance(
+			BaseClientRequestTest.class.getClassLoader(), new Class<?>[] { CloudFoundryOperations.class },
+			new InvocationHandler() {
+				public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+					return null;
+				}
+			});
+
+	private String budgetKey;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		budgetKey = getName() + System.nanoTime();
+	}
+
+	public void testReattemptedUntilSuccess() throws Exception {
+		TestRequest request = new TestRequest();
+		request.failures.add(CloudErrorUtil.toCoreException("first")); //$NON-NLS-1$
+		request.failures.add(CloudErrorUtil.toCoreException("second")); //$NON-NLS-1$
+
+		long start = System.currentTimeMillis();
+		assertEquals("result", request.run(new NullProgressMonitor())); //$NON-NLS-1$
+
+		assertEquals(3, request.attempts.get());
+		assertTrue(System.currentTimeMillis() - start >= 2 * INTERVAL);
+	}
+
+	public void testMaxAttempts() throws Exception {
+		TestRequest request = new TestRequest();
+		request.policy = new RetryPolicy(3, 1, 0, INTERVAL);
+		request.failAlways = true;
+
+		try {
+			request.run(new NullProgressMonitor());
+			fail("Expected CoreException"); //$NON-NLS-1$
+		}
+		catch (CoreException e) {
+			assertEquals("failure", e.getMessage()); //$NON-NLS-1$
+		}
+		assertEquals(3, request.attempts.get());
+	}
+
+	public void testTotalTimeWait() throws Exception {
+		TestRequest request = new TestRequest();
+		request.totalTimeWait = 2 * INTERVAL;
+		request.failAlways = true;
+
+		try {
+			request.run(new NullProgressMonitor());
+			fail("Expected CoreException"); //$NON-NLS-1$
+		}
+		catch (CoreException e) {
+			// expected
+		}
+		assertEquals(3, request.attempts.get());
+	}
+
+	public void testRetryBudget() throws Exception {
+		for (int i = 0; i < RetryBudget.MAX_RETRIES - 1; i++) {
+			assertTrue(RetryBudget.getDefault().acquireRetry(budgetKey));
+		}
+		TestRequest request = new TestRequest();
+		request.failAlways = true;
+
+		try {
+			request.run(new NullProgressMonitor());
+			fail("Expected CoreException"); //$NON-NLS-1$
+		}
+		catch (CoreException e) {
+			// expected
+		}
+		// One reattempt was left in the budget of the server
+		assertEquals(2, request.attempts.get());
+	}
+
+	public void testCanceledWhileWaiting() throws Exception {
+		TestRequest request = new TestRequest();
+		request.interval = 60000;
+		request.totalTimeWait = 120000;
+		request.failAlways = true;
+		final NullProgressMonitor monitor = new NullProgressMonitor();
+		Thread canceler = new Thread() {
+			@Override
+			public void run() {
+				try {
+					Thread.sleep(INTERVAL);
+				}
+				catch (InterruptedException e) {
+					// Cancel right away
+				}
+				monitor.setCanceled(true);
+			}
+		};
+
+		long start = System.currentTimeMillis();
+		canceler.start();
+		try {
+			request.run(monitor);
+			fail("Expected OperationCanceledException"); //$NON-NLS-1$
+		}
+		catch (OperationCanceledException e) {
+			// expected
+		}
+		assertTrue(System.currentTimeMillis() - start < request.interval);
+		assertEquals(1, request.attempts.get());
+	}
+
+	public void testRateLimitedReattempted() throws Exception {
+		TestRequest request = new TestRequest();
+		request.rateLimitKey = budgetKey;
+		request.failures.add(createRateLimitedError());
+
+		assertEquals("result", request.run(new NullProgressMonitor())); //$NON-NLS-1$
+		assertEquals(2, request.attempts.get());
+	}
+
+	public void testRateLimitedCountsTowardMaxAttempts() throws Exception {
+		TestRequest request = new TestRequest();
+		request.rateLimitKey = budgetKey;
+		request.rateLimitedAlways = true;
+		request.policy = new RetryPolicy(2, 1, 0, INTERVAL);
+		request.totalTimeWait = 60000;
+
+		assertRateLimitedFailure(request);
+		assertEquals(2, request.attempts.get());
+	}
+
+	public void testRateLimitedWaitCountsTowardTotalTimeWait() throws Exception {
+		TestRequest request = new TestRequest();
+		request.rateLimitKey = budgetKey;
+		request.rateLimitedAlways = true;
+		// Shorter than the wait imposed by the rate limiter after a 429
+		request.totalTimeWait = 1000;
+
+		assertRateLimitedFailure(request);
+		assertEquals(1, request.attempts.get());
+	}
+
+	public void testRateLimitedLimitedByBudget() throws Exception {
+		while (RetryBudget.getDefault().acquireRetry(budgetKey)) {
+			// Exhaust the budget of the server
+		}
+		TestRequest request = new TestRequest();
+		request.rateLimitKey = budgetKey;
+		request.rateLimitedAlways = true;
+		request.totalTimeWait = 60000;
+
+		assertRateLimitedFailure(request);
+		assertEquals(1, request.attempts.get());
+	}
+
+	public void testRateLimitedNotIdempotent() throws Exception {
+		TestRequest request = new TestRequest();
+		request.rateLimitKey = budgetKey;
+		request.rateLimitedAlways = true;
+		request.idempotent = false;
+		request.totalTimeWait = 60000;
+
+		assertRateLimitedFailure(request);
+		assertEquals(1, request.attempts.get());
+	}
+
+	private static void assertRateLimitedFailure(TestRequest request) {
+		try {
+			request.run(new NullProgressMonitor());
+			fail("Expected CoreException"); //$NON-NLS-1$
+		}
+		catch (CoreException e) {
+			assertTrue(CloudErrorUtil.isTooManyRequestsException(e));
+		}
+	}
+
+	private static HttpClientErrorException createRateLimitedError() {
+		return new HttpClientErrorException(HttpStatus.TOO_MANY_REQUESTS);
+	}
+
+	/**
+	 * Fails with the queued errors, or always if requested, before returning
+	 * a result.
+	 */
+	private class TestRequest extends BaseClientRequest<String> {
+
+		final LinkedList<Throwable> failures = new LinkedList<Throwable>();
+
+		final AtomicInteger attempts = new AtomicInteger();
+
+		boolean failAlways;
+
+		boolean rateLimitedAlways;
+
+		boolean idempotent = true;
+
+		String rateLimitKey;
+
+		long interval = INTERVAL;
+
+		long totalTimeWait = 10000;
+
+		RetryPolicy policy = new RetryPolicy(10, 1, 0, 60000);
+
+		TestRequest() {
+			super("test request"); //$NON-NLS-1$
+		}
+
+		@Override
+		protected String doRun(CloudFoundryOperations client, SubMonitor progress) throws CoreException {
+			attempts.incrementAndGet();
+			if (failAlways) {
+				throw CloudErrorUtil.toCoreException("failure"); //$NON-NLS-1$
+			}
+			if (rateLimitedAlways) {
+				throw createRateLimitedError();
+			}
+			Throwable failure = failures.poll();
+			if (failure instanceof CoreException) {
+				throw (CoreException) failure;
+			}
+			if (failure instanceof RuntimeException) {
+				throw (RuntimeException) failure;
+			}
+			return "result"; //$NON-NLS-1$
+		}
+
+		@Override
+		protected CloudFoundryOperations getClient(IProgressMonitor monitor) throws CoreException {
+			return CLIENT;
+		}
+
+		@Override
+		protected long waitOnErrorInterval(Throwable exception, SubMonitor monitor) throws CoreException {
+			return interval;
+		}
+
+		@Override
+		protected RetryPolicy getRetryPolicy() {
+			return policy;
+		}
+
+		@Override
+		protected long getTotalTimeWait() {
+			return totalTimeWait;
+		}
+
+		@Override
+		protected String getRetryBudgetKey() {
+			return budgetKey;
+		}
+
+		@Override
+		protected String getRateLimitKey() {
+			return rateLimitKey;
+		}
+
+		@Override
+		protected boolean isIdempotent() {
+			return idempotent;
+		}
+	}
+}
@@ -0,0 +1,154 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Pivotal Software, Inc. 
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution. 
+ * 
+ * The Eclipse Public License is available at 
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * and the Apache License v2.0 is available at 
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * You may elect to redistribute this code under either of these licenses.
+ *  
+ *  Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+ ********************************************************************************/
+package org.eclipse.cft.server.tests.core;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import org.cloudfoundry.client.lib.archive.ApplicationArchive.Entry;
+import org.eclipse.cft.server.core.internal.CachingApplicationArchive;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.Path;
+import org.eclipse.wst.server.core.IModule;
+import org.eclipse.wst.server.core.model.IModuleResource;
+import org.eclipse.wst.server.core.util.ModuleFile;
+import org.eclipse.wst.server.core.util.ModuleFolder;
+
+import junit.framework.TestCase;
+
+/**
+ * Verifies that the partial payload of a {@link CachingApplicationArchive}
+ * keeps the files not known to the server and all folders.
+ */
+public class CachingApplicationArchiveTest extends TestCase {
+
+	private File folder;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		folder = File.createTempFile("cachingArchive", ""); //$NON-NLS-1$ //$NON-NLS-2$
+		folder.delete();
+		folder.mkdirs();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		delete(folder);
+		super.tearDown();
+	}
+
+	public void testPartialPayload() throws Exception {
+		CachingApplicationArchive archive = createArchive();
+		assertEquals(Arrays.asList("index.html", "WEB-INF/", "WEB-INF/web.xml", "WEB-INF/classes/", //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+				"WEB-INF/classes/App.class", "WEB-INF/empty/"), getNames(archive)); //$NON-NLS-1$ //$NON-NLS-2$
+
+		archive.generatePartialPayload(new HashSet<String>(Arrays.asList("index.html", "WEB-INF/web.xml"))); //$NON-NLS-1$ //$NON-NLS-2$
+
+		// Folders are kept even if none of their files are uploaded
+		assertEquals(Arrays.asList("WEB-INF/", "WEB-INF/classes/", "WEB-INF/classes/App.class", "WEB-INF/empty/"), //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+				getNames(archive));
+		assertEquals("app.war", archive.getFilename()); //$NON-NLS-1$
+	}
+
+	public void testPartialPayloadAllFilesKnown() throws Exception {
+		CachingApplicationArchive archive = createArchive();
+
+		archive.generatePartialPayload(new HashSet<String>(Arrays.asList("index.html", "WEB-INF/web.xml", //$NON-NLS-1$ //$NON-NLS-2$
+				"WEB-INF/classes/App.class"))); //$NON-NLS-1$
+
+		assertEquals(Arrays.asList("WEB-INF/", "WEB-INF/classes/", "WEB-INF/empty/"), getNames(archive)); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+	}
+
+	public void testPartialPayloadNoFilesKnown() throws Exception {
+		CachingApplicationArchive archive = createArchive();
+		List<String> names = getNames(archive);
+
+		archive.generatePartialPayload(new HashSet<String>());
+
+		assertEquals(names, getNames(archive));
+	}
+
+	protected CachingApplicationArchive createArchive() throws IOException {
+		ModuleFolder classes = new ModuleFolder(null, "classes", new Path("WEB-INF")); //$NON-NLS-1$ //$NON-NLS-2$
+		classes.setMembers(new IModuleResource[] { createModuleFile("WEB-INF/classes", "App.class") }); //$NON-NLS-1$ //$NON-NLS-2$
+		ModuleFolder empty = new ModuleFolder(null, "empty", new Path("WEB-INF")); //$NON-NLS-1$ //$NON-NLS-2$
+		ModuleFolder webInf = new ModuleFolder(null, "WEB-INF", Path.EMPTY); //$NON-NLS-1$
+		webInf.setMembers(new IModuleResource[] { createModuleFile("WEB-INF", "web.xml"), classes, empty }); //$NON-NLS-1$ //$NON-NLS-2$
+
+		List<IModuleResource> resources = new ArrayList<IModuleResource>();
+		resources.add(createModuleFile("", "index.html")); //$NON-NLS-1$ //$NON-NLS-2$
+		resources.add(webInf);
+		return new CachingApplicationArchive(resources, new ArrayList<IModuleResource>(), createModule("app"), "app"); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	protected List<String> getNames(CachingApplicationArchive archive) {
+		List<String> names = new ArrayList<String>();
+		for (Entry entry : archive.getEntries()) {
+			names.add(entry.getName());
+		}
+		return names;
+	}
+
+	protected ModuleFile createModuleFile(String path, String name) throws IOException {
+		IPath modulePath = new Path(path);
+		File file = new File(new File(folder, modulePath.toOSString()), name);
+		file.getParentFile().mkdirs();
+		FileOutputStream out = new FileOutputStream(file);
+		try {
+			out.write(name.getBytes("UTF-8")); //$NON-NLS-1$
+		}
+		finally {
+			out.close();
+		}
+		return new ModuleFile(file, name, modulePath);
+	}
+
+	protected IModule createModule(final String name) {
+		return (IModule) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { IModule.class },
+				new InvocationHandler() {
+					public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+						if ("getName".equals(method.getName())) { //$NON-NLS-1$
+							return name;
+						}
+						return null;
+					}
+				});
+	}
+
+	private static void delete(File file) {
+		File[] members = file.listFiles();
+		if (members != null) {
+			for (File member : members) {
+				delete(member);
+			}
+		}
+		file.delete();
+	}
+}
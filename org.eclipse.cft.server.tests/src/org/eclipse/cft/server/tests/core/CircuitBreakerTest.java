@@ -0,0 +1,203 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Pivotal Software, Inc. 
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution. 
+ * 
+ * The Eclipse Public License is available at 
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * and the Apache License v2.0 is available at 
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * You may elect to redistribute this code under either of these licenses.
+ *  
+ *  Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+ ********************************************************************************/
+package org.eclipse.cft.server.tests.core;
+
+import java.net.ConnectException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.cloudfoundry.client.lib.CloudFoundryException;
+import org.eclipse.cft.server.core.internal.CloudErrorUtil;
+import org.eclipse.cft.server.core.internal.client.CircuitBreaker;
+import org.eclipse.cft.server.core.internal.client.CircuitBreaker.State;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.ResourceAccessException;
+
+import junit.framework.TestCase;
+
+/**
+ * Verifies the state transitions of the {@link CircuitBreaker} as requests
+ * to a server fail or succeed, without contacting a server.
+ */
+public class CircuitBreakerTest extends TestCase {
+
+	private static final long PROBE_INTERVAL = 50;
+
+	private static final ResourceAccessException UNREACHABLE = new ResourceAccessException("I/O error", //$NON-NLS-1$
+			new ConnectException("Connection refused")); //$NON-NLS-1$
+
+	private TestBreaker breaker;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		breaker = new TestBreaker();
+	}
+
+	public void testOpensAfterConsecutiveUnreachableErrors() throws Exception {
+		for (int i = 1; i < CircuitBreaker.FAILURE_THRESHOLD; i++) {
+			breaker.recordFailure(UNREACHABLE);
+			assertEquals(State.CLOSED, breaker.getState());
+			breaker.checkAvailable();
+		}
+		breaker.recordFailure(UNREACHABLE);
+
+		assertEquals(State.OPEN, breaker.getState());
+		assertEquals(Arrays.asList(State.OPEN), breaker.transitions);
+		assertUnavailable();
+	}
+
+	public void testSuccessResetsFailureCount() throws Exception {
+		for (int i = 1; i < CircuitBreaker.FAILURE_THRESHOLD; i++) {
+			breaker.recordFailure(UNREACHABLE);
+		}
+		breaker.recordSuccess();
+		breaker.recordFailure(UNREACHABLE);
+
+		assertEquals(State.CLOSED, breaker.getState());
+		assertTrue(breaker.transitions.isEmpty());
+	}
+
+	public void testOtherErrorsMeanServerReached() throws Exception {
+		for (int i = 1; i < CircuitBreaker.FAILURE_THRESHOLD; i++) {
+			breaker.recordFailure(UNREACHABLE);
+		}
+		// Canceled requests are ignored
+		breaker.recordFailure(new OperationCanceledException());
+		// The server responded with an error
+		breaker.recordFailure(CloudErrorUtil.toCoreException(new CloudFoundryException(HttpStatus.NOT_FOUND)));
+		breaker.recordFailure(UNREACHABLE);
+
+		assertEquals(State.CLOSED, breaker.getState());
+	}
+
+	public void testClosesWhenProbeSucceeds() throws Exception {
+		open();
+		Thread.sleep(PROBE_INTERVAL * 2);
+
+		breaker.checkAvailable();
+
+		assertEquals(1, breaker.probes);
+		assertEquals(State.CLOSED, breaker.getState());
+		assertEquals(Arrays.asList(State.OPEN, State.HALF_OPEN, State.CLOSED), breaker.transitions);
+	}
+
+	public void testReopensWhenProbeFails() throws Exception {
+		open();
+		Thread.sleep(PROBE_INTERVAL * 2);
+		breaker.reachable = false;
+
+		assertUnavailable();
+
+		assertEquals(1, breaker.probes);
+		assertEquals(State.OPEN, breaker.getState());
+		assertEquals(Arrays.asList(State.OPEN, State.HALF_OPEN, State.OPEN), breaker.transitions);
+		// Not probed again until the interval has passed
+		assertUnavailable();
+		assertEquals(1, breaker.probes);
+	}
+
+	public void testNotProbedWithinOpenInterval() throws Exception {
+		breaker = new TestBreaker(60 * 1000);
+		open();
+
+		assertUnavailable();
+		assertEquals(0, breaker.probes);
+	}
+
+	public void testSuccessfulRequestClosesBreaker() throws Exception {
+		open();
+
+		breaker.recordSuccess();
+
+		assertEquals(State.CLOSED, breaker.getState());
+		breaker.checkAvailable();
+	}
+
+	public void testReset() throws Exception {
+		open();
+
+		breaker.reset();
+
+		assertEquals(State.CLOSED, breaker.getState());
+		assertEquals(0, breaker.probes);
+		breaker.checkAvailable();
+	}
+
+	private void open() {
+		for (int i = 0; i < CircuitBreaker.FAILURE_THRESHOLD; i++) {
+			breaker.recordFailure(UNREACHABLE);
+		}
+		assertEquals(State.OPEN, breaker.getState());
+	}
+
+	private void assertUnavailable() {
+		try {
+			breaker.checkAvailable();
+			fail("Expected the breaker to reject the request"); //$NON-NLS-1$
+		}
+		catch (CoreException e) {
+			assertSame(breaker.unavailable, e);
+		}
+	}
+
+	/**
+	 * Breaker that records its state changes, and whose probe of the server
+	 * returns a configured result.
+	 */
+	private static class TestBreaker extends CircuitBreaker {
+
+		final List<State> transitions = new ArrayList<State>();
+
+		final CoreException unavailable = CloudErrorUtil.toCoreException("Server unreachable"); //$NON-NLS-1$
+
+		boolean reachable = true;
+
+		int probes;
+
+		TestBreaker() {
+			this(PROBE_INTERVAL);
+		}
+
+		TestBreaker(long openInterval) {
+			super(null, openInterval);
+		}
+
+		@Override
+		protected boolean probe() {
+			probes++;
+			return reachable;
+		}
+
+		@Override
+		protected CoreException getUnavailableError() {
+			return unavailable;
+		}
+
+		@Override
+		protected void stateChanged(State newState) {
+			transitions.add(newState);
+		}
+	}
+}
@@ -21,23 +21,29 @@
 package org.eclipse.cft.server.tests.core;
 
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Enumeration;
 import java.util.List;
+import java.util.Random;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
 import org.eclipse.cft.server.core.internal.CloudUtil;
-import org.eclipse.cft.server.tests.util.CloudFoundryTestFixture;
-import org.eclipse.cft.server.tests.util.CloudFoundryTestFixture.Harness;
-import org.eclipse.core.resources.IProject;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.NullProgressMonitor;
-import org.eclipse.wst.server.core.IModule;
-import org.eclipse.wst.server.core.IServer;
-import org.eclipse.wst.server.core.ServerUtil;
-import org.eclipse.wst.server.core.internal.Server;
+import org.eclipse.core.runtime.Path;
+import org.eclipse.wst.server.core.model.IModuleResource;
+import org.eclipse.wst.server.core.model.IModuleResourceDelta;
+import org.eclipse.wst.server.core.util.ModuleFile;
+import org.eclipse.wst.server.core.util.ModuleFolder;
 
 import junit.framework.TestCase;
 
@@ -46,46 +52,178 @@ import junit.framework.TestCase;
  */
 public class CloudUtilTest extends TestCase {
 
-	private Harness harness;
-
-	private IServer server;
-
-	private IProject project;
+	private File folder;
 
 	@Override
 	protected void setUp() throws Exception {
-		harness = CloudFoundryTestFixture.getTestFixture().createHarness();
-		server = harness.createServer();
+		folder = File.createTempFile("cloudUtil", ""); //$NON-NLS-1$ //$NON-NLS-2$
+		folder.delete();
+		folder.mkdirs();
 	}
 
 	@Override
 	protected void tearDown() throws Exception {
-		harness.dispose();
+		delete(folder);
 	}
 
-	public void testCreateWarFile() throws Exception {
-		harness.createProject("appclient-module");
-		project = harness.createProject("dynamic-webapp-with-appclient-module");
-		harness.addModule(project);
+	public void testPublishZip() throws Exception {
+		byte[] jar = new byte[8192];
+		new Random(1).nextBytes(jar);
+
+		ModuleFolder webInf = new ModuleFolder(null, "WEB-INF", Path.EMPTY); //$NON-NLS-1$
+		ModuleFolder lib = new ModuleFolder(null, "lib", new Path("WEB-INF")); //$NON-NLS-1$ //$NON-NLS-2$
+		lib.setMembers(new IModuleResource[] { createModuleFile("WEB-INF/lib", "library.jar", jar) }); //$NON-NLS-1$ //$NON-NLS-2$
+		webInf.setMembers(new IModuleResource[] {
+				createModuleFile("WEB-INF", "web.xml", "<web-app></web-app>".getBytes("UTF-8")), lib }); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+		List<IModuleResource> resources = new ArrayList<IModuleResource>();
+		resources.add(createModuleFile("", "index.html", "<html></html>".getBytes("UTF-8"))); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+		resources.add(webInf);
 
-		IModule[] modules = ServerUtil.getModules(project);
-		File file = CloudUtil.createWarFile(modules, (Server) server, new NullProgressMonitor());
+		File file = new File(folder, "app.war"); //$NON-NLS-1$
+		IStatus[] status = CloudUtil.publishZip(resources, file, null, new NullProgressMonitor());
+		assertEquals(0, status.length);
 
-		List<String> files = new ArrayList<String>();
 		ZipFile zipFile = new ZipFile(file);
-		Enumeration<? extends ZipEntry> en = zipFile.entries();
-		while (en.hasMoreElements()) {
-			ZipEntry entry = en.nextElement();
-			files.add(entry.getName());
+		try {
+			List<String> files = new ArrayList<String>();
+			Enumeration<? extends ZipEntry> en = zipFile.entries();
+			while (en.hasMoreElements()) {
+				files.add(en.nextElement().getName());
+			}
+			Collections.sort(files);
+			List<String> expected = Arrays.asList("WEB-INF/", "WEB-INF/lib/", "WEB-INF/lib/library.jar", //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+					"WEB-INF/web.xml", "index.html"); //$NON-NLS-1$ //$NON-NLS-2$
+			assertEquals(expected, files);
+
+			// Jars are stored rather than compressed again
+			assertEquals(ZipEntry.STORED, zipFile.getEntry("WEB-INF/lib/library.jar").getMethod()); //$NON-NLS-1$
+			assertEquals(ZipEntry.DEFLATED, zipFile.getEntry("WEB-INF/web.xml").getMethod()); //$NON-NLS-1$
+		}
+		finally {
+			zipFile.close();
+		}
+	}
+
+	public void testChildJarReused() throws Exception {
+		IModuleResource[] resources = createChildResources();
+		File jarFile = new File(folder, "child.jar"); //$NON-NLS-1$
+
+		assertTrue(publishChildModule(resources, new IModuleResourceDelta[0], jarFile));
+		assertTrue(jarFile.exists());
+		long lastModified = setLastModifiedInPast(jarFile);
+		long length = jarFile.length();
+
+		// No changes in the delta, and same member files
+		assertFalse(publishChildModule(resources, new IModuleResourceDelta[] { createDelta(
+				IModuleResourceDelta.NO_CHANGE, new IModuleResourceDelta[0]) }, jarFile));
+		assertFalse(publishChildModule(resources, null, jarFile));
+		assertEquals(lastModified, jarFile.lastModified());
+		assertEquals(length, jarFile.length());
+	}
+
+	public void testChildJarRepackedForChangedMember() throws Exception {
+		IModuleResource[] resources = createChildResources();
+		File jarFile = new File(folder, "child.jar"); //$NON-NLS-1$
+		assertTrue(publishChildModule(resources, null, jarFile));
+		long lastModified = setLastModifiedInPast(jarFile);
+
+		File member = new File(folder, "classes/Util.class"); //$NON-NLS-1$
+		assertTrue(member.setLastModified(member.lastModified() - 10000));
+
+		assertTrue(publishChildModule(resources, null, jarFile));
+		assertTrue(lastModified != jarFile.lastModified());
+		// The repacked jar is reused by the next publish
+		assertFalse(publishChildModule(resources, null, jarFile));
+	}
+
+	public void testChildJarRepackedForDelta() throws Exception {
+		IModuleResource[] resources = createChildResources();
+		File jarFile = new File(folder, "child.jar"); //$NON-NLS-1$
+		assertTrue(publishChildModule(resources, null, jarFile));
+		long lastModified = setLastModifiedInPast(jarFile);
+
+		assertTrue(publishChildModule(resources, new IModuleResourceDelta[] { createDelta(
+				IModuleResourceDelta.CHANGED, new IModuleResourceDelta[0]) }, jarFile));
+		assertTrue(lastModified != jarFile.lastModified());
+
+		// Changes in nested folders are found as well
+		lastModified = setLastModifiedInPast(jarFile);
+		IModuleResourceDelta added = createDelta(IModuleResourceDelta.ADDED, new IModuleResourceDelta[0]);
+		assertTrue(publishChildModule(resources, new IModuleResourceDelta[] { createDelta(
+				IModuleResourceDelta.NO_CHANGE, new IModuleResourceDelta[] { added }) }, jarFile));
+		assertTrue(lastModified != jarFile.lastModified());
+	}
+
+	public void testChildJarRepackedWhenMissing() throws Exception {
+		IModuleResource[] resources = createChildResources();
+		File jarFile = new File(folder, "child.jar"); //$NON-NLS-1$
+		assertTrue(publishChildModule(resources, null, jarFile));
+
+		assertTrue(jarFile.delete());
+		assertTrue(publishChildModule(resources, null, jarFile));
+		assertTrue(jarFile.exists());
+	}
+
+	protected boolean publishChildModule(IModuleResource[] resources, IModuleResourceDelta[] delta, File jarFile) {
+		List<IStatus> result = new ArrayList<IStatus>();
+		boolean published = CloudUtil.publishChildModule(resources, delta, jarFile, false, null, result,
+				new NullProgressMonitor());
+		assertEquals(Collections.emptyList(), result);
+		return published;
+	}
+
+	protected IModuleResource[] createChildResources() throws IOException {
+		ModuleFolder metaInf = new ModuleFolder(null, "META-INF", Path.EMPTY); //$NON-NLS-1$
+		metaInf.setMembers(new IModuleResource[] { createModuleFile("META-INF", "MANIFEST.MF", //$NON-NLS-1$ //$NON-NLS-2$
+				"Manifest-Version: 1.0\n".getBytes("UTF-8")) }); //$NON-NLS-1$ //$NON-NLS-2$
+		// Names are fingerprinted in UTF-8 whatever the platform encoding
+		return new IModuleResource[] { metaInf, createModuleFile("classes", "Util.class", new byte[] { 1, 2, 3 }), //$NON-NLS-1$ //$NON-NLS-2$
+				createModuleFile("classes", "Fa\u00e7ade.class", new byte[] { 4, 5, 6 }) }; //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	protected IModuleResourceDelta createDelta(final int kind, final IModuleResourceDelta[] children) {
+		return (IModuleResourceDelta) Proxy.newProxyInstance(getClass().getClassLoader(),
+				new Class<?>[] { IModuleResourceDelta.class }, new InvocationHandler() {
+					public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+						if ("getKind".equals(method.getName())) { //$NON-NLS-1$
+							return kind;
+						}
+						if ("getAffectedChildren".equals(method.getName())) { //$NON-NLS-1$
+							return children;
+						}
+						return null;
+					}
+				});
+	}
+
+	private static long setLastModifiedInPast(File file) {
+		long lastModified = (file.lastModified() / 1000 - 3600) * 1000;
+		assertTrue(file.setLastModified(lastModified));
+		return file.lastModified();
+	}
+
+	protected ModuleFile createModuleFile(String path, String name, byte[] content) throws IOException {
+		IPath modulePath = new Path(path);
+		File file = new File(new File(folder, modulePath.toOSString()), name);
+		file.getParentFile().mkdirs();
+		FileOutputStream out = new FileOutputStream(file);
+		try {
+			out.write(content);
+		}
+		finally {
+			out.close();
+		}
+		return new ModuleFile(file, name, modulePath);
+	}
+
+	private static void delete(File file) {
+		File[] members = file.listFiles();
+		if (members != null) {
+			for (File member : members) {
+				delete(member);
+			}
 		}
-		// the directory entry is not always present, remove to avoid test
-		// failure
-		files.remove("WEB-INF/lib/");
-		Collections.sort(files);
-		List<String> expected = Arrays.asList("META-INF/", "META-INF/MANIFEST.MF", "WEB-INF/", "WEB-INF/classes/",
-				"WEB-INF/classes/TestServlet.class", "WEB-INF/lib/appclient-module.jar", "WEB-INF/web.xml",
-				"index.html");
-		assertEquals(expected, files);
+		file.delete();
 	}
 
 }
@@ -0,0 +1,185 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Pivotal Software, Inc. 
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution. 
+ * 
+ * The Eclipse Public License is available at 
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * and the Apache License v2.0 is available at 
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * You may elect to redistribute this code under either of these licenses.
+ *  
+ *  Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+ ********************************************************************************/
+package org.eclipse.cft.server.tests.core;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+import org.eclipse.cft.server.core.internal.ContentDigestCache;
+
+import junit.framework.TestCase;
+
+/**
+ * Verifies that the {@link ContentDigestCache} reuses the sha1 code of a
+ * file until its size or modification time changes, and that files reached
+ * through different paths share one entry.
+ */
+public class ContentDigestCacheTest extends TestCase {
+
+	private File folder;
+
+	private ContentDigestCache cache;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		folder = File.createTempFile("contentDigests", ""); //$NON-NLS-1$ //$NON-NLS-2$
+		folder.delete();
+		folder.mkdirs();
+		cache = new ContentDigestCache();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		File[] files = folder.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+		folder.delete();
+		super.tearDown();
+	}
+
+	public void testSha1Cached() throws Exception {
+		File file = createFile("lib.jar", "content"); //$NON-NLS-1$ //$NON-NLS-2$
+
+		byte[] sha1 = cache.getSha1(file);
+		assertTrue(Arrays.equals(sha1("content"), sha1)); //$NON-NLS-1$
+		assertEquals(0, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+
+		assertTrue(Arrays.equals(sha1, cache.getSha1(file)));
+		assertEquals(1, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+		assertEquals(1, cache.size());
+	}
+
+	public void testSamePathShared() throws Exception {
+		File file = createFile("lib.jar", "content"); //$NON-NLS-1$ //$NON-NLS-2$
+		cache.getSha1(file);
+
+		// Same file reached through another, non-canonical path, as when
+		// applications refer to a shared jar from different locations
+		File otherPath = new File(new File(folder, "."), "lib.jar"); //$NON-NLS-1$ //$NON-NLS-2$
+		cache.getSha1(otherPath);
+
+		assertEquals(1, cache.getHitCount());
+		assertEquals(1, cache.size());
+	}
+
+	public void testChangedFileHashedAgain() throws Exception {
+		File file = createFile("lib.jar", "content"); //$NON-NLS-1$ //$NON-NLS-2$
+		cache.getSha1(file);
+
+		writeFile(file, "changed content"); //$NON-NLS-1$
+		assertTrue(Arrays.equals(sha1("changed content"), cache.getSha1(file))); //$NON-NLS-1$
+		assertEquals(0, cache.getHitCount());
+		assertEquals(2, cache.getMissCount());
+	}
+
+	public void testModifiedFileHashedAgain() throws Exception {
+		File file = createFile("lib.jar", "content"); //$NON-NLS-1$ //$NON-NLS-2$
+		cache.getSha1(file);
+
+		// Same size, different content and modification time
+		writeFile(file, "CONTENT"); //$NON-NLS-1$
+		assertTrue(file.setLastModified(file.lastModified() - 10000));
+		assertTrue(Arrays.equals(sha1("CONTENT"), cache.getSha1(file))); //$NON-NLS-1$
+		assertEquals(2, cache.getMissCount());
+	}
+
+	public void testLeastRecentlyUsedEvicted() throws Exception {
+		cache = new ContentDigestCache(2);
+		File file1 = createFile("lib1.jar", "content1"); //$NON-NLS-1$ //$NON-NLS-2$
+		File file2 = createFile("lib2.jar", "content2"); //$NON-NLS-1$ //$NON-NLS-2$
+		File file3 = createFile("lib3.jar", "content3"); //$NON-NLS-1$ //$NON-NLS-2$
+
+		cache.getSha1(file1);
+		cache.getSha1(file2);
+		cache.getSha1(file1);
+		cache.getSha1(file3);
+		assertEquals(2, cache.size());
+
+		// file2 was the least recently used
+		cache.getSha1(file1);
+		cache.getSha1(file2);
+		assertEquals(2, cache.getHitCount());
+		assertEquals(4, cache.getMissCount());
+	}
+
+	public void testClear() throws Exception {
+		File file = createFile("lib.jar", "content"); //$NON-NLS-1$ //$NON-NLS-2$
+		cache.getSha1(file);
+		cache.getSha1(file);
+
+		cache.clear();
+		assertEquals(0, cache.size());
+		assertEquals(0, cache.getHitCount());
+		assertEquals(0, cache.getMissCount());
+
+		cache.getSha1(file);
+		assertEquals(1, cache.getMissCount());
+	}
+
+	public void testKnownSha1Recorded() throws Exception {
+		File file = createFile("lib.jar", "content"); //$NON-NLS-1$ //$NON-NLS-2$
+		cache.put(file, sha1("content")); //$NON-NLS-1$
+
+		assertTrue(Arrays.equals(sha1("content"), cache.getSha1(file))); //$NON-NLS-1$
+		assertEquals(1, cache.getHitCount());
+		assertEquals(0, cache.getMissCount());
+	}
+
+	public void testMissingFile() throws Exception {
+		try {
+			cache.getSha1(new File(folder, "missing.jar")); //$NON-NLS-1$
+			fail("Expected IOException"); //$NON-NLS-1$
+		}
+		catch (IOException e) {
+			// expected
+		}
+		assertEquals(0, cache.size());
+	}
+
+	private File createFile(String name, String content) throws IOException {
+		File file = new File(folder, name);
+		writeFile(file, content);
+		return file;
+	}
+
+	private static void writeFile(File file, String content) throws IOException {
+		FileOutputStream out = new FileOutputStream(file);
+		try {
+			out.write(content.getBytes("UTF-8")); //$NON-NLS-1$
+		}
+		finally {
+			out.close();
+		}
+	}
+
+	private static byte[] sha1(String content) throws Exception {
+		return MessageDigest.getInstance("SHA-1").digest(content.getBytes("UTF-8")); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+}
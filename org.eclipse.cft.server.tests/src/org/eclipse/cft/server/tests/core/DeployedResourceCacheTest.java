@@ -0,0 +1,218 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Pivotal Software, Inc. 
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution. 
+ * 
+ * The Eclipse Public License is available at 
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * and the Apache License v2.0 is available at 
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * You may elect to redistribute this code under either of these licenses.
+ *  
+ *  Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+ ********************************************************************************/
+package org.eclipse.cft.server.tests.core;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.eclipse.cft.server.core.internal.DeployedResourceCache;
+import org.eclipse.cft.server.core.internal.DeployedResourceCache.CachedDeployedApplication;
+import org.eclipse.cft.server.core.internal.DeployedResourceCache.DeployedResourceEntry;
+
+import junit.framework.TestCase;
+
+/**
+ * Verifies that the persisted index of the {@link DeployedResourceCache} is
+ * read back, and that damaged or oversized indexes are rewritten on load so
+ * that records appended afterward can be read.
+ */
+public class DeployedResourceCacheTest extends TestCase {
+
+	private static final long TIMEOUT = 10000;
+
+	private static final CachedDeployedApplication APP = new CachedDeployedApplication("app"); //$NON-NLS-1$
+
+	private File indexFile;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		indexFile = File.createTempFile("deployedResources", ".index"); //$NON-NLS-1$ //$NON-NLS-2$
+		indexFile.delete();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		indexFile.delete();
+		super.tearDown();
+	}
+
+	public void testEntriesSurviveReload() throws Exception {
+		DeployedResourceCache cache = new DeployedResourceCache(indexFile);
+		cache.add(APP, createEntry("a.txt", 1)); //$NON-NLS-1$
+		cache.add(APP, createEntry("b.txt", 2)); //$NON-NLS-1$
+		cache.dispose();
+
+		DeployedResourceCache reloaded = new DeployedResourceCache(indexFile);
+		assertEntry(reloaded, "a.txt", 1); //$NON-NLS-1$
+		assertEntry(reloaded, "b.txt", 2); //$NON-NLS-1$
+		assertNull(reloaded.getEntry(new CachedDeployedApplication("other"), "a.txt")); //$NON-NLS-1$ //$NON-NLS-2$
+		reloaded.dispose();
+	}
+
+	public void testTruncatedRecordDiscarded() throws Exception {
+		DeployedResourceCache cache = new DeployedResourceCache(indexFile);
+		cache.add(APP, createEntry("a.txt", 1)); //$NON-NLS-1$
+		cache.dispose();
+		long validLength = indexFile.length();
+		appendRecord("b.txt", 2); //$NON-NLS-1$
+		truncate(indexFile.length() - 3);
+
+		DeployedResourceCache reloaded = new DeployedResourceCache(indexFile);
+		assertEntry(reloaded, "a.txt", 1); //$NON-NLS-1$
+		assertNull(reloaded.getEntry(APP, "b.txt")); //$NON-NLS-1$
+		// Rewritten without the partial record
+		assertEquals(validLength, indexFile.length());
+
+		assertAppendedRecordReadable(reloaded);
+	}
+
+	public void testUnknownRecordDiscarded() throws Exception {
+		DeployedResourceCache cache = new DeployedResourceCache(indexFile);
+		cache.add(APP, createEntry("a.txt", 1)); //$NON-NLS-1$
+		cache.dispose();
+		long validLength = indexFile.length();
+		append(new byte[] { 99, 0, 3, 'x', 'y', 'z' });
+
+		DeployedResourceCache reloaded = new DeployedResourceCache(indexFile);
+		assertEntry(reloaded, "a.txt", 1); //$NON-NLS-1$
+		assertEquals(validLength, indexFile.length());
+
+		assertAppendedRecordReadable(reloaded);
+	}
+
+	public void testSupersededRecordsCompacted() throws Exception {
+		DeployedResourceCache cache = new DeployedResourceCache(indexFile);
+		cache.add(APP, createEntry("a.txt", 1)); //$NON-NLS-1$
+		cache.dispose();
+		long compactLength = indexFile.length();
+		for (int i = 2; i <= 10; i++) {
+			appendRecord("a.txt", i); //$NON-NLS-1$
+		}
+		assertTrue(indexFile.length() > compactLength);
+
+		DeployedResourceCache reloaded = new DeployedResourceCache(indexFile);
+		// Last record wins
+		assertEntry(reloaded, "a.txt", 10); //$NON-NLS-1$
+		assertEquals(compactLength, indexFile.length());
+		reloaded.dispose();
+	}
+
+	public void testUnknownVersionDiscarded() throws Exception {
+		FileOutputStream out = new FileOutputStream(indexFile);
+		try {
+			out.write(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8 });
+		}
+		finally {
+			out.close();
+		}
+
+		DeployedResourceCache reloaded = new DeployedResourceCache(indexFile);
+		assertNull(reloaded.getEntry(APP, "a.txt")); //$NON-NLS-1$
+		assertFalse(indexFile.exists());
+		reloaded.dispose();
+	}
+
+	/**
+	 * Adds an entry to a cache loaded from a damaged index, and verifies that
+	 * the record appended in the background can be read by a new cache.
+	 */
+	private void assertAppendedRecordReadable(DeployedResourceCache cache) throws Exception {
+		long length = indexFile.length();
+		cache.add(APP, createEntry("c.txt", 3)); //$NON-NLS-1$
+
+		long end = System.currentTimeMillis() + TIMEOUT;
+		while (indexFile.length() == length) {
+			if (System.currentTimeMillis() > end) {
+				fail("Timed out waiting for the index to be written"); //$NON-NLS-1$
+			}
+			Thread.sleep(50);
+		}
+
+		DeployedResourceCache reloaded = new DeployedResourceCache(indexFile);
+		assertEntry(reloaded, "a.txt", 1); //$NON-NLS-1$
+		assertEntry(reloaded, "c.txt", 3); //$NON-NLS-1$
+		reloaded.dispose();
+	}
+
+	/**
+	 * Appends an entry record in the format of the index, as if added in a
+	 * later session.
+	 */
+	private void appendRecord(String name, int value) throws IOException {
+		File recordFile = File.createTempFile("record", ".index"); //$NON-NLS-1$ //$NON-NLS-2$
+		recordFile.delete();
+		try {
+			DeployedResourceCache cache = new DeployedResourceCache(recordFile);
+			cache.add(APP, createEntry(name, value));
+			cache.dispose();
+
+			RandomAccessFile record = new RandomAccessFile(recordFile, "r"); //$NON-NLS-1$
+			try {
+				// Skip the header
+				record.seek(8);
+				byte[] bytes = new byte[(int) (record.length() - 8)];
+				record.readFully(bytes);
+				append(bytes);
+			}
+			finally {
+				record.close();
+			}
+		}
+		finally {
+			recordFile.delete();
+		}
+	}
+
+	private void append(byte[] bytes) throws IOException {
+		FileOutputStream out = new FileOutputStream(indexFile, true);
+		try {
+			out.write(bytes);
+		}
+		finally {
+			out.close();
+		}
+	}
+
+	private void truncate(long length) throws IOException {
+		RandomAccessFile file = new RandomAccessFile(indexFile, "rw"); //$NON-NLS-1$
+		try {
+			file.setLength(length);
+		}
+		finally {
+			file.close();
+		}
+	}
+
+	private static DeployedResourceEntry createEntry(String name, int value) {
+		return new DeployedResourceEntry(new byte[] { (byte) value, 0, 0, 0 }, value * 10, value * 100, name);
+	}
+
+	private static void assertEntry(DeployedResourceCache cache, String name, int value) {
+		DeployedResourceEntry entry = cache.getEntry(APP, name);
+		assertNotNull("No entry for " + name, entry); //$NON-NLS-1$
+		assertEquals(value, entry.getSha1()[0]);
+		assertEquals(value * 10, entry.getFileSize());
+		assertEquals(value * 100, entry.getLastModified());
+	}
+}
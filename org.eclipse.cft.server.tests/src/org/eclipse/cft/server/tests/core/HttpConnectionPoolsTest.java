@@ -0,0 +1,224 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Pivotal Software, Inc. 
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution. 
+ * 
+ * The Eclipse Public License is available at 
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * and the Apache License v2.0 is available at 
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * You may elect to redistribute this code under either of these licenses.
+ *  
+ *  Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+ ********************************************************************************/
+package org.eclipse.cft.server.tests.core;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.cloudfoundry.client.lib.HttpProxyConfiguration;
+import org.eclipse.cft.server.core.internal.client.HttpConnectionPools;
+import org.eclipse.cft.server.core.internal.client.RestUtils;
+import org.springframework.web.client.RestTemplate;
+
+import junit.framework.TestCase;
+
+/**
+ * Verifies that REST templates created for the same target share a pooled
+ * HTTP client from {@link HttpConnectionPools}, so that connections are
+ * kept alive and reused across templates.
+ * <p/>
+ * Requests are sent through a local server acting as proxy, which answers
+ * every request itself, so that each test has its own connection target.
+ */
+public class HttpConnectionPoolsTest extends TestCase {
+
+	private static final long TIMEOUT = 10000;
+
+	private static final String URL = "http://app.example.invalid/status"; //$NON-NLS-1$
+
+	private LocalServer server;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		server = new LocalServer();
+		server.start();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		server.close();
+		super.tearDown();
+	}
+
+	public void testConnectionReusedAcrossTemplates() throws Exception {
+		RestTemplate template1 = RestUtils.createRestTemplate(getProxy(), false, false);
+		RestTemplate template2 = RestUtils.createRestTemplate(getProxy(), false, false);
+
+		assertEquals("ok", template1.getForObject(URL, String.class)); //$NON-NLS-1$
+		assertEquals("ok", template2.getForObject(URL, String.class)); //$NON-NLS-1$
+		assertEquals("ok", template1.getForObject(URL, String.class)); //$NON-NLS-1$
+
+		assertEquals(3, server.requests.get());
+		assertEquals(1, server.connections.get());
+	}
+
+	public void testTargetsUseSeparateClients() throws Exception {
+		RestTemplate redirecting = RestUtils.createRestTemplate(getProxy(), false, false);
+		RestTemplate notRedirecting = RestUtils.createRestTemplate(getProxy(), false, true);
+
+		redirecting.getForObject(URL, String.class);
+		notRedirecting.getForObject(URL, String.class);
+		redirecting.getForObject(URL, String.class);
+		notRedirecting.getForObject(URL, String.class);
+
+		assertEquals(4, server.requests.get());
+		assertEquals(2, server.connections.get());
+	}
+
+	public void testMaxPerRouteConfigured() throws Exception {
+		final RestTemplate template;
+		System.setProperty(HttpConnectionPools.MAX_PER_ROUTE_PROPERTY, "1"); //$NON-NLS-1$
+		try {
+			template = RestUtils.createRestTemplate(getProxy(), false, false);
+		}
+		finally {
+			System.clearProperty(HttpConnectionPools.MAX_PER_ROUTE_PROPERTY);
+		}
+
+		server.blockNextRequest();
+		final CountDownLatch done = new CountDownLatch(2);
+		for (int i = 0; i < 2; i++) {
+			new Thread() {
+				@Override
+				public void run() {
+					template.getForObject(URL, String.class);
+					done.countDown();
+				}
+			}.start();
+		}
+		assertTrue(server.blocked.await(TIMEOUT, TimeUnit.MILLISECONDS));
+
+		// The second request waits for the only connection of the route
+		assertFalse(done.await(200, TimeUnit.MILLISECONDS));
+		assertEquals(1, server.connections.get());
+
+		server.proceed.countDown();
+		assertTrue(done.await(TIMEOUT, TimeUnit.MILLISECONDS));
+		assertEquals(2, server.requests.get());
+		assertEquals(1, server.connections.get());
+	}
+
+	private HttpProxyConfiguration getProxy() {
+		return new HttpProxyConfiguration("localhost", server.getPort()); //$NON-NLS-1$
+	}
+
+	/**
+	 * Minimal HTTP/1.1 server that answers every request with a keep-alive
+	 * "ok" response, and counts connections and requests.
+	 */
+	private static class LocalServer extends Thread {
+
+		final AtomicInteger connections = new AtomicInteger();
+
+		final AtomicInteger requests = new AtomicInteger();
+
+		final CountDownLatch blocked = new CountDownLatch(1);
+
+		final CountDownLatch proceed = new CountDownLatch(1);
+
+		private volatile boolean blockNext;
+
+		private final ServerSocket socket;
+
+		LocalServer() throws IOException {
+			super("HttpConnectionPoolsTest server"); //$NON-NLS-1$
+			socket = new ServerSocket(0, 50, InetAddress.getByName("localhost")); //$NON-NLS-1$
+			setDaemon(true);
+		}
+
+		int getPort() {
+			return socket.getLocalPort();
+		}
+
+		void blockNextRequest() {
+			blockNext = true;
+		}
+
+		void close() throws IOException {
+			proceed.countDown();
+			socket.close();
+		}
+
+		@Override
+		public void run() {
+			try {
+				while (true) {
+					final Socket connection = socket.accept();
+					connections.incrementAndGet();
+					Thread handler = new Thread() {
+						@Override
+						public void run() {
+							handle(connection);
+						}
+					};
+					handler.setDaemon(true);
+					handler.start();
+				}
+			}
+			catch (IOException e) {
+				// Closed
+			}
+		}
+
+		private void handle(Socket connection) {
+			try {
+				BufferedReader in = new BufferedReader(new InputStreamReader(connection.getInputStream(), "US-ASCII")); //$NON-NLS-1$
+				OutputStream out = connection.getOutputStream();
+				String line;
+				while ((line = in.readLine()) != null) {
+					if (line.length() > 0) {
+						// Request and header lines. Requests have no body
+						continue;
+					}
+					requests.incrementAndGet();
+					if (blockNext) {
+						blockNext = false;
+						blocked.countDown();
+						proceed.await(TIMEOUT, TimeUnit.MILLISECONDS);
+					}
+					out.write(("HTTP/1.1 200 OK\r\nContent-Type: text/plain\r\nContent-Length: 2\r\n\r\nok") //$NON-NLS-1$
+							.getBytes("US-ASCII")); //$NON-NLS-1$
+					out.flush();
+				}
+			}
+			catch (Exception e) {
+				// Connection closed
+			}
+			finally {
+				try {
+					connection.close();
+				}
+				catch (IOException e) {
+					// ignore
+				}
+			}
+		}
+	}
+}
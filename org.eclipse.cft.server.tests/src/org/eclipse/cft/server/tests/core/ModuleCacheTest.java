@@ -0,0 +1,217 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Pivotal Software, Inc. 
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution. 
+ * 
+ * The Eclipse Public License is available at 
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * and the Apache License v2.0 is available at 
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * You may elect to redistribute this code under either of these licenses.
+ *  
+ *  Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+ ********************************************************************************/
+package org.eclipse.cft.server.tests.core;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+import org.cloudfoundry.client.lib.domain.CloudApplication;
+import org.cloudfoundry.client.lib.domain.CloudApplication.AppState;
+import org.cloudfoundry.client.lib.domain.CloudEntity.Meta;
+import org.eclipse.cft.server.core.internal.CloudFoundryPlugin;
+import org.eclipse.cft.server.core.internal.CloudFoundryServer;
+import org.eclipse.cft.server.core.internal.ModuleCache.ServerData;
+import org.eclipse.cft.server.core.internal.client.CloudFoundryApplicationModule;
+import org.eclipse.cft.server.ui.internal.ServerDescriptor;
+import org.eclipse.cft.server.ui.internal.ServerHandler;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.wst.server.core.IServer;
+
+import junit.framework.TestCase;
+
+/**
+ * Verifies that cloud modules are looked up by deployed application name and
+ * application GUID through indexes that are kept consistent with the modules
+ * of a server, with thousands of synthetic modules.
+ */
+public class ModuleCacheTest extends TestCase {
+
+	private static final int MODULE_COUNT = 10000;
+
+	private static final int SMALL_MODULE_COUNT = MODULE_COUNT / 10;
+
+	/**
+	 * Number of lookups timed at each module count. Timing the same number of
+	 * lookups for both counts compares the cost per lookup.
+	 */
+	private static final int LOOKUP_COUNT = 20000;
+
+	private static final int TIMING_RUNS = 5;
+
+	/**
+	 * Upper bound for the cost of a lookup among all modules relative to a
+	 * lookup among a tenth of them. Scanning the modules would make it about
+	 * ten times as high.
+	 */
+	private static final long MAX_LOOKUP_COST_RATIO = 4;
+
+	/**
+	 * Allowance for timer granularity, in nanoseconds, when the lookups take
+	 * too little time to be compared reliably.
+	 */
+	private static final long TIMING_ALLOWANCE = 20000000L;
+
+	private IServer server;
+
+	private CloudFoundryServer cloudFoundryServer;
+
+	private ServerData data;
+
+	public void testLookupFindsAllModules() throws Exception {
+		List<CloudApplication> applications = createModules(MODULE_COUNT);
+
+		for (CloudApplication application : applications) {
+			CloudFoundryApplicationModule byName = cloudFoundryServer.getExistingCloudModule(application.getName());
+			assertNotNull(byName);
+			assertEquals(application.getName(), byName.getDeployedApplicationName());
+
+			CloudFoundryApplicationModule byGuid = cloudFoundryServer.getExistingCloudModule(application.getMeta()
+					.getGuid());
+			assertSame(byName, byGuid);
+		}
+
+		assertNull(cloudFoundryServer.getExistingCloudModule("notDeployed"));
+		assertNull(cloudFoundryServer.getExistingCloudModule(UUID.randomUUID()));
+	}
+
+	public void testLookupScalesWithModuleCount() throws Exception {
+		List<CloudApplication> applications = createModules(SMALL_MODULE_COUNT);
+		long smallCost = timeLookups(applications);
+
+		data.clear();
+		applications = createModules(MODULE_COUNT);
+		long largeCost = timeLookups(applications);
+
+		assertTrue("Looking up among " + MODULE_COUNT + " modules took " + largeCost + " ns, among "
+				+ SMALL_MODULE_COUNT + " modules " + smallCost + " ns", largeCost <= smallCost
+				* MAX_LOOKUP_COST_RATIO + TIMING_ALLOWANCE);
+	}
+
+	public void testIndexesFollowModuleChanges() throws Exception {
+		List<CloudApplication> applications = createModules(MODULE_COUNT);
+
+		// Remove every other module
+		for (int i = 0; i < applications.size(); i += 2) {
+			data.remove(cloudFoundryServer.getExistingCloudModule(applications.get(i).getName()));
+		}
+		for (int i = 0; i < applications.size(); i++) {
+			CloudApplication application = applications.get(i);
+			CloudFoundryApplicationModule appModule = cloudFoundryServer.getExistingCloudModule(application
+					.getName());
+			if (i % 2 == 0) {
+				assertNull(appModule);
+				assertNull(cloudFoundryServer.getExistingCloudModule(application.getMeta().getGuid()));
+			}
+			else {
+				assertNotNull(appModule);
+				assertSame(appModule, cloudFoundryServer.getExistingCloudModule(application.getMeta().getGuid()));
+			}
+		}
+
+		// Map a module to a recreated application with a new GUID
+		CloudApplication original = applications.get(1);
+		CloudFoundryApplicationModule appModule = cloudFoundryServer.getExistingCloudModule(original.getName());
+		CloudApplication recreated = createApplication(original.getName());
+		appModule.setCloudApplication(recreated);
+
+		assertNull(cloudFoundryServer.getExistingCloudModule(original.getMeta().getGuid()));
+		assertSame(appModule, cloudFoundryServer.getExistingCloudModule(recreated.getMeta().getGuid()));
+		assertSame(appModule, cloudFoundryServer.getExistingCloudModule(original.getName()));
+
+		// Rename the application of a module
+		CloudApplication renamed = createApplication("renamed");
+		appModule.setCloudApplication(renamed);
+
+		assertEquals("renamed", appModule.getDeployedApplicationName());
+		assertNull(cloudFoundryServer.getExistingCloudModule(original.getName()));
+		assertSame(appModule, cloudFoundryServer.getExistingCloudModule("renamed"));
+		assertSame(appModule, cloudFoundryServer.getExistingCloudModule(renamed.getMeta().getGuid()));
+
+		data.clear();
+		assertNull(cloudFoundryServer.getExistingCloudModule("renamed"));
+		assertNull(cloudFoundryServer.getExistingCloudModule(renamed.getMeta().getGuid()));
+	}
+
+	/**
+	 * Returns the shortest time, in nanoseconds, of several runs of
+	 * {@link #LOOKUP_COUNT} lookups by name and GUID of the given applications.
+	 */
+	protected long timeLookups(List<CloudApplication> applications) {
+		long best = Long.MAX_VALUE;
+		for (int run = 0; run < TIMING_RUNS; run++) {
+			long start = System.nanoTime();
+			for (int i = 0; i < LOOKUP_COUNT; i++) {
+				CloudApplication application = applications.get(i % applications.size());
+				assertNotNull(cloudFoundryServer.getExistingCloudModule(application.getName()));
+				assertNotNull(cloudFoundryServer.getExistingCloudModule(application.getMeta().getGuid()));
+			}
+			best = Math.min(best, System.nanoTime() - start);
+		}
+		return best;
+	}
+
+	protected List<CloudApplication> createModules(int count) {
+		List<CloudApplication> applications = new ArrayList<CloudApplication>(count);
+		for (int i = 0; i < count; i++) {
+			CloudApplication application = createApplication("app" + i);
+			data.createModule(application);
+			applications.add(application);
+		}
+		return applications;
+	}
+
+	protected CloudApplication createApplication(String name) {
+		List<String> uris = new ArrayList<String>();
+		uris.add(name + ".cloudfoundry.com");
+		CloudApplication application = new CloudApplication(name, null, null, 512, 1, uris,
+				new ArrayList<String>(), AppState.STARTED);
+		application.setMeta(new Meta(UUID.randomUUID(), new Date(), new Date()));
+		return application;
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		ServerDescriptor descriptor = new ServerDescriptor("server") {
+			{
+				setRuntimeTypeId("org.cloudfoundry.cloudfoundryserver.test.runtime.10");
+				setServerTypeId("org.cloudfoundry.cloudfoundryserver.test.10");
+				setRuntimeName("Cloud Foundry Test Runtime");
+				setServerName("Cloud Foundry Test Server");
+				setForceCreateRuntime(true);
+			}
+		};
+
+		ServerHandler handler = new ServerHandler(descriptor);
+		server = handler.createServer(new NullProgressMonitor(), ServerHandler.ALWAYS_OVERWRITE);
+		cloudFoundryServer = (CloudFoundryServer) server.loadAdapter(CloudFoundryServer.class, null);
+		data = CloudFoundryPlugin.getModuleCache().getData(server);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		if (data != null) {
+			data.clear();
+		}
+	}
+
+}
@@ -0,0 +1,286 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Pivotal Software, Inc. 
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution. 
+ * 
+ * The Eclipse Public License is available at 
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * and the Apache License v2.0 is available at 
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * You may elect to redistribute this code under either of these licenses.
+ *  
+ *  Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+ ********************************************************************************/
+package org.eclipse.cft.server.tests.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.cloudfoundry.client.lib.domain.CloudApplication;
+import org.cloudfoundry.client.lib.domain.CloudApplication.AppState;
+import org.cloudfoundry.client.lib.util.JsonUtil;
+import org.eclipse.cft.server.core.internal.client.PagedApplicationLister;
+import org.eclipse.cft.server.core.internal.client.PagedApplicationLister.PageHandler;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.Status;
+import org.springframework.web.client.RestTemplate;
+
+import junit.framework.TestCase;
+
+/**
+ * Verifies that the {@link PagedApplicationLister} follows the pages of a
+ * Cloud Controller application listing, and maps the applications, routes,
+ * service bindings and package updates of each page.
+ */
+public class PagedApplicationListerTest extends TestCase {
+
+	private static final String URL = "https://api.example.com"; //$NON-NLS-1$
+
+	private static final String FIRST_PAGE = "/v2/spaces/space/apps?page=1"; //$NON-NLS-1$
+
+	private static final String SECOND_PAGE = "/v2/spaces/space/apps?page=2"; //$NON-NLS-1$
+
+	private static final UUID GUID1 = UUID.randomUUID();
+
+	private static final UUID GUID2 = UUID.randomUUID();
+
+	private static final UUID GUID3 = UUID.randomUUID();
+
+	private TestLister lister;
+
+	private RecordingHandler handler;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		lister = new TestLister();
+		handler = new RecordingHandler();
+	}
+
+	public void testPagesHandledInOrder() throws Exception {
+		lister.addPage(FIRST_PAGE, SECOND_PAGE, createApplication(GUID1, "app1", null), //$NON-NLS-1$
+				createApplication(GUID2, "app2", null)); //$NON-NLS-1$
+		lister.addPage(SECOND_PAGE, null, createApplication(GUID3, "app3", null)); //$NON-NLS-1$
+
+		lister.listPages(null, URL, FIRST_PAGE, handler, new NullProgressMonitor());
+
+		assertEquals(Arrays.asList(URL + FIRST_PAGE, URL + SECOND_PAGE), lister.fetched);
+		assertEquals(2, handler.pages.size());
+		assertEquals(Arrays.asList("app1", "app2"), getNames(handler.pages.get(0))); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals(Arrays.asList("app3"), getNames(handler.pages.get(1))); //$NON-NLS-1$
+	}
+
+	public void testApplicationMapped() throws Exception {
+		lister.addPage(FIRST_PAGE, null, createApplication(GUID1, "app1", null)); //$NON-NLS-1$
+
+		lister.listPages(null, URL, FIRST_PAGE, handler, new NullProgressMonitor());
+
+		CloudApplication application = handler.pages.get(0).get(0);
+		assertEquals(GUID1, application.getMeta().getGuid());
+		assertEquals("app1", application.getName()); //$NON-NLS-1$
+		assertEquals(AppState.STARTED, application.getState());
+		assertEquals(2, application.getInstances());
+		assertEquals(512, application.getMemory());
+		assertEquals(Arrays.asList("database"), application.getServices()); //$NON-NLS-1$
+	}
+
+	public void testRoutesMapped() throws Exception {
+		Map<String, Object> application = createApplication(GUID1, "app1", null); //$NON-NLS-1$
+		List<Object> routes = getRoutes(application);
+		routes.add(createRoute("", "example.org")); //$NON-NLS-1$ //$NON-NLS-2$
+		routes.add(createRoute("nodomain", null)); //$NON-NLS-1$
+		lister.addPage(FIRST_PAGE, null, application);
+
+		lister.listPages(null, URL, FIRST_PAGE, handler, new NullProgressMonitor());
+
+		assertEquals(Arrays.asList("app1.example.com", "example.org"), handler.pages.get(0).get(0).getUris()); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	public void testPackageUpdatesMapped() throws Exception {
+		lister.addPage(FIRST_PAGE, null, createApplication(GUID1, "app1", "2015-06-01T10:00:00Z"), //$NON-NLS-1$ //$NON-NLS-2$
+				createApplication(GUID2, "app2", null)); //$NON-NLS-1$
+
+		lister.listPages(null, URL, FIRST_PAGE, handler, new NullProgressMonitor());
+
+		Map<UUID, String> packageUpdates = handler.packageUpdates.get(0);
+		assertEquals(1, packageUpdates.size());
+		assertEquals("2015-06-01T10:00:00Z", packageUpdates.get(GUID1)); //$NON-NLS-1$
+	}
+
+	public void testPageWithoutResources() throws Exception {
+		lister.pages.put(URL + FIRST_PAGE, new HashMap<String, Object>());
+
+		lister.listPages(null, URL, FIRST_PAGE, handler, new NullProgressMonitor());
+
+		assertEquals(1, handler.pages.size());
+		assertTrue(handler.pages.get(0).isEmpty());
+		assertTrue(handler.packageUpdates.get(0).isEmpty());
+	}
+
+	public void testHandlerErrorStopsListing() throws Exception {
+		lister.addPage(FIRST_PAGE, SECOND_PAGE, createApplication(GUID1, "app1", null)); //$NON-NLS-1$
+		lister.addPage(SECOND_PAGE, null, createApplication(GUID2, "app2", null)); //$NON-NLS-1$
+		handler.error = new CoreException(new Status(IStatus.ERROR, "test", "Failed to handle page")); //$NON-NLS-1$ //$NON-NLS-2$
+
+		try {
+			lister.listPages(null, URL, FIRST_PAGE, handler, new NullProgressMonitor());
+			fail("Expected CoreException"); //$NON-NLS-1$
+		}
+		catch (CoreException e) {
+			assertSame(handler.error, e);
+		}
+		assertEquals(Arrays.asList(URL + FIRST_PAGE), lister.fetched);
+	}
+
+	public void testCanceled() throws Exception {
+		lister.addPage(FIRST_PAGE, null, createApplication(GUID1, "app1", null)); //$NON-NLS-1$
+		IProgressMonitor monitor = new NullProgressMonitor();
+		monitor.setCanceled(true);
+
+		try {
+			lister.listPages(null, URL, FIRST_PAGE, handler, monitor);
+			fail("Expected OperationCanceledException"); //$NON-NLS-1$
+		}
+		catch (OperationCanceledException e) {
+			// expected
+		}
+		assertTrue(lister.fetched.isEmpty());
+		assertTrue(handler.pages.isEmpty());
+	}
+
+	private static List<String> getNames(List<CloudApplication> applications) {
+		List<String> names = new ArrayList<String>();
+		for (CloudApplication application : applications) {
+			names.add(application.getName());
+		}
+		return names;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static List<Object> getRoutes(Map<String, Object> application) {
+		return (List<Object>) ((Map<String, Object>) application.get("entity")).get("routes"); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	/**
+	 * 
+	 * @return application resource as listed by the Cloud Controller, with
+	 * its routes and service bindings inlined
+	 */
+	private static Map<String, Object> createApplication(UUID guid, String name, String packageUpdated) {
+		Map<String, Object> entity = new HashMap<String, Object>();
+		entity.put("name", name); //$NON-NLS-1$
+		entity.put("state", "STARTED"); //$NON-NLS-1$ //$NON-NLS-2$
+		entity.put("instances", 2); //$NON-NLS-1$
+		entity.put("memory", 512); //$NON-NLS-1$
+		entity.put("disk_quota", 1024); //$NON-NLS-1$
+		entity.put("environment_json", new HashMap<String, Object>()); //$NON-NLS-1$
+		entity.put("package_updated_at", packageUpdated); //$NON-NLS-1$
+		entity.put("stack", createResource(UUID.randomUUID(), //$NON-NLS-1$
+				Collections.<String, Object> singletonMap("name", "cflinuxfs2"))); //$NON-NLS-1$ //$NON-NLS-2$
+		Map<String, Object> organization = new HashMap<String, Object>();
+		organization.put("name", "org"); //$NON-NLS-1$ //$NON-NLS-2$
+		organization.put("billing_enabled", false); //$NON-NLS-1$
+		Map<String, Object> space = new HashMap<String, Object>();
+		space.put("name", "development"); //$NON-NLS-1$ //$NON-NLS-2$
+		space.put("organization", createResource(UUID.randomUUID(), organization)); //$NON-NLS-1$
+		entity.put("space", createResource(UUID.randomUUID(), space)); //$NON-NLS-1$
+		List<Object> routes = new ArrayList<Object>();
+		routes.add(createRoute(name, "example.com")); //$NON-NLS-1$
+		entity.put("routes", routes); //$NON-NLS-1$
+		Map<String, Object> binding = new HashMap<String, Object>();
+		binding.put("service_instance", createResource(UUID.randomUUID(), //$NON-NLS-1$
+				Collections.<String, Object> singletonMap("name", "database"))); //$NON-NLS-1$ //$NON-NLS-2$
+		entity.put("service_bindings", Arrays.asList(createResource(UUID.randomUUID(), binding))); //$NON-NLS-1$
+		return createResource(guid, entity);
+	}
+
+	private static Map<String, Object> createRoute(String host, String domainName) {
+		Map<String, Object> entity = new HashMap<String, Object>();
+		entity.put("host", host); //$NON-NLS-1$
+		if (domainName != null) {
+			entity.put("domain", createResource(UUID.randomUUID(), //$NON-NLS-1$
+					Collections.<String, Object> singletonMap("name", domainName))); //$NON-NLS-1$
+		}
+		return createResource(UUID.randomUUID(), entity);
+	}
+
+	private static Map<String, Object> createResource(UUID guid, Map<String, Object> entity) {
+		Map<String, Object> metadata = new HashMap<String, Object>();
+		metadata.put("guid", guid.toString()); //$NON-NLS-1$
+		Map<String, Object> resource = new HashMap<String, Object>();
+		resource.put("metadata", metadata); //$NON-NLS-1$
+		resource.put("entity", entity); //$NON-NLS-1$
+		// Convert to JSON and back, so that values have the types parsed
+		// from a response
+		return JsonUtil.convertJsonToMap(JsonUtil.convertToJson(resource));
+	}
+
+	/**
+	 * Returns pages added by the test instead of fetching them from a Cloud
+	 * Controller.
+	 */
+	private static class TestLister extends PagedApplicationLister {
+
+		final Map<String, Map<String, Object>> pages = new HashMap<String, Map<String, Object>>();
+
+		final List<String> fetched = new ArrayList<String>();
+
+		TestLister() {
+			super(null);
+		}
+
+		void addPage(String path, String nextPath, Object... applications) {
+			Map<String, Object> page = new HashMap<String, Object>();
+			page.put("resources", new ArrayList<Object>(Arrays.asList(applications))); //$NON-NLS-1$
+			page.put("next_url", nextPath); //$NON-NLS-1$
+			pages.put(URL + path, page);
+		}
+
+		@Override
+		public void listPages(RestTemplate restTemplate, String url, String path, PageHandler handler,
+				IProgressMonitor monitor) throws CoreException {
+			super.listPages(restTemplate, url, path, handler, monitor);
+		}
+
+		@Override
+		protected Map<String, Object> fetchPage(RestTemplate restTemplate, String url, IProgressMonitor monitor)
+				throws CoreException {
+			fetched.add(url);
+			return pages.get(url);
+		}
+	}
+
+	private static class RecordingHandler implements PageHandler {
+
+		final List<List<CloudApplication>> pages = new ArrayList<List<CloudApplication>>();
+
+		final List<Map<UUID, String>> packageUpdates = new ArrayList<Map<UUID, String>>();
+
+		CoreException error;
+
+		public void pageReceived(List<CloudApplication> applications, Map<UUID, String> updates)
+				throws CoreException {
+			pages.add(applications);
+			packageUpdates.add(updates);
+			if (error != null) {
+				throw error;
+			}
+		}
+	}
+}
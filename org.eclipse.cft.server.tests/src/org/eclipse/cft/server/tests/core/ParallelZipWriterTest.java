@@ -0,0 +1,237 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Pivotal Software, Inc. 
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution. 
+ * 
+ * The Eclipse Public License is available at 
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * and the Apache License v2.0 is available at 
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * You may elect to redistribute this code under either of these licenses.
+ *  
+ *  Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+ ********************************************************************************/
+package org.eclipse.cft.server.tests.core;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+import org.eclipse.cft.server.core.internal.ParallelZipWriter;
+
+import junit.framework.TestCase;
+
+/**
+ * Verifies that archives written with compression in parallel blocks can be
+ * read back, both through the central directory and as a stream, that
+ * incompressible entries are stored, and that the sha1 code computed while
+ * writing matches the written file.
+ */
+public class ParallelZipWriterTest extends TestCase {
+
+	private File file;
+
+	public void testRoundTrip() throws Exception {
+		Map<String, byte[]> contents = new LinkedHashMap<String, byte[]>();
+		contents.put("index.html", "<html><body>Hello</body></html>".getBytes("UTF-8"));
+		contents.put("WEB-INF/empty.txt", new byte[0]);
+		// Spans several compression blocks
+		contents.put("WEB-INF/classes/large.txt", createText(2 * 1024 * 1024));
+		// Exactly one compression block
+		contents.put("WEB-INF/classes/block.txt", Arrays.copyOf(createText(128 * 1024), 128 * 1024));
+
+		ParallelZipWriter writer = new ParallelZipWriter(file);
+		try {
+			writer.putDirectory("WEB-INF/", 0);
+			writer.putDirectory("WEB-INF/classes/", 0);
+			for (Map.Entry<String, byte[]> entry : contents.entrySet()) {
+				long size = writer.putFile(entry.getKey(), 0, new ByteArrayInputStream(entry.getValue()));
+				assertEquals(entry.getValue().length, size);
+			}
+			writer.finish();
+		}
+		finally {
+			writer.close();
+		}
+
+		ZipFile zipFile = new ZipFile(file);
+		try {
+			assertEquals(contents.size() + 2, zipFile.size());
+			assertTrue(zipFile.getEntry("WEB-INF/").isDirectory());
+			assertTrue(zipFile.getEntry("WEB-INF/classes/").isDirectory());
+			for (Map.Entry<String, byte[]> entry : contents.entrySet()) {
+				ZipEntry zipEntry = zipFile.getEntry(entry.getKey());
+				assertNotNull(entry.getKey(), zipEntry);
+				assertEquals(entry.getValue().length, zipEntry.getSize());
+				assertTrue(entry.getKey(), Arrays.equals(entry.getValue(), read(zipFile.getInputStream(zipEntry))));
+			}
+			ZipEntry large = zipFile.getEntry("WEB-INF/classes/large.txt");
+			assertEquals(ZipEntry.DEFLATED, large.getMethod());
+			assertTrue(large.getCompressedSize() < large.getSize());
+		}
+		finally {
+			zipFile.close();
+		}
+
+		// Local headers must hold the final sizes and checksums
+		ZipInputStream input = new ZipInputStream(new FileInputStream(file));
+		try {
+			int count = 0;
+			ZipEntry zipEntry;
+			while ((zipEntry = input.getNextEntry()) != null) {
+				count++;
+				if (!zipEntry.isDirectory()) {
+					assertTrue(zipEntry.getName(), Arrays.equals(contents.get(zipEntry.getName()), read(input)));
+				}
+			}
+			assertEquals(contents.size() + 2, count);
+		}
+		finally {
+			input.close();
+		}
+	}
+
+	public void testIncompressibleEntriesStored() throws Exception {
+		byte[] random = new byte[300 * 1024];
+		new Random(1).nextBytes(random);
+		byte[] png = Arrays.copyOf(new byte[] { (byte) 0x89, 'P', 'N', 'G' }, 1024);
+
+		ParallelZipWriter writer = new ParallelZipWriter(file);
+		try {
+			writer.putFile("WEB-INF/lib/library.jar", 0, new ByteArrayInputStream(random));
+			// Detected by content rather than extension
+			writer.putFile("images/logo", 0, new ByteArrayInputStream(png));
+			writer.putFile("WEB-INF/web.xml", 0, new ByteArrayInputStream(createText(4096)));
+			writer.finish();
+		}
+		finally {
+			writer.close();
+		}
+
+		ZipFile zipFile = new ZipFile(file);
+		try {
+			ZipEntry jar = zipFile.getEntry("WEB-INF/lib/library.jar");
+			assertEquals(ZipEntry.STORED, jar.getMethod());
+			assertEquals(random.length, jar.getCompressedSize());
+			assertTrue(Arrays.equals(random, read(zipFile.getInputStream(jar))));
+
+			ZipEntry logo = zipFile.getEntry("images/logo");
+			assertEquals(ZipEntry.STORED, logo.getMethod());
+			assertTrue(Arrays.equals(png, read(zipFile.getInputStream(logo))));
+
+			assertEquals(ZipEntry.DEFLATED, zipFile.getEntry("WEB-INF/web.xml").getMethod());
+		}
+		finally {
+			zipFile.close();
+		}
+	}
+
+	public void testSha1Digest() throws Exception {
+		byte[] random = new byte[300 * 1024];
+		new Random(1).nextBytes(random);
+
+		ParallelZipWriter writer = new ParallelZipWriter(file);
+		try {
+			writer.putDirectory("WEB-INF/", 0);
+			writer.putFile("WEB-INF/web.xml", 0, new ByteArrayInputStream(createText(4096)));
+			// Deflated and stored entries that span several blocks
+			writer.putFile("WEB-INF/classes/large.txt", 0, new ByteArrayInputStream(createText(2 * 1024 * 1024)));
+			writer.putFile("WEB-INF/lib/library.jar", 0, new ByteArrayInputStream(random));
+			writer.putFile("WEB-INF/empty.txt", 0, new ByteArrayInputStream(new byte[0]));
+			assertNull(writer.getSha1Digest());
+			writer.finish();
+		}
+		finally {
+			writer.close();
+		}
+
+		InputStream input = new FileInputStream(file);
+		try {
+			byte[] expected = MessageDigest.getInstance("SHA-1").digest(read(input));
+			assertTrue(Arrays.equals(expected, writer.getSha1Digest()));
+		}
+		finally {
+			input.close();
+		}
+	}
+
+	public void testRewriteExistingFile() throws Exception {
+		ParallelZipWriter writer = new ParallelZipWriter(file);
+		try {
+			writer.putFile("first.txt", 0, new ByteArrayInputStream(createText(256 * 1024)));
+			writer.finish();
+		}
+		finally {
+			writer.close();
+		}
+
+		writer = new ParallelZipWriter(file);
+		try {
+			writer.putFile("second.txt", 0, new ByteArrayInputStream("second".getBytes("UTF-8")));
+			writer.finish();
+		}
+		finally {
+			writer.close();
+		}
+
+		ZipFile zipFile = new ZipFile(file);
+		try {
+			assertEquals(1, zipFile.size());
+			Enumeration<? extends ZipEntry> entries = zipFile.entries();
+			assertEquals("second.txt", entries.nextElement().getName());
+		}
+		finally {
+			zipFile.close();
+		}
+	}
+
+	protected byte[] createText(int size) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(size);
+		Random random = new Random(size);
+		int line = 0;
+		while (out.size() < size) {
+			out.write(("line " + line++ + " value " + random.nextInt(100) + "\n").getBytes("UTF-8"));
+		}
+		return out.toByteArray();
+	}
+
+	protected byte[] read(InputStream input) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int n;
+		while ((n = input.read(buffer)) > 0) {
+			out.write(buffer, 0, n);
+		}
+		return out.toByteArray();
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		file = File.createTempFile("cloudfoundry", ".zip");
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		file.delete();
+	}
+
+}
@@ -0,0 +1,144 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Pivotal Software, Inc. 
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution. 
+ * 
+ * The Eclipse Public License is available at 
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * and the Apache License v2.0 is available at 
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * You may elect to redistribute this code under either of these licenses.
+ *  
+ *  Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+ ********************************************************************************/
+package org.eclipse.cft.server.tests.core;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import org.eclipse.cft.server.core.internal.client.RateLimiter;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+
+import junit.framework.TestCase;
+
+/**
+ * Verifies how long the rate limiter holds back requests after a 429 Too
+ * Many Requests response, based on the <code>Retry-After</code> and
+ * <code>X-RateLimit-*</code> response headers.
+ */
+public class RateLimiterTest extends TestCase {
+
+	private static final String KEY = "https://api.example.com|user";
+
+	/**
+	 * Allowance in milliseconds for time passing, and for dates that only
+	 * have a precision of seconds.
+	 */
+	private static final long TOLERANCE = 1500;
+
+	private RateLimiter limiter;
+
+	public void testRetryAfterSeconds() throws Exception {
+		HttpHeaders headers = new HttpHeaders();
+		headers.set("Retry-After", "30");
+
+		assertWait(30000, limiter.recordRateLimited(KEY, createError(headers)));
+	}
+
+	public void testRetryAfterDate() throws Exception {
+		SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+		format.setTimeZone(TimeZone.getTimeZone("GMT"));
+		HttpHeaders headers = new HttpHeaders();
+		headers.set("Retry-After", format.format(new Date(System.currentTimeMillis() + 60000)));
+
+		assertWait(60000, limiter.recordRateLimited(KEY, createError(headers)));
+	}
+
+	public void testRateLimitReset() throws Exception {
+		HttpHeaders headers = new HttpHeaders();
+		headers.set("X-RateLimit-Limit", "1000");
+		headers.set("X-RateLimit-Remaining", "0");
+		headers.set("X-RateLimit-Reset", String.valueOf((System.currentTimeMillis() + 45000) / 1000));
+
+		assertWait(45000, limiter.recordRateLimited(KEY, createError(headers)));
+	}
+
+	public void testRateLimitResetIgnoredWhileRequestsRemain() throws Exception {
+		HttpHeaders headers = new HttpHeaders();
+		headers.set("X-RateLimit-Remaining", "10");
+		headers.set("X-RateLimit-Reset", String.valueOf((System.currentTimeMillis() + 45000) / 1000));
+
+		assertWait(RateLimiter.DEFAULT_RETRY_AFTER, limiter.recordRateLimited(KEY, createError(headers)));
+	}
+
+	public void testDefaultWithoutHeaders() throws Exception {
+		assertWait(RateLimiter.DEFAULT_RETRY_AFTER, limiter.recordRateLimited(KEY, createError(new HttpHeaders())));
+
+		HttpHeaders headers = new HttpHeaders();
+		headers.set("Retry-After", "soon");
+		assertWait(RateLimiter.DEFAULT_RETRY_AFTER, limiter.recordRateLimited("other", createError(headers)));
+	}
+
+	public void testWaitIsCapped() throws Exception {
+		HttpHeaders headers = new HttpHeaders();
+		headers.set("Retry-After", String.valueOf(24 * 60 * 60));
+
+		assertWait(RateLimiter.MAX_RETRY_AFTER, limiter.recordRateLimited(KEY, createError(headers)));
+	}
+
+	public void testShorterWaitDoesNotShortenBlock() throws Exception {
+		HttpHeaders headers = new HttpHeaders();
+		headers.set("Retry-After", "30");
+		limiter.recordRateLimited(KEY, createError(headers));
+
+		headers.set("Retry-After", "1");
+		assertWait(30000, limiter.recordRateLimited(KEY, createError(headers)));
+	}
+
+	public void testRequestsWaitWhileBlocked() throws Exception {
+		HttpHeaders headers = new HttpHeaders();
+		headers.set("Retry-After", "30");
+		limiter.recordRateLimited(KEY, createError(headers));
+
+		NullProgressMonitor monitor = new NullProgressMonitor();
+		monitor.setCanceled(true);
+		try {
+			limiter.acquire(KEY, "request", monitor);
+			fail("Request was not held back");
+		}
+		catch (OperationCanceledException e) {
+			// Expected, the request waits until it is canceled
+		}
+
+		// Other URLs and users are not affected
+		limiter.acquire("https://api.example.com|other", "request", monitor);
+	}
+
+	protected void assertWait(long expected, long actual) {
+		assertTrue("Expected wait of " + expected + " ms but was " + actual + " ms", actual <= expected
+				&& actual > expected - TOLERANCE);
+	}
+
+	protected HttpClientErrorException createError(HttpHeaders headers) {
+		return new HttpClientErrorException(HttpStatus.TOO_MANY_REQUESTS, "Too Many Requests", headers, null, null);
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		limiter = new RateLimiter();
+	}
+
+}
@@ -0,0 +1,265 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Pivotal Software, Inc. 
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution. 
+ * 
+ * The Eclipse Public License is available at 
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * and the Apache License v2.0 is available at 
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * You may elect to redistribute this code under either of these licenses.
+ *  
+ *  Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+ ********************************************************************************/
+package org.eclipse.cft.server.tests.core;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.cft.server.core.internal.RefreshModulesHandler;
+import org.eclipse.cft.server.core.internal.client.BehaviourOperation;
+import org.eclipse.cft.server.core.internal.client.CloudBehaviourOperations;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.wst.server.core.IModule;
+
+import junit.framework.TestCase;
+
+/**
+ * Verifies that the {@link RefreshModulesHandler} merges pending refresh
+ * requests into the fewest operations, and that requests received while a
+ * refresh is running are performed afterward instead of being dropped.
+ */
+public class RefreshModulesHandlerTest extends TestCase {
+
+	private static final long TIMEOUT = 10000;
+
+	private final IModule module1 = createModule("module1"); //$NON-NLS-1$
+
+	private final IModule module2 = createModule("module2"); //$NON-NLS-1$
+
+	private final IModule module3 = createModule("module3"); //$NON-NLS-1$
+
+	private TestHandler handler;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		handler = new TestHandler();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		handler.proceed.countDown();
+		waitForRefresh();
+		super.tearDown();
+	}
+
+	public void testRefreshAllSubsumesApplicationRefreshes() throws Exception {
+		// Holding the handler lock keeps the refresh job from taking the
+		// requests until all of them are queued
+		synchronized (handler) {
+			handler.schedulesRefreshApplication(module1);
+			handler.scheduleRefreshAll(module1);
+			handler.schedulesRefreshApplication(module2);
+			handler.scheduleRefreshForDeploymentChange(module3);
+		}
+		waitForRefresh();
+
+		assertOperations("refreshAll(module1)", "refreshInstances([module2], [module3])"); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	public void testRefreshAllRequestsMerged() throws Exception {
+		synchronized (handler) {
+			handler.scheduleRefreshAll();
+			handler.scheduleRefreshAll(module1);
+			handler.scheduleRefreshAll();
+			handler.scheduleRefreshAll(module2);
+		}
+		waitForRefresh();
+
+		assertOperations("refreshAll(module2)", "refreshInstances([module1], [])"); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	public void testRefreshAllOnce() throws Exception {
+		synchronized (handler) {
+			handler.scheduleRefreshAll();
+			handler.scheduleRefreshAll();
+		}
+		waitForRefresh();
+
+		assertOperations("refreshAll(null)"); //$NON-NLS-1$
+	}
+
+	public void testApplicationRefreshesMerged() throws Exception {
+		synchronized (handler) {
+			handler.schedulesRefreshApplication(module1);
+			handler.schedulesRefreshApplication(module2);
+			handler.schedulesRefreshApplication(module1);
+			handler.scheduleRefreshForDeploymentChange(module1);
+			handler.scheduleRefreshForDeploymentChange(module1);
+		}
+		waitForRefresh();
+
+		assertOperations("refreshApplication(module1)", "refreshApplication(module2)", //$NON-NLS-1$ //$NON-NLS-2$
+				"refreshForDeploymentChange(module1)"); //$NON-NLS-1$
+	}
+
+	public void testRequestsWhileRunningNotDropped() throws Exception {
+		handler.blockedModule = module1;
+		handler.schedulesRefreshApplication(module1);
+		assertTrue(handler.started.await(TIMEOUT, TimeUnit.MILLISECONDS));
+
+		handler.schedulesRefreshApplication(module2);
+		handler.scheduleRefreshAll();
+		handler.schedulesRefreshApplication(module1);
+		assertTrue(handler.isScheduled());
+		handler.proceed.countDown();
+		waitForRefresh();
+
+		assertOperations("refreshApplication(module1)", "refreshAll(null)", //$NON-NLS-1$ //$NON-NLS-2$
+				"refreshInstances([module2, module1], [])"); //$NON-NLS-1$
+	}
+
+	public void testUnresolvedServerNotRefreshed() throws Exception {
+		RefreshModulesHandler unresolved = new RefreshModulesHandler(null);
+		unresolved.scheduleRefreshAll(module1);
+		unresolved.schedulesRefreshApplication(module1);
+		unresolved.scheduleRefreshForDeploymentChange(module1);
+
+		assertFalse(unresolved.isScheduled());
+	}
+
+	private void waitForRefresh() throws InterruptedException {
+		long end = System.currentTimeMillis() + TIMEOUT;
+		while (handler.isScheduled()) {
+			assertTrue("Timed out waiting for refresh", System.currentTimeMillis() < end); //$NON-NLS-1$
+			Thread.sleep(10);
+		}
+	}
+
+	private void assertOperations(String... expected) {
+		synchronized (handler.performed) {
+			assertEquals(Arrays.asList(expected), handler.performed);
+		}
+	}
+
+	private static IModule createModule(final String name) {
+		return (IModule) Proxy.newProxyInstance(RefreshModulesHandlerTest.class.getClassLoader(),
+				new Class<?>[] { IModule.class }, new InvocationHandler() {
+
+					public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+						if ("equals".equals(method.getName())) { //$NON-NLS-1$
+							return proxy == args[0];
+						}
+						if ("hashCode".equals(method.getName())) { //$NON-NLS-1$
+							return System.identityHashCode(proxy);
+						}
+						if (method.getReturnType() == String.class) {
+							return name;
+						}
+						return null;
+					}
+				});
+	}
+
+	private static String getNames(Collection<IModule> modules) {
+		List<String> names = new ArrayList<String>();
+		for (IModule module : modules) {
+			names.add(module.getName());
+		}
+		return names.toString();
+	}
+
+	/**
+	 * Records the refresh operations that are performed, instead of
+	 * refreshing modules in a Cloud space.
+	 */
+	private static class TestHandler extends RefreshModulesHandler {
+
+		final List<String> performed = new ArrayList<String>();
+
+		final CountDownLatch started = new CountDownLatch(1);
+
+		final CountDownLatch proceed = new CountDownLatch(1);
+
+		volatile IModule blockedModule;
+
+		TestHandler() {
+			super(null);
+		}
+
+		@Override
+		protected boolean isServerResolved() {
+			return true;
+		}
+
+		@Override
+		protected CloudBehaviourOperations getOperations() {
+			return new CloudBehaviourOperations(null) {
+
+				@Override
+				public BehaviourOperation refreshAll(IModule module) {
+					return new TestOperation(module, "refreshAll(" + (module != null ? module.getName() : null) + ')'); //$NON-NLS-1$
+				}
+
+				@Override
+				public BehaviourOperation refreshApplication(IModule module) {
+					return new TestOperation(module, "refreshApplication(" + module.getName() + ')'); //$NON-NLS-1$
+				}
+
+				@Override
+				public BehaviourOperation refreshForDeploymentChange(IModule module) {
+					return new TestOperation(module, "refreshForDeploymentChange(" + module.getName() + ')'); //$NON-NLS-1$
+				}
+
+				@Override
+				public BehaviourOperation refreshInstances(Collection<IModule> refreshedModules,
+						Collection<IModule> deploymentChangeModules) {
+					return new TestOperation(null, "refreshInstances(" + getNames(refreshedModules) + ", " //$NON-NLS-1$ //$NON-NLS-2$
+							+ getNames(deploymentChangeModules) + ')');
+				}
+			};
+		}
+
+		private class TestOperation extends BehaviourOperation {
+
+			private final String description;
+
+			TestOperation(IModule module, String description) {
+				super(null, module);
+				this.description = description;
+			}
+
+			public void run(IProgressMonitor monitor) throws CoreException {
+				synchronized (performed) {
+					performed.add(description);
+				}
+				if (getModule() != null && getModule() == blockedModule) {
+					blockedModule = null;
+					started.countDown();
+					try {
+						proceed.await(TIMEOUT, TimeUnit.MILLISECONDS);
+					}
+					catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+			}
+		}
+	}
+}
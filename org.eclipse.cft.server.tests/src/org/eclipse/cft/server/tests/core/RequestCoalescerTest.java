@@ -0,0 +1,274 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Pivotal Software, Inc. 
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution. 
+ * 
+ * The Eclipse Public License is available at 
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * and the Apache License v2.0 is available at 
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * You may elect to redistribute this code under either of these licenses.
+ *  
+ *  Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+ ********************************************************************************/
+package org.eclipse.cft.server.tests.core;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.cloudfoundry.client.lib.CloudFoundryOperations;
+import org.eclipse.cft.server.core.internal.CloudErrorUtil;
+import org.eclipse.cft.server.core.internal.client.BaseClientRequest;
+import org.eclipse.cft.server.core.internal.client.RequestCoalescer;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.SubMonitor;
+
+import junit.framework.TestCase;
+
+/**
+ * Verifies that concurrent client requests with the same coalescing key share
+ * a single call through the {@link RequestCoalescer}, and that a request falls
+ * back to its own call if the shared call is canceled by its caller.
+ */
+public class RequestCoalescerTest extends TestCase {
+
+	private static final long TIMEOUT = 5000;
+
+	private static final CloudFoundryOperations CLIENT = (CloudFoundryOperations) Proxy.newProxyInstance(
+			RequestCoalescerTest.class.getClassLoader(), new Class<?>[] { CloudFoundryOperations.class },
+			new InvocationHandler() {
+				public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+					return null;
+				}
+			});
+
+	private final AtomicInteger calls = new AtomicInteger();
+
+	private final CountDownLatch proceed = new CountDownLatch(1);
+
+	private String key;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		key = getName() + System.nanoTime();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		proceed.countDown();
+		super.tearDown();
+	}
+
+	public void testConcurrentRequestsShareCall() throws Exception {
+		Caller owner = start(new TestRequest(key), new NullProgressMonitor());
+		awaitInFlight();
+		long coalesced = RequestCoalescer.getDefault().getCoalescedCount();
+		Caller waiter = start(new TestRequest(key), new NullProgressMonitor());
+		awaitCoalesced(coalesced);
+
+		proceed.countDown();
+
+		assertEquals(Arrays.asList("result1"), owner.getResult()); //$NON-NLS-1$
+		assertEquals(Arrays.asList("result1"), waiter.getResult()); //$NON-NLS-1$
+		// Each caller is given its own list
+		assertNotSame(owner.getResult(), waiter.getResult());
+		assertEquals(1, calls.get());
+	}
+
+	public void testErrorShared() throws Exception {
+		TestRequest failing = new TestRequest(key);
+		failing.error = CloudErrorUtil.toCoreException("Server error"); //$NON-NLS-1$
+		Caller owner = start(failing, new NullProgressMonitor());
+		awaitInFlight();
+		long coalesced = RequestCoalescer.getDefault().getCoalescedCount();
+		Caller waiter = start(new TestRequest(key), new NullProgressMonitor());
+		awaitCoalesced(coalesced);
+
+		proceed.countDown();
+
+		assertSame(failing.error, owner.getError());
+		assertSame(failing.error, waiter.getError());
+		assertEquals(1, calls.get());
+	}
+
+	public void testWaiterRunsOwnCallWhenSharedCallCanceled() throws Exception {
+		TestRequest canceled = new TestRequest(key);
+		canceled.cancel = true;
+		Caller owner = start(canceled, new NullProgressMonitor());
+		awaitInFlight();
+		long coalesced = RequestCoalescer.getDefault().getCoalescedCount();
+		Caller waiter = start(new TestRequest(key), new NullProgressMonitor());
+		awaitCoalesced(coalesced);
+
+		proceed.countDown();
+
+		assertTrue(owner.getError() instanceof OperationCanceledException);
+		assertEquals(Arrays.asList("result2"), waiter.getResult()); //$NON-NLS-1$
+		assertEquals(2, calls.get());
+	}
+
+	public void testCanceledWaiterDoesNotWait() throws Exception {
+		Caller owner = start(new TestRequest(key), new NullProgressMonitor());
+		awaitInFlight();
+		NullProgressMonitor monitor = new NullProgressMonitor();
+		monitor.setCanceled(true);
+		Caller waiter = start(new TestRequest(key), monitor);
+
+		assertTrue(waiter.getError() instanceof OperationCanceledException);
+		assertFalse(owner.isDone());
+
+		proceed.countDown();
+		assertEquals(Arrays.asList("result1"), owner.getResult()); //$NON-NLS-1$
+		assertEquals(1, calls.get());
+	}
+
+	public void testSequentialRequestsNotCoalesced() throws Exception {
+		proceed.countDown();
+
+		assertEquals(Arrays.asList("result1"), new TestRequest(key).run(new NullProgressMonitor())); //$NON-NLS-1$
+		assertEquals(Arrays.asList("result2"), new TestRequest(key).run(new NullProgressMonitor())); //$NON-NLS-1$
+		assertEquals(2, calls.get());
+	}
+
+	private Caller start(TestRequest request, IProgressMonitor monitor) {
+		Caller caller = new Caller(request, monitor);
+		caller.start();
+		return caller;
+	}
+
+	private void awaitInFlight() throws InterruptedException {
+		long end = System.currentTimeMillis() + TIMEOUT;
+		while (calls.get() == 0) {
+			if (System.currentTimeMillis() > end) {
+				fail("Timed out waiting for the first call"); //$NON-NLS-1$
+			}
+			Thread.sleep(10);
+		}
+	}
+
+	private void awaitCoalesced(long previous) throws InterruptedException {
+		long end = System.currentTimeMillis() + TIMEOUT;
+		while (RequestCoalescer.getDefault().getCoalescedCount() == previous) {
+			if (System.currentTimeMillis() > end) {
+				fail("Timed out waiting for the request to be coalesced"); //$NON-NLS-1$
+			}
+			Thread.sleep(10);
+		}
+	}
+
+	/**
+	 * Request with a coalescing key, whose call waits until the test lets it
+	 * proceed.
+	 */
+	private class TestRequest extends BaseClientRequest<List<String>> {
+
+		private final String coalescingKey;
+
+		CoreException error;
+
+		boolean cancel;
+
+		TestRequest(String coalescingKey) {
+			super("Test request"); //$NON-NLS-1$
+			this.coalescingKey = coalescingKey;
+		}
+
+		@Override
+		protected String getCoalescingKey() {
+			return coalescingKey;
+		}
+
+		@Override
+		protected List<String> doRun(CloudFoundryOperations client, SubMonitor progress) throws CoreException {
+			int call = calls.incrementAndGet();
+			try {
+				if (!proceed.await(TIMEOUT, TimeUnit.MILLISECONDS)) {
+					throw CloudErrorUtil.toCoreException("Timed out"); //$NON-NLS-1$
+				}
+			}
+			catch (InterruptedException e) {
+				throw new OperationCanceledException();
+			}
+			if (cancel) {
+				throw new OperationCanceledException();
+			}
+			if (error != null) {
+				throw error;
+			}
+			return new ArrayList<String>(Arrays.asList("result" + call)); //$NON-NLS-1$
+		}
+
+		@Override
+		protected CloudFoundryOperations getClient(IProgressMonitor monitor) throws CoreException {
+			return CLIENT;
+		}
+	}
+
+	/**
+	 * Thread that runs a request and keeps its result or error.
+	 */
+	private static class Caller extends Thread {
+
+		private final TestRequest request;
+
+		private final IProgressMonitor monitor;
+
+		private final CountDownLatch done = new CountDownLatch(1);
+
+		private List<String> result;
+
+		private Throwable error;
+
+		Caller(TestRequest request, IProgressMonitor monitor) {
+			this.request = request;
+			this.monitor = monitor;
+			setDaemon(true);
+		}
+
+		@Override
+		public void run() {
+			try {
+				result = request.run(monitor);
+			}
+			catch (Throwable e) {
+				error = e;
+			}
+			finally {
+				done.countDown();
+			}
+		}
+
+		boolean isDone() {
+			return done.getCount() == 0;
+		}
+
+		List<String> getResult() throws InterruptedException {
+			assertTrue(done.await(TIMEOUT, TimeUnit.MILLISECONDS));
+			assertNull(error);
+			return result;
+		}
+
+		Throwable getError() throws InterruptedException {
+			assertTrue(done.await(TIMEOUT, TimeUnit.MILLISECONDS));
+			return error;
+		}
+	}
+}
@@ -0,0 +1,252 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Pivotal Software, Inc. 
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution. 
+ * 
+ * The Eclipse Public License is available at 
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * and the Apache License v2.0 is available at 
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * You may elect to redistribute this code under either of these licenses.
+ *  
+ *  Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+ ********************************************************************************/
+package org.eclipse.cft.server.tests.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.cft.server.core.internal.client.RequestScheduler;
+import org.eclipse.cft.server.core.internal.client.RequestScheduler.Priority;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+
+import junit.framework.TestCase;
+
+/**
+ * Verifies the order in which the {@link RequestScheduler} admits requests of
+ * different priorities, and the limits on requests running against a server.
+ */
+public class RequestSchedulerTest extends TestCase {
+
+	private static final long TIMEOUT = 5000;
+
+	private final List<String> admitted = Collections.synchronizedList(new ArrayList<String>());
+
+	private final List<Requester> requesters = new ArrayList<Requester>();
+
+	@Override
+	protected void tearDown() throws Exception {
+		for (Requester requester : requesters) {
+			requester.finish();
+		}
+		for (Requester requester : requesters) {
+			requester.join(TIMEOUT);
+		}
+		super.tearDown();
+	}
+
+	public void testPriorityClassLimit() throws Exception {
+		RequestScheduler scheduler = new RequestScheduler(20);
+
+		for (int i = 0; i < Priority.BACKGROUND.getMaxConcurrent(); i++) {
+			start(scheduler, Priority.BACKGROUND, "background" + i).awaitAdmitted(); //$NON-NLS-1$
+		}
+		Requester queued = start(scheduler, Priority.BACKGROUND, "queued"); //$NON-NLS-1$
+		awaitWaiting(scheduler, Priority.BACKGROUND, 1);
+
+		// Other classes are not limited by the background requests
+		start(scheduler, Priority.PUBLISH, "publish").awaitAdmitted(); //$NON-NLS-1$
+		assertFalse(queued.isAdmitted());
+
+		requesters.get(0).finish();
+		queued.awaitAdmitted();
+		assertEquals(Priority.BACKGROUND.getMaxConcurrent(), scheduler.getRunningCount(Priority.BACKGROUND));
+	}
+
+	public void testSlotsReservedForInteractiveRequests() throws Exception {
+		RequestScheduler scheduler = new RequestScheduler(4);
+
+		start(scheduler, Priority.PUBLISH, "publish0").awaitAdmitted(); //$NON-NLS-1$
+		start(scheduler, Priority.PUBLISH, "publish1").awaitAdmitted(); //$NON-NLS-1$
+
+		// Below the class limit, but the remaining slots are reserved
+		Requester queued = start(scheduler, Priority.PUBLISH, "publish2"); //$NON-NLS-1$
+		awaitWaiting(scheduler, Priority.PUBLISH, 1);
+
+		start(scheduler, Priority.INTERACTIVE, "interactive0").awaitAdmitted(); //$NON-NLS-1$
+		start(scheduler, Priority.INTERACTIVE, "interactive1").awaitAdmitted(); //$NON-NLS-1$
+		assertFalse(queued.isAdmitted());
+
+		// Server limit reached
+		Requester interactive = start(scheduler, Priority.INTERACTIVE, "interactive2"); //$NON-NLS-1$
+		awaitWaiting(scheduler, Priority.INTERACTIVE, 1);
+
+		requesters.get(0).finish();
+		interactive.awaitAdmitted();
+		assertFalse(queued.isAdmitted());
+	}
+
+	public void testInteractiveAdmittedBeforeQueuedBackground() throws Exception {
+		RequestScheduler scheduler = new RequestScheduler(2);
+
+		Requester first = start(scheduler, Priority.INTERACTIVE, "interactive0"); //$NON-NLS-1$
+		first.awaitAdmitted();
+		Requester second = start(scheduler, Priority.INTERACTIVE, "interactive1"); //$NON-NLS-1$
+		second.awaitAdmitted();
+
+		Requester background = start(scheduler, Priority.BACKGROUND, "background"); //$NON-NLS-1$
+		awaitWaiting(scheduler, Priority.BACKGROUND, 1);
+		Requester publish = start(scheduler, Priority.PUBLISH, "publish"); //$NON-NLS-1$
+		awaitWaiting(scheduler, Priority.PUBLISH, 1);
+		Requester interactive = start(scheduler, Priority.INTERACTIVE, "interactive2"); //$NON-NLS-1$
+		awaitWaiting(scheduler, Priority.INTERACTIVE, 1);
+
+		first.finish();
+		interactive.awaitAdmitted();
+		second.finish();
+		interactive.finish();
+		publish.awaitAdmitted();
+		publish.finish();
+		background.awaitAdmitted();
+
+		assertEquals("[interactive0, interactive1, interactive2, publish, background]", admitted.toString()); //$NON-NLS-1$
+	}
+
+	public void testNestedRequestsUseOneSlot() throws Exception {
+		RequestScheduler scheduler = new RequestScheduler(1);
+
+		scheduler.acquire("outer", new NullProgressMonitor()); //$NON-NLS-1$
+		try {
+			// Would wait forever if the thread was admitted again
+			scheduler.acquire("inner", new NullProgressMonitor()); //$NON-NLS-1$
+			assertEquals(1, scheduler.getRunningCount(Priority.INTERACTIVE));
+			scheduler.release();
+			assertTrue(scheduler.isAdmitted());
+		}
+		finally {
+			scheduler.release();
+		}
+		assertFalse(scheduler.isAdmitted());
+		assertEquals(0, scheduler.getRunningCount(Priority.INTERACTIVE));
+	}
+
+	public void testAdmissionIsPerScheduler() throws Exception {
+		RequestScheduler first = new RequestScheduler();
+		RequestScheduler second = new RequestScheduler();
+
+		first.acquire("first", new NullProgressMonitor()); //$NON-NLS-1$
+		try {
+			assertFalse(second.isAdmitted());
+			second.acquire("second", new NullProgressMonitor()); //$NON-NLS-1$
+			try {
+				assertEquals(1, second.getRunningCount(Priority.INTERACTIVE));
+			}
+			finally {
+				second.release();
+			}
+			assertEquals(0, second.getRunningCount(Priority.INTERACTIVE));
+			assertTrue(first.isAdmitted());
+		}
+		finally {
+			first.release();
+		}
+	}
+
+	public void testCanceledWhileWaiting() throws Exception {
+		RequestScheduler scheduler = new RequestScheduler(1);
+		start(scheduler, Priority.INTERACTIVE, "holder").awaitAdmitted(); //$NON-NLS-1$
+
+		NullProgressMonitor monitor = new NullProgressMonitor();
+		monitor.setCanceled(true);
+		try {
+			scheduler.acquire("canceled", monitor); //$NON-NLS-1$
+			fail("Expected the request to be canceled"); //$NON-NLS-1$
+		}
+		catch (OperationCanceledException e) {
+			// expected
+		}
+		assertFalse(scheduler.isAdmitted());
+		assertEquals(0, scheduler.getWaitingCount(Priority.INTERACTIVE));
+		assertEquals(1, scheduler.getRunningCount(Priority.INTERACTIVE));
+	}
+
+	private Requester start(RequestScheduler scheduler, Priority priority, String label) {
+		Requester requester = new Requester(scheduler, priority, label);
+		requesters.add(requester);
+		requester.start();
+		return requester;
+	}
+
+	private void awaitWaiting(RequestScheduler scheduler, Priority priority, int count) throws InterruptedException {
+		long end = System.currentTimeMillis() + TIMEOUT;
+		while (scheduler.getWaitingCount(priority) < count) {
+			if (System.currentTimeMillis() > end) {
+				fail("Timed out waiting for queued " + priority + " requests"); //$NON-NLS-1$ //$NON-NLS-2$
+			}
+			Thread.sleep(10);
+		}
+	}
+
+	/**
+	 * Thread that holds a slot of the scheduler until it is told to finish.
+	 */
+	private class Requester extends Thread {
+
+		private final RequestScheduler scheduler;
+
+		private final Priority priority;
+
+		private final String label;
+
+		private final CountDownLatch admission = new CountDownLatch(1);
+
+		private final CountDownLatch done = new CountDownLatch(1);
+
+		Requester(RequestScheduler scheduler, Priority priority, String label) {
+			this.scheduler = scheduler;
+			this.priority = priority;
+			this.label = label;
+			setDaemon(true);
+		}
+
+		@Override
+		public void run() {
+			RequestScheduler.setCurrentPriority(priority);
+			scheduler.acquire(label, new NullProgressMonitor());
+			try {
+				admitted.add(label);
+				admission.countDown();
+				done.await();
+			}
+			catch (InterruptedException e) {
+				// finish
+			}
+			finally {
+				scheduler.release();
+			}
+		}
+
+		boolean isAdmitted() {
+			return admission.getCount() == 0;
+		}
+
+		void awaitAdmitted() throws InterruptedException {
+			assertTrue("Request not admitted: " + label, admission.await(TIMEOUT, TimeUnit.MILLISECONDS)); //$NON-NLS-1$
+		}
+
+		void finish() {
+			done.countDown();
+		}
+	}
+}
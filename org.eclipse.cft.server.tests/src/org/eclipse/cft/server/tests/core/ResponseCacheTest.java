@@ -0,0 +1,196 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Pivotal Software, Inc. 
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution. 
+ * 
+ * The Eclipse Public License is available at 
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * and the Apache License v2.0 is available at 
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * You may elect to redistribute this code under either of these licenses.
+ *  
+ *  Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+ ********************************************************************************/
+package org.eclipse.cft.server.tests.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.cloudfoundry.client.lib.CloudFoundryOperations;
+import org.eclipse.cft.server.core.internal.CloudErrorUtil;
+import org.eclipse.cft.server.core.internal.client.BaseClientRequest;
+import org.eclipse.cft.server.core.internal.client.ResponseCache;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.SubMonitor;
+
+import junit.framework.TestCase;
+
+/**
+ * Verifies that the {@link ResponseCache} serves responses within their time
+ * to live, and that invalidation discards both cached responses and responses
+ * of requests that were running while the cache was invalidated.
+ */
+public class ResponseCacheTest extends TestCase {
+
+	private static final long TTL = 60 * 1000;
+
+	private ResponseCache cache;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		cache = new ResponseCache();
+	}
+
+	public void testResponseCachedWithinTtl() throws Exception {
+		TestRequest request = new TestRequest();
+		BaseClientRequest<List<String>> cached = cache.cached("domains", TTL, request); //$NON-NLS-1$
+
+		assertEquals(Arrays.asList("value1"), cached.run(new NullProgressMonitor())); //$NON-NLS-1$
+		assertEquals(Arrays.asList("value1"), cached.run(new NullProgressMonitor())); //$NON-NLS-1$
+
+		assertEquals(1, request.runs);
+		assertEquals(1, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+	}
+
+	public void testTotalCountsOverAllCaches() throws Exception {
+		long hits = ResponseCache.getTotalHitCount();
+		long misses = ResponseCache.getTotalMissCount();
+		ResponseCache otherCache = new ResponseCache();
+
+		cache.cached("domains", TTL, new TestRequest()).run(new NullProgressMonitor()); //$NON-NLS-1$
+		cache.cached("domains", TTL, new TestRequest()).run(new NullProgressMonitor()); //$NON-NLS-1$
+		otherCache.cached("domains", TTL, new TestRequest()).run(new NullProgressMonitor()); //$NON-NLS-1$
+
+		assertEquals(1, otherCache.getMissCount());
+		assertEquals(hits + 1, ResponseCache.getTotalHitCount());
+		assertEquals(misses + 2, ResponseCache.getTotalMissCount());
+	}
+
+	public void testKeysCachedSeparately() throws Exception {
+		TestRequest request = new TestRequest();
+
+		cache.cached("routes:a", TTL, request).run(new NullProgressMonitor()); //$NON-NLS-1$
+		List<String> other = cache.cached("routes:b", TTL, request).run(new NullProgressMonitor()); //$NON-NLS-1$
+
+		assertEquals(Arrays.asList("value2"), other); //$NON-NLS-1$
+		assertEquals(2, request.runs);
+	}
+
+	public void testExpiredResponseRequestedAgain() throws Exception {
+		TestRequest request = new TestRequest();
+		BaseClientRequest<List<String>> cached = cache.cached("routes", 20, request); //$NON-NLS-1$
+
+		cached.run(new NullProgressMonitor());
+		Thread.sleep(50);
+
+		assertEquals(Arrays.asList("value2"), cached.run(new NullProgressMonitor())); //$NON-NLS-1$
+		assertEquals(2, request.runs);
+	}
+
+	public void testInvalidate() throws Exception {
+		TestRequest request = new TestRequest();
+		BaseClientRequest<List<String>> cached = cache.cached("spaces", TTL, request); //$NON-NLS-1$
+
+		cached.run(new NullProgressMonitor());
+		cache.invalidate();
+
+		assertEquals(Arrays.asList("value2"), cached.run(new NullProgressMonitor())); //$NON-NLS-1$
+		assertEquals(2, request.runs);
+	}
+
+	public void testInvalidatingRequestClearsCacheOnFailure() throws Exception {
+		TestRequest request = new TestRequest();
+		BaseClientRequest<List<String>> cached = cache.cached("routes", TTL, request); //$NON-NLS-1$
+		cached.run(new NullProgressMonitor());
+
+		TestRequest failing = new TestRequest();
+		failing.error = CloudErrorUtil.toCoreException("Failed to delete route"); //$NON-NLS-1$
+		try {
+			cache.invalidating(failing).run(new NullProgressMonitor());
+			fail("Expected the request to fail"); //$NON-NLS-1$
+		}
+		catch (CoreException e) {
+			assertSame(failing.error, e);
+		}
+
+		cached.run(new NullProgressMonitor());
+		assertEquals(2, request.runs);
+		assertNull(cache.invalidating(null));
+	}
+
+	public void testResponseNotCachedIfInvalidatedWhileRunning() throws Exception {
+		TestRequest request = new TestRequest() {
+			@Override
+			public List<String> run(IProgressMonitor monitor) throws CoreException {
+				List<String> result = super.run(monitor);
+				if (runs == 1) {
+					// For example, a route was deleted meanwhile
+					cache.invalidate();
+				}
+				return result;
+			}
+		};
+		BaseClientRequest<List<String>> cached = cache.cached("routes", TTL, request); //$NON-NLS-1$
+
+		assertEquals(Arrays.asList("value1"), cached.run(new NullProgressMonitor())); //$NON-NLS-1$
+		assertEquals(Arrays.asList("value2"), cached.run(new NullProgressMonitor())); //$NON-NLS-1$
+		assertEquals(Arrays.asList("value2"), cached.run(new NullProgressMonitor())); //$NON-NLS-1$
+		assertEquals(2, request.runs);
+	}
+
+	public void testCachedListsCopied() throws Exception {
+		BaseClientRequest<List<String>> cached = cache.cached("domains", TTL, new TestRequest()); //$NON-NLS-1$
+
+		cached.run(new NullProgressMonitor()).add("added"); //$NON-NLS-1$
+		List<String> response = cached.run(new NullProgressMonitor());
+		response.clear();
+
+		assertEquals(Arrays.asList("value1"), cached.run(new NullProgressMonitor())); //$NON-NLS-1$
+	}
+
+	/**
+	 * Request that returns a new list on every run instead of contacting a
+	 * server.
+	 */
+	private static class TestRequest extends BaseClientRequest<List<String>> {
+
+		int runs;
+
+		CoreException error;
+
+		TestRequest() {
+			super("Test request"); //$NON-NLS-1$
+		}
+
+		@Override
+		public List<String> run(IProgressMonitor monitor) throws CoreException {
+			runs++;
+			if (error != null) {
+				throw error;
+			}
+			return new ArrayList<String>(Arrays.asList("value" + runs)); //$NON-NLS-1$
+		}
+
+		@Override
+		protected List<String> doRun(CloudFoundryOperations client, SubMonitor progress) throws CoreException {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		protected CloudFoundryOperations getClient(IProgressMonitor monitor) throws CoreException {
+			throw new UnsupportedOperationException();
+		}
+	}
+}
@@ -0,0 +1,93 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Pivotal Software, Inc. 
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution. 
+ * 
+ * The Eclipse Public License is available at 
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * and the Apache License v2.0 is available at 
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * You may elect to redistribute this code under either of these licenses.
+ *  
+ *  Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+ ********************************************************************************/
+package org.eclipse.cft.server.tests.core;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.eclipse.cft.server.core.internal.client.RetryPolicy;
+import org.eclipse.cft.server.core.internal.client.RetryBudget;
+
+import junit.framework.TestCase;
+
+/**
+ * Verifies the intervals between reattempts of failed client requests, and
+ * the retry budget that limits reattempts against a server.
+ */
+public class RetryPolicyTest extends TestCase {
+
+	public void testIntervalGrowsExponentially() throws Exception {
+		RetryPolicy policy = new RetryPolicy(5, 2, 0, 1000);
+
+		assertEquals(100, policy.getInterval(1, 100));
+		assertEquals(200, policy.getInterval(2, 100));
+		assertEquals(400, policy.getInterval(3, 100));
+		assertEquals(800, policy.getInterval(4, 100));
+	}
+
+	public void testIntervalIsCapped() throws Exception {
+		RetryPolicy policy = new RetryPolicy(10, 2, 0, 1000);
+
+		assertEquals(1000, policy.getInterval(4, 300));
+		assertEquals(1000, policy.getInterval(9, 300));
+	}
+
+	public void testNoReattemptAfterMaxAttempts() throws Exception {
+		RetryPolicy policy = new RetryPolicy(3, 1.5, 0, 1000);
+
+		assertTrue(policy.getInterval(2, 100) > 0);
+		assertEquals(-1, policy.getInterval(3, 100));
+		assertEquals(-1, policy.getInterval(4, 100));
+	}
+
+	public void testNoReattemptWithoutInterval() throws Exception {
+		assertEquals(-1, RetryPolicy.DEFAULT.getInterval(1, 0));
+		assertEquals(-1, RetryPolicy.DEFAULT.getInterval(1, -1));
+	}
+
+	public void testJitter() throws Exception {
+		RetryPolicy policy = new RetryPolicy(10, 1, 0.2, 10000);
+
+		Set<Long> intervals = new HashSet<Long>();
+		for (int i = 0; i < 100; i++) {
+			long interval = policy.getInterval(1, 1000);
+			assertTrue(String.valueOf(interval), interval >= 800 && interval <= 1200);
+			intervals.add(interval);
+		}
+		// Reattempts of requests that failed together are spread out
+		assertTrue(intervals.size() > 1);
+	}
+
+	public void testBudgetExhausted() throws Exception {
+		RetryBudget budget = new RetryBudget();
+
+		for (int i = 0; i < RetryBudget.MAX_RETRIES; i++) {
+			assertTrue(budget.acquireRetry("server"));
+		}
+		assertFalse(budget.acquireRetry("server"));
+
+		// Budgets are per server, and requests without a budget are not
+		// limited
+		assertTrue(budget.acquireRetry("otherServer"));
+		assertTrue(budget.acquireRetry(null));
+	}
+
+}
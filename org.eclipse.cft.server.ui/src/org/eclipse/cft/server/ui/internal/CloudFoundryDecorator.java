@@ -78,14 +78,15 @@ public class CloudFoundryDecorator extends LabelProvider implements ILightweight
 				IModule[] modules = moduleServer.getModule();
 				if (modules != null && modules.length == 1) {
 					CloudFoundryServer server = getCloudFoundryServer(moduleServer.getServer());
-					if (server == null || !server.isConnected()) {
+					if (server == null) {
 						return;
 
 					}
 					CloudFoundryApplicationModule module = server.getExistingCloudModule(modules[0]);
 
-					// module may no longer exist
-					if (module == null) {
+					// module may no longer exist. Modules restored from the
+					// last known state are shown before the server connects
+					if (module == null || (!server.isConnected() && !module.isStale())) {
 						return;
 					}
 
@@ -108,6 +109,10 @@ public class CloudFoundryDecorator extends LabelProvider implements ILightweight
 						decoration.addSuffix(Messages.CloudFoundryDecorator_SUFFIX_NOT_DEPLOYED);
 					}
 
+					if (module.isStale()) {
+						decoration.addSuffix(Messages.CloudFoundryDecorator_SUFFIX_STALE);
+					}
+
 					if (module.getStatus() != null && !module.getStatus().isOK()) {
 						if (module.getStatus().getSeverity() == IStatus.ERROR) {
 							decoration.addOverlay(CloudFoundryImages.OVERLAY_ERROR, IDecoration.BOTTOM_LEFT);
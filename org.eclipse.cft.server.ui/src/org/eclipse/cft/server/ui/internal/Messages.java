@@ -618,6 +618,8 @@ public class Messages extends NLS {
 
 	public static String CloudFoundryDecorator_SUFFIX_NOT_DEPLOYED;
 
+	public static String CloudFoundryDecorator_SUFFIX_STALE;
+
 	public static String CloudFoundryDeploymentWizardPage_LABEL_START_APP;
 
 	public static String CloudFoundryDeploymentWizardPage_TEXT_DEPLOY_DETAIL;
@@ -644,6 +646,10 @@ public class Messages extends NLS {
 
 	public static String CloudFoundryServerStatusSection_TEXT_SERV_STAT;
 
+	public static String CloudFoundryServerStatusSection_TEXT_UNREACHABLE;
+
+	public static String CloudFoundryServerStatusSection_TEXT_CHECKING_AVAILABILITY;
+
 	public static String CloudFoundryServerStatusSection_JOB_CONN_SERVER;
 
 	public static String CloudFoundryServerWizardFragment_TEXT_CONNECT_ACCOUNT;
@@ -70,6 +70,8 @@ public class RefreshEditorAction extends Action {
 	public void run() {
 		IModule selectedModule = editorPage.getMasterDetailsBlock().getCurrentModule();
 		CloudFoundryServerBehaviour behaviour = editorPage.getCloudServer().getBehaviour();
+		// A manual refresh should always fetch current data from the server
+		behaviour.getResponseCache().invalidate();
 		behaviour.getRefreshHandler().scheduleRefreshAll(selectedModule);
 	}
 }
\ No newline at end of file
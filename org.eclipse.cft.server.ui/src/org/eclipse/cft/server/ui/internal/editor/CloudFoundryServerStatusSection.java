@@ -24,6 +24,8 @@ import org.eclipse.cft.server.core.internal.CloudFoundryServer;
 import org.eclipse.cft.server.core.internal.CloudServerEvent;
 import org.eclipse.cft.server.core.internal.CloudServerListener;
 import org.eclipse.cft.server.core.internal.ServerEventHandler;
+import org.eclipse.cft.server.core.internal.client.CircuitBreaker;
+import org.eclipse.cft.server.core.internal.client.CloudFoundryServerBehaviour;
 import org.eclipse.cft.server.ui.internal.CloudFoundryServerUiPlugin;
 import org.eclipse.cft.server.ui.internal.Messages;
 import org.eclipse.core.runtime.CoreException;
@@ -179,6 +181,16 @@ public class CloudFoundryServerStatusSection extends ServerEditorSection impleme
 					if (s == IServer.STATE_STARTED) {
 						statusString = Messages.CloudFoundryServerStatusSection_TEXT_CONNECTED;
 					}
+					CloudFoundryServerBehaviour behaviour = cfServer.getBehaviour();
+					if (behaviour != null) {
+						CircuitBreaker.State breakerState = behaviour.getCircuitBreaker().getState();
+						if (breakerState == CircuitBreaker.State.OPEN) {
+							statusString += " " + Messages.CloudFoundryServerStatusSection_TEXT_UNREACHABLE; //$NON-NLS-1$
+						}
+						else if (breakerState == CircuitBreaker.State.HALF_OPEN) {
+							statusString += " " + Messages.CloudFoundryServerStatusSection_TEXT_CHECKING_AVAILABILITY; //$NON-NLS-1$
+						}
+					}
 					statusLabel.setText(statusString);
 					
 					connectButton.setEnabled(s != IServer.STATE_STARTED);